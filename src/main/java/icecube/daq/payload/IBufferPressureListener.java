@@ -0,0 +1,18 @@
+package icecube.daq.payload;
+
+/**
+ * Objects which implement this interface are notified when a bounded
+ * buffer cache cannot satisfy a request without exceeding its upper limit.
+ */
+public interface IBufferPressureListener
+{
+    /**
+     * Called (without holding any cache locks) before the cache blocks or
+     * rejects a request.  The listener may free buffers to relieve the
+     * pressure.
+     *
+     * @param cache buffer cache which has reached its limit
+     * @param requestedBytes number of bytes in the pending request
+     */
+    void bufferPressure(IByteBufferCache cache, int requestedBytes);
+}
@@ -55,6 +55,16 @@ public interface IEventPayload
      */
     int getEventVersion();
 
+    /**
+     * Get the starting time of this event, avoiding an <tt>IUTCTime</tt>
+     * where the implementation stores a <tt>long</tt>.
+     * @return starting time
+     */
+    default long getFirstTime()
+    {
+        return getFirstTimeUTC().longValue();
+    }
+
     /**
      * Get the list of hit records for this event.
      * NOTE: This only works for version 5 and 6 events.
@@ -71,6 +81,16 @@ public interface IEventPayload
     @Deprecated
     List getReadoutDataPayloads();
 
+    /**
+     * Get the ending time of this event, avoiding an <tt>IUTCTime</tt>
+     * where the implementation stores a <tt>long</tt>.
+     * @return ending time
+     */
+    default long getLastTime()
+    {
+        return getLastTimeUTC().longValue();
+    }
+
     /**
      * Get the run number for this event which provides a key to the
      * instrumentation configuration at the time that this event was produced.
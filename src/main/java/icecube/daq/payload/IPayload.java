@@ -63,6 +63,27 @@ public interface IPayload
     void loadPayload()
         throws IOException, PayloadFormatException;
 
+    /**
+     * Drop one hold on this payload, recycling it if this was the last one.
+     * Payloads which don't count holds are simply recycled.
+     * @return <tt>true</tt> if the payload was recycled
+     */
+    default boolean release()
+    {
+        recycle();
+        return true;
+    }
+
+    /**
+     * Add a hold on this payload, so it is not recycled until a matching
+     * <tt>release()</tt> is made.  Payloads which don't count holds
+     * ignore this.
+     */
+    default void retain()
+    {
+        // do nothing
+    }
+
     /**
      * Set the buffer cache for this payload.
      *
@@ -0,0 +1,19 @@
+package icecube.daq.payload;
+
+import java.io.IOException;
+
+/**
+ * Objects which implement this interface receive payloads from a
+ * processing stage, one at a time and in order.
+ */
+public interface IPayloadConsumer
+{
+    /**
+     * Accept the next payload
+     *
+     * @param payload payload
+     * @throws IOException if the payload cannot be handled
+     */
+    void consume(IPayload payload)
+        throws IOException;
+}
@@ -0,0 +1,34 @@
+package icecube.daq.payload;
+
+/**
+ * Process payloads in a section of a file, accumulating the outcome in a
+ * per-section result.  Sections may be processed concurrently, so
+ * <tt>visit()</tt> should only update the result object it is given.
+ * @param <R> result type
+ */
+public interface IPayloadVisitor<R>
+{
+    /**
+     * Create an empty result for a new section
+     * @return new result
+     */
+    R createResult();
+
+    /**
+     * Combine the results for two adjacent sections
+     * @param first result for the earlier section
+     * @param second result for the later section
+     * @return combined result
+     */
+    R merge(R first, R second);
+
+    /**
+     * Process the next payload in a section
+     * @param result result for this section
+     * @param payload payload
+     * @param fileOffset file offset of the payload
+     * @throws PayloadException if there is a problem
+     */
+    void visit(R result, IPayload payload, long fileOffset)
+        throws PayloadException;
+}
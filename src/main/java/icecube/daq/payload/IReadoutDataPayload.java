@@ -23,6 +23,15 @@ public interface IReadoutDataPayload
      */
     List getDataPayloads();
 
+    /**
+     * Get the first time of the readout window as a raw UTC value.
+     * @return starting time
+     */
+    default long getFirstTime()
+    {
+        return getFirstTimeUTC().longValue();
+    }
+
     /**
      * get timeordered list of all hits contained in Composite, this
      * is the unique list of  Payload's which are IHitPayload's
@@ -30,6 +39,15 @@ public interface IReadoutDataPayload
      */
     List<IHitData> getHitList();
 
+    /**
+     * Get the last time of the readout window as a raw UTC value.
+     * @return ending time
+     */
+    default long getLastTime()
+    {
+        return getLastTimeUTC().longValue();
+    }
+
     /**
      * Get the number of hits
      * @return number of hits
@@ -21,6 +21,17 @@ import java.util.Collection;
  */
 public interface ITriggerRequestPayload extends ICompositePayload
 {
+    /**
+     * Get the starting time without creating an <tt>IUTCTime</tt>.
+     * Implementations which keep the time as a <tt>long</tt> should
+     * override this.
+     * @return starting time
+     */
+    default long getFirstTime()
+    {
+        return getFirstTimeUTC().longValue();
+    }
+
     /**
      * get list of Payload's.
      * @return list of Payloads
@@ -42,6 +53,17 @@ public interface ITriggerRequestPayload extends ICompositePayload
      */
     String getTriggerName();
 
+    /**
+     * Get the ending time without creating an <tt>IUTCTime</tt>.
+     * Implementations which keep the time as a <tt>long</tt> should
+     * override this.
+     * @return ending time
+     */
+    default long getLastTime()
+    {
+        return getLastTimeUTC().longValue();
+    }
+
     /**
      * Returns the unique id assigned to this ITriggerRequestPayload
      * @return the unique id for this event.
@@ -0,0 +1,29 @@
+package icecube.daq.payload;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Buffer cache which accounts for returned buffers by payload type.
+ *
+ * A buffer's payload type is only known once the payload has been
+ * written, so only returns are counted by type.
+ */
+public interface ITypedBufferCache
+    extends IByteBufferCache
+{
+    /**
+     * Return a buffer which held a payload in only its first
+     * <tt>numBytes</tt> bytes.  The cache may use the buffer to find the
+     * payload type, but must not reuse it.
+     * @param buf byte buffer
+     * @param numBytes number of bytes used by the payload
+     */
+    void returnBuffer(ByteBuffer buf, int numBytes);
+
+    /**
+     * Return a "buffer" which held a payload of a known type
+     * @param numBytes buffer capacity
+     * @param payloadType payload type (from <tt>PayloadRegistry</tt>)
+     */
+    void returnBuffer(int numBytes, int payloadType);
+}
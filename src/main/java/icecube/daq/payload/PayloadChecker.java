@@ -639,8 +639,8 @@ public abstract class PayloadChecker
         int numHits = 0;
 
         if (payList != null) {
-            long trigStart = tr.getFirstTimeUTC().longValue();
-            long trigFinish = tr.getLastTimeUTC().longValue();
+            long trigStart = tr.getFirstTime();
+            long trigFinish = tr.getLastTime();
 
             for (IPayload pay : payList) {
                 if (pay instanceof ITriggerRequestPayload) {
@@ -1107,8 +1107,8 @@ public abstract class PayloadChecker
 
         }
 
-        final long evtFirst = evt.getFirstTimeUTC().longValue();
-        final long evtLast = evt.getLastTimeUTC().longValue();
+        final long evtFirst = evt.getFirstTime();
+        final long evtLast = evt.getLastTime();
 
         for (IEventHitRecord hitRec : evt.getHitRecords()) {
             final long hitTime = hitRec.getHitTime();
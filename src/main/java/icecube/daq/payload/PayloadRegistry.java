@@ -57,6 +57,8 @@ public final class PayloadRegistry
     public static final int PAYLOAD_ID_HIT_RECORD_LIST = 23;
     /** Minimal(er) hit representation */
     public static final int PAYLOAD_ID_SIMPLER_HIT = 24;
+    /** Event V7 */
+    public static final int PAYLOAD_ID_EVENT_V7 = 25;
 
     /**
      * This is a utility class.
@@ -64,4 +66,37 @@ public final class PayloadRegistry
     private PayloadRegistry()
     {
     }
+
+    /**
+     * Is this a known payload type?
+     * @param type payload type
+     * @return <tt>true</tt> if <tt>type</tt> is a current payload type
+     */
+    public static boolean isValidType(int type)
+    {
+        switch (type) {
+        case PAYLOAD_ID_SIMPLE_HIT:
+        case PAYLOAD_ID_ENGFORMAT_DOMHIT:
+        case PAYLOAD_ID_DELTA_DOMHIT:
+        case PAYLOAD_ID_TCAL:
+        case PAYLOAD_ID_MON:
+        case PAYLOAD_ID_READOUT_REQUEST:
+        case PAYLOAD_ID_TRIGGER_REQUEST:
+        case PAYLOAD_ID_ENGFORMAT_HIT_DATA:
+        case PAYLOAD_ID_READOUT_DATA:
+        case PAYLOAD_ID_SN:
+        case PAYLOAD_ID_DELTA_HIT:
+        case PAYLOAD_ID_COMPRESSED_HIT_DATA:
+        case PAYLOAD_ID_EVENT_V3:
+        case PAYLOAD_ID_EVENT_V4:
+        case PAYLOAD_ID_EVENT_V5:
+        case PAYLOAD_ID_EVENT_V6:
+        case PAYLOAD_ID_HIT_RECORD_LIST:
+        case PAYLOAD_ID_SIMPLER_HIT:
+        case PAYLOAD_ID_EVENT_V7:
+            return true;
+        default:
+            return false;
+        }
+    }
 }
@@ -104,11 +104,7 @@ public class ASCIIMonitor
     public int loadRecord(ByteBuffer buf, int offset, int len)
         throws PayloadException
     {
-        byte[] strBytes = new byte[len];
-        buf.position(offset);
-        buf.get(strBytes, 0, strBytes.length);
-
-        string = new String(strBytes);
+        string = new String(BufferUtil.getBytes(buf, offset, new byte[len]));
 
         return len;
     }
@@ -128,8 +124,7 @@ public class ASCIIMonitor
             throw new Error("Monitor event has not been loaded");
         }
 
-        buf.position(offset);
-        buf.put(string.getBytes());
+        BufferUtil.putBytes(buf, offset, string.getBytes());
 
         return string.length();
     }
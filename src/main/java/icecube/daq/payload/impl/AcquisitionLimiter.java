@@ -0,0 +1,300 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IBufferPressureListener;
+import icecube.daq.payload.IByteBufferCache;
+
+/**
+ * Enforce a buffer cache's upper limit on the number of acquired bytes.
+ * This keeps its own count of outstanding bytes so it can be shared by
+ * caches with very different locking strategies.  Caches hold their
+ * limiter in a <tt>Holder</tt>, which does nothing until a bound policy
+ * is set.
+ */
+final class AcquisitionLimiter
+{
+    /** Number of nanoseconds in a millisecond */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /** cache passed to the pressure listener */
+    private IByteBufferCache cache;
+    /** maximum number of outstanding bytes */
+    private long maxBytes;
+    /** what to do when a request would exceed the maximum */
+    private BoundPolicy policy;
+    /** maximum time to block */
+    private long timeoutNanos;
+    /** optional listener which is told about rejected or delayed requests */
+    private IBufferPressureListener listener;
+
+    /** number of bytes currently acquired */
+    private long reserved;
+    /** number of threads waiting for bytes to be released */
+    private int numWaiting;
+
+    /** number of requests which hit the limit */
+    private long numPressured;
+    /** number of requests which had to wait */
+    private long numWaits;
+    /** total time spent waiting */
+    private long totalWaitNanos;
+    /** number of requests which were refused */
+    private long numRejected;
+
+    /**
+     * Create a limiter
+     * @param cache buffer cache being limited
+     * @param maxBytes maximum number of outstanding bytes
+     * @param policy what to do when the limit is reached
+     * @param timeoutMillis maximum number of milliseconds to block
+     * @param listener pressure listener (may be <tt>null</tt>)
+     */
+    AcquisitionLimiter(IByteBufferCache cache, long maxBytes,
+                       BoundPolicy policy, long timeoutMillis,
+                       IBufferPressureListener listener)
+    {
+        if (policy == null) {
+            throw new IllegalArgumentException("Policy cannot be null");
+        }
+
+        this.cache = cache;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.timeoutNanos = timeoutMillis * NANOS_PER_MILLI;
+        this.listener = listener;
+    }
+
+    /**
+     * Can this request be satisfied?  A request is always allowed if no
+     * other bytes are outstanding, so a single oversized buffer can't
+     * block forever.
+     * @param bytes number of bytes requested
+     * @return <tt>true</tt> if the request fits
+     */
+    private boolean fits(long bytes)
+    {
+        return reserved == 0 || reserved + bytes <= maxBytes;
+    }
+
+    /**
+     * Get the number of requests which had to wait
+     * @return value
+     */
+    synchronized long getNumWaits()
+    {
+        return numWaits;
+    }
+
+    /**
+     * Get the number of requests which hit the limit
+     * @return value
+     */
+    synchronized long getNumPressured()
+    {
+        return numPressured;
+    }
+
+    /**
+     * Get the number of requests which were refused
+     * @return value
+     */
+    synchronized long getNumRejected()
+    {
+        return numRejected;
+    }
+
+    /**
+     * Get the total time spent waiting
+     * @return number of milliseconds
+     */
+    synchronized long getTotalWaitMillis()
+    {
+        return totalWaitNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Release previously reserved bytes and wake up any waiting threads
+     * @param bytes number of bytes
+     */
+    synchronized void release(long bytes)
+    {
+        reserved -= bytes;
+        if (reserved < 0) {
+            // extra returns are reported by the cache
+            reserved = 0;
+        }
+
+        if (numWaiting > 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Reserve bytes for a new buffer
+     * @param bytes number of bytes
+     * @return <tt>false</tt> if the request was refused
+     */
+    boolean reserve(int bytes)
+    {
+        synchronized (this) {
+            if (fits(bytes)) {
+                reserved += bytes;
+                return true;
+            }
+
+            numPressured++;
+        }
+
+        if (listener != null) {
+            listener.bufferPressure(cache, bytes);
+        }
+
+        synchronized (this) {
+            if (policy == BoundPolicy.IGNORE || fits(bytes)) {
+                reserved += bytes;
+                return true;
+            }
+
+            if (policy == BoundPolicy.FAIL) {
+                numRejected++;
+                return false;
+            }
+
+            final long start = System.nanoTime();
+            final long deadline = start + timeoutNanos;
+
+            boolean interrupted = false;
+
+            numWaiting++;
+            try {
+                while (!fits(bytes)) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || interrupted) {
+                        break;
+                    }
+
+                    try {
+                        wait(remaining / NANOS_PER_MILLI,
+                             (int) (remaining % NANOS_PER_MILLI));
+                    } catch (InterruptedException ie) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                numWaiting--;
+            }
+
+            numWaits++;
+            totalWaitNanos += System.nanoTime() - start;
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!fits(bytes)) {
+                numRejected++;
+                return false;
+            }
+
+            reserved += bytes;
+            return true;
+        }
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "AcquisitionLimiter[" + policy + ",res=" + reserved + "/" +
+            maxBytes + ",waits=" + numWaits + ",rej=" + numRejected + "]";
+    }
+
+    /**
+     * The limiter (if any) installed by a cache's
+     * <tt>setBoundPolicy()</tt>, along with the bound statistics every
+     * cache reports.
+     */
+    static final class Holder
+    {
+        /** enforces the upper limit (<tt>null</tt> if it is not enforced) */
+        private volatile AcquisitionLimiter limiter;
+
+        /**
+         * Get number of requests refused because of the upper limit
+         * @return value
+         */
+        long getBoundRejections()
+        {
+            final AcquisitionLimiter lim = limiter;
+            return lim == null ? 0L : lim.getNumRejected();
+        }
+
+        /**
+         * Get total time spent waiting for the upper limit
+         * @return number of milliseconds
+         */
+        long getBoundWaitMillis()
+        {
+            final AcquisitionLimiter lim = limiter;
+            return lim == null ? 0L : lim.getTotalWaitMillis();
+        }
+
+        /**
+         * Get number of requests which waited for the upper limit
+         * @return value
+         */
+        long getBoundWaits()
+        {
+            final AcquisitionLimiter lim = limiter;
+            return lim == null ? 0L : lim.getNumWaits();
+        }
+
+        /**
+         * Release bytes if the upper limit is enforced
+         * @param bytes number of bytes
+         */
+        void release(long bytes)
+        {
+            final AcquisitionLimiter lim = limiter;
+            if (lim != null) {
+                lim.release(bytes);
+            }
+        }
+
+        /**
+         * Reserve bytes if the upper limit is enforced
+         * @param bytes number of bytes
+         * @return <tt>false</tt> if the request was refused
+         */
+        boolean reserve(int bytes)
+        {
+            final AcquisitionLimiter lim = limiter;
+            return lim == null || lim.reserve(bytes);
+        }
+
+        /**
+         * Start enforcing a cache's upper limit.
+         * @param cache bounded buffer cache
+         * @param policy what to do when a request would exceed the limit
+         * @param timeoutMillis maximum number of milliseconds to wait when
+         *                      the policy is <tt>BLOCK</tt>
+         * @param listener notified when the limit is reached
+         *                 (may be <tt>null</tt>)
+         */
+        void setBoundPolicy(IByteBufferCache cache, BoundPolicy policy,
+                            long timeoutMillis,
+                            IBufferPressureListener listener)
+        {
+            if (!cache.isCacheBounded()) {
+                throw new IllegalArgumentException("Cache " +
+                                                   cache.getName() +
+                                                   " is not bounded");
+            }
+
+            limiter = new AcquisitionLimiter(cache, cache.getMaxAcquiredBytes(),
+                                             policy, timeoutMillis, listener);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IEventHitRecord;
+import icecube.daq.payload.ITriggerRequestPayload;
+import icecube.daq.payload.IUTCTime;
+import icecube.daq.payload.PayloadException;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Version 5 event whose hit records may be written compressed.
+ *
+ * The hit records are compressed at most once.  The compressed bytes are
+ * kept so <tt>writePayload()</tt> can copy them, and hit records which
+ * don't get smaller are remembered so they are written uncompressed
+ * without trying again.  Subclasses supply the codec and the layout of the
+ * bytes preceding the hit records.
+ */
+public abstract class BaseCompressedEvent
+    extends EventPayload_v5
+{
+    /** Logging object */
+    private static final Logger LOG =
+        Logger.getLogger(BaseCompressedEvent.class);
+
+    /**
+     * Largest number of uncompressed hit record bytes which will be
+     * decoded; anything bigger is assumed to be corrupt
+     */
+    static final int MAX_PLAIN_LENGTH = PayloadReader.DEFAULT_MAX_LENGTH;
+
+    /** Cached compressed hit record data */
+    private ByteBuffer compressedHitRecords;
+    /** <tt>true</tt> if the hit records are known not to compress */
+    private boolean incompressible;
+
+    /**
+     * Create an event
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @throws PayloadException if there is a problem
+     */
+    BaseCompressedEvent(ByteBuffer buf, int offset)
+        throws PayloadException
+    {
+        super(buf, offset);
+    }
+
+    /**
+     * Event constructor for PayloadFactory.
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param len total number of bytes
+     * @param utcTime payload time (UTC)
+     * @throws PayloadException if there is a problem
+     */
+    BaseCompressedEvent(ByteBuffer buf, int offset, int len, long utcTime)
+        throws PayloadException
+    {
+        super(buf, offset, len, utcTime);
+    }
+
+    /**
+     * Create an event
+     * @param uid unique ID
+     * @param firstTime starting time
+     * @param lastTime ending time
+     * @param year year
+     * @param runNum run number
+     * @param subrunNum subrun number
+     * @param trigReq trigger request
+     * @param hitRecList hit record list
+     * @throws PayloadException if there is a problem
+     */
+    BaseCompressedEvent(int uid, IUTCTime firstTime, IUTCTime lastTime,
+                        short year, int runNum, int subrunNum,
+                        ITriggerRequestPayload trigReq,
+                        List<IEventHitRecord> hitRecList)
+        throws PayloadException
+    {
+        super(uid, firstTime, lastTime, year, runNum, subrunNum, trigReq,
+              hitRecList);
+    }
+
+    /**
+     * Forget any compressed hit records and whether they compressed
+     */
+    void clearCompressedHitRecords()
+    {
+        compressedHitRecords = null;
+        incompressible = false;
+    }
+
+    /**
+     * Compress <tt>hitLen</tt> bytes of encoded hit records from the
+     * scratch plain array into the scratch packed array.
+     * @param scratch per-thread scratch buffers
+     * @param hitLen number of bytes of encoded hit records
+     * @return number of compressed bytes, or -1 if the hit records should
+     *         be stored uncompressed
+     */
+    abstract int compress(DeflateCodec scratch, int hitLen);
+
+    /**
+     * Encode this event's hit records into the scratch plain array and
+     * compress them into the scratch packed array.
+     * @param scratch per-thread scratch buffers
+     * @param hitLen number of bytes of encoded hit records
+     * @param baseTime base time used to compute relative times
+     * @return number of compressed bytes, or -1 if the hit records should
+     *         be stored uncompressed
+     * @throws PayloadException if the hit records cannot be encoded
+     */
+    private int encodeHitRecords(DeflateCodec scratch, int hitLen,
+                                 long baseTime)
+        throws PayloadException
+    {
+        super.putHitRecords(scratch.getPlainBuffer(hitLen), 0, baseTime);
+
+        return compress(scratch, hitLen);
+    }
+
+    /**
+     * Get the number of bytes written before the compressed hit records
+     * @return number of bytes
+     */
+    abstract int getCompressedHeaderLength();
+
+    /**
+     * Get the hit record length.
+     *
+     * @return hit record length
+     */
+    @Override
+    int getHitRecordLength()
+    {
+        if (!isLoaded()) {
+            throw new Error("Hit records have not been loaded");
+        }
+
+        if (compressedHitRecords != null) {
+            return compressedHitRecords.limit();
+        }
+
+        final int hitLen = super.getHitRecordLength();
+        if (incompressible || !isCompressionEnabled()) {
+            return 1 + hitLen;
+        }
+
+        DeflateCodec scratch = DeflateCodec.get();
+
+        final int zipLen;
+        try {
+            zipLen = encodeHitRecords(scratch, hitLen, getFirstTime());
+        } catch (PayloadException pe) {
+            LOG.error("Could not put hit records to " + getPayloadName(), pe);
+            return Integer.MIN_VALUE;
+        }
+
+        if (zipLen < 0) {
+            incompressible = true;
+            return 1 + hitLen;
+        }
+
+        // keep the compressed bytes so writePayload() can copy them
+        // instead of compressing the hit records again
+        ByteBuffer zipBuf =
+            ByteBuffer.allocate(getCompressedHeaderLength() + zipLen);
+        putCompressed(zipBuf, 0, scratch, hitLen, zipLen);
+        compressedHitRecords = zipBuf;
+
+        return zipBuf.limit();
+    }
+
+    /**
+     * Should this event try to compress its hit records?
+     * @return <tt>true</tt> if hit records may be compressed
+     */
+    boolean isCompressionEnabled()
+    {
+        return true;
+    }
+
+    /**
+     * Were the hit records found not to compress?
+     * @return <tt>true</tt> if the hit records are stored uncompressed
+     *         because compressing them did not save space
+     */
+    boolean isIncompressible()
+    {
+        return incompressible;
+    }
+
+    /**
+     * Write the compressed hit records from the scratch packed array,
+     * preceded by any lengths or flags the format needs
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param scratch per-thread scratch buffers
+     * @param plainLen number of uncompressed bytes
+     * @param zipLen number of compressed bytes
+     * @return number of bytes written
+     */
+    abstract int putCompressed(ByteBuffer buf, int offset,
+                               DeflateCodec scratch, int plainLen,
+                               int zipLen);
+
+    /**
+     * Write this payload's hit records to the byte buffer
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param baseTime base time used to compute relative times
+     * @return number of bytes written
+     * @throws PayloadException if there is a problem
+     */
+    @Override
+    int putHitRecords(ByteBuffer buf, int offset, long baseTime)
+        throws PayloadException
+    {
+        if (compressedHitRecords != null) {
+            BufferUtil.putBytes(buf, offset, compressedHitRecords.array(), 0,
+                                compressedHitRecords.limit());
+            return compressedHitRecords.limit();
+        }
+
+        putStoredFlag(buf, offset);
+
+        if (!incompressible && isCompressionEnabled()) {
+            DeflateCodec scratch = DeflateCodec.get();
+
+            final int hitLen = super.getHitRecordLength();
+
+            final int zipLen = encodeHitRecords(scratch, hitLen, baseTime);
+            if (zipLen >= 0) {
+                return putCompressed(buf, offset, scratch, hitLen, zipLen);
+            }
+
+            incompressible = true;
+
+            // the encoded records are still in the scratch array
+            BufferUtil.putBytes(buf, offset + 1, scratch.getPlain(0), 0,
+                                hitLen);
+
+            return 1 + hitLen;
+        }
+
+        return 1 + super.putHitRecords(buf, offset + 1, baseTime);
+    }
+
+    /**
+     * Write the single byte which precedes uncompressed hit records
+     * @param buf byte buffer
+     * @param offset index of byte
+     */
+    abstract void putStoredFlag(ByteBuffer buf, int offset);
+
+    /**
+     * Clear out any cached data.
+     */
+    @Override
+    public void recycle()
+    {
+        super.recycle();
+
+        clearCompressedHitRecords();
+    }
+}
@@ -1,18 +1,24 @@
 package icecube.daq.payload.impl;
 
 import icecube.daq.payload.IByteBufferCache;
+import icecube.daq.payload.IPayload;
 import icecube.daq.splicer.Spliceable;
 import icecube.daq.splicer.SpliceableFactory;
 
 import java.nio.ByteBuffer;
 import java.util.List;
 
+import org.apache.log4j.Logger;
+
 /**
  * Base factory implementation
  */
 public abstract class BaseFactory
     implements SpliceableFactory
 {
+    /** logging object */
+    private static final Logger LOG = Logger.getLogger(BaseFactory.class);
+
     /** Buffer cache for created payloads */
     private IByteBufferCache cache;
 
@@ -26,15 +32,16 @@ public abstract class BaseFactory
     }
 
     /**
-     * Unimplemented
-     * @param x0 unused
-     * @param i1 unused
-     * @param i2 unused
+     * Adjust the payloads whose bytes were moved when the splicer
+     * compacted their shared backing buffer
+     * @param objects list of payloads
+     * @param index index of first moved payload
+     * @param shift number of bytes the payloads moved
      */
     @Override
-    public void backingBufferShift(List x0, int i1, int i2)
+    public void backingBufferShift(List objects, int index, int shift)
     {
-        throw new Error("Unimplemented");
+        shiftPayloads(objects, index, shift);
     }
 
     /**
@@ -55,23 +62,87 @@ public abstract class BaseFactory
     }
 
     /**
-     * Unimplemented
-     * @param spliceables unused
+     * Release payloads which the splicer has discarded
+     * @param spliceables list of payloads
      */
     @Override
     public void invalidateSpliceables(List spliceables)
     {
-        throw new Error("Unimplemented");
+        recyclePayloads(spliceables);
+    }
+
+    /**
+     * Recycle every payload in the list
+     * @param payloads list of payloads
+     */
+    static void recyclePayloads(List payloads)
+    {
+        for (Object obj : payloads) {
+            if (obj instanceof IPayload) {
+                ((IPayload) obj).recycle();
+            }
+        }
+    }
+
+    /**
+     * Shift the offset of every payload from <tt>index</tt> to the end of
+     * the list
+     * @param payloads list of payloads
+     * @param index index of first payload to shift
+     * @param shift number of bytes the payloads moved
+     */
+    static void shiftPayloads(List payloads, int index, int shift)
+    {
+        if (shift == 0) {
+            return;
+        }
+
+        final int num = payloads.size();
+        for (int i = index; i < num; i++) {
+            Object obj = payloads.get(i);
+            if (!(obj instanceof BasePayload)) {
+                throw new IllegalArgumentException("Cannot shift " + obj);
+            }
+
+            ((BasePayload) obj).shiftOffset(shift);
+        }
+    }
+
+    /**
+     * Move the buffer position past the payload which starts there.
+     * The position is unchanged if the payload is incomplete.
+     * @param buf buffer holding payloads
+     * @return <tt>true</tt> if the buffer contained a complete payload
+     */
+    static boolean skipPayload(ByteBuffer buf)
+    {
+        final int pos = buf.position();
+        final int avail = buf.limit() - pos;
+        if (avail < BasePayload.OFFSET_LENGTH + 4) {
+            return false;
+        }
+
+        final int len = buf.getInt(pos + BasePayload.OFFSET_LENGTH);
+        if (len < BasePayload.LEN_PAYLOAD_HEADER) {
+            LOG.error("Cannot skip payload with bad length " + len +
+                      " at position " + pos);
+            return false;
+        } else if (len > avail) {
+            return false;
+        }
+
+        buf.position(pos + len);
+        return true;
     }
 
     /**
-     * Unimplemented
-     * @param buf unused
-     * @return Error
+     * Move the buffer position past the next payload in place
+     * @param buf buffer holding payloads
+     * @return <tt>true</tt> if the buffer contained a complete payload
      */
     @Override
     public boolean skipSpliceable(ByteBuffer buf)
     {
-        throw new Error("Unimplemented");
+        return skipPayload(buf);
     }
 }
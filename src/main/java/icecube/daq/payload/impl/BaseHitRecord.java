@@ -191,12 +191,8 @@ public abstract class BaseHitRecord
         chanId = buf.getShort(offset + OFFSET_CHANNELID);
         time = (long) buf.getInt(offset + OFFSET_RELTIME) + baseTime;
 
-        rawData = new byte[len - OFFSET_RAWDATA];
-
-        final int origPos = buf.position();
-        buf.position(offset + OFFSET_RAWDATA);
-        buf.get(rawData);
-        buf.position(origPos);
+        rawData = BufferUtil.getBytes(buf, offset + OFFSET_RAWDATA,
+                                      new byte[len - OFFSET_RAWDATA]);
 
         return len;
     }
@@ -251,10 +247,7 @@ public abstract class BaseHitRecord
         buf.putShort(offset + OFFSET_CHANNELID, chanId);
         buf.putInt(offset + OFFSET_RELTIME, (int) (time - baseTime));
 
-        final int origPos = buf.position();
-        buf.position(offset + OFFSET_RAWDATA);
-        buf.put(rawData);
-        buf.position(origPos);
+        BufferUtil.putBytes(buf, offset + OFFSET_RAWDATA, rawData);
 
         return len;
     }
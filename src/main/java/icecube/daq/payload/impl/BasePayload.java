@@ -8,9 +8,18 @@ import icecube.daq.payload.PayloadFormatException;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Base payload class
+ *
+ * A payload which is handed to several consumers should be
+ * <tt>retain()</tt>ed once for each extra consumer, and each consumer
+ * should <tt>release()</tt> it when done.  The payload is recycled when
+ * the last holder releases it.  Payloads embedded in a cached buffer share
+ * their parent's reference to that buffer, so the buffer is returned to
+ * the cache once, after every payload which uses it has been recycled.
  */
 public abstract class BasePayload
     implements IPayload
@@ -27,8 +36,16 @@ public abstract class BasePayload
     /** Number of bytes in payload header */
     public static final int LEN_PAYLOAD_HEADER = OFFSET_PAYLOAD;
 
+    /** Updater for <tt>refCount</tt> */
+    private static final AtomicIntegerFieldUpdater<BasePayload> REF_COUNT =
+        AtomicIntegerFieldUpdater.newUpdater(BasePayload.class, "refCount");
+
     /** This payload's buffer cache */
     private IByteBufferCache cache;
+    /** Shared reference to the cached buffer (or <tt>null</tt>) */
+    private BufferReference bufRef;
+    /** Number of holders of this payload */
+    private volatile int refCount = 1;
 
     /** This payload's time */
     private long utcTime;
@@ -41,6 +58,8 @@ public abstract class BasePayload
     private int offset;
     /** <tt>true</tt> if this payload's has been loaded from the byte buffer */
     private boolean loaded;
+    /** <tt>true</tt> if this payload no longer matches its byte buffer */
+    private boolean modified;
 
     /** Number of bytes needed for this payload */
     private int bufLen = Integer.MIN_VALUE;
@@ -148,6 +167,25 @@ public abstract class BasePayload
         return domClock;
     }
 
+    /**
+     * Get a view of this payload's bytes in its byte buffer, if they can be
+     * written as they are.  The view's position and limit surround the
+     * payload; the backing buffer itself is not changed.
+     * @return view of the original bytes, or <tt>null</tt> if the payload
+     *         was not read from a buffer or has been modified
+     */
+    ByteBuffer getOriginalBytes()
+    {
+        if (buf == null || isModified()) {
+            return null;
+        }
+
+        ByteBuffer view = buf.duplicate();
+        view.limit(offset + buf.getInt(offset + OFFSET_LENGTH));
+        view.position(offset);
+        return view;
+    }
+
     /**
      * Get the byte buffer from which this payload was loaded
      * @return buffer cache (or <tt>null</tt>)
@@ -194,6 +232,15 @@ public abstract class BasePayload
     @Override
     public abstract int getPayloadType();
 
+    /**
+     * Get the number of holders of this payload
+     * @return reference count (0 if the payload has been recycled)
+     */
+    public int getReferenceCount()
+    {
+        return refCount;
+    }
+
     /**
      * Get the UTC time for this payload
      * @return time value
@@ -215,6 +262,48 @@ public abstract class BasePayload
         return true;
     }
 
+    /**
+     * Has any of these embedded payloads been changed since it was read
+     * from its byte buffer?
+     * @param list list of payloads (may be <tt>null</tt>)
+     * @return <tt>true</tt> if any payload must be re-encoded
+     */
+    static boolean isAnyModified(Collection<?> list)
+    {
+        if (list != null) {
+            for (Object obj : list) {
+                if (isModified(obj)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Has this payload been changed since it was read from its byte buffer?
+     * Unmodified payloads are written by copying the original bytes, so
+     * payloads which embed other payloads must also check their children.
+     * @return <tt>true</tt> if the payload must be re-encoded
+     */
+    public boolean isModified()
+    {
+        return modified;
+    }
+
+    /**
+     * Has this embedded payload been changed since it was read from its
+     * byte buffer?  Payloads which don't track changes are assumed to be
+     * unchanged.
+     * @param obj payload (may be <tt>null</tt>)
+     * @return <tt>true</tt> if the payload must be re-encoded
+     */
+    static boolean isModified(Object obj)
+    {
+        return obj instanceof BasePayload && ((BasePayload) obj).isModified();
+    }
+
     /**
      * Has this payload been loaded?
      * @return <tt>false</tt> if payload needs to be loaded from the byte buffer
@@ -295,7 +384,9 @@ public abstract class BasePayload
         throws PayloadException;
 
     /**
-     * Clear out any cached data.
+     * Clear out any cached data.  This payload's reference to its cached
+     * buffer is dropped, and the buffer is returned to the cache if no
+     * other payload is using it.
      */
     @Override
     public void recycle()
@@ -303,24 +394,207 @@ public abstract class BasePayload
         utcTime = -1L;
         timeObj = null;
 
-        // XXX the 'offset == 0' check is a bit of a hack to ensure we
-        //     don't "deallocate" a payload which was inside another payload
-        if (cache != null && buf != null && offset == 0) {
-            cache.returnBuffer(length());
+        if (bufRef != null) {
+            bufRef.release();
         }
 
         buf = null;
+        bufRef = null;
         cache = null;
+        modified = false;
+        refCount = 0;
     }
 
     /**
-     * Set the buffer cache for this payload
+     * Drop a parent payload's hold on an embedded payload.  Embedded
+     * payloads which have been retained elsewhere are not recycled until
+     * their other holders release them.
+     * @param pay embedded payload
+     */
+    static void releaseEmbedded(IPayload pay)
+    {
+        if (!(pay instanceof BasePayload)) {
+            pay.recycle();
+        } else {
+            ((BasePayload) pay).releaseIfLive();
+        }
+    }
+
+    /**
+     * Drop one hold on this payload, recycling it if this was the last one.
+     * @return <tt>true</tt> if the payload was recycled
+     */
+    @Override
+    public boolean release()
+    {
+        final int val = REF_COUNT.decrementAndGet(this);
+        if (val > 0) {
+            return false;
+        } else if (val < 0) {
+            REF_COUNT.incrementAndGet(this);
+            throw new IllegalStateException(getPayloadName() +
+                                            " was released too many times");
+        }
+
+        recycle();
+        return true;
+    }
+
+    /**
+     * Drop one hold on this payload unless it has already been recycled.
+     * The check and the decrement are a single atomic step, so a payload
+     * released here and elsewhere at the same time is recycled once.
+     * @return <tt>true</tt> if the payload was recycled
+     */
+    private boolean releaseIfLive()
+    {
+        while (true) {
+            final int val = refCount;
+            if (val <= 0) {
+                return false;
+            }
+
+            if (REF_COUNT.compareAndSet(this, val, val - 1)) {
+                if (val > 1) {
+                    return false;
+                }
+
+                recycle();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Add a hold on this payload, so it is not recycled until a matching
+     * <tt>release()</tt> is made.
+     */
+    @Override
+    public void retain()
+    {
+        while (true) {
+            final int val = refCount;
+            if (val <= 0) {
+                throw new IllegalStateException(getPayloadName() +
+                                                " has already been recycled");
+            }
+
+            if (REF_COUNT.compareAndSet(this, val, val + 1)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Point this payload at a different byte buffer so the object can be
+     * reused as a flyweight.  Anything loaded or cached from the previous
+     * buffer is discarded, any reference to a cached buffer is released,
+     * and the payload no longer has a buffer cache, so <tt>recycle()</tt>
+     * will not return the new buffer.
+     * Subclasses which load fields in their constructor must override this.
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param len total number of bytes
+     * @param utcTime payload time (UTC)
+     * @throws PayloadException if there is a problem
+     */
+    void rebind(ByteBuffer buf, int offset, int len, long utcTime)
+        throws PayloadException
+    {
+        this.utcTime = utcTime;
+        timeObj = null;
+
+        if (bufRef != null) {
+            bufRef.release();
+            bufRef = null;
+        }
+
+        this.buf = buf;
+        this.offset = offset;
+
+        bufLen = len;
+        loaded = false;
+        modified = false;
+        cache = null;
+        refCount = 1;
+
+        preloadSpliceableFields(buf, offset, len);
+    }
+
+    /**
+     * Set the buffer cache for this payload.  A payload loaded from a byte
+     * buffer takes ownership of the buffer, which is returned to the cache
+     * after this payload and any payloads embedded in it are recycled.
      * @param cache buffer cache
      */
     @Override
     public void setCache(IByteBufferCache cache)
     {
         this.cache = cache;
+
+        if (bufRef == null && cache != null && buf != null) {
+            bufRef = new BufferReference(buf, cache, length());
+        }
+    }
+
+    /**
+     * Note that this payload has been changed, so it can no longer be
+     * written by copying the bytes from its byte buffer.
+     */
+    protected void setModified()
+    {
+        modified = true;
+    }
+
+    /**
+     * Give a payload embedded in this payload's buffer this payload's
+     * buffer cache and a share of this payload's reference to the buffer,
+     * so the buffer is not returned to its cache until both payloads have
+     * been recycled.  The embedded payload never owns the buffer itself.
+     * @param pay embedded payload
+     */
+    void shareBuffer(IPayload pay)
+    {
+        if (!(pay instanceof BasePayload)) {
+            pay.setCache(cache);
+            return;
+        }
+
+        BasePayload embedded = (BasePayload) pay;
+        if (embedded.buf != buf) {
+            throw new IllegalArgumentException("Payload " + pay +
+                                               " does not share the buffer" +
+                                               " of " + this);
+        }
+
+        embedded.cache = cache;
+        if (bufRef != null && embedded.bufRef != bufRef) {
+            bufRef.retain();
+            if (embedded.bufRef != null) {
+                embedded.bufRef.release();
+            }
+            embedded.bufRef = bufRef;
+        }
+    }
+
+    /**
+     * Adjust this payload's position after the bytes in its backing buffer
+     * have been moved, as when a splicer compacts a shared buffer.
+     * Unloaded payloads will then load from the new position; loaded
+     * payloads have already copied what they need.
+     * @param shift number of bytes the payload moved (negative if it
+     *              moved toward the start of the buffer)
+     */
+    void shiftOffset(int shift)
+    {
+        if (buf != null) {
+            if (offset + shift < 0) {
+                throw new IllegalArgumentException("Cannot shift offset " +
+                                                   offset + " by " + shift);
+            }
+
+            offset += shift;
+        }
     }
 
     /**
@@ -331,6 +605,7 @@ public abstract class BasePayload
     {
         utcTime = time;
         timeObj = null;
+        modified = true;
     }
 
     /**
@@ -390,8 +665,41 @@ public abstract class BasePayload
     }
 
     /**
-     * Write this payload's data to the byte buffer
-     * @param writeLoaded ignored
+     * Copy this payload's original bytes to the byte buffer
+     * @param destOffset index of first byte
+     * @param destBuf byte buffer
+     * @return number of bytes written
+     * @throws IOException if there is a problem
+     */
+    private int writeOriginal(int destOffset, ByteBuffer destBuf)
+        throws IOException
+    {
+        ByteBuffer src = getOriginalBytes();
+        final int totLen = src.remaining();
+
+        final int bufRemain = destBuf.capacity() - (destOffset + totLen);
+        if (bufRemain < 0) {
+            throw new IOException("Buffer is " + -bufRemain +
+                                  " bytes too short (offset=" + destOffset +
+                                  ", payload len=" + totLen + ", capacity=" +
+                                  destBuf.capacity());
+        }
+
+        ByteBuffer dest = destBuf.duplicate();
+        dest.limit(destBuf.capacity());
+        dest.position(destOffset);
+        dest.put(src);
+
+        destBuf.limit(destOffset + totLen);
+
+        return totLen;
+    }
+
+    /**
+     * Write this payload's data to the byte buffer.  If the payload was
+     * read from a byte buffer and has not been modified, the original
+     * bytes are copied unless <tt>writeLoaded</tt> is <tt>true</tt>.
+     * @param writeLoaded if <tt>true</tt>, always re-encode the payload
      * @param offset index of first byte
      * @param buf byte buffer
      * @return number of bytes written
@@ -401,10 +709,23 @@ public abstract class BasePayload
     public int writePayload(boolean writeLoaded, int offset, ByteBuffer buf)
         throws IOException
     {
-        final int totLen = length();
+        if (!writeLoaded && this.buf != null && !isModified()) {
+            return writeOriginal(offset, buf);
+        }
+
+        final boolean constSize = isConstantSize();
+
+        // variable-sized payloads are measured by writing them, so their
+        // bodies are only encoded once; the length is patched afterward
+        final int totLen;
+        if (constSize) {
+            totLen = length();
+        } else {
+            totLen = LEN_PAYLOAD_HEADER;
+        }
 
         final int bufRemain = buf.capacity() - (offset + totLen);
-        if (isConstantSize() && bufRemain < 0) {
+        if (bufRemain < 0) {
             throw new IOException("Buffer is " + -bufRemain +
                                   " bytes too short (offset=" + offset +
                                   ", payload len=" + totLen + ", capacity=" +
@@ -424,17 +745,25 @@ public abstract class BasePayload
         } catch (PayloadException pe) {
             throw new IOException("Cannot write " + getPayloadName() +
                                   " body", pe);
+        } catch (IndexOutOfBoundsException ioobe) {
+            if (constSize) {
+                throw ioobe;
+            }
+
+            throw new IOException("Buffer is too short for " +
+                                  getPayloadName() + " (offset=" + offset +
+                                  ", capacity=" + buf.capacity() + ")",
+                                  ioobe);
         }
 
         final int finalLen = OFFSET_PAYLOAD + bodyLen;
 
-        if (finalLen != totLen) {
-            if (isConstantSize()) {
-                throw new IOException("Expected to write " + totLen +
-                                      " bytes, but wrote " + finalLen);
-            } else {
-                buf.putInt(offset + OFFSET_LENGTH, finalLen);
-            }
+        if (!constSize) {
+            buf.putInt(offset + OFFSET_LENGTH, finalLen);
+            bufLen = finalLen;
+        } else if (finalLen != totLen) {
+            throw new IOException("Expected to write " + totLen +
+                                  " bytes, but wrote " + finalLen);
         }
 
         buf.limit(offset + finalLen);
@@ -160,7 +160,8 @@ public abstract class BaseReadoutData
      * Get the starting time
      * @return starting time
      */
-    long getFirstTime()
+    @Override
+    public long getFirstTime()
     {
         return firstTime;
     }
@@ -190,7 +191,8 @@ public abstract class BaseReadoutData
      * Get the ending time
      * @return ending time
      */
-    long getLastTime()
+    @Override
+    public long getLastTime()
     {
         return lastTime;
     }
@@ -392,12 +394,7 @@ public abstract class BaseReadoutData
         }
 
         // make sure we can load the field(s) needed in compareSpliceable()
-        final int bodyOffset;
-        if (offset == 0) {
-            bodyOffset = OFFSET_PAYLOAD;
-        } else {
-            bodyOffset = 0;
-        }
+        final int bodyOffset = OFFSET_PAYLOAD;
 
         if (bodyOffset + OFFSET_LASTTIME + 8 > len) {
             throw new PayloadException("Cannot load field at offset " +
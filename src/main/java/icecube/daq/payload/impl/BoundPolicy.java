@@ -0,0 +1,15 @@
+package icecube.daq.payload.impl;
+
+/**
+ * How a bounded buffer cache handles a request which would exceed its
+ * maximum number of acquired bytes.
+ */
+public enum BoundPolicy
+{
+    /** Allocate the buffer anyway */
+    IGNORE,
+    /** Wait for other buffers to be returned, up to a timeout */
+    BLOCK,
+    /** Return <tt>null</tt> immediately */
+    FAIL;
+}
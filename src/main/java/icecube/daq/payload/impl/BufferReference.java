@@ -0,0 +1,125 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IByteBufferCache;
+import icecube.daq.payload.ITypedBufferCache;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Count the payloads which refer to a cached byte buffer.  A top-level
+ * payload and every payload embedded in it share a single reference, and
+ * the buffer is handed back to its cache exactly once, when the last of
+ * those payloads releases it.
+ */
+final class BufferReference
+{
+    /** shared buffer */
+    private ByteBuffer buf;
+    /** cache which supplied the buffer */
+    private IByteBufferCache cache;
+    /** number of bytes used by the owning payload */
+    private int length;
+    /** number of outstanding references */
+    private AtomicInteger count = new AtomicInteger(1);
+
+    /**
+     * Create a reference to a buffer.  The caller owns the first reference.
+     * @param buf byte buffer
+     * @param cache buffer cache
+     * @param length number of bytes used by the owning payload
+     */
+    BufferReference(ByteBuffer buf, IByteBufferCache cache, int length)
+    {
+        if (buf == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        } else if (cache == null) {
+            throw new IllegalArgumentException("Cache cannot be null");
+        }
+
+        this.buf = buf;
+        this.cache = cache;
+        this.length = length;
+    }
+
+    /**
+     * Get the number of outstanding references
+     * @return number of references
+     */
+    int getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Is the buffer still referenced?
+     * @return <tt>false</tt> if the buffer has been returned to its cache
+     */
+    boolean isLive()
+    {
+        return count.get() > 0;
+    }
+
+    /**
+     * Drop a reference, returning the buffer to its cache if this was the
+     * last one
+     * @return <tt>true</tt> if the buffer was returned
+     */
+    boolean release()
+    {
+        final int val = count.decrementAndGet();
+        if (val > 0) {
+            return false;
+        } else if (val < 0) {
+            count.incrementAndGet();
+            throw new IllegalStateException("Buffer reference was released" +
+                                            " too many times");
+        }
+
+        if (buf.limit() == length) {
+            // the payload fills the buffer, so hand back the buffer
+            // itself; caches can then reuse or track it
+            cache.returnBuffer(buf);
+            return true;
+        }
+
+        // typed caches can find the payload type (or the acquisition)
+        // from the buffer; others only need the size
+        if (cache instanceof ITypedBufferCache) {
+            ((ITypedBufferCache) cache).returnBuffer(buf, length);
+        } else {
+            cache.returnBuffer(length);
+        }
+
+        return true;
+    }
+
+    /**
+     * Add a reference
+     */
+    void retain()
+    {
+        while (true) {
+            final int val = count.get();
+            if (val <= 0) {
+                throw new IllegalStateException("Buffer has already been" +
+                                                " returned to " + cache);
+            }
+
+            if (count.compareAndSet(val, val + 1)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "BufferReference[" + length + "/" + buf.limit() + " bytes*" +
+            count.get() + "]";
+    }
+}
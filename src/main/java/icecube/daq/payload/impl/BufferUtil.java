@@ -0,0 +1,194 @@
+package icecube.daq.payload.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Absolute, order-explicit access to byte buffers.
+ *
+ * None of these methods change the buffer's position, limit or byte
+ * order, so several threads can decode different payloads from the same
+ * backing buffer at once.  Reads from a shared buffer must not be mixed
+ * with anything which changes its order; decoders which need a different
+ * byte order use the order-explicit methods below (or a duplicate of the
+ * buffer) instead of calling <tt>order()</tt>.
+ */
+final class BufferUtil
+{
+    /**
+     * This is a utility class.
+     */
+    private BufferUtil()
+    {
+    }
+
+    /**
+     * Make sure a range of bytes lies inside the buffer
+     * @param buf byte buffer
+     * @param index index of first byte
+     * @param len number of bytes
+     */
+    private static void checkRange(ByteBuffer buf, int index, int len)
+    {
+        if (index < 0 || len < 0 || index > buf.limit() - len) {
+            throw new IndexOutOfBoundsException("Cannot access " + len +
+                                                " bytes at " + index +
+                                                " in " + buf.limit() +
+                                                "-byte buffer");
+        }
+    }
+
+    /**
+     * Fill an array with bytes from the buffer
+     * @param buf byte buffer
+     * @param index index of first byte
+     * @param dst destination array
+     * @return destination array
+     */
+    static byte[] getBytes(ByteBuffer buf, int index, byte[] dst)
+    {
+        getBytes(buf, index, dst, 0, dst.length);
+        return dst;
+    }
+
+    /**
+     * Copy bytes from the buffer to an array
+     * @param buf byte buffer
+     * @param index index of first byte
+     * @param dst destination array
+     * @param dstOffset first array index to fill
+     * @param len number of bytes to copy
+     */
+    static void getBytes(ByteBuffer buf, int index, byte[] dst,
+                         int dstOffset, int len)
+    {
+        checkRange(buf, index, len);
+
+        if (buf.hasArray()) {
+            System.arraycopy(buf.array(), buf.arrayOffset() + index, dst,
+                             dstOffset, len);
+        } else {
+            for (int i = 0; i < len; i++) {
+                dst[dstOffset + i] = buf.get(index + i);
+            }
+        }
+    }
+
+    /**
+     * Read a long value using the specified byte order
+     * @param buf byte buffer
+     * @param index index of first byte
+     * @param order byte order of the value
+     * @return value
+     */
+    static long getLong(ByteBuffer buf, int index, ByteOrder order)
+    {
+        final long val = buf.getLong(index);
+        if (buf.order() == order) {
+            return val;
+        }
+
+        return Long.reverseBytes(val);
+    }
+
+    /**
+     * Read a short value using the specified byte order
+     * @param buf byte buffer
+     * @param index index of first byte
+     * @param order byte order of the value
+     * @return value
+     */
+    static short getShort(ByteBuffer buf, int index, ByteOrder order)
+    {
+        final short val = buf.getShort(index);
+        if (buf.order() == order) {
+            return val;
+        }
+
+        return Short.reverseBytes(val);
+    }
+
+    /**
+     * Get a buffer which shares the contents of <tt>buf</tt> but uses the
+     * specified byte order.  The original buffer is returned if it already
+     * uses that order.
+     * @param buf byte buffer
+     * @param order desired byte order
+     * @return buffer with the desired order
+     */
+    static ByteBuffer withOrder(ByteBuffer buf, ByteOrder order)
+    {
+        if (buf.order() == order) {
+            return buf;
+        }
+
+        return buf.duplicate().order(order);
+    }
+
+    /**
+     * Copy bytes from an array to the buffer
+     * @param buf byte buffer
+     * @param index index of first byte
+     * @param src source array
+     */
+    static void putBytes(ByteBuffer buf, int index, byte[] src)
+    {
+        putBytes(buf, index, src, 0, src.length);
+    }
+
+    /**
+     * Copy bytes from an array to the buffer
+     * @param buf byte buffer
+     * @param index index of first byte
+     * @param src source array
+     * @param srcOffset first array index to copy
+     * @param len number of bytes to copy
+     */
+    static void putBytes(ByteBuffer buf, int index, byte[] src,
+                         int srcOffset, int len)
+    {
+        checkRange(buf, index, len);
+
+        if (buf.hasArray()) {
+            System.arraycopy(src, srcOffset, buf.array(),
+                             buf.arrayOffset() + index, len);
+        } else {
+            for (int i = 0; i < len; i++) {
+                buf.put(index + i, src[srcOffset + i]);
+            }
+        }
+    }
+
+    /**
+     * Write a long value using the specified byte order
+     * @param buf byte buffer
+     * @param index index of first byte
+     * @param val value
+     * @param order byte order of the value
+     */
+    static void putLong(ByteBuffer buf, int index, long val, ByteOrder order)
+    {
+        if (buf.order() == order) {
+            buf.putLong(index, val);
+        } else {
+            buf.putLong(index, Long.reverseBytes(val));
+        }
+    }
+
+    /**
+     * Write a short value using the specified byte order
+     * @param buf byte buffer
+     * @param index index of first byte
+     * @param val value
+     * @param order byte order of the value
+     */
+    static void putShort(ByteBuffer buf, int index, short val,
+                         ByteOrder order)
+    {
+        if (buf.order() == order) {
+            buf.putShort(index, val);
+        } else {
+            buf.putShort(index, Short.reverseBytes(val));
+        }
+    }
+}
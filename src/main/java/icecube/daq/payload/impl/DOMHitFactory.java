@@ -61,7 +61,11 @@ public final class DOMHitFactory
         }
 
         final int len = buf.getInt(offset + OFFSET_LENGTH);
-        if (buf.limit() < len) {
+        if (len < hdrBytes) {
+            throw new PayloadException("Hit length " + len + " is shorter" +
+                                       " than the " + hdrBytes +
+                                       "-byte header");
+        } else if (buf.limit() - offset < len) {
             throw new PayloadException("Hit requires " + len +
                                        " bytes, but only " +
                                        (buf.limit() - offset) +
@@ -72,23 +76,24 @@ public final class DOMHitFactory
         final long domId = buf.getLong(offset + OFFSET_DOMID);
         final long utcTime = buf.getLong(offset + OFFSET_UTCTIME);
 
-        final ByteOrder origOrder = buf.order();
+        // hit bodies are big-endian; use a view rather than changing the
+        // order of a buffer other threads may be reading
+        final ByteBuffer hitBuf =
+            BufferUtil.withOrder(buf, ByteOrder.BIG_ENDIAN);
 
-        try {
-            buf.order(ByteOrder.BIG_ENDIAN);
+        // the hit record follows the header
+        final int recOffset = offset + hdrBytes;
 
-            switch (type) {
-            case TYPE_ENG_HIT:
-                return new EngineeringHit(srcId, domId, utcTime, buf, hdrBytes);
-            case TYPE_DELTA_HIT:
-            case TYPE_DELTA_PAYLOAD:
-                return new DeltaCompressedHit(srcId, domId, utcTime, buf,
-                                              hdrBytes);
-            default:
-                throw new PayloadException("Unknown DOM hit type #" + type);
-            }
-        } finally {
-            buf.order(origOrder);
+        switch (type) {
+        case TYPE_ENG_HIT:
+            return new EngineeringHit(srcId, domId, utcTime, hitBuf,
+                                      recOffset);
+        case TYPE_DELTA_HIT:
+        case TYPE_DELTA_PAYLOAD:
+            return new DeltaCompressedHit(srcId, domId, utcTime, hitBuf,
+                                          recOffset, len - hdrBytes);
+        default:
+            throw new PayloadException("Unknown DOM hit type #" + type);
         }
     }
 }
@@ -0,0 +1,211 @@
+package icecube.daq.payload.impl;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-thread raw deflate compressor/decompressor and scratch buffers used
+ * to pack and unpack compressed hit records.  The other hit record codecs
+ * borrow the same scratch buffers.
+ *
+ * Each thread gets one <tt>Deflater</tt> and one <tt>Inflater</tt> which
+ * are reset and reused for every event, so native zlib memory is no
+ * longer allocated (and left for the finalizer) once per event.  The
+ * scratch arrays grow to fit the largest event seen by the thread and are
+ * then reused.  Anything returned by these methods is only valid until
+ * the thread's next call, so callers must copy what they keep.
+ */
+final class DeflateCodec
+{
+    /** Initial scratch size */
+    private static final int INITIAL_SIZE = 16 * 1024;
+
+    /** Per-thread codecs */
+    private static final ThreadLocal<DeflateCodec> CODECS =
+        new ThreadLocal<DeflateCodec>() {
+            @Override
+            protected DeflateCodec initialValue()
+            {
+                return new DeflateCodec();
+            }
+        };
+
+    /** compressor */
+    private Deflater deflater =
+        new Deflater(Deflater.BEST_COMPRESSION, true);
+    /** decompressor */
+    private Inflater inflater = new Inflater(true);
+
+    /** scratch space for uncompressed data */
+    private byte[] plain = new byte[INITIAL_SIZE];
+    /** scratch space for compressed data */
+    private byte[] packed = new byte[INITIAL_SIZE];
+
+    /**
+     * Use <tt>get()</tt> to get the current thread's codec.
+     */
+    private DeflateCodec()
+    {
+    }
+
+    /**
+     * Compress <tt>len</tt> bytes of the plain scratch array into the
+     * packed scratch array at the best compression level.
+     * @param len number of bytes to compress
+     * @param maxLen largest useful compressed length
+     * @return number of compressed bytes, or -1 if the data could not be
+     *         compressed to <tt>maxLen</tt> bytes or fewer
+     */
+    int deflate(int len, int maxLen)
+    {
+        return deflate(len, maxLen, Deflater.BEST_COMPRESSION);
+    }
+
+    /**
+     * Compress <tt>len</tt> bytes of the plain scratch array into the
+     * packed scratch array.
+     * @param len number of bytes to compress
+     * @param maxLen largest useful compressed length
+     * @param level deflate compression level
+     * @return number of compressed bytes, or -1 if the data could not be
+     *         compressed to <tt>maxLen</tt> bytes or fewer
+     */
+    int deflate(int len, int maxLen, int level)
+    {
+        if (maxLen < 0) {
+            return -1;
+        }
+
+        getPacked(maxLen + 1);
+
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(plain, 0, len);
+        deflater.finish();
+
+        // ask for one extra byte so overlong output is noticed; a level
+        // change may use up the first call without producing any output
+        int zipLen = 0;
+        while (!deflater.finished() && zipLen <= maxLen) {
+            zipLen += deflater.deflate(packed, zipLen, maxLen + 1 - zipLen);
+        }
+        if (!deflater.finished() || zipLen > maxLen) {
+            return -1;
+        }
+
+        return zipLen;
+    }
+
+    /**
+     * Get the current thread's codec
+     * @return codec
+     */
+    static DeflateCodec get()
+    {
+        return CODECS.get();
+    }
+
+    /**
+     * Get the packed scratch array
+     * @return compressed bytes
+     */
+    byte[] getPacked()
+    {
+        return packed;
+    }
+
+    /**
+     * Get the packed scratch array, growing it if necessary
+     * @param len number of bytes needed
+     * @return compressed bytes
+     */
+    byte[] getPacked(int len)
+    {
+        if (packed.length < len) {
+            packed = new byte[Math.max(len, packed.length * 2)];
+        }
+
+        return packed;
+    }
+
+    /**
+     * Get the plain scratch array, growing it if necessary
+     * @param len number of bytes needed
+     * @return uncompressed bytes
+     */
+    byte[] getPlain(int len)
+    {
+        if (plain.length < len) {
+            plain = new byte[Math.max(len, plain.length * 2)];
+        }
+
+        return plain;
+    }
+
+    /**
+     * Get a buffer which writes into the plain scratch array
+     * @param len number of bytes needed
+     * @return buffer wrapping the plain scratch array
+     */
+    ByteBuffer getPlainBuffer(int len)
+    {
+        return ByteBuffer.wrap(getPlain(len));
+    }
+
+    /**
+     * Decompress <tt>len</tt> bytes from <tt>input</tt> into the plain
+     * scratch array in a single pass, growing the array if it fills up.
+     * Decompression stops as soon as the output passes <tt>maxLen</tt>
+     * bytes, so corrupt or hostile input cannot grow the array further.
+     * @param input compressed bytes
+     * @param offset index of first compressed byte
+     * @param len number of compressed bytes
+     * @param maxLen largest allowed number of uncompressed bytes
+     * @return number of uncompressed bytes in <tt>getPlain(0)</tt>
+     * @throws DataFormatException if the data cannot be decompressed or
+     *                             expands past <tt>maxLen</tt> bytes
+     */
+    int inflate(byte[] input, int offset, int len, int maxLen)
+        throws DataFormatException
+    {
+        inflater.reset();
+        inflater.setInput(input, offset, len);
+
+        // one byte past the limit is enough to notice overlong output
+        final int outLimit = maxLen + 1;
+
+        int total = 0;
+        while (!inflater.finished()) {
+            if (total == plain.length) {
+                byte[] tmp = new byte[Math.min(plain.length * 2, outLimit)];
+                System.arraycopy(plain, 0, tmp, 0, total);
+                plain = tmp;
+            }
+
+            final int num =
+                inflater.inflate(plain, total,
+                                 Math.min(plain.length, outLimit) - total);
+            total += num;
+
+            if (total > maxLen) {
+                throw new DataFormatException("Data expands past " + maxLen +
+                                              " bytes");
+            }
+
+            if (num == 0) {
+                if (inflater.needsDictionary()) {
+                    throw new DataFormatException("Preset dictionaries are" +
+                                                  " not supported");
+                } else if (inflater.needsInput()) {
+                    // raw streams may not report the end until they see
+                    // another byte, but all the input has been used
+                    break;
+                }
+            }
+        }
+
+        return total;
+    }
+}
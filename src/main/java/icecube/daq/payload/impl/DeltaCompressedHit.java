@@ -45,7 +45,8 @@ public class DeltaCompressedHit
     private short trigMode;
 
     /**
-     * Extract hit data from a DOMHit buffer.
+     * Extract hit data from a DOMHit buffer whose record fills the rest of
+     * the buffer.
      * @param srcId source ID
      * @param domId DOM ID
      * @param utcTime UTC time
@@ -56,9 +57,33 @@ public class DeltaCompressedHit
     DeltaCompressedHit(ISourceID srcId, long domId, long utcTime,
                        ByteBuffer buf, int offset)
         throws PayloadException
+    {
+        this(srcId, domId, utcTime, buf, offset, buf.limit() - offset);
+    }
+
+    /**
+     * Extract hit data from a DOMHit buffer.
+     * @param srcId source ID
+     * @param domId DOM ID
+     * @param utcTime UTC time
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param len number of bytes in the hit record
+     * @throws PayloadException if there is a problem
+     */
+    DeltaCompressedHit(ISourceID srcId, long domId, long utcTime,
+                       ByteBuffer buf, int offset, int len)
+        throws PayloadException
     {
         super(buf, srcId, domId, utcTime);
 
+        if (len < OFFSET_DATA || len > buf.limit() - offset) {
+            throw new PayloadException("Bad delta hit record length " + len +
+                                       " at offset " + offset +
+                                       " (buffer limit " + buf.limit() +
+                                       ")");
+        }
+
         short check = buf.getShort(offset + OFFSET_ORDERCHK);
         if (check != (short) 1) {
             throw new PayloadException("First word should be 1, not " + check);
@@ -72,10 +97,8 @@ public class DeltaCompressedHit
 
         final int dataStart = offset + OFFSET_DATA;
 
-        data = new byte[buf.limit() - dataStart];
-
-        buf.position(dataStart);
-        buf.get(data, 0, data.length);
+        data = BufferUtil.getBytes(buf, dataStart,
+                                   new byte[len - OFFSET_DATA]);
 
         trigMode = getTriggerModeFromWord0(word0);
     }
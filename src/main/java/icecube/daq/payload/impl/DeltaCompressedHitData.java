@@ -94,14 +94,8 @@ public class DeltaCompressedHitData
         word0 = buf.getInt(offset + OFFSET_WORD0);
         word2 = buf.getInt(offset + OFFSET_WORD2);
 
-        data = new byte[len - OFFSET_DATA];
-
-        final int origPos = buf.position();
-
-        buf.position(offset + OFFSET_DATA);
-        buf.get(data);
-
-        buf.position(origPos);
+        data = BufferUtil.getBytes(buf, offset + OFFSET_DATA,
+                                   new byte[len - OFFSET_DATA]);
     }
 
     /**
@@ -328,12 +322,7 @@ public class DeltaCompressedHitData
         buf.putInt(offset + OFFSET_WORD0, word0);
         buf.putInt(offset + OFFSET_WORD2, word2);
 
-        final int origPos = buf.position();
-
-        buf.position(offset + OFFSET_DATA);
-        buf.put(data);
-
-        buf.position(origPos);
+        BufferUtil.putBytes(buf, offset + OFFSET_DATA, data);
 
         return payLen;
     }
@@ -0,0 +1,175 @@
+package icecube.daq.payload.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This buffer cache carves its buffers out of large direct (off-heap)
+ * arenas.  When a size class runs out of idle buffers, a slab of several
+ * buffers is sliced from the current arena and the extras are added to the
+ * free list.  Arena memory is never released back to the system, so
+ * returned buffers are always kept for reuse.
+ *
+ * Requests larger than the biggest size class, and any requests made
+ * after the arena limit has been reached, are satisfied from the Java
+ * heap.
+ */
+public class DirectArenaBufferCache
+    extends PooledBufferCache
+    implements DirectArenaBufferCacheMBean
+{
+    /** Default number of bytes in each arena */
+    public static final int DEFAULT_ARENA_SIZE = 4 * 1024 * 1024;
+
+    /** Number of bytes carved from an arena when a size class runs dry */
+    private static final int SLAB_BYTES = 64 * 1024;
+
+    /** number of bytes in each arena */
+    private int arenaSize;
+    /** maximum number of bytes in all arenas */
+    private long maxArenaBytes;
+
+    /** arena from which new buffers are being sliced */
+    private ByteBuffer arena;
+    /** number of arenas allocated */
+    private int numArenas;
+    /** number of heap buffers handed out because the arenas were full */
+    private long heapFallbacks;
+
+    /**
+     * Create an unbounded named buffer cache
+     * @param name name
+     */
+    public DirectArenaBufferCache(String name)
+    {
+        this(name, Long.MIN_VALUE);
+    }
+
+    /**
+     * Create a bounded named buffer cache which uses the default size classes
+     * and arena size, and which does not limit the number of arenas.
+     * @param name name
+     * @param maxAcquiredBytes maximum number of bytes allowed
+     */
+    public DirectArenaBufferCache(String name, long maxAcquiredBytes)
+    {
+        this(name, maxAcquiredBytes, getDefaultSizes(), DEFAULT_ARENA_SIZE,
+             Long.MAX_VALUE);
+    }
+
+    /**
+     * Create a bounded named buffer cache
+     * @param name name
+     * @param maxAcquiredBytes maximum number of bytes allowed
+     * @param sizes buffer capacity for each size class
+     * @param arenaSize number of bytes in each direct arena
+     * @param maxArenaBytes maximum number of direct bytes to allocate
+     */
+    public DirectArenaBufferCache(String name, long maxAcquiredBytes,
+                                  int[] sizes, int arenaSize,
+                                  long maxArenaBytes)
+    {
+        super(name, maxAcquiredBytes, sizes, Integer.MAX_VALUE);
+
+        if (arenaSize < getClassSize(getNumSizeClasses() - 1)) {
+            throw new IllegalArgumentException("Arena size " + arenaSize +
+                                               " is smaller than the" +
+                                               " largest size class");
+        }
+
+        this.arenaSize = arenaSize;
+        this.maxArenaBytes = maxArenaBytes;
+    }
+
+    /**
+     * Slice a slab of buffers from the current arena, allocating a new
+     * arena if necessary.
+     * @param idx size class index
+     * @param cap buffer capacity
+     * @return new buffer
+     */
+    @Override
+    synchronized ByteBuffer createBuffer(int idx, int cap)
+    {
+        if (arena == null || arena.remaining() < cap) {
+            if ((long) (numArenas + 1) * arenaSize > maxArenaBytes) {
+                heapFallbacks++;
+                return ByteBuffer.allocate(cap);
+            }
+
+            arena = ByteBuffer.allocateDirect(arenaSize);
+            numArenas++;
+        }
+
+        int num = Math.max(1, SLAB_BYTES / cap);
+        if (num * cap > arena.remaining()) {
+            num = arena.remaining() / cap;
+        }
+
+        ByteBuffer[] slab = new ByteBuffer[num];
+        for (int i = 0; i < num; i++) {
+            final int start = arena.position();
+            arena.limit(start + cap);
+            slab[i] = arena.slice();
+            arena.limit(arena.capacity());
+            arena.position(start + cap);
+        }
+
+        if (num > 1) {
+            putIdle(idx, slab, 1, num - 1);
+        }
+
+        return slab[0];
+    }
+
+    /**
+     * Get the total number of direct bytes allocated
+     * @return value
+     */
+    @Override
+    public synchronized long getArenaBytes()
+    {
+        return (long) numArenas * arenaSize;
+    }
+
+    /**
+     * Get the number of heap buffers handed out because the arenas were full
+     * @return value
+     */
+    @Override
+    public synchronized long getHeapFallbacks()
+    {
+        return heapFallbacks;
+    }
+
+    /**
+     * Get number of arenas allocated
+     * @return value
+     */
+    @Override
+    public synchronized int getNumArenas()
+    {
+        return numArenas;
+    }
+
+    /**
+     * Only direct buffers sliced from an arena can be reused
+     * @param buf returned buffer
+     * @return <tt>true</tt> if the buffer is a writable direct buffer
+     */
+    @Override
+    boolean isReusable(ByteBuffer buf)
+    {
+        return buf.isDirect() && !buf.isReadOnly();
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "DirectArena" + super.toString() + "[arenas=" + numArenas +
+            "*" + arenaSize + "]";
+    }
+}
@@ -0,0 +1,24 @@
+package icecube.daq.payload.impl;
+
+/**
+ * MBean interface for direct arena buffer cache.
+ */
+public interface DirectArenaBufferCacheMBean
+    extends PooledBufferCacheMBean
+{
+    /**
+     * Get the total number of direct bytes allocated
+     * @return value
+     */
+    long getArenaBytes();
+    /**
+     * Get the number of heap buffers handed out because the arenas were full
+     * @return value
+     */
+    long getHeapFallbacks();
+    /**
+     * Get number of arenas allocated
+     * @return value
+     */
+    int getNumArenas();
+}
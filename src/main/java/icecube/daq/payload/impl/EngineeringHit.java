@@ -84,13 +84,11 @@ public class EngineeringHit
         affByte1 = buf.get(offset + OFFSET_AFFBYTE1);
         trigMode = buf.get(offset + OFFSET_TRIGMODE);
 
-        clockBytes = new byte[6];
-        buf.position(offset + OFFSET_DOMCLOCK);
-        buf.get(clockBytes, 0, clockBytes.length);
+        clockBytes = BufferUtil.getBytes(buf, offset + OFFSET_DOMCLOCK,
+                                         new byte[6]);
 
-        waveformData = new byte[recLen - OFFSET_WAVEFORM];
-        buf.position(offset + OFFSET_WAVEFORM);
-        buf.get(waveformData, 0, waveformData.length);
+        waveformData = BufferUtil.getBytes(buf, offset + OFFSET_WAVEFORM,
+                                           new byte[recLen - OFFSET_WAVEFORM]);
     }
 
     /**
@@ -119,19 +119,11 @@ public class EngineeringHitData
         atwdFmt23 = buf.get(offset + OFFSET_ATWDFMT23);
         origMode = buf.get(offset + OFFSET_TRIGMODE);
 
-        final int origPos = buf.position();
+        clockBytes = BufferUtil.getBytes(buf, offset + OFFSET_DOMCLOCK,
+                                         new byte[6]);
 
-        clockBytes = new byte[6];
-
-        buf.position(offset + OFFSET_DOMCLOCK);
-        buf.get(clockBytes);
-
-        waveformData = new byte[len - OFFSET_DATA];
-
-        buf.position(offset + OFFSET_DATA);
-        buf.get(waveformData);
-
-        buf.position(origPos);
+        waveformData = BufferUtil.getBytes(buf, offset + OFFSET_DATA,
+                                           new byte[len - OFFSET_DATA]);
     }
 
     /**
@@ -340,10 +332,7 @@ public class EngineeringHitData
         buf.putLong(offset + OFFSET_UNUSED, 0L);
         buf.putShort(offset + OFFSET_CLOCKLONG, (short) 0);
 
-        final int origPos = buf.position();
-
-        buf.position(offset + OFFSET_CLOCKLONG + 2);
-        buf.put(clockBytes);
+        BufferUtil.putBytes(buf, offset + OFFSET_CLOCKLONG + 2, clockBytes);
 
         buf.putShort(offset + OFFSET_RECLEN, (short) (payLen - 56));
         buf.putShort(offset + OFFSET_ORDERCHK, (short) 1);
@@ -354,13 +343,8 @@ public class EngineeringHitData
         buf.put(offset + OFFSET_TRIGMODE, origMode);
         buf.put(offset + OFFSET_SKIP, (byte) 0);
 
-        buf.position(offset + OFFSET_DOMCLOCK);
-        buf.put(clockBytes);
-
-        buf.position(offset + OFFSET_DATA);
-        buf.put(waveformData);
-
-        buf.position(origPos);
+        BufferUtil.putBytes(buf, offset + OFFSET_DOMCLOCK, clockBytes);
+        BufferUtil.putBytes(buf, offset + OFFSET_DATA, waveformData);
 
         return payLen;
     }
@@ -0,0 +1,465 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IPayload;
+import icecube.daq.payload.IPayloadConsumer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Compress events on a pool of worker threads and pass them to a consumer
+ * in the order they were submitted.
+ *
+ * Version 6 and 7 events compress their hit records the first time their
+ * length is computed and keep the compressed bytes, so the workers only
+ * need to ask each event for its length; the consumer can then write the
+ * event without compressing it again.  Other payloads (including version
+ * 5 events) are passed through in order.  Events from the event builder
+ * arrive in UID order, so they leave this stage in UID order.
+ *
+ * At most <tt>maxPending</tt> events may be in the stage at once.  Once
+ * that limit is reached, <tt>submit()</tt> blocks until the consumer has
+ * received the oldest event.  The consumer is always called by one thread
+ * at a time, but not always by the same thread.
+ *
+ * Once the consumer fails, events still in the stage are recycled instead
+ * of being passed to it.
+ */
+public class EventCompressor
+    implements Closeable, EventCompressorMBean
+{
+    private static final Logger LOG = Logger.getLogger(EventCompressor.class);
+
+    /** Default maximum number of events in the stage */
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    /** Number used to name worker threads */
+    private static int nextStageNum;
+
+    /** receives events in submission order */
+    private IPayloadConsumer consumer;
+    /** maximum number of events in the stage */
+    private int maxPending;
+    /** number of worker threads */
+    private int numThreads;
+
+    /** worker threads */
+    private ExecutorService workers;
+
+    /** events in submission order (guarded by <tt>this</tt>) */
+    private ArrayDeque<Slot> slots = new ArrayDeque<Slot>();
+    /** held while passing events to the consumer */
+    private Object emitLock = new Object();
+
+    /** number of events submitted but not yet passed to the consumer */
+    private int numPending;
+    /** number of events waiting to be compressed */
+    private int numQueued;
+    /** largest value of <tt>numPending</tt> */
+    private int maxQueueDepth;
+
+    /** number of events submitted */
+    private long numSubmitted;
+    /** number of submissions which had to wait */
+    private long numBlocked;
+    /** number of events compressed */
+    private long numCompressed;
+    /** number of events passed to the consumer */
+    private long numEmitted;
+
+    /** <tt>true</tt> once <tt>close()</tt> has been called */
+    private boolean closed;
+    /** first problem reported by the consumer */
+    private IOException failure;
+
+    /**
+     * Create a compression stage with one worker per processor and the
+     * default maximum number of pending events
+     * @param consumer receives events in submission order
+     */
+    public EventCompressor(IPayloadConsumer consumer)
+    {
+        this(consumer, Runtime.getRuntime().availableProcessors(),
+             DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * Create a compression stage
+     * @param consumer receives events in submission order
+     * @param numThreads number of worker threads
+     * @param maxPending maximum number of events in the stage
+     */
+    public EventCompressor(IPayloadConsumer consumer, int numThreads,
+                           int maxPending)
+    {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer cannot be null");
+        } else if (numThreads < 1) {
+            throw new IllegalArgumentException("Bad number of threads " +
+                                               numThreads);
+        } else if (maxPending < 1) {
+            throw new IllegalArgumentException("Bad maximum number of" +
+                                               " pending events " +
+                                               maxPending);
+        }
+
+        this.consumer = consumer;
+        this.numThreads = numThreads;
+        this.maxPending = maxPending;
+
+        final int stageNum = getStageNumber();
+
+        ThreadFactory threadFactory = new ThreadFactory() {
+                private int threadNum;
+
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread =
+                        new Thread(r, "EventCompressor#" + stageNum + "-" +
+                                   threadNum++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+
+        // the work queue never holds more than maxPending tasks
+        workers = new ThreadPoolExecutor(numThreads, numThreads, 0L,
+                                         TimeUnit.MILLISECONDS,
+                                         new LinkedBlockingQueue<Runnable>(),
+                                         threadFactory);
+    }
+
+    /**
+     * Throw the consumer's failure, if there was one.
+     * Must be called while holding the lock on <tt>this</tt>.
+     * @throws IOException if the consumer failed
+     */
+    private void checkFailure()
+        throws IOException
+    {
+        if (failure != null) {
+            throw new IOException("Event consumer failed", failure);
+        }
+    }
+
+    /**
+     * Wait for all pending events to reach the consumer, then stop the
+     * worker threads.
+     * @throws IOException if the consumer failed
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        try {
+            flush();
+        } finally {
+            workers.shutdown();
+        }
+
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while stopping" +
+                                             " workers");
+        }
+    }
+
+    /**
+     * Compress an event and pass any events which are ready to the
+     * consumer.
+     * @param slot event's slot
+     */
+    private void compress(Slot slot)
+    {
+        try {
+            // v6/v7 events compress and cache their hit records here
+            slot.payload.length();
+        } catch (RuntimeException rte) {
+            LOG.error("Could not compress " + slot.payload, rte);
+        } finally {
+            // even an Error must not leave later events waiting on this one
+            synchronized (this) {
+                slot.done = true;
+                numQueued--;
+                numCompressed++;
+            }
+
+            emitReady();
+        }
+    }
+
+    /**
+     * Pass events to the consumer until the oldest remaining event has
+     * not been compressed.  The emit lock keeps events in order; a worker
+     * which finishes while another is emitting will find its event once
+     * the other worker is done.
+     */
+    private void emitReady()
+    {
+        synchronized (emitLock) {
+            while (true) {
+                final Slot slot;
+                final IOException prevFailure;
+                synchronized (this) {
+                    slot = slots.peekFirst();
+                    if (slot == null || !slot.done) {
+                        break;
+                    }
+
+                    slots.removeFirst();
+                    prevFailure = failure;
+                }
+
+                IOException ioe = null;
+                if (prevFailure != null) {
+                    // nobody else will see this event
+                    slot.payload.recycle();
+                } else {
+                    try {
+                        consumer.consume(slot.payload);
+                    } catch (IOException ex) {
+                        LOG.error("Consumer failed for " + slot.payload, ex);
+                        ioe = ex;
+                    }
+                }
+
+                synchronized (this) {
+                    if (ioe != null && failure == null) {
+                        failure = ioe;
+                    }
+
+                    numPending--;
+                    numEmitted++;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until every submitted event has been passed to the consumer
+     * @throws IOException if the consumer failed
+     */
+    public synchronized void flush()
+        throws IOException
+    {
+        try {
+            while (numPending > 0) {
+                wait();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for" +
+                                             " " + numPending + " events");
+        }
+
+        checkFailure();
+    }
+
+    /**
+     * Get maximum number of events which may be in the stage at once
+     * @return maximum number of pending events
+     */
+    @Override
+    public int getMaxPending()
+    {
+        return maxPending;
+    }
+
+    /**
+     * Get largest number of events which have been in the stage at once
+     * @return maximum queue depth
+     */
+    @Override
+    public synchronized int getMaxQueueDepth()
+    {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Get number of submissions which had to wait for room in the stage
+     * @return number of blocked submissions
+     */
+    @Override
+    public synchronized long getNumBlocked()
+    {
+        return numBlocked;
+    }
+
+    /**
+     * Get number of events which have been compressed
+     * @return number of compressed events
+     */
+    @Override
+    public synchronized long getNumCompressed()
+    {
+        return numCompressed;
+    }
+
+    /**
+     * Get number of events which have been passed to the consumer
+     * @return number of emitted events
+     */
+    @Override
+    public synchronized long getNumEmitted()
+    {
+        return numEmitted;
+    }
+
+    /**
+     * Get number of events which have been submitted
+     * @return number of submitted events
+     */
+    @Override
+    public synchronized long getNumSubmitted()
+    {
+        return numSubmitted;
+    }
+
+    /**
+     * Get number of worker threads
+     * @return number of threads
+     */
+    @Override
+    public int getNumThreads()
+    {
+        return numThreads;
+    }
+
+    /**
+     * Get number of events waiting to be compressed
+     * @return number of queued events
+     */
+    @Override
+    public synchronized int getQueueDepth()
+    {
+        return numQueued;
+    }
+
+    /**
+     * Get number of compressed events waiting for an earlier event or for
+     * the consumer
+     * @return number of events waiting to be emitted
+     */
+    @Override
+    public synchronized int getReorderDepth()
+    {
+        return numPending - numQueued;
+    }
+
+    /**
+     * Get a unique number used to name this stage's threads
+     * @return stage number
+     */
+    private static synchronized int getStageNumber()
+    {
+        return nextStageNum++;
+    }
+
+    /**
+     * Add an event to the stage, waiting if the stage is full
+     * @param payload event (or other payload)
+     * @throws IOException if the consumer failed or the wait was
+     *                     interrupted
+     */
+    public void submit(IPayload payload)
+        throws IOException
+    {
+        if (payload == null) {
+            throw new IllegalArgumentException("Payload cannot be null");
+        }
+
+        final Slot slot = new Slot(payload);
+
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("EventCompressor has been closed");
+            }
+
+            checkFailure();
+
+            if (numPending >= maxPending) {
+                numBlocked++;
+                try {
+                    while (numPending >= maxPending && failure == null) {
+                        wait();
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while" +
+                                                     " waiting to submit " +
+                                                     payload);
+                }
+
+                checkFailure();
+            }
+
+            slots.addLast(slot);
+            numPending++;
+            numQueued++;
+            numSubmitted++;
+            if (numPending > maxQueueDepth) {
+                maxQueueDepth = numPending;
+            }
+        }
+
+        workers.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    compress(slot);
+                }
+            });
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return "EventCompressor[" + numThreads + " threads, " + numPending +
+            "/" + maxPending + " pending, " + numEmitted + " emitted" +
+            (failure == null ? "" : ", failed") + "]";
+    }
+
+    /**
+     * Event waiting to be compressed or emitted
+     */
+    private static class Slot
+    {
+        /** event */
+        private IPayload payload;
+        /** <tt>true</tt> once the event has been compressed */
+        private boolean done;
+
+        /**
+         * Create a slot
+         * @param payload event
+         */
+        Slot(IPayload payload)
+        {
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package icecube.daq.payload.impl;
+
+/**
+ * MBean interface for event compression stage.
+ */
+public interface EventCompressorMBean
+{
+    /**
+     * Get maximum number of events which may be in the stage at once
+     * @return value
+     */
+    int getMaxPending();
+    /**
+     * Get largest number of events which have been in the stage at once
+     * @return value
+     */
+    int getMaxQueueDepth();
+    /**
+     * Get number of submissions which had to wait for room in the stage
+     * @return value
+     */
+    long getNumBlocked();
+    /**
+     * Get number of events which have been compressed
+     * @return value
+     */
+    long getNumCompressed();
+    /**
+     * Get number of events which have been passed to the consumer
+     * @return value
+     */
+    long getNumEmitted();
+    /**
+     * Get number of events which have been submitted
+     * @return value
+     */
+    long getNumSubmitted();
+    /**
+     * Get number of worker threads
+     * @return value
+     */
+    int getNumThreads();
+    /**
+     * Get number of events waiting to be compressed
+     * @return value
+     */
+    int getQueueDepth();
+    /**
+     * Get number of compressed events waiting for an earlier event
+     * @return value
+     */
+    int getReorderDepth();
+}
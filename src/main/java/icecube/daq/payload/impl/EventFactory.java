@@ -26,6 +26,8 @@ public class EventFactory
     private IByteBufferCache bufCache;
     /** Version of events to create */
     private int version;
+    /** Codec used for version 7 hit records */
+    private HitRecordCodec hitRecordCodec = EventPayload_v7.DEFAULT_CODEC;
 
     /**
      * Create an event factory
@@ -36,7 +38,7 @@ public class EventFactory
     public EventFactory(IByteBufferCache bufCache, int version)
         throws PayloadException
     {
-        if (version < 4 || version > 6) {
+        if (version < 4 || version > 7) {
             throw new PayloadException("Illegal event version " + version);
         }
 
@@ -127,6 +129,15 @@ public class EventFactory
                 e6.setCache(bufCache);
             }
             return e6;
+        case 7:
+            EventPayload_v7 e7 =
+                new EventPayload_v7(uid, firstTime, lastTime, year, runNum,
+                                    subrunNum, trigReq, hitRecList,
+                                    hitRecordCodec);
+            if (bufCache != null) {
+                e7.setCache(bufCache);
+            }
+            return e7;
         default:
             throw new PayloadException("Bad event version " + version);
         }
@@ -146,6 +157,19 @@ public class EventFactory
         this.bufCache = bufCache;
     }
 
+    /**
+     * Set the codec used to compress hit records in version 7 events
+     * @param codec hit record codec
+     */
+    public void setHitRecordCodec(HitRecordCodec codec)
+    {
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec cannot be null");
+        }
+
+        hitRecordCodec = codec;
+    }
+
     /**
      * Set the DOM registry used to translate hit DOM IDs to channel IDs
      *
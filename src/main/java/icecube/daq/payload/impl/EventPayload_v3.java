@@ -215,6 +215,16 @@ public class EventPayload_v3
         return 3;
     }
 
+    /**
+     * Get event starting time
+     * @return starting time
+     */
+    @Override
+    public long getFirstTime()
+    {
+        return firstTime;
+    }
+
     /**
      * Get event starting time
      * @return starting time object
@@ -239,6 +249,16 @@ public class EventPayload_v3
         throw new Error("Unimplemented");
     }
 
+    /**
+     * Get event ending time
+     * @return ending time
+     */
+    @Override
+    public long getLastTime()
+    {
+        return lastTime;
+    }
+
     /**
      * Get event ending time
      * @return ending time object
@@ -377,6 +397,18 @@ public class EventPayload_v3
         return -1;
     }
 
+    /**
+     * Has this event, its trigger request, or any of its readout data
+     * payloads been changed since it was read from its byte buffer?
+     * @return <tt>true</tt> if the payload must be re-encoded
+     */
+    @Override
+    public boolean isModified()
+    {
+        return super.isModified() || isModified(trigReq) ||
+            isAnyModified(dataList);
+    }
+
     /**
      * Load the payload data
      * @param buf byte buffer
@@ -473,7 +505,8 @@ public class EventPayload_v3
 
         PayloadFactory factory = getPayloadFactory();
         for (int i = 0; i < numData; i++) {
-            IPayload pay = factory.getPayload(buf, offset + totLen);
+            IPayload pay = factory.getEmbeddedPayload(buf, offset + totLen);
+            shareBuffer(pay);
 
             try {
                 ((IPayload) pay).loadPayload();
@@ -489,6 +522,18 @@ public class EventPayload_v3
         return totLen;
     }
 
+    /**
+     * Read the event UID directly from an encoded event without decoding
+     * the rest of the payload
+     * @param buf byte buffer
+     * @param offset index of first byte of the payload (including header)
+     * @return event UID
+     */
+    static int peekUID(ByteBuffer buf, int offset)
+    {
+        return buf.getInt(offset + LEN_PAYLOAD_HEADER + OFFSET_UID);
+    }
+
     /**
      * Preload any essential fields so splicer can sort unloaded payloads.
      * @param buf byte buffer
@@ -585,7 +630,7 @@ public class EventPayload_v3
 
         if (dataList != null) {
             for (IPayload pay : dataList) {
-                pay.recycle();
+                releaseEmbedded(pay);
             }
             dataList = null;
         }
@@ -205,6 +205,16 @@ public class EventPayload_v4
         return 4;
     }
 
+    /**
+     * Get event starting time
+     * @return starting time
+     */
+    @Override
+    public long getFirstTime()
+    {
+        return firstTime;
+    }
+
     /**
      * Get event starting time
      * @return starting time object
@@ -229,6 +239,16 @@ public class EventPayload_v4
         throw new Error("Unimplemented");
     }
 
+    /**
+     * Get event ending time
+     * @return ending time
+     */
+    @Override
+    public long getLastTime()
+    {
+        return lastTime;
+    }
+
     /**
      * Get event ending time
      * @return ending time object
@@ -367,6 +387,18 @@ public class EventPayload_v4
         return year;
     }
 
+    /**
+     * Has this event, its trigger request, or any of its readout data
+     * payloads been changed since it was read from its byte buffer?
+     * @return <tt>true</tt> if the payload must be re-encoded
+     */
+    @Override
+    public boolean isModified()
+    {
+        return super.isModified() || isModified(trigReq) ||
+            isAnyModified(dataList);
+    }
+
     /**
      * Load the payload data
      * @param buf byte buffer
@@ -463,7 +495,8 @@ public class EventPayload_v4
 
         PayloadFactory factory = getPayloadFactory();
         for (int i = 0; i < numData; i++) {
-            IPayload pay = factory.getPayload(buf, offset + totLen);
+            IPayload pay = factory.getEmbeddedPayload(buf, offset + totLen);
+            shareBuffer(pay);
 
             try {
                 ((IPayload) pay).loadPayload();
@@ -479,6 +512,18 @@ public class EventPayload_v4
         return totLen;
     }
 
+    /**
+     * Read the event UID directly from an encoded event without decoding
+     * the rest of the payload
+     * @param buf byte buffer
+     * @param offset index of first byte of the payload (including header)
+     * @return event UID
+     */
+    static int peekUID(ByteBuffer buf, int offset)
+    {
+        return buf.getInt(offset + LEN_PAYLOAD_HEADER + OFFSET_UID);
+    }
+
     /**
      * Preload any essential fields so splicer can sort unloaded payloads.
      * @param buf byte buffer
@@ -574,7 +619,7 @@ public class EventPayload_v4
 
         if (dataList != null) {
             for (IPayload pay : dataList) {
-                pay.recycle();
+                releaseEmbedded(pay);
             }
             dataList = null;
         }
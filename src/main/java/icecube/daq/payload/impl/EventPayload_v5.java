@@ -143,6 +143,19 @@ class TemporaryHit
         throw new Error("Unimplemented");
     }
 
+    @Override
+    public boolean release()
+    {
+        // temporary hits are not cached
+        return false;
+    }
+
+    @Override
+    public void retain()
+    {
+        // temporary hits are not cached
+    }
+
     @Override
     public void setCache(IByteBufferCache x0)
     {
@@ -216,8 +229,8 @@ class TriggerRecord
         type = trigReq.getTriggerType();
         cfgId = trigReq.getTriggerConfigID();
         srcId = trigReq.getSourceID().getSourceID();
-        startTime = trigReq.getFirstTimeUTC().longValue();
-        endTime = trigReq.getLastTimeUTC().longValue();
+        startTime = trigReq.getFirstTime();
+        endTime = trigReq.getLastTime();
         hitList = new ArrayList<IHitPayload>();
 
         try {
@@ -330,6 +343,29 @@ class TriggerRecord
     public void computeIndices(IDOMRegistry domRegistry,
                                List<IEventHitRecord> hitRecList)
         throws PayloadException
+    {
+        if (indices != null) {
+            return;
+        } else if (domRegistry == null) {
+            throw new PayloadException("DOM registry has not been set");
+        }
+
+        computeIndices(domRegistry, hitRecList,
+                       new HitRecordIndex(domRegistry, hitRecList));
+    }
+
+    /**
+     * Compute this trigger record's hit indices using an index which is
+     * shared by all of the event's trigger records.
+     * @param domRegistry used to map each hit's DOM ID to the channel ID
+     * @param hitRecList list of this event's hit records
+     * @param hitIndex index of <tt>hitRecList</tt>
+     * @throws PayloadException if there is a problem
+     */
+    void computeIndices(IDOMRegistry domRegistry,
+                        List<IEventHitRecord> hitRecList,
+                        HitRecordIndex hitIndex)
+        throws PayloadException
     {
         if (indices != null) {
             return;
@@ -343,11 +379,14 @@ class TriggerRecord
         for (int i = 0; i < hitList.size(); i++) {
             IHitPayload hit = hitList.get(i);
 
-            int idx = -1;
-            for (int j = 0; j < hitRecList.size(); j++) {
-                if (hitRecList.get(j).matches(domRegistry, hit)) {
-                    idx = j;
-                    break;
+            int idx = hitIndex.find(hit);
+            if (idx == -1) {
+                // fall back to the hit records' own matching rules
+                for (int j = 0; j < hitRecList.size(); j++) {
+                    if (hitRecList.get(j).matches(domRegistry, hit)) {
+                        idx = j;
+                        break;
+                    }
                 }
             }
 
@@ -461,6 +500,15 @@ class TriggerRecord
         return type;
     }
 
+    /**
+     * Have this trigger record's hit indices been computed?
+     * @return <tt>true</tt> if the indices are known
+     */
+    boolean hasIndices()
+    {
+        return indices != null;
+    }
+
     /**
      * Return this object's hash code
      * @return hash code
@@ -774,12 +822,10 @@ public class EventPayload_v5
 
     /**
      * Get event starting time
-     * NOTE: This is currently used only to get the base time to EventPayload_v6
-     * so that it can precompress the hit records in order to correctly
-     * calculate the payload length.
-     * @return starting time value
+     * @return starting time
      */
-    long getFirstTime()
+    @Override
+    public long getFirstTime()
     {
         return firstTime;
     }
@@ -811,6 +857,16 @@ public class EventPayload_v5
         return hitRecList;
     }
 
+    /**
+     * Get event ending time
+     * @return ending time
+     */
+    @Override
+    public long getLastTime()
+    {
+        return lastTime;
+    }
+
     /**
      * Get event ending time
      * @return ending time object
@@ -1056,6 +1112,18 @@ public class EventPayload_v5
         return totLen;
     }
 
+    /**
+     * Read the event UID directly from an encoded event without decoding
+     * the rest of the payload
+     * @param buf byte buffer
+     * @param offset index of first byte of the payload (including header)
+     * @return event UID
+     */
+    static int peekUID(ByteBuffer buf, int offset)
+    {
+        return buf.getInt(offset + LEN_PAYLOAD_HEADER + OFFSET_UID);
+    }
+
     /**
      * Preload any essential fields so splicer can sort unloaded payloads.
      * @param buf byte buffer
@@ -1139,9 +1207,19 @@ public class EventPayload_v5
 
         int pos = offset + 4;
 
+        HitRecordIndex hitIndex = null;
         for (IEventTriggerRecord trigRec : trigRecList) {
             try {
-                trigRec.computeIndices(domRegistry, hitRecList);
+                if (!(trigRec instanceof TriggerRecord)) {
+                    trigRec.computeIndices(domRegistry, hitRecList);
+                } else if (!((TriggerRecord) trigRec).hasIndices()) {
+                    if (hitIndex == null) {
+                        hitIndex = new HitRecordIndex(domRegistry, hitRecList);
+                    }
+                    ((TriggerRecord) trigRec).computeIndices(domRegistry,
+                                                             hitRecList,
+                                                             hitIndex);
+                }
             } catch (PayloadException pe) {
                 throw new PayloadException("Event " + uid + " error", pe);
             }
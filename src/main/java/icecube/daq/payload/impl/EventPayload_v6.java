@@ -10,26 +10,19 @@ import icecube.daq.payload.PayloadRegistry;
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.zip.DataFormatException;
-import java.util.zip.Deflater;
-import java.util.zip.Inflater;
-
-import org.apache.log4j.Logger;
 
 /**
  * Event version 6
  */
 public class EventPayload_v6
-    extends EventPayload_v5
+    extends BaseCompressedEvent
 {
-    /** Logging object */
-    private static final Logger LOG = Logger.getLogger(EventPayload_v6.class);
+    /** Length of the flag and length preceding compressed data */
+    private static final int LEN_ZIP_HEADER = 5;
 
     /** Were the hit records compressed? */
     private byte compressed;
 
-    /** Cached compressed hit record data */
-    private ByteBuffer compressedHitRecords;
-
     /**
      * Create an event
      * @param buf byte buffer
@@ -78,6 +71,33 @@ public class EventPayload_v6
               hitRecList);
     }
 
+    /**
+     * Deflate encoded hit records from the scratch plain array into the
+     * scratch packed array.
+     * @param scratch per-thread scratch buffers
+     * @param hitLen number of bytes of encoded hit records
+     * @return number of compressed bytes, or -1 if the hit records should
+     *         be stored uncompressed
+     */
+    @Override
+    int compress(DeflateCodec scratch, int hitLen)
+    {
+        // if compressed data is longer than uncompressed data or if the
+        // length cannot be kept in a 2-byte integer, use uncompressed data
+        return scratch.deflate(hitLen, Math.min(hitLen - LEN_ZIP_HEADER,
+                                                Short.MAX_VALUE));
+    }
+
+    /**
+     * Get the number of bytes written before the compressed hit records
+     * @return number of bytes
+     */
+    @Override
+    int getCompressedHeaderLength()
+    {
+        return LEN_ZIP_HEADER;
+    }
+
     /**
      * Get event version
      * @return <tt>6</tt>
@@ -102,45 +122,6 @@ public class EventPayload_v6
         return super.getExtraString() + " zipped";
     }
 
-    /**
-     * Get the hit record length.
-     * NOTE: This is used in both EventPayload_v5 and EventPayload_v6.
-     *
-     * @return hit record length
-     */
-    @Override
-    int getHitRecordLength()
-    {
-        if (!isLoaded()) {
-            throw new Error("Hit records have not been loaded");
-        }
-
-        if (compressedHitRecords != null) {
-            return compressedHitRecords.limit();
-        }
-
-        int maxLen = 1 + super.getHitRecordLength();
-
-        ByteBuffer buf = ByteBuffer.allocate(maxLen);
-
-        int hitLen;
-        try {
-            hitLen = putHitRecords(buf, 0, getFirstTime());
-        } catch (PayloadException pe) {
-            LOG.error("Could not put hit records to V6 event", pe);
-            hitLen = Integer.MIN_VALUE;
-            compressed = (byte) 0;
-        }
-
-        if (compressed != 0) {
-            buf.position(hitLen);
-            buf.flip();
-            compressedHitRecords = buf;
-        }
-
-        return hitLen;
-   }
-
     /**
      * Get the name of this payload.
      * @return name
@@ -190,103 +171,83 @@ public class EventPayload_v6
 
         final int numBytes = buf.getInt(offset + 1);
 
-        byte[] result = null;
-        int resultLen = 0;
-
-        Inflater decompresser = new Inflater(true);
-        int multiplier = 2;
-        while (true) {
-            decompresser.reset();
-            decompresser.setInput(buf.array(), offset + 5, numBytes);
-            result = new byte[numBytes * multiplier];
-            try {
-                resultLen = decompresser.inflate(result);
-            } catch (DataFormatException dfe) {
-                throw new PayloadFormatException("Couldn't decompress hit records",
-                                           dfe);
-            }
+        DeflateCodec codec = DeflateCodec.get();
+
+        // direct and read-only buffers have no accessible backing array
+        final byte[] input;
+        final int inputOffset;
+        if (buf.hasArray()) {
+            input = buf.array();
+            inputOffset = buf.arrayOffset() + offset + LEN_ZIP_HEADER;
+        } else {
+            input = BufferUtil.getBytes(buf, offset + LEN_ZIP_HEADER,
+                                        new byte[numBytes]);
+            inputOffset = 0;
+        }
 
-            if (decompresser.getRemaining() == 0) {
-                decompresser.end();
-                break;
-            }
-            multiplier++;
+        final int resultLen;
+        try {
+            resultLen = codec.inflate(input, inputOffset, numBytes,
+                                      MAX_PLAIN_LENGTH);
+        } catch (DataFormatException dfe) {
+            throw new PayloadFormatException("Couldn't decompress hit records",
+                                             dfe);
         }
 
-        ByteBuffer dcmpBuf = ByteBuffer.wrap(result, 0, resultLen);
+        // hit records copy their data, so the scratch array can be reused
+        ByteBuffer dcmpBuf = ByteBuffer.wrap(codec.getPlain(0), 0, resultLen);
         int len = super.loadHitRecords(dcmpBuf, 0, baseTime);
         if (len != resultLen) {
             throw new Error("Expected " + resultLen + " bytes of hit records," +
                             " but only " + len + " were used");
         }
 
-        return numBytes + 5;
+        return numBytes + LEN_ZIP_HEADER;
     }
 
     /**
-     * Write this payload's hit records to the byte buffer
+     * Write the compressed hit records from the scratch packed array
      * @param buf byte buffer
      * @param offset index of first byte
-     * @param baseTime base time used to compute relative times
+     * @param scratch per-thread scratch buffers
+     * @param plainLen number of uncompressed bytes
+     * @param zipLen number of compressed bytes
      * @return number of bytes written
-     * @throws PayloadException if there is a problem
      */
     @Override
-    int putHitRecords(ByteBuffer buf, int offset, long baseTime)
-        throws PayloadException
+    int putCompressed(ByteBuffer buf, int offset, DeflateCodec scratch,
+                      int plainLen, int zipLen)
     {
-        if (compressed != 0 && compressedHitRecords != null) {
-            final int origPos = buf.position();
-
-            buf.position(offset);
-            buf.put(compressedHitRecords.array(), 0,
-                    compressedHitRecords.limit());
-            buf.position(origPos);
-            return compressedHitRecords.limit();
-        }
-
-        int maxLen = super.getHitRecordLength();
-
-        ByteBuffer hitRecBuf = ByteBuffer.allocate(maxLen);
-
-        final int hitLen = super.putHitRecords(hitRecBuf, 0, baseTime);
-
-        Deflater compressor = new Deflater(Deflater.BEST_COMPRESSION, true);
-
-        // Give the compressor the data to compress
-        compressor.setInput(hitRecBuf.array());
-        compressor.finish();
-
-        // Compress the data
-        byte[] zipData = new byte[hitLen * 3];
-        final int zipLen = compressor.deflate(zipData, 0, hitLen + 4);
-
-        // if compressed data is longer than uncompressed data or if the
-        // length cannot be kept in a 2-byte integer, use uncompressed data
-        if (!compressor.finished() || 5 + zipLen > hitLen ||
-            zipLen > Short.MAX_VALUE)
-        {
-            buf.put(offset, (byte) 0);
-
-            final int origPos = buf.position();
-            buf.position(offset + 1);
-            buf.put(hitRecBuf);
-            buf.position(origPos);
-
-            return 1 + hitLen;
-        }
-
         compressed = (byte) 1;
 
-        final int origPos = buf.position();
-
         buf.put(offset, compressed);
         buf.putInt(offset + 1, zipLen);
-        buf.position(offset + 5);
-        buf.put(zipData, 0, zipLen);
+        BufferUtil.putBytes(buf, offset + LEN_ZIP_HEADER, scratch.getPacked(),
+                            0, zipLen);
+
+        return LEN_ZIP_HEADER + zipLen;
+    }
+
+    /**
+     * Write the flag which precedes uncompressed hit records
+     * @param buf byte buffer
+     * @param offset index of byte
+     */
+    @Override
+    void putStoredFlag(ByteBuffer buf, int offset)
+    {
+        compressed = (byte) 0;
+        buf.put(offset, compressed);
+    }
 
-        buf.position(origPos);
+    /**
+     * Clear out any cached data.
+     */
+    @Override
+    public void recycle()
+    {
+        super.recycle();
 
-        return 5 + zipLen;
+        compressed = (byte) 0;
     }
 }
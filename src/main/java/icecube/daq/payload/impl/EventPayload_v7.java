@@ -0,0 +1,360 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IEventHitRecord;
+import icecube.daq.payload.ITriggerRequestPayload;
+import icecube.daq.payload.IUTCTime;
+import icecube.daq.payload.PayloadException;
+import icecube.daq.payload.PayloadFormatException;
+import icecube.daq.payload.PayloadRegistry;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ * Event version 7.
+ *
+ * This is a version 5 event whose hit records are preceded by the ID of
+ * the <tt>HitRecordCodec</tt> used to write them.  Stored hit records
+ * follow the ID directly; compressed hit records are preceded by their
+ * uncompressed and compressed lengths.
+ */
+public class EventPayload_v7
+    extends BaseCompressedEvent
+{
+    /** Codec used when none is specified */
+    public static final HitRecordCodec DEFAULT_CODEC = HitRecordCodec.LZ;
+
+    /** Length of the codec ID and lengths preceding compressed data */
+    private static final int LEN_CODEC_HEADER = 9;
+
+    /** Codec used to write the hit records */
+    private HitRecordCodec codec = DEFAULT_CODEC;
+
+    /** Index just past the last byte of the payload being loaded */
+    private int loadLimit;
+
+    /**
+     * Create an event
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @throws PayloadException if there is a problem
+     */
+    public EventPayload_v7(ByteBuffer buf, int offset)
+        throws PayloadException
+    {
+        super(buf, offset);
+    }
+
+    /**
+     * Event constructor for PayloadFactory.
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param len total number of bytes
+     * @param utcTime payload time (UTC)
+     * @throws PayloadException if there is a problem
+     */
+    public EventPayload_v7(ByteBuffer buf, int offset, int len, long utcTime)
+        throws PayloadException
+    {
+        super(buf, offset, len, utcTime);
+    }
+
+    /**
+     * Create an event which uses the default hit record codec
+     * @param uid unique ID
+     * @param firstTime starting time
+     * @param lastTime ending time
+     * @param year year
+     * @param runNum run number
+     * @param subrunNum subrun number
+     * @param trigReq trigger request
+     * @param hitRecList hit record list
+     * @throws PayloadException if there is a problem
+     */
+    public EventPayload_v7(int uid, IUTCTime firstTime, IUTCTime lastTime,
+                           short year, int runNum, int subrunNum,
+                           ITriggerRequestPayload trigReq,
+                           List<IEventHitRecord> hitRecList)
+        throws PayloadException
+    {
+        this(uid, firstTime, lastTime, year, runNum, subrunNum, trigReq,
+             hitRecList, DEFAULT_CODEC);
+    }
+
+    /**
+     * Create an event
+     * @param uid unique ID
+     * @param firstTime starting time
+     * @param lastTime ending time
+     * @param year year
+     * @param runNum run number
+     * @param subrunNum subrun number
+     * @param trigReq trigger request
+     * @param hitRecList hit record list
+     * @param codec hit record codec
+     * @throws PayloadException if there is a problem
+     */
+    public EventPayload_v7(int uid, IUTCTime firstTime, IUTCTime lastTime,
+                           short year, int runNum, int subrunNum,
+                           ITriggerRequestPayload trigReq,
+                           List<IEventHitRecord> hitRecList,
+                           HitRecordCodec codec)
+        throws PayloadException
+    {
+        super(uid, firstTime, lastTime, year, runNum, subrunNum, trigReq,
+              hitRecList);
+
+        if (codec == null) {
+            throw new PayloadException("Hit record codec cannot be null");
+        }
+
+        this.codec = codec;
+    }
+
+    /**
+     * Compress encoded hit records from the scratch plain array into the
+     * scratch packed array with this event's codec.
+     * @param scratch per-thread scratch buffers
+     * @param hitLen number of bytes of encoded hit records
+     * @return number of compressed bytes, or -1 if the hit records should
+     *         be stored uncompressed
+     */
+    @Override
+    int compress(DeflateCodec scratch, int hitLen)
+    {
+        // only compress if it saves space after the extra lengths are added
+        return codec.compress(scratch, hitLen, hitLen - LEN_CODEC_HEADER);
+    }
+
+    /**
+     * Get the number of bytes written before the compressed hit records
+     * @return number of bytes
+     */
+    @Override
+    int getCompressedHeaderLength()
+    {
+        return LEN_CODEC_HEADER;
+    }
+
+    /**
+     * Get event version
+     * @return <tt>7</tt>
+     */
+    @Override
+    public int getEventVersion()
+    {
+        return 7;
+    }
+
+    /**
+     * Get extra debugging string (so Event V7 toString() returns extra data)
+     * @return extra debugging string
+     */
+    @Override
+    public String getExtraString()
+    {
+        return super.getExtraString() + " " + getHitRecordCodec();
+    }
+
+    /**
+     * Get the codec used for this event's hit records.  If the hit records
+     * did not compress, this will be <tt>STORE</tt>.
+     * @return hit record codec
+     */
+    public HitRecordCodec getHitRecordCodec()
+    {
+        if (isIncompressible()) {
+            return HitRecordCodec.STORE;
+        }
+
+        return codec;
+    }
+
+    /**
+     * Get the name of this payload.
+     * @return name
+     */
+    @Override
+    public String getPayloadName()
+    {
+        return "EventV7";
+    }
+
+    /**
+     * Get the payload registry type
+     * @return type
+     */
+    @Override
+    public int getPayloadType()
+    {
+        return PayloadRegistry.PAYLOAD_ID_EVENT_V7;
+    }
+
+    /**
+     * This event can vary in size due to the compressed hit records
+     * @return <tt>false</tt>
+     */
+    @Override
+    public boolean isConstantSize()
+    {
+        return false;
+    }
+
+    /**
+     * Hit records are only compressed if the codec compresses them
+     * @return <tt>false</tt> if the codec is <tt>STORE</tt>
+     */
+    @Override
+    boolean isCompressionEnabled()
+    {
+        return codec != HitRecordCodec.STORE;
+    }
+
+    /**
+     * Load the payload data
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param utcTime payload time
+     * @param isEmbedded <tt>true</tt> if this payload is embedded in another
+     * @return number of bytes loaded
+     * @throws PayloadException if there is a problem
+     */
+    @Override
+    public int loadBody(ByteBuffer buf, int offset, long utcTime,
+                        boolean isEmbedded)
+        throws PayloadException
+    {
+        // compressed lengths are checked against the end of the payload
+        if (isEmbedded) {
+            loadLimit = buf.limit();
+        } else {
+            loadLimit = Math.min(buf.limit(),
+                                 offset + buf.getInt(offset + OFFSET_LENGTH));
+        }
+
+        return super.loadBody(buf, offset, utcTime, isEmbedded);
+    }
+
+    /**
+     * Load this payload's hit records
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param baseTime base time used to expand relative times
+     * @return number of bytes loaded
+     * @throws PayloadException if there is a problem
+     */
+    @Override
+    int loadHitRecords(ByteBuffer buf, int offset, long baseTime)
+        throws PayloadException
+    {
+        final int codecId = buf.get(offset + 0) & 0xff;
+
+        HitRecordCodec recCodec = HitRecordCodec.fromId(codecId);
+        if (recCodec == null) {
+            throw new PayloadFormatException("Unknown hit record codec #" +
+                                             codecId);
+        }
+
+        // write the event back out the same way it was read
+        codec = recCodec;
+        clearCompressedHitRecords();
+
+        if (recCodec == HitRecordCodec.STORE) {
+            return super.loadHitRecords(buf, offset + 1, baseTime) + 1;
+        }
+
+        final int dataOffset = offset + LEN_CODEC_HEADER;
+        if (dataOffset > loadLimit) {
+            throw new PayloadFormatException("Hit record lengths at " +
+                                             (offset + 1) + " run past end" +
+                                             " of payload at " + loadLimit);
+        }
+
+        final int plainLen = buf.getInt(offset + 1);
+        final int numBytes = buf.getInt(offset + 5);
+        if (plainLen < 0 || numBytes < 0 || plainLen > MAX_PLAIN_LENGTH) {
+            throw new PayloadFormatException("Bad hit record lengths (" +
+                                             plainLen + " plain, " +
+                                             numBytes + " compressed)");
+        } else if (numBytes > loadLimit - dataOffset) {
+            throw new PayloadFormatException(numBytes + " bytes of " +
+                                             recCodec + " hit records at " +
+                                             dataOffset + " run past end" +
+                                             " of payload at " + loadLimit);
+        }
+
+        DeflateCodec scratch = DeflateCodec.get();
+
+        // direct and read-only buffers have no accessible backing array
+        final byte[] input;
+        final int inputOffset;
+        if (buf.hasArray()) {
+            input = buf.array();
+            inputOffset = buf.arrayOffset() + dataOffset;
+        } else {
+            input = BufferUtil.getBytes(buf, dataOffset, new byte[numBytes]);
+            inputOffset = 0;
+        }
+
+        final int resultLen;
+        try {
+            resultLen = recCodec.decompress(scratch, input, inputOffset,
+                                            numBytes, plainLen);
+        } catch (DataFormatException dfe) {
+            throw new PayloadFormatException("Couldn't decompress " +
+                                             recCodec + " hit records", dfe);
+        }
+
+        if (resultLen != plainLen) {
+            throw new PayloadFormatException("Expected " + plainLen +
+                                             " bytes of " + recCodec +
+                                             " hit records, got " +
+                                             resultLen);
+        }
+
+        // hit records copy their data, so the scratch array can be reused
+        ByteBuffer dcmpBuf =
+            ByteBuffer.wrap(scratch.getPlain(0), 0, resultLen);
+        int len = super.loadHitRecords(dcmpBuf, 0, baseTime);
+        if (len != resultLen) {
+            throw new Error("Expected " + resultLen + " bytes of hit" +
+                            " records, but only " + len + " were used");
+        }
+
+        return LEN_CODEC_HEADER + numBytes;
+    }
+
+    /**
+     * Write the compressed hit records from the scratch packed array
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param scratch per-thread scratch buffers
+     * @param plainLen number of uncompressed bytes
+     * @param zipLen number of compressed bytes
+     * @return number of bytes written
+     */
+    @Override
+    int putCompressed(ByteBuffer buf, int offset, DeflateCodec scratch,
+                      int plainLen, int zipLen)
+    {
+        buf.put(offset, (byte) codec.getId());
+        buf.putInt(offset + 1, plainLen);
+        buf.putInt(offset + 5, zipLen);
+        BufferUtil.putBytes(buf, offset + LEN_CODEC_HEADER,
+                            scratch.getPacked(), 0, zipLen);
+
+        return LEN_CODEC_HEADER + zipLen;
+    }
+
+    /**
+     * Write the codec ID which precedes uncompressed hit records
+     * @param buf byte buffer
+     * @param offset index of byte
+     */
+    @Override
+    void putStoredFlag(ByteBuffer buf, int offset)
+    {
+        buf.put(offset, (byte) HitRecordCodec.STORE.getId());
+    }
+}
@@ -0,0 +1,458 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IEventPayload;
+import icecube.daq.payload.PayloadException;
+import icecube.daq.payload.PayloadRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Index of event UIDs for a physics file.  Each event's UID and file
+ * offset are kept in a pair of parallel primitive arrays, sorted by UID,
+ * so an event can be found with a binary search and read without decoding
+ * any of the events before it.
+ *
+ * The index can be built while the file is being written (by calling
+ * <tt>add()</tt> for each event and <tt>skip()</tt> for any other
+ * payload) or by scanning an existing file, in which case the UIDs are
+ * read straight from the event headers.  It is saved in a sidecar file
+ * next to the physics file.
+ */
+public class EventUIDIndex
+{
+    private static final Logger LOG = Logger.getLogger(EventUIDIndex.class);
+
+    /** Suffix added to the physics file name to get the sidecar name */
+    public static final String SUFFIX = ".uidx";
+
+    /** Sidecar file marker ("UIDX") */
+    private static final int MAGIC = 0x55494458;
+    /** Sidecar file format version */
+    private static final int VERSION = 1;
+
+    /** Initial number of index slots */
+    private static final int INITIAL_SLOTS = 1024;
+
+    /** event UIDs */
+    private int[] uids;
+    /** file offset of each event */
+    private long[] offsets;
+    /** number of events */
+    private int numEntries;
+    /** <tt>true</tt> if the entries are sorted by UID */
+    private boolean sorted = true;
+
+    /** number of payloads added (including non-events) */
+    private long numPayloads;
+    /** file offset of the next payload */
+    private long nextOffset;
+
+    /**
+     * Create an empty index
+     */
+    public EventUIDIndex()
+    {
+        this(INITIAL_SLOTS);
+    }
+
+    /**
+     * Create an empty index
+     * @param slots initial number of index slots
+     */
+    private EventUIDIndex(int slots)
+    {
+        uids = new int[Math.max(1, slots)];
+        offsets = new long[Math.max(1, slots)];
+    }
+
+    /**
+     * Add the next payload in the file, which is an event
+     * @param evt event
+     */
+    public void add(IEventPayload evt)
+    {
+        add(evt.getUID(), evt.length());
+    }
+
+    /**
+     * Add the next payload in the file, which is an event
+     * @param uid event UID
+     * @param length payload length
+     */
+    public void add(int uid, int length)
+    {
+        if (numEntries == uids.length) {
+            uids = Arrays.copyOf(uids, numEntries * 2);
+            offsets = Arrays.copyOf(offsets, numEntries * 2);
+        }
+
+        if (sorted && numEntries > 0 && uid < uids[numEntries - 1]) {
+            sorted = false;
+        }
+
+        uids[numEntries] = uid;
+        offsets[numEntries] = nextOffset;
+        numEntries++;
+
+        skip(length);
+    }
+
+    /**
+     * Build an index by scanning a physics file.  Payloads which are not
+     * events are skipped.
+     * @param file physics file
+     * @return new index
+     * @throws IOException if the file cannot be read
+     * @throws PayloadException if the file is corrupt
+     */
+    public static EventUIDIndex build(File file)
+        throws IOException, PayloadException
+    {
+        EventUIDIndex idx = new EventUIDIndex();
+
+        MappedPayloadReader rdr =
+            new MappedPayloadReader(file, new PayloadFactory(null));
+        try {
+            while (rdr.next()) {
+                final int type = rdr.getPayloadType();
+                if (!isEvent(type)) {
+                    idx.skip(rdr.getLength());
+                } else {
+                    final int uid = peekUID(rdr.getBuffer(),
+                                            rdr.getBufferOffset(), type);
+                    idx.add(uid, rdr.getLength());
+                }
+            }
+        } finally {
+            rdr.close();
+        }
+
+        return idx;
+    }
+
+    /**
+     * Compare two entries by UID, then by file offset
+     * @param i index of first entry
+     * @param j index of second entry
+     * @return negative, zero, or positive
+     */
+    private int compare(int i, int j)
+    {
+        if (uids[i] != uids[j]) {
+            return uids[i] < uids[j] ? -1 : 1;
+        }
+
+        return Long.compare(offsets[i], offsets[j]);
+    }
+
+    /**
+     * Find the file offset of the event with the specified UID.  If more
+     * than one event has the UID, the earliest one in the file is found.
+     * @param uid event UID
+     * @return file offset, or <tt>-1</tt> if the UID is not in the index
+     */
+    public long find(int uid)
+    {
+        if (!sorted) {
+            sort();
+        }
+
+        int lo = 0;
+        int hi = numEntries - 1;
+        int found = -1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (uids[mid] < uid) {
+                lo = mid + 1;
+            } else {
+                if (uids[mid] == uid) {
+                    found = mid;
+                }
+                hi = mid - 1;
+            }
+        }
+
+        if (found < 0) {
+            return -1L;
+        }
+
+        return offsets[found];
+    }
+
+    /**
+     * Get the index for a physics file, loading it from the sidecar file
+     * if that is up to date and otherwise building it by scanning the
+     * physics file and saving a new sidecar file.
+     * @param file physics file
+     * @return index
+     * @throws IOException if the physics file cannot be read
+     * @throws PayloadException if the file is corrupt
+     */
+    public static EventUIDIndex forFile(File file)
+        throws IOException, PayloadException
+    {
+        File sidecar = getSidecar(file);
+        if (sidecar.exists() &&
+            sidecar.lastModified() >= file.lastModified())
+        {
+            try {
+                EventUIDIndex idx = load(sidecar);
+                if (idx.nextOffset == file.length()) {
+                    return idx;
+                }
+            } catch (IOException ioe) {
+                LOG.error("Ignoring bad index " + sidecar, ioe);
+            }
+        }
+
+        EventUIDIndex idx = build(file);
+        try {
+            idx.write(sidecar);
+        } catch (IOException ioe) {
+            LOG.error("Cannot write index " + sidecar, ioe);
+        }
+
+        return idx;
+    }
+
+    /**
+     * Get the number of events in the index
+     * @return value
+     */
+    public int getNumEntries()
+    {
+        return numEntries;
+    }
+
+    /**
+     * Get the number of payloads added to the index, including non-events
+     * @return value
+     */
+    public long getNumPayloads()
+    {
+        return numPayloads;
+    }
+
+    /**
+     * Get the sidecar file for a physics file
+     * @param file physics file
+     * @return sidecar file
+     */
+    public static File getSidecar(File file)
+    {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Is this payload type an event which holds a UID?
+     * @param type payload type
+     * @return <tt>true</tt> if the payload is an indexable event
+     */
+    public static boolean isEvent(int type)
+    {
+        switch (type) {
+        case PayloadRegistry.PAYLOAD_ID_EVENT_V3:
+        case PayloadRegistry.PAYLOAD_ID_EVENT_V4:
+        case PayloadRegistry.PAYLOAD_ID_EVENT_V5:
+        case PayloadRegistry.PAYLOAD_ID_EVENT_V6:
+        case PayloadRegistry.PAYLOAD_ID_EVENT_V7:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Load an index from a sidecar file
+     * @param sidecar sidecar file
+     * @return index
+     * @throws IOException if the file cannot be read or is not an index
+     */
+    public static EventUIDIndex load(File sidecar)
+        throws IOException
+    {
+        FileInputStream fin = new FileInputStream(sidecar);
+        DataInputStream in =
+            new DataInputStream(new BufferedInputStream(fin));
+        try {
+            final int magic = in.readInt();
+            if (magic != MAGIC) {
+                throw new IOException(sidecar + " is not a UID index");
+            }
+
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unknown UID index version " +
+                                      version + " in " + sidecar);
+            }
+
+            final int num = in.readInt();
+            if (num < 0) {
+                throw new IOException("Corrupt UID index " + sidecar);
+            }
+
+            EventUIDIndex idx = new EventUIDIndex(num);
+            idx.numPayloads = in.readLong();
+            idx.nextOffset = in.readLong();
+
+            for (int i = 0; i < num; i++) {
+                idx.uids[i] = in.readInt();
+                idx.offsets[i] = in.readLong();
+            }
+            idx.numEntries = num;
+
+            return idx;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read the UID directly from an encoded event
+     * @param buf byte buffer
+     * @param offset index of first byte of the event
+     * @param type payload type
+     * @return event UID
+     * @throws PayloadException if the payload is not an event
+     */
+    public static int peekUID(ByteBuffer buf, int offset, int type)
+        throws PayloadException
+    {
+        switch (type) {
+        case PayloadRegistry.PAYLOAD_ID_EVENT_V3:
+            return EventPayload_v3.peekUID(buf, offset);
+        case PayloadRegistry.PAYLOAD_ID_EVENT_V4:
+            return EventPayload_v4.peekUID(buf, offset);
+        case PayloadRegistry.PAYLOAD_ID_EVENT_V5:
+        case PayloadRegistry.PAYLOAD_ID_EVENT_V6:
+        case PayloadRegistry.PAYLOAD_ID_EVENT_V7:
+            return EventPayload_v5.peekUID(buf, offset);
+        default:
+            throw new PayloadException("Payload type " + type +
+                                       " is not an event");
+        }
+    }
+
+    /**
+     * Move an entry down the heap until neither child is larger
+     * @param root index of entry to move
+     * @param end number of entries in the heap
+     */
+    private void siftDown(int root, int end)
+    {
+        while (true) {
+            int child = root * 2 + 1;
+            if (child >= end) {
+                break;
+            }
+
+            if (child + 1 < end && compare(child, child + 1) < 0) {
+                child++;
+            }
+
+            if (compare(root, child) >= 0) {
+                break;
+            }
+
+            swap(root, child);
+            root = child;
+        }
+    }
+
+    /**
+     * Add the next payload in the file, which is not an event
+     * @param length payload length
+     */
+    public void skip(int length)
+    {
+        nextOffset += length;
+        numPayloads++;
+    }
+
+    /**
+     * Sort the entries by UID.  This is an in-place heap sort on the
+     * parallel arrays, so no temporary objects are created.
+     */
+    private void sort()
+    {
+        for (int i = numEntries / 2 - 1; i >= 0; i--) {
+            siftDown(i, numEntries);
+        }
+
+        for (int end = numEntries - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+
+        sorted = true;
+    }
+
+    /**
+     * Swap two entries
+     * @param i index of first entry
+     * @param j index of second entry
+     */
+    private void swap(int i, int j)
+    {
+        final int tmpUID = uids[i];
+        uids[i] = uids[j];
+        uids[j] = tmpUID;
+
+        final long tmpOff = offsets[i];
+        offsets[i] = offsets[j];
+        offsets[j] = tmpOff;
+    }
+
+    /**
+     * Save this index to a sidecar file.  Entries are saved in UID order.
+     * @param sidecar sidecar file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File sidecar)
+        throws IOException
+    {
+        if (!sorted) {
+            sort();
+        }
+
+        FileOutputStream fout = new FileOutputStream(sidecar);
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(fout));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numEntries);
+            out.writeLong(numPayloads);
+            out.writeLong(nextOffset);
+
+            for (int i = 0; i < numEntries; i++) {
+                out.writeInt(uids[i]);
+                out.writeLong(offsets[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "EventUIDIndex[" + numEntries + "/" + numPayloads +
+            (sorted ? "" : ",unsorted") + "]";
+    }
+}
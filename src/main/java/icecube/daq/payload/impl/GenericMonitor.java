@@ -98,9 +98,7 @@ public class GenericMonitor
     public int loadRecord(ByteBuffer buf, int offset, int len)
         throws PayloadException
     {
-        data = new byte[len];
-        buf.position(offset);
-        buf.get(data, 0, data.length);
+        data = BufferUtil.getBytes(buf, offset, new byte[len]);
 
         return len;
     }
@@ -120,8 +118,7 @@ public class GenericMonitor
             throw new Error("Monitor event has not been loaded");
         }
 
-        buf.position(offset);
-        buf.put(data);
+        BufferUtil.putBytes(buf, offset, data);
 
         return data.length;
     }
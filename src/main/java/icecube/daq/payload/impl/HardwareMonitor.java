@@ -571,14 +571,14 @@ public class HardwareMonitor
 
         buf.put(offset, evtVersion);
 
-        buf.position(offset + 2);
-
+        int pos = offset + 2;
         for (int i = 0; i < data.length; i++) {
-            buf.putShort(data[i]);
+            buf.putShort(pos, data[i]);
+            pos += 2;
         }
 
-        buf.putInt(speScalar);
-        buf.putInt(mpeScalar);
+        buf.putInt(pos, speScalar);
+        buf.putInt(pos + 4, mpeScalar);
 
         return RECORD_LEN;
     }
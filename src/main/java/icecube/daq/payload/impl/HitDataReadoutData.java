@@ -129,6 +129,17 @@ public class HitDataReadoutData
         return "HitDataReadoutData";
     }
 
+    /**
+     * Has this readout data or any of its hits been changed since it was
+     * read from its byte buffer?
+     * @return <tt>true</tt> if the payload must be re-encoded
+     */
+    @Override
+    public boolean isModified()
+    {
+        return super.isModified() || isAnyModified(hitList);
+    }
+
     /**
      * Load the list of hits
      * @param buf byte buffer
@@ -0,0 +1,147 @@
+package icecube.daq.payload.impl;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+/**
+ * Compression methods for the hit records in version 7 events.
+ *
+ * Each codec's ID is recorded in the event so readers can decode hit
+ * records written with any codec.  Writers choose a codec to trade CPU
+ * time for disk space; if the chosen codec does not make the hit records
+ * smaller they are written with <tt>STORE</tt> instead.
+ */
+public enum HitRecordCodec
+{
+    /** Hit records are not compressed */
+    STORE(0, 0) {
+        @Override
+        int compress(DeflateCodec scratch, int len, int maxLen)
+        {
+            return -1;
+        }
+
+        @Override
+        int decompress(DeflateCodec scratch, byte[] input, int offset,
+                       int len, int plainLen)
+            throws DataFormatException
+        {
+            if (len > plainLen) {
+                throw new DataFormatException(len + " stored bytes exceed " +
+                                              plainLen + "-byte limit");
+            }
+
+            System.arraycopy(input, offset, scratch.getPlain(len), 0, len);
+            return len;
+        }
+    },
+    /** Fast LZ77-family compression */
+    LZ(1, 0) {
+        @Override
+        int compress(DeflateCodec scratch, int len, int maxLen)
+        {
+            return LZCodec.compress(scratch.getPlain(len), len,
+                                    scratch.getPacked(maxLen), maxLen);
+        }
+
+        @Override
+        int decompress(DeflateCodec scratch, byte[] input, int offset,
+                       int len, int plainLen)
+            throws DataFormatException
+        {
+            return LZCodec.decompress(input, offset, len,
+                                      scratch.getPlain(plainLen), plainLen);
+        }
+    },
+    /** Deflate at the fastest level */
+    DEFLATE_FAST(2, Deflater.BEST_SPEED),
+    /** Deflate at the default level */
+    DEFLATE(3, Deflater.DEFAULT_COMPRESSION),
+    /** Deflate at the best (and slowest) level */
+    DEFLATE_BEST(4, Deflater.BEST_COMPRESSION);
+
+    /** Codecs indexed by ID */
+    private static final HitRecordCodec[] BY_ID;
+
+    static {
+        HitRecordCodec[] codecs = values();
+
+        BY_ID = new HitRecordCodec[codecs.length];
+        for (HitRecordCodec codec : codecs) {
+            BY_ID[codec.id] = codec;
+        }
+    }
+
+    /** ID recorded in the event */
+    private final int id;
+    /** Deflate compression level */
+    private final int level;
+
+    /**
+     * Create a codec
+     * @param id ID recorded in the event
+     * @param level deflate compression level (ignored by other codecs)
+     */
+    HitRecordCodec(int id, int level)
+    {
+        this.id = id;
+        this.level = level;
+    }
+
+    /**
+     * Compress <tt>len</tt> bytes of the plain scratch array into the
+     * packed scratch array.
+     * @param scratch per-thread scratch buffers
+     * @param len number of bytes to compress
+     * @param maxLen largest useful compressed length
+     * @return number of compressed bytes, or -1 if the data could not be
+     *         compressed to <tt>maxLen</tt> bytes or fewer
+     */
+    int compress(DeflateCodec scratch, int len, int maxLen)
+    {
+        return scratch.deflate(len, maxLen, level);
+    }
+
+    /**
+     * Decompress bytes into the plain scratch array
+     * @param scratch per-thread scratch buffers
+     * @param input compressed bytes
+     * @param offset index of first compressed byte
+     * @param len number of compressed bytes
+     * @param plainLen expected number of uncompressed bytes; decoding
+     *                 fails rather than produce more than this
+     * @return number of uncompressed bytes in <tt>scratch.getPlain(0)</tt>
+     * @throws DataFormatException if the data cannot be decompressed
+     */
+    int decompress(DeflateCodec scratch, byte[] input, int offset, int len,
+                   int plainLen)
+        throws DataFormatException
+    {
+        // leave room for the byte which shows the data is too long
+        scratch.getPlain(plainLen + 1);
+        return scratch.inflate(input, offset, len, plainLen);
+    }
+
+    /**
+     * Find the codec with the specified ID
+     * @param id codec ID
+     * @return codec, or <tt>null</tt> if the ID is unknown
+     */
+    public static HitRecordCodec fromId(int id)
+    {
+        if (id < 0 || id >= BY_ID.length) {
+            return null;
+        }
+
+        return BY_ID[id];
+    }
+
+    /**
+     * Get the ID recorded in the event
+     * @return codec ID
+     */
+    public int getId()
+    {
+        return id;
+    }
+}
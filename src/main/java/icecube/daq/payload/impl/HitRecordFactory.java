@@ -10,6 +10,11 @@ import java.nio.ByteBuffer;
  */
 public final class HitRecordFactory
 {
+    /** Offset of hit record length field */
+    private static final int OFFSET_LENGTH = 0;
+    /** Offset of hit record type field */
+    private static final int OFFSET_TYPE = 2;
+
     /**
      * Cannot create an instance of a factory class
      */
@@ -17,6 +22,18 @@ public final class HitRecordFactory
     {
     }
 
+    /**
+     * Get the hit record type without creating a hit record.
+     * @param buf byte buffer
+     * @param offset index of first byte of the hit record
+     * @return hit record type (<tt>DeltaHitRecord.HIT_RECORD_TYPE</tt> or
+     *         <tt>EngineeringHitRecord.HIT_RECORD_TYPE</tt>)
+     */
+    public static int getHitRecordType(ByteBuffer buf, int offset)
+    {
+        return (int) buf.get(offset + OFFSET_TYPE);
+    }
+
     /**
      * Get the next hit record.
      * @param buf byte buffer
@@ -28,7 +45,7 @@ public final class HitRecordFactory
                                         long baseTime)
         throws PayloadException
     {
-        final int len = buf.getShort(offset + 0);
+        final int len = buf.getShort(offset + OFFSET_LENGTH);
         if (offset + len > buf.capacity()) {
             throw new PayloadException("Hit record requires " + len +
                                        " bytes, but only " +
@@ -37,7 +54,7 @@ public final class HitRecordFactory
                                        ") are available");
         }
 
-        final int type = (int) buf.get(offset + 2);
+        final int type = getHitRecordType(buf, offset);
         switch (type) {
         case EngineeringHitRecord.HIT_RECORD_TYPE:
             return new EngineeringHitRecord(buf, offset, baseTime);
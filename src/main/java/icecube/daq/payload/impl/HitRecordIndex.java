@@ -0,0 +1,242 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IEventHitRecord;
+import icecube.daq.payload.IHitPayload;
+import icecube.daq.util.IDOMRegistry;
+
+import java.util.List;
+
+/**
+ * Map (channel ID, hit time) pairs to positions in an event's hit record
+ * list.  The index is built once per event and shared by all of the
+ * event's trigger records, so finding a trigger's hits no longer scans
+ * the entire hit record list for each hit.  DOM IDs are translated to
+ * channel IDs once for each distinct DOM.
+ *
+ * Both tables use open addressing over primitive arrays.
+ */
+final class HitRecordIndex
+{
+    /** Marks an unused DOM slot */
+    private static final short NO_CHANNEL = Short.MIN_VALUE;
+
+    /** hit times */
+    private long[] times;
+    /** channel IDs */
+    private short[] chans;
+    /** (hit record index + 1), or 0 if the slot is empty */
+    private int[] positions;
+    /** mask used to turn hashes into slot numbers */
+    private int mask;
+
+    /** DOM IDs whose channel IDs have been looked up */
+    private long[] domIds;
+    /** channel IDs for <tt>domIds</tt> */
+    private short[] domChans;
+    /** number of DOM IDs which have been looked up */
+    private int numDoms;
+
+    /** used to map DOM IDs to channel IDs */
+    private IDOMRegistry domRegistry;
+
+    /**
+     * Index a list of hit records
+     * @param domRegistry used to map each hit's DOM ID to the channel ID
+     * @param hitRecList list of hit records
+     */
+    HitRecordIndex(IDOMRegistry domRegistry, List<IEventHitRecord> hitRecList)
+    {
+        this.domRegistry = domRegistry;
+
+        final int size = tableSize(hitRecList.size());
+        times = new long[size];
+        chans = new short[size];
+        positions = new int[size];
+        mask = size - 1;
+
+        for (int i = 0; i < hitRecList.size(); i++) {
+            IEventHitRecord rec = hitRecList.get(i);
+            insert(rec.getChannelID(), rec.getHitTime(), i);
+        }
+
+        domIds = new long[16];
+        domChans = new short[16];
+        clearDoms(domChans);
+    }
+
+    /**
+     * Set every DOM slot to unused
+     * @param array channel ID array
+     */
+    private static void clearDoms(short[] array)
+    {
+        for (int i = 0; i < array.length; i++) {
+            array[i] = NO_CHANNEL;
+        }
+    }
+
+    /**
+     * Find the hit record which matches the hit
+     * @param hit hit
+     * @return index of the first matching hit record, or -1 if none match
+     */
+    int find(IHitPayload hit)
+    {
+        final short chanId;
+        if (hit.hasChannelID()) {
+            chanId = hit.getChannelID();
+        } else {
+            chanId = getChannelID(hit.getDOMID().longValue());
+        }
+
+        return find(chanId, hit.getUTCTime());
+    }
+
+    /**
+     * Find the hit record for a channel and time
+     * @param chanId channel ID
+     * @param time hit time
+     * @return index of the first matching hit record, or -1 if none match
+     */
+    int find(short chanId, long time)
+    {
+        for (int slot = hash(chanId, time) & mask; positions[slot] != 0;
+             slot = (slot + 1) & mask)
+        {
+            if (times[slot] == time && chans[slot] == chanId) {
+                return positions[slot] - 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the channel ID for a DOM, asking the registry only the first
+     * time each DOM is seen
+     * @param domId DOM ID
+     * @return channel ID
+     */
+    short getChannelID(long domId)
+    {
+        int slot = hash(domId) & (domIds.length - 1);
+        while (domChans[slot] != NO_CHANNEL) {
+            if (domIds[slot] == domId) {
+                return domChans[slot];
+            }
+
+            slot = (slot + 1) & (domIds.length - 1);
+        }
+
+        final short chanId = domRegistry.getChannelId(domId);
+        if (chanId == NO_CHANNEL) {
+            // cannot be cached, but lookups will fail anyway
+            return chanId;
+        }
+
+        domIds[slot] = domId;
+        domChans[slot] = chanId;
+
+        if (++numDoms * 2 > domIds.length) {
+            growDoms();
+        }
+
+        return chanId;
+    }
+
+    /**
+     * Double the size of the DOM table
+     */
+    private void growDoms()
+    {
+        final long[] oldIds = domIds;
+        final short[] oldChans = domChans;
+
+        domIds = new long[oldIds.length * 2];
+        domChans = new short[oldChans.length * 2];
+        clearDoms(domChans);
+
+        final int domMask = domIds.length - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldChans[i] != NO_CHANNEL) {
+                int slot = hash(oldIds[i]) & domMask;
+                while (domChans[slot] != NO_CHANNEL) {
+                    slot = (slot + 1) & domMask;
+                }
+
+                domIds[slot] = oldIds[i];
+                domChans[slot] = oldChans[i];
+            }
+        }
+    }
+
+    /**
+     * Hash a long value
+     * @param val value
+     * @return hash code
+     */
+    private static int hash(long val)
+    {
+        final long h = val * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Hash a (channel ID, hit time) pair
+     * @param chanId channel ID
+     * @param time hit time
+     * @return hash code
+     */
+    private static int hash(short chanId, long time)
+    {
+        return hash(time * 31L + chanId);
+    }
+
+    /**
+     * Add a hit record to the table.  If several records have the same
+     * channel and time, the first one is kept.
+     * @param chanId channel ID
+     * @param time hit time
+     * @param index index of hit record
+     */
+    private void insert(short chanId, long time, int index)
+    {
+        int slot = hash(chanId, time) & mask;
+        while (positions[slot] != 0) {
+            if (times[slot] == time && chans[slot] == chanId) {
+                return;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        times[slot] = time;
+        chans[slot] = chanId;
+        positions[slot] = index + 1;
+    }
+
+    /**
+     * Get a power-of-two table size which keeps the table at most half full
+     * @param num number of entries
+     * @return table size
+     */
+    private static int tableSize(int num)
+    {
+        int size = 16;
+        while (size < num * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "HitRecordIndex[" + positions.length + " slots, " + numDoms +
+            " doms]";
+    }
+}
@@ -295,12 +295,7 @@ public class HitRecordList
         }
 
         // make sure we can load the field(s) needed in compareSpliceable()
-        final int bodyOffset;
-        if (offset == 0) {
-            bodyOffset = OFFSET_PAYLOAD;
-        } else {
-            bodyOffset = 0;
-        }
+        final int bodyOffset = OFFSET_PAYLOAD;
 
         if (bodyOffset + OFFSET_UID + 4 > len) {
             throw new PayloadException("Cannot load field at offset " +
@@ -0,0 +1,297 @@
+package icecube.daq.payload.impl;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+/**
+ * Small, fast LZ77-family block compressor used for hit records.
+ *
+ * The format follows the LZ4 block layout: each sequence is a token byte
+ * whose high nibble is the literal length and whose low nibble is the
+ * match length minus 4, optional length extension bytes (runs of 255
+ * terminated by a smaller byte), the literals, then a 2-byte little-endian
+ * match offset and any match length extension bytes.  The final sequence
+ * holds only literals and ends the block.
+ *
+ * Matches are found with a single-probe hash table, so compression is
+ * much cheaper than deflate at the cost of a somewhat worse ratio.
+ */
+final class LZCodec
+{
+    /** Shortest match which is encoded */
+    private static final int MIN_MATCH = 4;
+    /** Largest distance back to a match */
+    private static final int MAX_OFFSET = 0xffff;
+    /** Number of bits in a hash table index */
+    private static final int HASH_BITS = 12;
+    /** Nibble value which means more length bytes follow */
+    private static final int RUN_MASK = 15;
+
+    /** Per-thread hash tables */
+    private static final ThreadLocal<int[]> TABLES =
+        new ThreadLocal<int[]>() {
+            @Override
+            protected int[] initialValue()
+            {
+                return new int[1 << HASH_BITS];
+            }
+        };
+
+    /**
+     * This is a utility class.
+     */
+    private LZCodec()
+    {
+    }
+
+    /**
+     * Compress <tt>srcLen</tt> bytes of <tt>src</tt> into <tt>dst</tt>
+     * @param src uncompressed bytes
+     * @param srcLen number of bytes to compress
+     * @param dst array which receives the compressed bytes
+     * @param maxLen largest useful compressed length
+     * @return number of compressed bytes, or -1 if the data could not be
+     *         compressed to <tt>maxLen</tt> bytes or fewer
+     */
+    static int compress(byte[] src, int srcLen, byte[] dst, int maxLen)
+    {
+        if (maxLen < 0) {
+            return -1;
+        }
+
+        final int[] table = TABLES.get();
+        Arrays.fill(table, -1);
+
+        final int limit = srcLen - MIN_MATCH;
+
+        int anchor = 0;
+        int pos = 0;
+        int out = 0;
+        while (pos <= limit) {
+            final int seq = readInt(src, pos);
+            final int slot = hash(seq);
+            final int ref = table[slot];
+            table[slot] = pos;
+
+            if (ref < 0 || pos - ref > MAX_OFFSET ||
+                readInt(src, ref) != seq)
+            {
+                pos++;
+                continue;
+            }
+
+            int matchLen = MIN_MATCH;
+            while (pos + matchLen < srcLen &&
+                   src[ref + matchLen] == src[pos + matchLen])
+            {
+                matchLen++;
+            }
+
+            out = putSequence(src, anchor, pos - anchor, pos - ref, matchLen,
+                              dst, out, maxLen);
+            if (out < 0) {
+                return -1;
+            }
+
+            pos += matchLen;
+            anchor = pos;
+        }
+
+        return putSequence(src, anchor, srcLen - anchor, 0, 0, dst, out,
+                           maxLen);
+    }
+
+    /**
+     * Decompress a block
+     * @param src compressed bytes
+     * @param offset index of first compressed byte
+     * @param len number of compressed bytes
+     * @param dst array which receives the uncompressed bytes
+     * @param dstLen expected number of uncompressed bytes
+     * @return number of uncompressed bytes
+     * @throws DataFormatException if the block is corrupt
+     */
+    static int decompress(byte[] src, int offset, int len, byte[] dst,
+                          int dstLen)
+        throws DataFormatException
+    {
+        final int end = offset + len;
+
+        int in = offset;
+        int out = 0;
+        while (in < end) {
+            final int token = src[in++] & 0xff;
+
+            int litLen = token >>> 4;
+            if (litLen == RUN_MASK) {
+                int b;
+                do {
+                    if (in >= end) {
+                        throw new DataFormatException("Truncated literal" +
+                                                      " length");
+                    }
+                    b = src[in++] & 0xff;
+                    litLen += b;
+                } while (b == 255);
+            }
+
+            if (litLen > end - in || litLen > dstLen - out) {
+                throw new DataFormatException("Bad literal length " + litLen);
+            }
+
+            System.arraycopy(src, in, dst, out, litLen);
+            in += litLen;
+            out += litLen;
+
+            if (in == end) {
+                // the final sequence has no match
+                break;
+            } else if (end - in < 2) {
+                throw new DataFormatException("Truncated match offset");
+            }
+
+            final int matchOffset =
+                (src[in] & 0xff) | ((src[in + 1] & 0xff) << 8);
+            in += 2;
+
+            int matchLen = token & RUN_MASK;
+            if (matchLen == RUN_MASK) {
+                int b;
+                do {
+                    if (in >= end) {
+                        throw new DataFormatException("Truncated match" +
+                                                      " length");
+                    }
+                    b = src[in++] & 0xff;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+
+            if (matchOffset == 0 || matchOffset > out ||
+                matchLen > dstLen - out)
+            {
+                throw new DataFormatException("Bad match (offset " +
+                                              matchOffset + ", length " +
+                                              matchLen + ")");
+            }
+
+            if (matchOffset >= matchLen) {
+                System.arraycopy(dst, out - matchOffset, dst, out, matchLen);
+            } else {
+                // overlapping match repeats the most recent bytes
+                for (int i = 0; i < matchLen; i++) {
+                    dst[out + i] = dst[out - matchOffset + i];
+                }
+            }
+            out += matchLen;
+        }
+
+        return out;
+    }
+
+    /**
+     * Hash four bytes into a table slot
+     * @param seq four bytes
+     * @return table slot
+     */
+    private static int hash(int seq)
+    {
+        return (seq * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    /**
+     * Number of extension bytes needed to encode a length
+     * @param len literal length or (match length - 4)
+     * @return number of extension bytes
+     */
+    private static int lengthBytes(int len)
+    {
+        if (len < RUN_MASK) {
+            return 0;
+        }
+
+        return (len - RUN_MASK) / 255 + 1;
+    }
+
+    /**
+     * Write length extension bytes
+     * @param dst destination array
+     * @param out index of first byte
+     * @param len literal length or (match length - 4)
+     * @return index following the last byte written
+     */
+    private static int putLength(byte[] dst, int out, int len)
+    {
+        int remain = len - RUN_MASK;
+        while (remain >= 255) {
+            dst[out++] = (byte) 255;
+            remain -= 255;
+        }
+        dst[out++] = (byte) remain;
+
+        return out;
+    }
+
+    /**
+     * Write a sequence
+     * @param src uncompressed bytes
+     * @param litOffset index of first literal
+     * @param litLen number of literals
+     * @param matchOffset distance back to the match
+     * @param matchLen match length, or 0 for the final sequence
+     * @param dst destination array
+     * @param out index of first byte
+     * @param maxLen largest useful compressed length
+     * @return index following the last byte written, or -1 if the sequence
+     *         would go past <tt>maxLen</tt>
+     */
+    private static int putSequence(byte[] src, int litOffset, int litLen,
+                                   int matchOffset, int matchLen, byte[] dst,
+                                   int out, int maxLen)
+    {
+        final int matchCode;
+        int need = 1 + lengthBytes(litLen) + litLen;
+        if (matchLen == 0) {
+            matchCode = 0;
+        } else {
+            matchCode = matchLen - MIN_MATCH;
+            need += 2 + lengthBytes(matchCode);
+        }
+
+        if (out + need > maxLen) {
+            return -1;
+        }
+
+        dst[out++] = (byte) ((Math.min(litLen, RUN_MASK) << 4) |
+                             Math.min(matchCode, RUN_MASK));
+        if (litLen >= RUN_MASK) {
+            out = putLength(dst, out, litLen);
+        }
+
+        System.arraycopy(src, litOffset, dst, out, litLen);
+        out += litLen;
+
+        if (matchLen != 0) {
+            dst[out++] = (byte) matchOffset;
+            dst[out++] = (byte) (matchOffset >>> 8);
+            if (matchCode >= RUN_MASK) {
+                out = putLength(dst, out, matchCode);
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Read four bytes as a little-endian integer
+     * @param src byte array
+     * @param index index of first byte
+     * @return integer value
+     */
+    private static int readInt(byte[] src, int index)
+    {
+        return (src[index] & 0xff) | ((src[index + 1] & 0xff) << 8) |
+            ((src[index + 2] & 0xff) << 16) | ((src[index + 3] & 0xff) << 24);
+    }
+}
@@ -0,0 +1,857 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IByteBufferCache;
+import icecube.daq.payload.ITypedBufferCache;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wrap another buffer cache and remember where a random sample of the
+ * acquired buffers came from.  Sampled buffers which are never returned
+ * show up in the list of oldest outstanding buffers and in the per-site
+ * leak totals.
+ *
+ * Buffers given back through <tt>returnBuffer(ByteBuffer)</tt> are
+ * matched with their acquisition, as are buffers which payloads only
+ * partly fill (see <tt>returnBuffer(ByteBuffer, int)</tt>).  Sampled
+ * buffers are only weakly held, so the tracker never keeps a buffer alive
+ * and can be left on in production.  A sampled buffer which is garbage-collected before it is
+ * matched stops being outstanding but is still charged to its site as a
+ * collected buffer (and counted in <tt>getCollectedBuffers()</tt>), since
+ * it was either leaked or returned through <tt>returnBuffer(int)</tt>,
+ * which can't be matched.
+ */
+public class LeakTrackingBufferCache
+    implements ITypedBufferCache, LeakTrackingBufferCacheMBean
+{
+    /** By default, track one out of this many acquisitions */
+    public static final int DEFAULT_SAMPLE_INTERVAL = 1000;
+
+    /** Number of outstanding buffers reported by default */
+    private static final int NUM_OLDEST = 10;
+    /** Number of stack frames used to describe an allocation site */
+    private static final int SITE_DEPTH = 3;
+    /** Number of independently locked tables of sampled buffers */
+    private static final int NUM_STRIPES = 64;
+
+    /** cache which does the actual work */
+    private IByteBufferCache cache;
+    /** one out of this many acquisitions is tracked */
+    private int sampleInterval;
+
+    /** sampled buffers, spread across tables to reduce lock contention */
+    private Stripe[] stripes;
+    /** number of sampled buffers which have not been returned */
+    private AtomicInteger numTracked = new AtomicInteger();
+    /** number of sampled buffers collected without being matched */
+    private AtomicLong numCollected = new AtomicLong();
+    /** sampled buffers which have been garbage-collected */
+    private ReferenceQueue<ByteBuffer> collected =
+        new ReferenceQueue<ByteBuffer>();
+
+    /** per-site statistics */
+    private HashMap<String, SiteStats> sites =
+        new HashMap<String, SiteStats>();
+
+    /**
+     * Track a sample of the buffers acquired from <tt>cache</tt>
+     * @param cache buffer cache
+     */
+    public LeakTrackingBufferCache(IByteBufferCache cache)
+    {
+        this(cache, DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Track a sample of the buffers acquired from <tt>cache</tt>
+     * @param cache buffer cache
+     * @param sampleInterval track one out of this many acquisitions
+     *                       (<tt>1</tt> tracks every buffer)
+     */
+    public LeakTrackingBufferCache(IByteBufferCache cache, int sampleInterval)
+    {
+        if (cache == null) {
+            throw new IllegalArgumentException("Buffer cache cannot be null");
+        } else if (sampleInterval < 1) {
+            throw new IllegalArgumentException("Bad sample interval " +
+                                               sampleInterval);
+        }
+
+        this.cache = cache;
+        this.sampleInterval = sampleInterval;
+
+        stripes = new Stripe[NUM_STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Acquire a byte buffer
+     * @param iLength number of bytes
+     * @return byte buffer
+     */
+    @Override
+    public ByteBuffer acquireBuffer(int iLength)
+    {
+        return sample(cache.acquireBuffer(iLength), iLength);
+    }
+
+    /**
+     * Track this buffer if it is chosen by the sampler
+     * @param buf newly acquired buffer
+     * @param iLength number of bytes requested
+     * @return original buffer
+     */
+    private ByteBuffer sample(ByteBuffer buf, int iLength)
+    {
+        if (buf != null && (sampleInterval == 1 ||
+                            ThreadLocalRandom.current().
+                            nextInt(sampleInterval) == 0))
+        {
+            track(buf, iLength);
+        }
+
+        return buf;
+    }
+
+    /**
+     * Build a short description of the code which called the cache
+     * @param trace stack trace captured inside the cache
+     * @return site description
+     */
+    private static String describeSite(StackTraceElement[] trace)
+    {
+        StringBuilder strBuf = new StringBuilder();
+
+        int depth = 0;
+        for (int i = 0; i < trace.length && depth < SITE_DEPTH; i++) {
+            final String clsName = trace[i].getClassName();
+            if (depth == 0 && clsName.endsWith("BufferCache")) {
+                continue;
+            }
+
+            if (depth > 0) {
+                strBuf.append(" < ");
+            }
+
+            final int idx = clsName.lastIndexOf('.');
+            strBuf.append(clsName.substring(idx + 1)).append('.').
+                append(trace[i].getMethodName()).append(':').
+                append(trace[i].getLineNumber());
+            depth++;
+        }
+
+        return strBuf.toString();
+    }
+
+    /**
+     * Stop tracking a sampled buffer which was returned
+     * @param rec buffer's record
+     */
+    private void forget(Record rec)
+    {
+        numTracked.decrementAndGet();
+
+        synchronized (sites) {
+            rec.stats.returned(rec.length);
+        }
+    }
+
+    /**
+     * Stop tracking a sampled buffer which was garbage-collected without
+     * being returned, but keep charging it to its site
+     * @param rec buffer's record
+     */
+    private void forgetCollected(Record rec)
+    {
+        numTracked.decrementAndGet();
+        numCollected.incrementAndGet();
+
+        synchronized (sites) {
+            rec.stats.collected(rec.length);
+        }
+    }
+
+    /**
+     * Get the underlying buffer cache
+     * @return buffer cache
+     */
+    public IByteBufferCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Get number of sampled buffers which were garbage-collected without
+     * being returned through <tt>returnBuffer(ByteBuffer)</tt>
+     * @return value
+     */
+    @Override
+    public long getCollectedBuffers()
+    {
+        purge();
+        return numCollected.get();
+    }
+
+    /**
+     * Get number of currently buffers acquired
+     * @return value
+     */
+    @Override
+    public int getCurrentAcquiredBuffers()
+    {
+        return cache.getCurrentAcquiredBuffers();
+    }
+
+    /**
+     * Get number of currently acquired bytes
+     * @return value
+     */
+    @Override
+    public long getCurrentAcquiredBytes()
+    {
+        return cache.getCurrentAcquiredBytes();
+    }
+
+    /**
+     * Get sampled allocation sites with outstanding or collected buffers,
+     * largest first.  Each entry lists the number of outstanding sampled
+     * buffers, the estimated total (scaled by the sample interval), the
+     * outstanding bytes, the number of sampled buffers which were
+     * collected without being returned, and the site.
+     * @return list of site descriptions
+     */
+    @Override
+    public String[] getLeakSites()
+    {
+        purge();
+
+        ArrayList<SiteStats> list = new ArrayList<SiteStats>();
+        synchronized (sites) {
+            for (SiteStats stats : sites.values()) {
+                if (stats.getOutstanding() > 0 || stats.getCollected() > 0) {
+                    list.add(stats.copy());
+                }
+            }
+        }
+
+        Collections.sort(list, new Comparator<SiteStats>() {
+                @Override
+                public int compare(SiteStats a, SiteStats b)
+                {
+                    return Long.compare(b.getOutstanding() +
+                                        b.getCollected(),
+                                        a.getOutstanding() +
+                                        a.getCollected());
+                }
+            });
+
+        String[] array = new String[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            SiteStats stats = list.get(i);
+            array[i] = stats.getOutstanding() + " (~" +
+                (stats.getOutstanding() * sampleInterval) + ") " +
+                stats.getBytes() + " bytes, " + stats.getCollected() +
+                " collected at " + stats.getSite();
+        }
+
+        return array;
+    }
+
+    /**
+     * Get the buffer cache name
+     * @return name
+     */
+    @Override
+    public String getName()
+    {
+        return cache.getName();
+    }
+
+    /**
+     * Get the oldest sampled buffers which have not been returned
+     * @return list of buffer descriptions
+     */
+    @Override
+    public String[] getOldestOutstanding()
+    {
+        List<Record> list = getOutstandingRecords();
+
+        final long now = System.currentTimeMillis();
+
+        final int num = Math.min(NUM_OLDEST, list.size());
+        String[] array = new String[num];
+        for (int i = 0; i < num; i++) {
+            array[i] = list.get(i).toString(now);
+        }
+
+        return array;
+    }
+
+    /**
+     * Get all sampled buffers which have not been returned, oldest first
+     * @return list of records
+     */
+    List<Record> getOutstandingRecords()
+    {
+        purge();
+
+        ArrayList<Record> list = new ArrayList<Record>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.addTo(list);
+            }
+        }
+
+        Collections.sort(list, new Comparator<Record>() {
+                @Override
+                public int compare(Record a, Record b)
+                {
+                    return Long.compare(a.time, b.time);
+                }
+            });
+
+        return list;
+    }
+
+    /**
+     * Get the interval between sampled acquisitions
+     * @return value
+     */
+    @Override
+    public int getSampleInterval()
+    {
+        return sampleInterval;
+    }
+
+    /**
+     * Get the stripe which holds buffers with this identity hash code
+     * @param hash identity hash code
+     * @return stripe
+     */
+    private Stripe getStripe(int hash)
+    {
+        return stripes[hash & (NUM_STRIPES - 1)];
+    }
+
+    /**
+     * Get total number of buffers acquired
+     * @return value
+     */
+    @Override
+    public int getTotalBuffersAcquired()
+    {
+        return cache.getTotalBuffersAcquired();
+    }
+
+    /**
+     * Get total number of buffers created
+     * @return value
+     */
+    @Override
+    public int getTotalBuffersCreated()
+    {
+        return cache.getTotalBuffersCreated();
+    }
+
+    /**
+     * Get total number of buffers returned
+     * @return value
+     */
+    @Override
+    public int getTotalBuffersReturned()
+    {
+        return cache.getTotalBuffersReturned();
+    }
+
+    /**
+     * Get total number of bytes in the cache
+     * @return value
+     */
+    @Override
+    public long getTotalBytesInCache()
+    {
+        return cache.getTotalBytesInCache();
+    }
+
+    /**
+     * Get number of sampled buffers which have not been returned
+     * @return value
+     */
+    @Override
+    public int getTrackedBuffers()
+    {
+        purge();
+        return numTracked.get();
+    }
+
+    /**
+     * Return <tt>true</tt> if there are no unreturned buffers
+     * @return value
+     */
+    @Override
+    public boolean isBalanced()
+    {
+        return cache.isBalanced();
+    }
+
+    /**
+     * Does this buffer cache have an upper limit?
+     * @return <tt>true</tt> if cache is bounded
+     */
+    @Override
+    public boolean isCacheBounded()
+    {
+        return cache.isCacheBounded();
+    }
+
+    /**
+     * Get the upper limit for this buffer cache
+     * @return value
+     */
+    @Override
+    public long getMaxAcquiredBytes()
+    {
+        return cache.getMaxAcquiredBytes();
+    }
+
+    /**
+     * Stop tracking any sampled buffers which have been garbage-collected
+     */
+    private void purge()
+    {
+        Record rec;
+        while ((rec = (Record) collected.poll()) != null) {
+            final boolean removed;
+
+            Stripe stripe = getStripe(rec.hash);
+            synchronized (stripe) {
+                removed = stripe.remove(rec);
+            }
+
+            if (removed) {
+                forgetCollected(rec);
+            }
+        }
+    }
+
+    /**
+     * Return a buffer
+     * @param tByteBuffer buffer
+     */
+    @Override
+    public void returnBuffer(ByteBuffer tByteBuffer)
+    {
+        if (numTracked.get() > 0) {
+            untrack(tByteBuffer);
+        }
+
+        cache.returnBuffer(tByteBuffer);
+    }
+
+    /**
+     * Return a buffer which held a payload in only its first
+     * <tt>numBytes</tt> bytes.  The buffer is no longer tracked, and the
+     * wrapped cache is given the buffer and size.
+     * @param buf byte buffer
+     * @param numBytes number of bytes used by the payload
+     */
+    @Override
+    public void returnBuffer(ByteBuffer buf, int numBytes)
+    {
+        if (numTracked.get() > 0) {
+            untrack(buf);
+        }
+
+        if (cache instanceof ITypedBufferCache) {
+            ((ITypedBufferCache) cache).returnBuffer(buf, numBytes);
+        } else {
+            cache.returnBuffer(numBytes);
+        }
+    }
+
+    /**
+     * Return a "buffer".  These can't be matched to tracked buffers, which
+     * are dropped once they're garbage-collected.
+     * @param numBytes buffer capacity
+     */
+    @Override
+    public void returnBuffer(int numBytes)
+    {
+        cache.returnBuffer(numBytes);
+    }
+
+    /**
+     * Return a "buffer" which held a payload of a known type.  These can't
+     * be matched to tracked buffers either.
+     * @param numBytes buffer capacity
+     * @param payloadType payload type
+     */
+    @Override
+    public void returnBuffer(int numBytes, int payloadType)
+    {
+        if (cache instanceof ITypedBufferCache) {
+            ((ITypedBufferCache) cache).returnBuffer(numBytes, payloadType);
+        } else {
+            cache.returnBuffer(numBytes);
+        }
+    }
+
+    /**
+     * Remember where this buffer was acquired
+     * @param buf byte buffer
+     * @param len number of bytes requested
+     */
+    private void track(ByteBuffer buf, int len)
+    {
+        final String site = describeSite(new Throwable().getStackTrace());
+
+        SiteStats stats;
+        synchronized (sites) {
+            stats = sites.get(site);
+            if (stats == null) {
+                stats = new SiteStats(site);
+                sites.put(site, stats);
+            }
+
+            stats.acquired(len);
+        }
+
+        Record rec = new Record(buf, len, stats, collected);
+
+        Stripe stripe = getStripe(rec.hash);
+        synchronized (stripe) {
+            stripe.add(rec);
+        }
+
+        numTracked.incrementAndGet();
+
+        purge();
+    }
+
+    /**
+     * Forget about a returned buffer
+     * @param buf byte buffer
+     */
+    private void untrack(ByteBuffer buf)
+    {
+        Record rec;
+
+        Stripe stripe = getStripe(System.identityHashCode(buf));
+        synchronized (stripe) {
+            rec = stripe.remove(buf);
+        }
+
+        if (rec != null) {
+            // a cleared reference is never enqueued, so it can't be
+            // counted twice
+            rec.clear();
+            forget(rec);
+        }
+
+        purge();
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "LeakTracking[" + cache + ",sample=1/" + sampleInterval +
+            ",tracked=" + numTracked.get() + "]";
+    }
+
+    /**
+     * Sampled buffer
+     */
+    static final class Record
+        extends WeakReference<ByteBuffer>
+    {
+        /** identity hash code of the tracked buffer */
+        private int hash;
+        /** number of bytes requested */
+        private int length;
+        /** statistics for the allocation site */
+        private SiteStats stats;
+        /** time of acquisition */
+        private long time;
+
+        /**
+         * Create a record
+         * @param buf tracked buffer
+         * @param length number of bytes requested
+         * @param stats statistics for the allocation site
+         * @param queue queue which receives collected records
+         */
+        Record(ByteBuffer buf, int length, SiteStats stats,
+               ReferenceQueue<ByteBuffer> queue)
+        {
+            super(buf, queue);
+
+            hash = System.identityHashCode(buf);
+            this.length = length;
+            this.stats = stats;
+
+            time = System.currentTimeMillis();
+        }
+
+        /**
+         * Get the allocation site
+         * @return site description
+         */
+        String getSite()
+        {
+            return stats.getSite();
+        }
+
+        /**
+         * Get the payload type stored in the buffer
+         * @return payload type, or <tt>0</tt> if it's not known
+         */
+        int getPayloadType()
+        {
+            final ByteBuffer buf = get();
+            if (buf == null) {
+                return PayloadTypeCounters.UNKNOWN_TYPE;
+            }
+
+            return PayloadTypeCounters.getPayloadType(buf);
+        }
+
+        /**
+         * Describe this record
+         * @param now current time
+         * @return debugging string
+         */
+        String toString(long now)
+        {
+            final int type = getPayloadType();
+            final String typeStr;
+            if (type == PayloadTypeCounters.UNKNOWN_TYPE) {
+                typeStr = "";
+            } else {
+                typeStr = " type " + type;
+            }
+
+            return (now - time) + "ms " + length + " bytes" + typeStr +
+                " at " + stats.getSite();
+        }
+    }
+
+    /**
+     * Per-site statistics
+     */
+    static final class SiteStats
+    {
+        /** site description */
+        private String site;
+        /** number of sampled buffers which have not been returned */
+        private long outstanding;
+        /** number of bytes in sampled buffers which have not been returned */
+        private long bytes;
+        /** number of sampled buffers collected without being returned */
+        private long collected;
+
+        /**
+         * Create statistics for a site
+         * @param site site description
+         */
+        SiteStats(String site)
+        {
+            this.site = site;
+        }
+
+        /**
+         * Record a sampled acquisition
+         * @param len number of bytes
+         */
+        void acquired(int len)
+        {
+            outstanding++;
+            bytes += len;
+        }
+
+        /**
+         * Record a sampled buffer which was garbage-collected without
+         * being returned
+         * @param len number of bytes
+         */
+        void collected(int len)
+        {
+            outstanding--;
+            bytes -= len;
+            collected++;
+        }
+
+        /**
+         * Copy the current values
+         * @return copy
+         */
+        SiteStats copy()
+        {
+            SiteStats stats = new SiteStats(site);
+            stats.outstanding = outstanding;
+            stats.bytes = bytes;
+            stats.collected = collected;
+            return stats;
+        }
+
+        /**
+         * Get number of sampled buffers collected without being returned
+         * @return value
+         */
+        long getCollected()
+        {
+            return collected;
+        }
+
+        /**
+         * Get number of outstanding bytes
+         * @return value
+         */
+        long getBytes()
+        {
+            return bytes;
+        }
+
+        /**
+         * Get number of outstanding sampled buffers
+         * @return value
+         */
+        long getOutstanding()
+        {
+            return outstanding;
+        }
+
+        /**
+         * Get the site description
+         * @return site
+         */
+        String getSite()
+        {
+            return site;
+        }
+
+        /**
+         * Record a returned sampled buffer
+         * @param len number of bytes
+         */
+        void returned(int len)
+        {
+            outstanding--;
+            bytes -= len;
+        }
+    }
+
+    /**
+     * Table of sampled buffers, keyed by identity hash code.  Callers must
+     * hold the stripe's lock.
+     */
+    private static final class Stripe
+    {
+        /** sampled buffers */
+        private HashMap<Integer, ArrayList<Record>> map =
+            new HashMap<Integer, ArrayList<Record>>();
+
+        /**
+         * Add a record
+         * @param rec record
+         */
+        void add(Record rec)
+        {
+            ArrayList<Record> list = map.get(rec.hash);
+            if (list == null) {
+                list = new ArrayList<Record>(1);
+                map.put(rec.hash, list);
+            }
+
+            list.add(rec);
+        }
+
+        /**
+         * Add all records to a list
+         * @param list list of records
+         */
+        void addTo(List<Record> list)
+        {
+            for (ArrayList<Record> recs : map.values()) {
+                for (Record rec : recs) {
+                    if (rec.get() != null) {
+                        list.add(rec);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Remove the record for a buffer
+         * @param buf byte buffer
+         * @return removed record, or <tt>null</tt> if the buffer is not
+         *         tracked
+         */
+        Record remove(ByteBuffer buf)
+        {
+            final int hash = System.identityHashCode(buf);
+
+            ArrayList<Record> list = map.get(hash);
+            if (list != null) {
+                for (int i = 0; i < list.size(); i++) {
+                    Record rec = list.get(i);
+                    if (rec.get() == buf) {
+                        removeAt(hash, list, i);
+                        return rec;
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Remove a record
+         * @param rec record
+         * @return <tt>false</tt> if the record was not found
+         */
+        boolean remove(Record rec)
+        {
+            ArrayList<Record> list = map.get(rec.hash);
+            if (list != null) {
+                for (int i = 0; i < list.size(); i++) {
+                    if (list.get(i) == rec) {
+                        removeAt(rec.hash, list, i);
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Remove an entry from a list, dropping the list if it's empty
+         * @param hash identity hash code
+         * @param list list of records with that hash code
+         * @param index index of entry to remove
+         */
+        private void removeAt(int hash, ArrayList<Record> list, int index)
+        {
+            list.remove(index);
+            if (list.isEmpty()) {
+                map.remove(hash);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package icecube.daq.payload.impl;
+
+/**
+ * MBean interface for leak tracking buffer cache.
+ */
+public interface LeakTrackingBufferCacheMBean
+{
+    /**
+     * Get number of sampled buffers which were garbage-collected without
+     * being matched with a return
+     * @return value
+     */
+    long getCollectedBuffers();
+    /**
+     * Get number of currently acquired buffers
+     * @return value
+     */
+    int getCurrentAcquiredBuffers();
+    /**
+     * Get number of currently acquired bytes
+     * @return value
+     */
+    long getCurrentAcquiredBytes();
+    /**
+     * Get sampled allocation sites with outstanding buffers, largest first
+     * @return list of site descriptions
+     */
+    String[] getLeakSites();
+    /**
+     * Get the oldest sampled buffers which have not been returned
+     * @return list of buffer descriptions
+     */
+    String[] getOldestOutstanding();
+    /**
+     * Get the interval between sampled acquisitions
+     * @return value
+     */
+    int getSampleInterval();
+    /**
+     * Get number of sampled buffers which have not been returned
+     * @return value
+     */
+    int getTrackedBuffers();
+}
@@ -0,0 +1,636 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IBufferPressureListener;
+import icecube.daq.payload.ITypedBufferCache;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This buffer cache gives each thread a small "magazine" of idle buffers
+ * for every size class, so most requests are handled without taking any
+ * lock.  A thread only visits the shared depot (a
+ * <tt>PooledBufferCache</tt>) to refill an empty magazine or to drain a
+ * full one.  Statistics are kept in striped counters which are summed
+ * when they are read.
+ *
+ * Buffers left in the magazine of a thread which exits are moved back to
+ * the depot the next time a request can't be satisfied from the depot;
+ * call <tt>flush()</tt> before a worker thread exits to hand them back
+ * sooner.  A reusable buffer which is returned while it is already idle,
+ * whether it sits in the depot or in any thread's magazine, is logged and
+ * ignored.
+ */
+public class MagazineBufferCache
+    implements ITypedBufferCache, MagazineBufferCacheMBean
+{
+    private static final Logger LOG =
+        Logger.getLogger(MagazineBufferCache.class);
+
+    /** Default number of buffers held in each per-thread magazine */
+    public static final int DEFAULT_MAGAZINE_SIZE = 32;
+
+    private String name;
+    /** shared pool of idle buffers */
+    private PooledBufferCache depot;
+    /** maximum number of buffers in each magazine */
+    private int magazineSize;
+
+    /** per-thread magazines */
+    private ThreadLocal<Magazine> magazines;
+    /** every magazine, so those left by exited threads can be reclaimed */
+    private ArrayList<Magazine> allMagazines = new ArrayList<Magazine>();
+
+    /** statistics broken down by payload type and buffer size */
+    private PayloadTypeCounters typeCounters = new PayloadTypeCounters();
+
+    /** enforces the upper limit once a bound policy is set */
+    private AcquisitionLimiter.Holder bound = new AcquisitionLimiter.Holder();
+
+    private LongAdder acquiredBufferCount = new LongAdder();
+    private LongAdder acquiredBytes = new LongAdder();
+    private LongAdder returnedBuffers = new LongAdder();
+    private LongAdder totalBufferCount = new LongAdder();
+    private LongAdder createdBufferCount = new LongAdder();
+    private LongAdder cacheHits = new LongAdder();
+    private LongAdder cacheMisses = new LongAdder();
+    /** number of idle buffers held in magazines (not in the depot) */
+    private LongAdder magazineBuffers = new LongAdder();
+    /** number of idle bytes held in magazines (not in the depot) */
+    private LongAdder magazineBytes = new LongAdder();
+
+    /**
+     * Create an unbounded named buffer cache
+     * @param name name
+     */
+    public MagazineBufferCache(String name)
+    {
+        this(name, Long.MIN_VALUE);
+    }
+
+    /**
+     * Create a bounded named buffer cache which uses the default size classes
+     * @param name name
+     * @param maxAcquiredBytes maximum number of bytes allowed
+     */
+    public MagazineBufferCache(String name, long maxAcquiredBytes)
+    {
+        this(name, maxAcquiredBytes, PooledBufferCache.getDefaultSizes(),
+             PooledBufferCache.DEFAULT_MAX_IDLE, DEFAULT_MAGAZINE_SIZE);
+    }
+
+    /**
+     * Create a bounded named buffer cache
+     * @param name name
+     * @param maxAcquiredBytes maximum number of bytes allowed
+     * @param sizes buffer capacity for each size class
+     * @param maxIdle maximum number of idle buffers kept in the depot
+     *                for each size class
+     * @param magazineSize maximum number of buffers kept in each thread's
+     *                     magazine for each size class
+     */
+    public MagazineBufferCache(String name, long maxAcquiredBytes,
+                               int[] sizes, int maxIdle, int magazineSize)
+    {
+        if (magazineSize < 2) {
+            throw new IllegalArgumentException("Magazine size must be at" +
+                                               " least 2, not " +
+                                               magazineSize);
+        }
+
+        this.name = name;
+        this.magazineSize = magazineSize;
+
+        depot = new PooledBufferCache(name, maxAcquiredBytes, sizes, maxIdle);
+
+        final int numClasses = depot.getNumSizeClasses();
+        magazines = new ThreadLocal<Magazine>() {
+                @Override
+                protected Magazine initialValue()
+                {
+                    Magazine mag =
+                        new Magazine(numClasses,
+                                     MagazineBufferCache.this.magazineSize);
+                    synchronized (allMagazines) {
+                        allMagazines.add(mag);
+                    }
+                    return mag;
+                }
+            };
+    }
+
+    /**
+     * Acquire a byte buffer
+     * @param iLength number of bytes
+     * @return byte buffer
+     */
+    @Override
+    public ByteBuffer acquireBuffer(int iLength)
+    {
+        final int idx = depot.findSizeClass(iLength);
+
+        if (!bound.reserve(idx < 0 ? iLength : depot.getClassSize(idx))) {
+            return null;
+        }
+
+        acquiredBufferCount.increment();
+        totalBufferCount.increment();
+
+        if (idx < 0) {
+            typeCounters.acquired(iLength);
+            acquiredBytes.add(iLength);
+            cacheMisses.increment();
+            createdBufferCount.increment();
+            return ByteBuffer.allocate(iLength);
+        }
+
+        final int cap = depot.getClassSize(idx);
+        typeCounters.acquired(cap);
+        acquiredBytes.add(cap);
+
+        Magazine mag = magazines.get();
+
+        ByteBuffer buf = mag.pop(idx);
+        if (buf == null) {
+            // refill half of the magazine so the next return has room
+            int num = depot.takeIdle(idx, mag.stacks[idx], magazineSize / 2);
+            if (num == 0 && reclaimOrphans()) {
+                num = depot.takeIdle(idx, mag.stacks[idx], magazineSize / 2);
+            }
+            if (num > 0) {
+                mag.counts[idx] = num;
+                magazineBuffers.add(num);
+                magazineBytes.add((long) num * cap);
+                buf = mag.pop(idx);
+            }
+        }
+
+        if (buf == null) {
+            cacheMisses.increment();
+            createdBufferCount.increment();
+
+            buf = ByteBuffer.allocate(cap);
+            buf.limit(iLength);
+            return buf;
+        }
+
+        cacheHits.increment();
+        magazineBuffers.decrement();
+        magazineBytes.add(-cap);
+        depot.markInUse(buf);
+
+        return PooledBufferCache.resetBuffer(buf, iLength);
+    }
+
+    /**
+     * Return all buffers in the current thread's magazine to the shared
+     * depot.
+     */
+    public void flush()
+    {
+        drainAll(magazines.get());
+    }
+
+    /**
+     * Move buffers from the top of a magazine to the depot.
+     * @param mag magazine
+     * @param idx size class index
+     * @param num number of buffers to move
+     */
+    private void drain(Magazine mag, int idx, int num)
+    {
+        if (num <= 0) {
+            return;
+        }
+
+        ByteBuffer[] stack = mag.stacks[idx];
+        final int base = mag.counts[idx] - num;
+
+        // anything which doesn't fit in the depot is left for the
+        // garbage collector
+        depot.putIdle(idx, stack, base, num);
+
+        for (int i = base; i < base + num; i++) {
+            stack[i] = null;
+        }
+        mag.counts[idx] = base;
+
+        magazineBuffers.add(-num);
+        magazineBytes.add(-((long) num * depot.getClassSize(idx)));
+    }
+
+    /**
+     * Move all buffers from a magazine to the depot.
+     * @param mag magazine
+     */
+    private void drainAll(Magazine mag)
+    {
+        for (int idx = 0; idx < mag.counts.length; idx++) {
+            drain(mag, idx, mag.counts[idx]);
+        }
+    }
+
+    /**
+     * Get histogram of acquired buffer sizes
+     * @return array indexed by log2(size)
+     */
+    @Override
+    public long[] getAcquiredSizeHistogram()
+    {
+        return typeCounters.getAcquiredSizes();
+    }
+
+    /**
+     * Get number of requests refused because of the upper limit
+     * @return value
+     */
+    @Override
+    public long getBoundRejections()
+    {
+        return bound.getBoundRejections();
+    }
+
+    /**
+     * Get total time spent waiting for the upper limit
+     * @return number of milliseconds
+     */
+    @Override
+    public long getBoundWaitMillis()
+    {
+        return bound.getBoundWaitMillis();
+    }
+
+    /**
+     * Get number of requests which waited for the upper limit
+     * @return value
+     */
+    @Override
+    public long getBoundWaits()
+    {
+        return bound.getBoundWaits();
+    }
+
+    /**
+     * Get number of cache hits
+     * @return value
+     */
+    @Override
+    public long getCacheHits()
+    {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Get number of cache misses
+     * @return value
+     */
+    @Override
+    public long getCacheMisses()
+    {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Get number of currently buffers acquired
+     * @return value
+     */
+    @Override
+    public int getCurrentAcquiredBuffers()
+    {
+        return acquiredBufferCount.intValue();
+    }
+
+    /**
+     * Get number of currently acquired bytes
+     * @return value
+     */
+    @Override
+    public long getCurrentAcquiredBytes()
+    {
+        return acquiredBytes.sum();
+    }
+
+    /**
+     * Get maximum number of buffers held by each thread for each size class
+     * @return value
+     */
+    @Override
+    public int getMagazineSize()
+    {
+        return magazineSize;
+    }
+
+    /**
+     * Get the buffer cache name
+     * @return name
+     */
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Get number of idle buffers in the depot and in all magazines
+     * @return value
+     */
+    @Override
+    public int getPooledBuffers()
+    {
+        return depot.getPooledBuffers() + magazineBuffers.intValue();
+    }
+
+    /**
+     * Get number of buffers returned for each payload type
+     * @return array indexed by payload type (0 holds unknown types)
+     */
+    @Override
+    public long[] getReturnedBuffersByType()
+    {
+        return typeCounters.getReturnedBuffers();
+    }
+
+    /**
+     * Get number of bytes returned for each payload type
+     * @return array indexed by payload type (0 holds unknown types)
+     */
+    @Override
+    public long[] getReturnedBytesByType()
+    {
+        return typeCounters.getReturnedBytes();
+    }
+
+    /**
+     * Get histogram of returned buffer sizes
+     * @return array indexed by log2(size)
+     */
+    @Override
+    public long[] getReturnedSizeHistogram()
+    {
+        return typeCounters.getReturnedSizes();
+    }
+
+    /**
+     * Get number of buffers returned.
+     * @return value
+     */
+    @Override
+    public int getReturnBufferCount()
+    {
+        return returnedBuffers.intValue();
+    }
+
+    /**
+     * Get total number of buffers acquired
+     * @return value
+     */
+    @Override
+    public int getTotalBuffersAcquired()
+    {
+        return totalBufferCount.intValue();
+    }
+
+    /**
+     * Get total number of buffers allocated from the heap
+     * @return value
+     */
+    @Override
+    public int getTotalBuffersCreated()
+    {
+        return createdBufferCount.intValue();
+    }
+
+    /**
+     * Get total number of buffers returned
+     * @return value
+     */
+    @Override
+    public int getTotalBuffersReturned()
+    {
+        return returnedBuffers.intValue();
+    }
+
+    /**
+     * Get total number of bytes held in idle buffers
+     * @return value
+     */
+    @Override
+    public long getTotalBytesInCache()
+    {
+        return depot.getTotalBytesInCache() + magazineBytes.sum();
+    }
+
+    /**
+     * Return <tt>true</tt> if there are no unreturned buffers
+     * @return value
+     */
+    @Override
+    public boolean isBalanced()
+    {
+        return acquiredBufferCount.sum() == 0;
+    }
+
+    /**
+     * Does this buffer cache have an upper limit?
+     * @return <tt>true</tt> if cache is bounded
+     */
+    @Override
+    public boolean isCacheBounded()
+    {
+        return depot.isCacheBounded();
+    }
+
+    /**
+     * Get the upper limit for this buffer cache
+     * @return value
+     */
+    @Override
+    public long getMaxAcquiredBytes()
+    {
+        return depot.getMaxAcquiredBytes();
+    }
+
+    /**
+     * Move the buffers held by magazines of threads which have exited
+     * back to the depot.
+     * @return <tt>true</tt> if any magazines were reclaimed
+     */
+    private boolean reclaimOrphans()
+    {
+        boolean reclaimed = false;
+        synchronized (allMagazines) {
+            for (Iterator<Magazine> it = allMagazines.iterator();
+                 it.hasNext(); )
+            {
+                Magazine mag = it.next();
+
+                final Thread owner = mag.owner.get();
+                if (owner == null || !owner.isAlive()) {
+                    // the owner is gone, so nothing else touches the
+                    // magazine
+                    drainAll(mag);
+                    it.remove();
+                    reclaimed = true;
+                }
+            }
+        }
+
+        return reclaimed;
+    }
+
+    /**
+     * Return a buffer
+     * @param tByteBuffer buffer
+     */
+    @Override
+    public void returnBuffer(ByteBuffer tByteBuffer)
+    {
+        final int cap = tByteBuffer.capacity();
+
+        final int idx = depot.findExactSizeClass(cap);
+        final boolean reuse = idx >= 0 && depot.isReusable(tByteBuffer);
+
+        if (reuse && !depot.markIdle(tByteBuffer)) {
+            LOG.error("Ignoring " + cap + "-byte buffer which was returned" +
+                      " twice: " + toString());
+            return;
+        }
+
+        typeCounters.returned(PayloadTypeCounters.getPayloadType(tByteBuffer),
+                              cap);
+        acquiredBufferCount.decrement();
+        acquiredBytes.add(-cap);
+        returnedBuffers.increment();
+
+        bound.release(cap);
+
+        if (!reuse) {
+            return;
+        }
+
+        Magazine mag = magazines.get();
+        if (mag.counts[idx] == magazineSize) {
+            drain(mag, idx, magazineSize / 2);
+        }
+
+        mag.stacks[idx][mag.counts[idx]++] = tByteBuffer;
+        magazineBuffers.increment();
+        magazineBytes.add(cap);
+    }
+
+    /**
+     * Return a buffer which held a payload in only its first
+     * <tt>numBytes</tt> bytes.  The bytes are attributed to the payload
+     * type found in the buffer.
+     * @param buf byte buffer
+     * @param numBytes number of bytes used by the payload
+     */
+    @Override
+    public void returnBuffer(ByteBuffer buf, int numBytes)
+    {
+        returnBuffer(numBytes, PayloadTypeCounters.getPayloadType(buf));
+    }
+
+    /**
+     * Return a "buffer"
+     * @param numBytes buffer capacity
+     */
+    @Override
+    public void returnBuffer(int numBytes)
+    {
+        returnBuffer(numBytes, PayloadTypeCounters.UNKNOWN_TYPE);
+    }
+
+    /**
+     * Return a "buffer" which held a payload of a known type
+     * @param numBytes buffer capacity
+     * @param payloadType payload type
+     */
+    @Override
+    public void returnBuffer(int numBytes, int payloadType)
+    {
+        final int len = depot.getAllocatedLength(numBytes);
+
+        typeCounters.returned(payloadType, len);
+        acquiredBufferCount.decrement();
+        acquiredBytes.add(-len);
+        returnedBuffers.increment();
+
+        bound.release(len);
+    }
+
+    /**
+     * Enforce the upper limit for this buffer cache.  This should be called
+     * before any buffers are acquired.
+     * @param policy what to do when a request would exceed the limit
+     * @param timeoutMillis maximum number of milliseconds to wait when the
+     *                      policy is <tt>BLOCK</tt>
+     * @param listener notified when the limit is reached
+     *                 (may be <tt>null</tt>)
+     */
+    public void setBoundPolicy(BoundPolicy policy, long timeoutMillis,
+                               IBufferPressureListener listener)
+    {
+        bound.setBoundPolicy(this, policy, timeoutMillis, listener);
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "MagazineBufferCache[" + name + ",buf=" +
+            acquiredBufferCount.sum() + ",byt=" + acquiredBytes.sum() +
+            "(max=" + getMaxAcquiredBytes() + "),totBuf=" +
+            totalBufferCount.sum() + ",hit=" + cacheHits.sum() + ",miss=" +
+            cacheMisses.sum() + ",idle=" + getPooledBuffers() + "]";
+    }
+
+    /**
+     * Idle buffers owned by a single thread
+     */
+    private static final class Magazine
+    {
+        /** thread which uses this magazine */
+        private WeakReference<Thread> owner =
+            new WeakReference<Thread>(Thread.currentThread());
+        /** stack of idle buffers for each size class */
+        private ByteBuffer[][] stacks;
+        /** number of idle buffers in each stack */
+        private int[] counts;
+
+        /**
+         * Create an empty magazine
+         * @param numClasses number of size classes
+         * @param size maximum number of buffers for each size class
+         */
+        Magazine(int numClasses, int size)
+        {
+            stacks = new ByteBuffer[numClasses][size];
+            counts = new int[numClasses];
+        }
+
+        /**
+         * Remove an idle buffer
+         * @param idx size class index
+         * @return idle buffer (or <tt>null</tt> if the stack is empty)
+         */
+        ByteBuffer pop(int idx)
+        {
+            if (counts[idx] == 0) {
+                return null;
+            }
+
+            ByteBuffer buf = stacks[idx][--counts[idx]];
+            stacks[idx][counts[idx]] = null;
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package icecube.daq.payload.impl;
+
+/**
+ * MBean interface for magazine buffer cache.
+ */
+public interface MagazineBufferCacheMBean
+    extends PooledBufferCacheMBean
+{
+    /**
+     * Get maximum number of buffers held by each thread for each size class
+     * @return value
+     */
+    int getMagazineSize();
+}
@@ -0,0 +1,314 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IPayload;
+import icecube.daq.payload.PayloadException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read payloads from a memory-mapped file.  Payloads are decoded directly
+ * from the mapped memory without being copied.
+ *
+ * A single mapping cannot be larger than 2GB, so the file is mapped one
+ * window at a time.  When the cursor reaches a payload which crosses the
+ * end of the current window, a new window is mapped starting at that
+ * payload.
+ *
+ * Payloads returned by <tt>getPayload()</tt> keep their window alive, so
+ * they stay valid after the reader moves on (and even after it is
+ * closed).  Payloads from <tt>getFlyweight()</tt> are reused by the next
+ * call.
+ */
+public class MappedPayloadReader
+    implements Closeable
+{
+    /** Default number of bytes in each mapped window */
+    public static final int DEFAULT_WINDOW_SIZE = 1024 * 1024 * 1024;
+
+    /** mapped file */
+    private FileChannel chan;
+    /** file length */
+    private long fileSize;
+    /** factory used to decode payloads */
+    private PayloadFactory factory;
+    /** preferred number of bytes in each window */
+    private int windowSize;
+
+    /** currently mapped section of the file */
+    private MappedByteBuffer window;
+    /** file offset of the current window */
+    private long windowStart;
+    /** payload framing within the current window */
+    private PayloadCursor cursor;
+
+    /** number of complete payloads found */
+    private long numPayloads;
+
+    /**
+     * Open a file using the default window size
+     * @param file payload file
+     * @param factory factory used to decode payloads
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedPayloadReader(File file, PayloadFactory factory)
+        throws IOException
+    {
+        this(file, factory, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Open a file
+     * @param file payload file
+     * @param factory factory used to decode payloads
+     * @param windowSize preferred number of bytes in each mapped window
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedPayloadReader(File file, PayloadFactory factory,
+                               int windowSize)
+        throws IOException
+    {
+        if (factory == null) {
+            throw new IllegalArgumentException("Factory cannot be null");
+        } else if (windowSize < BasePayload.LEN_PAYLOAD_HEADER) {
+            throw new IllegalArgumentException("Window size " + windowSize +
+                                               " is too small");
+        }
+
+        this.factory = factory;
+        this.windowSize = windowSize;
+
+        RandomAccessFile raFile = new RandomAccessFile(file, "r");
+        try {
+            chan = raFile.getChannel();
+            fileSize = chan.size();
+
+            map(0L, 0);
+        } catch (IOException ioe) {
+            closeAfterFailure(raFile);
+            throw ioe;
+        } catch (RuntimeException rte) {
+            closeAfterFailure(raFile);
+            throw rte;
+        }
+    }
+
+    /**
+     * Close the file.  Mapped memory is released once it is no longer
+     * referenced.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        chan.close();
+    }
+
+    /**
+     * Close a file which could not be opened as a payload reader.  Any
+     * error is ignored so the caller can rethrow the original problem.
+     * @param raFile partially opened file
+     */
+    private static void closeAfterFailure(RandomAccessFile raFile)
+    {
+        try {
+            raFile.close();
+        } catch (IOException ioe) {
+            // ignore; the original exception is more useful
+        }
+    }
+
+    /**
+     * Get the mapped window holding the current payload
+     * @return mapped window
+     */
+    ByteBuffer getBuffer()
+    {
+        return window;
+    }
+
+    /**
+     * Get the index of the current payload within the mapped window
+     * @return window offset
+     */
+    int getBufferOffset()
+    {
+        return cursor.getOffset();
+    }
+
+    /**
+     * Get the file offset of the current payload
+     * @return file offset
+     */
+    public long getFileOffset()
+    {
+        return windowStart + cursor.getOffset();
+    }
+
+    /**
+     * Get the file length
+     * @return number of bytes
+     */
+    public long getFileSize()
+    {
+        return fileSize;
+    }
+
+    /**
+     * Get a reusable per-thread view of the current payload
+     * @return reusable payload
+     * @throws PayloadException if there is a problem
+     */
+    public IPayload getFlyweight()
+        throws PayloadException
+    {
+        return cursor.getFlyweight();
+    }
+
+    /**
+     * Get the length of the current payload
+     * @return number of bytes
+     */
+    public int getLength()
+    {
+        return cursor.getLength();
+    }
+
+    /**
+     * Get the number of complete payloads found
+     * @return value
+     */
+    public long getNumPayloads()
+    {
+        return numPayloads;
+    }
+
+    /**
+     * Decode the current payload directly from the mapped file
+     * @return new payload
+     * @throws PayloadException if there is a problem
+     */
+    public IPayload getPayload()
+        throws PayloadException
+    {
+        return cursor.getPayload();
+    }
+
+    /**
+     * Get the type of the current payload
+     * @return payload type
+     */
+    public int getPayloadType()
+    {
+        return cursor.getPayloadType();
+    }
+
+    /**
+     * Get the time of the current payload
+     * @return UTC time
+     */
+    public long getUTCTime()
+    {
+        return cursor.getUTCTime();
+    }
+
+    /**
+     * Map a new window
+     * @param start file offset
+     * @param minLen minimum number of bytes needed
+     * @throws IOException if the file cannot be mapped
+     */
+    private void map(long start, int minLen)
+        throws IOException
+    {
+        final long len = Math.min(fileSize - start,
+                                  (long) Math.max(windowSize, minLen));
+
+        window = chan.map(FileChannel.MapMode.READ_ONLY, start, len);
+        windowStart = start;
+
+        if (cursor == null) {
+            cursor = new PayloadCursor(factory, window);
+        } else {
+            cursor.reset(window, 0);
+        }
+    }
+
+    /**
+     * Move to the next complete payload, mapping the next section of the
+     * file if necessary
+     * @return <tt>false</tt> at end of file
+     * @throws IOException if the file cannot be mapped
+     * @throws PayloadException if the file contains a bad payload or ends
+     *                          in the middle of a payload
+     */
+    public boolean next()
+        throws IOException, PayloadException
+    {
+        while (true) {
+            if (cursor.next()) {
+                numPayloads++;
+                return true;
+            }
+
+            final int remaining = cursor.getRemaining();
+            if (windowStart + window.limit() >= fileSize) {
+                if (remaining == 0) {
+                    return false;
+                }
+
+                throw new PayloadException("File ends with " + remaining +
+                                           " bytes of a partial payload");
+            }
+
+            int minLen = 0;
+            if (remaining >= BasePayload.OFFSET_LENGTH + 4) {
+                minLen = window.getInt(cursor.getResumeOffset() +
+                                       BasePayload.OFFSET_LENGTH);
+            }
+
+            map(windowStart + cursor.getResumeOffset(), minLen);
+        }
+    }
+
+    /**
+     * Move to the payload which starts at a file offset.  The next call to
+     * <tt>next()</tt> will return that payload.
+     * @param fileOffset file offset of a payload
+     * @throws IOException if the file cannot be mapped
+     */
+    public void seek(long fileOffset)
+        throws IOException
+    {
+        if (fileOffset < 0 || fileOffset > fileSize) {
+            throw new IllegalArgumentException("Bad offset " + fileOffset +
+                                               " for " + fileSize +
+                                               "-byte file");
+        }
+
+        if (fileOffset >= windowStart &&
+            fileOffset <= windowStart + window.limit())
+        {
+            cursor.reset(window, (int) (fileOffset - windowStart));
+        } else {
+            map(fileOffset, 0);
+        }
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "MappedPayloadReader[" + cursor + ",win=" + windowStart +
+            "/" + fileSize + ",num=" + numPayloads + "]";
+    }
+}
@@ -213,40 +213,33 @@ public abstract class Monitor
 
         domId = buf.getLong(pos + OFFSET_DOMID);
 
-        final ByteOrder origOrder = buf.order();
-        final int origPos = buf.position();
-
-        short recLen;
-        int totLen;
-
-        try {
-            short recType = buf.getShort(pos + OFFSET_RECTYPE);
-            if ((recType & (short) 0xff) == 0) {
-                if (origOrder == ByteOrder.LITTLE_ENDIAN) {
-                    buf.order(ByteOrder.BIG_ENDIAN);
-                } else {
-                    buf.order(ByteOrder.LITTLE_ENDIAN);
-                }
-
-                recType = buf.getShort(pos + OFFSET_RECTYPE);
+        // records may use the opposite byte order; read them through a view
+        // rather than changing the order of a buffer other threads may share
+        ByteBuffer recBuf = buf;
+
+        short recType = recBuf.getShort(pos + OFFSET_RECTYPE);
+        if ((recType & (short) 0xff) == 0) {
+            if (buf.order() == ByteOrder.LITTLE_ENDIAN) {
+                recBuf = BufferUtil.withOrder(buf, ByteOrder.BIG_ENDIAN);
+            } else {
+                recBuf = BufferUtil.withOrder(buf, ByteOrder.LITTLE_ENDIAN);
             }
 
-            if (recType != getRecordType()) {
-                throw new PayloadException("Record type should be " +
-                                           getRecordType() + ", not " +
-                                           recType);
-            }
+            recType = recBuf.getShort(pos + OFFSET_RECTYPE);
+        }
 
-            recLen = buf.getShort(pos + OFFSET_RECLEN);
+        if (recType != getRecordType()) {
+            throw new PayloadException("Record type should be " +
+                                       getRecordType() + ", not " +
+                                       recType);
+        }
 
-            clockBytes = loadByteArray(buf, pos + OFFSET_DOMCLOCK, 6);
+        final short recLen = recBuf.getShort(pos + OFFSET_RECLEN);
 
-            totLen = loadRecord(buf, pos + OFFSET_DATA,
-                                recLen - REC_HEADER_LEN);
-        } finally {
-            buf.position(origPos);
-            buf.order(origOrder);
-        }
+        clockBytes = loadByteArray(recBuf, pos + OFFSET_DOMCLOCK, 6);
+
+        final int totLen = loadRecord(recBuf, pos + OFFSET_DATA,
+                                      recLen - REC_HEADER_LEN);
 
         if (totLen + REC_HEADER_LEN != recLen) {
             throw new PayloadException("Expected monitor record length is " +
@@ -259,10 +252,7 @@ public abstract class Monitor
 
     static byte[] loadByteArray(ByteBuffer buf, int pos, int len)
     {
-        byte[] array = new byte[len];
-        buf.position(pos);
-        buf.get(array, 0, array.length);
-        return array;
+        return BufferUtil.getBytes(buf, pos, new byte[len]);
     }
 
     /**
@@ -292,12 +282,7 @@ public abstract class Monitor
         }
 
         // make sure we can load the field(s) needed in compareSpliceable()
-        final int bodyOffset;
-        if (offset == 0) {
-            bodyOffset = OFFSET_PAYLOAD;
-        } else {
-            bodyOffset = 0;
-        }
+        final int bodyOffset = OFFSET_PAYLOAD;
 
         if (bodyOffset + OFFSET_DOMID + 8 > len) {
             throw new PayloadException("Cannot load field at offset " +
@@ -323,12 +308,9 @@ public abstract class Monitor
     public int putBody(ByteBuffer buf, int offset)
         throws PayloadException
     {
-        final int origPos = buf.position();
-
         buf.putLong(offset + OFFSET_DOMID, domId);
 
-        buf.position(offset + OFFSET_DOMCLOCK);
-        buf.put(clockBytes);
+        BufferUtil.putBytes(buf, offset + OFFSET_DOMCLOCK, clockBytes);
 
         final int totLen = putRecord(buf, offset + OFFSET_DATA);
 
@@ -336,8 +318,6 @@ public abstract class Monitor
                      (short) (totLen + REC_HEADER_LEN));
         buf.putShort(offset + OFFSET_RECTYPE, getRecordType());
 
-        buf.position(origPos);
-
         return OFFSET_DATA + totLen;
     }
 
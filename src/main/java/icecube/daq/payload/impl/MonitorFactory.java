@@ -22,6 +22,23 @@ public final class MonitorFactory
     {
     }
 
+    /**
+     * Get the monitoring record type without creating a payload.
+     * @param buf byte buffer
+     * @param offset index of first byte of the monitoring payload
+     * @return record type (<tt>Monitor.ASCII</tt>, <tt>Monitor.CONFIG</tt>,
+     *         etc.)
+     */
+    public static short getMonitorType(ByteBuffer buf, int offset)
+    {
+        short recType = buf.getShort(offset + OFFSET_RECTYPE);
+        if ((recType & (short) 0xff) == 0) {
+            recType = (short) ((recType >> 8) & 0xff);
+        }
+
+        return recType;
+    }
+
     /**
      * Get a monitoring payload from the byte buffer.
      * @param buf byte buffer
@@ -42,10 +59,7 @@ public final class MonitorFactory
                                        ")");
         }
 
-        short recType = buf.getShort(offset + OFFSET_RECTYPE);
-        if ((recType & (short) 0xff) == 0) {
-            recType = (short) ((recType >> 8) & 0xff);
-        }
+        final short recType = getMonitorType(buf, offset);
 
         Monitor mon;
         switch (recType) {
@@ -0,0 +1,448 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IPayloadVisitor;
+import icecube.daq.payload.PayloadException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Process a large payload file in parallel.  The file is split into
+ * fixed-size chunks and each chunk is handled by a separate fork/join
+ * task, which maps its part of the file, finds the first payload which
+ * starts inside the chunk, and visits every payload starting in the chunk.
+ *
+ * Since a chunk can start in the middle of a payload, the first payload is
+ * found by looking for a plausible header (see
+ * <tt>PayloadHeader.isPlausible()</tt>) which is followed by a chain of
+ * further plausible headers.  The chunk results are then merged
+ * in file order.  While merging, each chunk's starting point is checked
+ * against the point where the previous chunk's payloads ended; if the two
+ * disagree (because payload contents happened to look like a chain of
+ * headers) the chunk is reprocessed from the correct offset, so the
+ * results are always the same as those of a single sequential pass.
+ */
+public class ParallelPayloadScanner
+    implements Closeable
+{
+    private static final Logger LOG =
+        Logger.getLogger(ParallelPayloadScanner.class);
+
+    /** Default number of bytes in each chunk */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+    /** Default maximum payload length */
+    public static final int DEFAULT_MAX_LENGTH = 64 * 1024 * 1024;
+    /** Default number of headers which must be chained to find a payload */
+    public static final int DEFAULT_CHAIN_LENGTH = 4;
+
+    /** Marker for a chunk in which no payload was found */
+    private static final long NO_PAYLOAD = -1L;
+
+    /** scanned file */
+    private FileChannel chan;
+    /** file length */
+    private long fileSize;
+    /** factory used to decode payloads */
+    private PayloadFactory factory;
+    /** number of bytes in each chunk */
+    private int chunkSize;
+    /** largest payload which will be accepted */
+    private int maxLength;
+    /** number of headers which must be chained to find a payload */
+    private int chainLength = DEFAULT_CHAIN_LENGTH;
+
+    /**
+     * Open a file using the default chunk size and maximum payload length
+     * @param file payload file
+     * @param factory factory used to decode payloads
+     * @throws IOException if the file cannot be opened
+     */
+    public ParallelPayloadScanner(File file, PayloadFactory factory)
+        throws IOException
+    {
+        this(file, factory, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Open a file
+     * @param file payload file
+     * @param factory factory used to decode payloads
+     * @param chunkSize number of bytes in each chunk
+     * @param maxLength largest payload which will be accepted
+     * @throws IOException if the file cannot be opened
+     */
+    public ParallelPayloadScanner(File file, PayloadFactory factory,
+                                  int chunkSize, int maxLength)
+        throws IOException
+    {
+        if (factory == null) {
+            throw new IllegalArgumentException("Factory cannot be null");
+        } else if (chunkSize < BasePayload.LEN_PAYLOAD_HEADER) {
+            throw new IllegalArgumentException("Chunk size " + chunkSize +
+                                               " is too small");
+        } else if (maxLength < BasePayload.LEN_PAYLOAD_HEADER) {
+            throw new IllegalArgumentException("Bad maximum length " +
+                                               maxLength);
+        } else if ((long) chunkSize + (long) maxLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chunk size plus maximum" +
+                                               " length cannot exceed " +
+                                               Integer.MAX_VALUE);
+        }
+
+        this.factory = factory;
+        this.chunkSize = chunkSize;
+        this.maxLength = maxLength;
+
+        RandomAccessFile raFile = new RandomAccessFile(file, "r");
+        chan = raFile.getChannel();
+        fileSize = chan.size();
+    }
+
+    /**
+     * Close the file.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        chan.close();
+    }
+
+    /**
+     * Get the number of chunks
+     * @return number of chunks
+     */
+    public int getNumChunks()
+    {
+        return (int) ((fileSize + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Is the candidate header followed by a chain of plausible headers?
+     * @param buf mapped file section
+     * @param pos index of candidate header
+     * @param atEOF <tt>true</tt> if the buffer ends at the end of the file
+     * @return <tt>true</tt> if this is probably the start of a payload
+     */
+    private boolean isPayloadStart(ByteBuffer buf, int pos, boolean atEOF)
+    {
+        int next = pos;
+        for (int i = 0; i < chainLength; i++) {
+            if (next == buf.limit() && atEOF) {
+                // chain ends exactly at the end of the file
+                return true;
+            } else if (next + BasePayload.LEN_PAYLOAD_HEADER > buf.limit()) {
+                // chain runs past the mapped section; accept it if it
+                // has been confirmed by at least one more header
+                return !atEOF && i > 1;
+            } else if (!PayloadHeader.isPlausible(buf, next, maxLength)) {
+                return false;
+            }
+
+            next += PayloadHeader.getLength(buf, next);
+        }
+
+        return true;
+    }
+
+    /**
+     * Map the part of the file needed to process a chunk, which includes
+     * room for a final payload which crosses the end of the chunk
+     * @param start file offset of first byte
+     * @return mapped section
+     * @throws IOException if the file cannot be mapped
+     */
+    private ByteBuffer map(long start)
+        throws IOException
+    {
+        final long len = Math.min(fileSize - start,
+                                  (long) chunkSize + (long) maxLength);
+        return chan.map(FileChannel.MapMode.READ_ONLY, start, len);
+    }
+
+    /**
+     * Visit every payload which starts between <tt>start</tt> and
+     * <tt>end</tt>.
+     * @param visitor payload visitor
+     * @param chunk chunk to fill in
+     * @param start file offset of first payload
+     * @throws IOException if the file cannot be mapped
+     * @throws PayloadException if there is a bad payload
+     */
+    private <R> void process(IPayloadVisitor<R> visitor, Chunk<R> chunk,
+                             long start)
+        throws IOException, PayloadException
+    {
+        chunk.start = start;
+        chunk.result = visitor.createResult();
+
+        if (start >= chunk.end) {
+            chunk.exit = start;
+            return;
+        }
+
+        ByteBuffer buf = map(start);
+        PayloadCursor cursor = new PayloadCursor(factory, buf);
+
+        long fileOffset = start;
+        while (fileOffset < chunk.end) {
+            if (!cursor.next()) {
+                if (start + cursor.getResumeOffset() == fileSize) {
+                    break;
+                }
+
+                throw new PayloadException("Bad payload at file offset " +
+                                           fileOffset);
+            }
+
+            visitor.visit(chunk.result, cursor.getPayload(), fileOffset);
+            fileOffset = start + cursor.getResumeOffset();
+        }
+
+        chunk.exit = fileOffset;
+    }
+
+    /**
+     * Find the first payload in a chunk and visit every payload which starts
+     * inside the chunk.
+     * @param visitor payload visitor
+     * @param chunk chunk to process
+     * @throws IOException if the file cannot be mapped
+     * @throws PayloadException if there is a bad payload
+     */
+    private <R> void processChunk(IPayloadVisitor<R> visitor, Chunk<R> chunk)
+        throws IOException, PayloadException
+    {
+        if (chunk.begin == 0L) {
+            process(visitor, chunk, 0L);
+            return;
+        }
+
+        ByteBuffer buf = map(chunk.begin);
+        final boolean atEOF = chunk.begin + buf.limit() == fileSize;
+        final int chunkLen = (int) (chunk.end - chunk.begin);
+
+        for (int pos = 0; pos < chunkLen; pos++) {
+            if (PayloadHeader.isPlausible(buf, pos, maxLength) &&
+                isPayloadStart(buf, pos, atEOF))
+            {
+                process(visitor, chunk, chunk.begin + pos);
+                return;
+            }
+        }
+
+        chunk.start = NO_PAYLOAD;
+        chunk.result = visitor.createResult();
+    }
+
+    /**
+     * Visit every payload in the file, processing chunks in parallel on
+     * the common fork/join pool
+     * @param visitor payload visitor
+     * @return merged result
+     * @throws IOException if the file cannot be read
+     * @throws PayloadException if the file contains a bad payload
+     */
+    public <R> R scan(IPayloadVisitor<R> visitor)
+        throws IOException, PayloadException
+    {
+        return scan(visitor, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Visit every payload in the file, processing chunks in parallel
+     * @param visitor payload visitor
+     * @param pool pool used to process chunks
+     * @return merged result
+     * @throws IOException if the file cannot be read
+     * @throws PayloadException if the file contains a bad payload
+     */
+    public <R> R scan(IPayloadVisitor<R> visitor, ForkJoinPool pool)
+        throws IOException, PayloadException
+    {
+        final int numChunks = getNumChunks();
+
+        List<Chunk<R>> chunks = new ArrayList<Chunk<R>>(numChunks);
+        for (int i = 0; i < numChunks; i++) {
+            final long begin = (long) i * chunkSize;
+            chunks.add(new Chunk<R>(begin, Math.min(fileSize,
+                                                    begin + chunkSize)));
+        }
+
+        pool.invoke(new ChunkTask<R>(visitor, chunks, 0, numChunks));
+
+        // merge results in file order, checking that each chunk picks up
+        // exactly where the previous chunk left off
+        R merged = visitor.createResult();
+        long expected = 0L;
+        for (Chunk<R> chunk : chunks) {
+            final boolean consistent;
+            if (chunk.start == NO_PAYLOAD) {
+                consistent = expected >= chunk.end;
+            } else {
+                consistent = chunk.start == expected;
+            }
+
+            if (consistent) {
+                if (chunk.ioe != null) {
+                    throw chunk.ioe;
+                } else if (chunk.pe != null) {
+                    throw chunk.pe;
+                }
+            } else {
+                // a false start usually runs into garbage, so any problem
+                // found while processing it is meaningless
+                chunk.ioe = null;
+                chunk.pe = null;
+
+                LOG.error("Found false payload start " + chunk.start +
+                          " in chunk at " + chunk.begin +
+                          ", reprocessing from " + expected);
+                process(visitor, chunk, expected);
+            }
+
+            merged = visitor.merge(merged, chunk.result);
+            if (chunk.start != NO_PAYLOAD) {
+                expected = chunk.exit;
+            }
+        }
+
+        if (expected != fileSize) {
+            throw new PayloadException("File ends with " +
+                                       (fileSize - expected) +
+                                       " bytes of a partial payload");
+        }
+
+        return merged;
+    }
+
+    /**
+     * Set the number of consecutive headers which must be found to
+     * identify the first payload in a chunk.
+     * @param chainLength number of headers
+     */
+    public void setChainLength(int chainLength)
+    {
+        if (chainLength < 1) {
+            throw new IllegalArgumentException("Bad chain length " +
+                                               chainLength);
+        }
+
+        this.chainLength = chainLength;
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "ParallelPayloadScanner[" + fileSize + "/" + chunkSize +
+            ",chain=" + chainLength + "]";
+    }
+
+    /**
+     * Section of the file
+     */
+    private static class Chunk<R>
+    {
+        /** file offset of the start of the chunk */
+        private long begin;
+        /** file offset of the end of the chunk */
+        private long end;
+
+        /** file offset of the first payload (or <tt>NO_PAYLOAD</tt>) */
+        private long start;
+        /** file offset of the first payload after the chunk */
+        private long exit;
+        /** result for this chunk */
+        private R result;
+
+        /** I/O problem found while processing this chunk */
+        private IOException ioe;
+        /** payload problem found while processing this chunk */
+        private PayloadException pe;
+
+        /**
+         * Create a chunk
+         * @param begin file offset of the start of the chunk
+         * @param end file offset of the end of the chunk
+         */
+        Chunk(long begin, long end)
+        {
+            this.begin = begin;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Fork/join task which processes a range of chunks
+     */
+    private class ChunkTask<R>
+        extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** payload visitor */
+        private IPayloadVisitor<R> visitor;
+        /** list of all chunks */
+        private List<Chunk<R>> chunks;
+        /** index of first chunk */
+        private int lo;
+        /** index after last chunk */
+        private int hi;
+
+        /**
+         * Create a task
+         * @param visitor payload visitor
+         * @param chunks list of all chunks
+         * @param lo index of first chunk
+         * @param hi index after last chunk
+         */
+        ChunkTask(IPayloadVisitor<R> visitor, List<Chunk<R>> chunks, int lo,
+                  int hi)
+        {
+            this.visitor = visitor;
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        /**
+         * Process a single chunk, or split the range in half
+         */
+        @Override
+        protected void compute()
+        {
+            if (hi - lo > 1) {
+                final int mid = (lo + hi) >>> 1;
+                invokeAll(new ChunkTask<R>(visitor, chunks, lo, mid),
+                          new ChunkTask<R>(visitor, chunks, mid, hi));
+                return;
+            }
+
+            if (hi > lo) {
+                Chunk<R> chunk = chunks.get(lo);
+                try {
+                    processChunk(visitor, chunk);
+                } catch (IOException ioe) {
+                    chunk.ioe = ioe;
+                } catch (PayloadException pe) {
+                    chunk.pe = pe;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IPayload;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+
+/**
+ * Collect payloads and write them to a channel in batches, using a single
+ * gathering write for each batch.
+ *
+ * Payloads which were read from a byte buffer and have not been modified
+ * are written straight from that buffer without being copied.  All other
+ * payloads are encoded into a reusable scratch buffer.  Since unmodified
+ * payloads are not copied, they must not be recycled (and their buffers
+ * must not be reused) until the batch has been written by
+ * <tt>flush()</tt>.
+ *
+ * The channel should be in blocking mode, since <tt>flush()</tt> keeps
+ * writing until the whole batch has been sent.
+ */
+public class PayloadBatchWriter
+    implements Closeable
+{
+    /** Default maximum number of payloads in a batch */
+    public static final int DEFAULT_MAX_PAYLOADS = 256;
+    /** Default scratch buffer size */
+    public static final int DEFAULT_SCRATCH_SIZE = 256 * 1024;
+
+    /** destination channel */
+    private GatheringByteChannel chan;
+
+    /** buffers waiting to be written */
+    private ByteBuffer[] batch;
+    /** number of buffers waiting to be written */
+    private int numQueued;
+    /** number of bytes waiting to be written */
+    private long bytesQueued;
+
+    /** buffer used to encode modified payloads */
+    private ByteBuffer scratch;
+
+    /** number of payloads written */
+    private long numPayloads;
+    /** number of payloads which were encoded into the scratch buffer */
+    private long numEncoded;
+    /** number of channel writes */
+    private long numWrites;
+    /** number of bytes written */
+    private long bytesWritten;
+
+    /**
+     * Create a batch writer which uses the default sizes
+     * @param chan destination channel
+     */
+    public PayloadBatchWriter(GatheringByteChannel chan)
+    {
+        this(chan, DEFAULT_MAX_PAYLOADS, DEFAULT_SCRATCH_SIZE);
+    }
+
+    /**
+     * Create a batch writer
+     * @param chan destination channel
+     * @param maxPayloads maximum number of payloads in a batch
+     * @param scratchSize initial size of buffer used to encode modified
+     *                    payloads
+     */
+    public PayloadBatchWriter(GatheringByteChannel chan, int maxPayloads,
+                              int scratchSize)
+    {
+        if (chan == null) {
+            throw new IllegalArgumentException("Channel cannot be null");
+        } else if (maxPayloads < 1) {
+            throw new IllegalArgumentException("Bad maximum batch size " +
+                                               maxPayloads);
+        } else if (scratchSize < BasePayload.LEN_PAYLOAD_HEADER) {
+            throw new IllegalArgumentException("Scratch size " + scratchSize +
+                                               " is too small");
+        }
+
+        this.chan = chan;
+
+        batch = new ByteBuffer[maxPayloads];
+        scratch = ByteBuffer.allocate(scratchSize);
+    }
+
+    /**
+     * Add a payload to the current batch, writing the batch first if it
+     * is full
+     * @param pay payload
+     * @throws IOException if the payload cannot be encoded or written
+     */
+    public void add(IPayload pay)
+        throws IOException
+    {
+        if (numQueued == batch.length) {
+            flush();
+        }
+
+        ByteBuffer bytes = null;
+        if (pay instanceof BasePayload) {
+            bytes = ((BasePayload) pay).getOriginalBytes();
+        }
+
+        if (bytes == null) {
+            bytes = encode(pay);
+        }
+
+        batch[numQueued++] = bytes;
+        bytesQueued += bytes.remaining();
+        numPayloads++;
+    }
+
+    /**
+     * Write any queued payloads and close the channel
+     * @throws IOException if the payloads cannot be written
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        try {
+            flush();
+        } finally {
+            chan.close();
+        }
+    }
+
+    /**
+     * Encode a payload into the scratch buffer
+     * @param pay payload
+     * @return view of the encoded bytes
+     * @throws IOException if the payload cannot be encoded
+     */
+    private ByteBuffer encode(IPayload pay)
+        throws IOException
+    {
+        final int len = pay.length();
+        if (scratch.capacity() - scratch.position() < len) {
+            // queued views still point into the scratch buffer
+            flush();
+
+            if (scratch.capacity() < len) {
+                scratch = ByteBuffer.allocate(len);
+            }
+        }
+
+        final int start = scratch.position();
+
+        ByteBuffer dest = scratch.duplicate();
+        dest.clear();
+        final int written = pay.writePayload(false, start, dest);
+
+        scratch.position(start + written);
+
+        ByteBuffer view = scratch.duplicate();
+        view.limit(start + written);
+        view.position(start);
+
+        numEncoded++;
+        return view;
+    }
+
+    /**
+     * Write all queued payloads to the channel
+     * @throws IOException if the payloads cannot be written
+     */
+    public void flush()
+        throws IOException
+    {
+        int first = 0;
+        while (bytesQueued > 0) {
+            final long num = chan.write(batch, first, numQueued - first);
+            numWrites++;
+            bytesQueued -= num;
+            bytesWritten += num;
+
+            while (first < numQueued && !batch[first].hasRemaining()) {
+                first++;
+            }
+        }
+
+        Arrays.fill(batch, 0, numQueued, null);
+        numQueued = 0;
+        bytesQueued = 0;
+
+        scratch.clear();
+    }
+
+    /**
+     * Get the number of bytes written to the channel
+     * @return number of bytes
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    /**
+     * Get the number of payloads which had to be encoded
+     * @return number of payloads
+     */
+    public long getNumEncoded()
+    {
+        return numEncoded;
+    }
+
+    /**
+     * Get the number of payloads added
+     * @return number of payloads
+     */
+    public long getNumPayloads()
+    {
+        return numPayloads;
+    }
+
+    /**
+     * Get the number of payloads waiting to be written
+     * @return number of payloads
+     */
+    public int getNumQueued()
+    {
+        return numQueued;
+    }
+
+    /**
+     * Get the number of channel writes
+     * @return number of writes
+     */
+    public long getNumWrites()
+    {
+        return numWrites;
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "PayloadBatchWriter[queued " + numQueued + "/" + batch.length +
+            ",num=" + numPayloads + ",enc=" + numEncoded + ",writes=" +
+            numWrites + "]";
+    }
+}
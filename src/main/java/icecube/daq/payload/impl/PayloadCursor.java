@@ -0,0 +1,237 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IPayload;
+import icecube.daq.payload.PayloadException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Walk through a byte buffer holding many length-prefixed payloads.
+ * Each call to <tt>next()</tt> checks one payload header and moves the
+ * cursor to it; the header fields can then be read directly or the
+ * payload can be decoded through the cursor's <tt>PayloadFactory</tt>.
+ *
+ * The cursor stops at the first incomplete payload.  When more data
+ * arrives, copy everything from <tt>getResumeOffset()</tt> onward to the
+ * start of the next buffer (or keep filling the current one) and call
+ * <tt>reset()</tt>.
+ *
+ * The buffer's position and limit are never changed; the cursor reads
+ * everything from its starting offset up to the buffer's current limit.
+ */
+public class PayloadCursor
+{
+    /** factory used to decode payloads */
+    private PayloadFactory factory;
+
+    /** buffer holding concatenated payloads */
+    private ByteBuffer buf;
+    /** index of the first byte after the current payload */
+    private int nextOffset;
+
+    /** index of the current payload (or <tt>-1</tt> if there is none) */
+    private int offset = -1;
+    /** current payload length */
+    private int length;
+    /** current payload type */
+    private int type;
+    /** current payload time */
+    private long utcTime;
+
+    /**
+     * Create a cursor which starts at the beginning of the buffer
+     * @param factory factory used to decode payloads
+     * @param buf buffer holding concatenated payloads
+     */
+    public PayloadCursor(PayloadFactory factory, ByteBuffer buf)
+    {
+        this(factory, buf, 0);
+    }
+
+    /**
+     * Create a cursor
+     * @param factory factory used to decode payloads
+     * @param buf buffer holding concatenated payloads
+     * @param offset index of first payload
+     */
+    public PayloadCursor(PayloadFactory factory, ByteBuffer buf, int offset)
+    {
+        if (factory == null) {
+            throw new IllegalArgumentException("Factory cannot be null");
+        }
+
+        this.factory = factory;
+
+        reset(buf, offset);
+    }
+
+    /**
+     * Get a reusable per-thread view of the current payload
+     * (see <tt>PayloadFactory.getFlyweight()</tt>)
+     * @return reusable payload
+     * @throws PayloadException if there is a problem
+     */
+    public IPayload getFlyweight()
+        throws PayloadException
+    {
+        checkCurrent();
+        return factory.getFlyweight(buf, offset, length, type, utcTime);
+    }
+
+    /**
+     * Get the length of the current payload
+     * @return number of bytes
+     */
+    public int getLength()
+    {
+        checkCurrent();
+        return length;
+    }
+
+    /**
+     * Get the index of the current payload
+     * @return offset
+     */
+    public int getOffset()
+    {
+        checkCurrent();
+        return offset;
+    }
+
+    /**
+     * Decode the current payload.  The payload is decoded in place and is
+     * not given a buffer cache, since the caller owns the whole buffer.
+     * @return new payload
+     * @throws PayloadException if there is a problem
+     */
+    public IPayload getPayload()
+        throws PayloadException
+    {
+        checkCurrent();
+        return factory.getPayload(buf, offset, length, type, utcTime);
+    }
+
+    /**
+     * Get the type of the current payload
+     * @return payload type
+     */
+    public int getPayloadType()
+    {
+        checkCurrent();
+        return type;
+    }
+
+    /**
+     * Get the number of unread bytes, including any incomplete payload
+     * @return number of bytes
+     */
+    public int getRemaining()
+    {
+        return buf.limit() - nextOffset;
+    }
+
+    /**
+     * Get the index of the first byte which has not been consumed.
+     * Once <tt>next()</tt> returns <tt>false</tt>, this is the start of
+     * the incomplete payload (or the buffer limit).
+     * @return offset
+     */
+    public int getResumeOffset()
+    {
+        return nextOffset;
+    }
+
+    /**
+     * Get the time of the current payload
+     * @return UTC time
+     */
+    public long getUTCTime()
+    {
+        checkCurrent();
+        return utcTime;
+    }
+
+    /**
+     * Is there an incomplete payload at the end of the buffer?
+     * @return <tt>true</tt> if unread bytes remain
+     */
+    public boolean isTruncated()
+    {
+        return nextOffset < buf.limit();
+    }
+
+    /**
+     * Make sure <tt>next()</tt> has found a payload
+     */
+    private void checkCurrent()
+    {
+        if (offset < 0) {
+            throw new IllegalStateException("No current payload");
+        }
+    }
+
+    /**
+     * Move to the next complete payload
+     * @return <tt>false</tt> if there are no more complete payloads
+     * @throws PayloadException if the next payload header is bad
+     */
+    public boolean next()
+        throws PayloadException
+    {
+        offset = -1;
+
+        final int avail = buf.limit() - nextOffset;
+        if (avail < BasePayload.LEN_PAYLOAD_HEADER) {
+            return false;
+        }
+
+        final int len = PayloadHeader.getLength(buf, nextOffset);
+        if (len < BasePayload.LEN_PAYLOAD_HEADER) {
+            throw new PayloadException("Bad length " + len +
+                                       " for payload at offset " +
+                                       nextOffset);
+        } else if (len > avail) {
+            return false;
+        }
+
+        offset = nextOffset;
+        length = len;
+        type = PayloadHeader.getType(buf, offset);
+        utcTime = PayloadHeader.getUTCTime(buf, offset);
+
+        nextOffset += len;
+        return true;
+    }
+
+    /**
+     * Start over with a new (or refilled) buffer
+     * @param buf buffer holding concatenated payloads
+     * @param offset index of first payload
+     */
+    public void reset(ByteBuffer buf, int offset)
+    {
+        if (buf == null) {
+            throw new IllegalArgumentException("ByteBuffer is null");
+        } else if (offset < 0 || offset > buf.limit()) {
+            throw new IllegalArgumentException("Illegal offset " + offset +
+                                               " for " + buf.limit() +
+                                               "-byte buffer");
+        }
+
+        this.buf = buf;
+        nextOffset = offset;
+
+        this.offset = -1;
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "PayloadCursor[off=" + offset + ",next=" + nextOffset +
+            ",lim=" + buf.limit() + "]";
+    }
+}
@@ -32,11 +32,25 @@ public class PayloadFactory
      */
     private static final boolean DOUBLE_CHECK_LENGTH = false;
 
+    /** Number of slots needed to hold one payload of each type */
+    private static final int NUM_TYPES =
+        PayloadRegistry.PAYLOAD_ID_SIMPLER_HIT + 1;
+
     /** Payload buffer cache */
     private IByteBufferCache bufCache;
     /** Source ID for hits */
     private SourceID hitSrc;
 
+    /** Per-thread reusable payloads, indexed by payload type */
+    private ThreadLocal<BasePayload[]> flyweights =
+        new ThreadLocal<BasePayload[]>() {
+            @Override
+            protected BasePayload[] initialValue()
+            {
+                return new BasePayload[NUM_TYPES];
+            }
+        };
+
     /**
      * Create factory
      * @param cache buffer cache
@@ -47,27 +61,39 @@ public class PayloadFactory
     }
 
     /**
-     * Unimplemented
-     * @param x0 ignored
-     * @param i1 ignored
-     * @param i2 ignored
+     * Adjust the payloads whose bytes were moved when the splicer
+     * compacted their shared backing buffer
+     * @param objects list of payloads
+     * @param index index of first moved payload
+     * @param shift number of bytes the payloads moved
      */
     @Override
-    public void backingBufferShift(List x0, int i1, int i2)
+    public void backingBufferShift(List objects, int index, int shift)
     {
-        throw new Error("Unimplemented");
+        BaseFactory.shiftPayloads(objects, index, shift);
     }
 
     /**
-     * Create a spliceable payload
-     * @param buf byte buffer
+     * Create a spliceable payload.  If the payload is one of several in a
+     * shared buffer, it is not given the buffer cache, since the buffer
+     * was not acquired for that payload alone.
+     * @param buf byte buffer whose position is the start of the payload
      * @return new spliceable payload
      */
     @Override
     public Spliceable createSpliceable(ByteBuffer buf)
     {
+        final int offset = buf.position();
         try {
-            return (Spliceable) getPayload(buf, 0);
+            final int len = checkHeader(buf, offset);
+            final int type = PayloadHeader.getType(buf, offset);
+            final long utcTime = PayloadHeader.getUTCTime(buf, offset);
+
+            IPayload pay = getPayload(buf, offset, len, type, utcTime);
+            if (offset == 0 && len == buf.limit()) {
+                pay.setCache(bufCache);
+            }
+            return (Spliceable) pay;
         } catch (PayloadException pe) {
             LOG.error("Cannot get payload", pe);
             return null;
@@ -85,13 +111,13 @@ public class PayloadFactory
     }
 
     /**
-     * Create a payload
+     * Check the payload header and return the payload length
      * @param buf byte buffer
      * @param offset starting index of payload
-     * @return new payload
+     * @return total number of bytes in the payload
      * @throws PayloadException if there is a problem
      */
-    public IPayload getPayload(ByteBuffer buf, int offset)
+    private static int checkHeader(ByteBuffer buf, int offset)
         throws PayloadException
     {
         if (buf == null) {
@@ -105,17 +131,155 @@ public class PayloadFactory
                                        (buf.limit() - offset));
         }
 
-        final int len = buf.getInt(offset + BasePayload.OFFSET_LENGTH);
-        if (buf.limit() < len) {
+        final int len = PayloadHeader.getLength(buf, offset);
+        if (buf.limit() - offset < len) {
             throw new PayloadException("Payload length specifies " + len +
                                        " bytes, but only " +
                                        (buf.limit() - offset) +
                                        " bytes are available");
         }
 
-        final int type = buf.getInt(offset + BasePayload.OFFSET_TYPE);
-        final long utcTime = buf.getLong(offset + BasePayload.OFFSET_UTCTIME);
+        return len;
+    }
+
+    /**
+     * Get a reusable per-thread view of a payload.  Hits, time calibration
+     * and supernova payloads are decoded into an object which is rebound to
+     * each new buffer instead of being allocated; all other types are
+     * created by <tt>getPayload()</tt>.
+     *
+     * The returned payload is only valid until this thread's next call for
+     * the same payload type, so it must not be kept or handed to another
+     * thread (use <tt>deepCopy()</tt> for that).  The caller still owns the
+     * buffer; <tt>recycle()</tt> may be called on a reusable payload but
+     * never returns the buffer to the cache.
+     * @param buf byte buffer
+     * @param offset starting index of payload
+     * @return reusable payload
+     * @throws PayloadException if there is a problem
+     */
+    public IPayload getFlyweight(ByteBuffer buf, int offset)
+        throws PayloadException
+    {
+        final int len = checkHeader(buf, offset);
+        final int type = PayloadHeader.getType(buf, offset);
+        final long utcTime = PayloadHeader.getUTCTime(buf, offset);
+
+        return getFlyweight(buf, offset, len, type, utcTime);
+    }
 
+    /**
+     * Get a reusable per-thread view of a payload whose header has already
+     * been checked.
+     * @param buf byte buffer
+     * @param offset starting index of payload
+     * @param len total number of bytes
+     * @param type payload type
+     * @param utcTime payload time (UTC)
+     * @return reusable payload
+     * @throws PayloadException if there is a problem
+     */
+    IPayload getFlyweight(ByteBuffer buf, int offset, int len, int type,
+                          long utcTime)
+        throws PayloadException
+    {
+        BasePayload[] cached = flyweights.get();
+
+        BasePayload pay;
+        switch (type) {
+        case PayloadRegistry.PAYLOAD_ID_SIMPLE_HIT:
+        case PayloadRegistry.PAYLOAD_ID_TCAL:
+        case PayloadRegistry.PAYLOAD_ID_SN:
+        case PayloadRegistry.PAYLOAD_ID_SIMPLER_HIT:
+            pay = cached[type];
+            break;
+        default:
+            return getPayload(buf, offset, len, type, utcTime);
+        }
+
+        if (pay != null) {
+            pay.rebind(buf, offset, len, utcTime);
+            return pay;
+        }
+
+        switch (type) {
+        case PayloadRegistry.PAYLOAD_ID_SIMPLE_HIT:
+            pay = new SimpleHit(buf, offset, len, utcTime);
+            break;
+        case PayloadRegistry.PAYLOAD_ID_TCAL:
+            pay = new TimeCalibration(buf, offset, len, utcTime);
+            break;
+        case PayloadRegistry.PAYLOAD_ID_SN:
+            pay = new Supernova(buf, offset, len, utcTime);
+            break;
+        case PayloadRegistry.PAYLOAD_ID_SIMPLER_HIT:
+            pay = new SimplerHit(buf, offset, len, utcTime);
+            break;
+        default:
+            throw new Error("Unexpected payload type #" + type);
+        }
+
+        cached[type] = pay;
+        return pay;
+    }
+
+    /**
+     * Create a payload embedded in another payload's buffer.  The payload
+     * is not given the buffer cache, since it does not own the buffer;
+     * the parent should pass it the cache and a share of its own hold on
+     * the buffer with <tt>BasePayload.shareBuffer()</tt>.
+     * @param buf byte buffer
+     * @param offset starting index of payload
+     * @return new payload
+     * @throws PayloadException if there is a problem
+     */
+    IPayload getEmbeddedPayload(ByteBuffer buf, int offset)
+        throws PayloadException
+    {
+        final int len = checkHeader(buf, offset);
+        final int type = PayloadHeader.getType(buf, offset);
+        final long utcTime = PayloadHeader.getUTCTime(buf, offset);
+
+        return getPayload(buf, offset, len, type, utcTime);
+    }
+
+    /**
+     * Create a payload which owns its byte buffer.  If this factory has a
+     * buffer cache, the buffer is returned to it when the payload is
+     * recycled.
+     * @param buf byte buffer
+     * @param offset starting index of payload
+     * @return new payload
+     * @throws PayloadException if there is a problem
+     */
+    public IPayload getPayload(ByteBuffer buf, int offset)
+        throws PayloadException
+    {
+        final int len = checkHeader(buf, offset);
+        final int type = PayloadHeader.getType(buf, offset);
+        final long utcTime = PayloadHeader.getUTCTime(buf, offset);
+
+        IPayload pay = getPayload(buf, offset, len, type, utcTime);
+        pay.setCache(bufCache);
+        return pay;
+    }
+
+    /**
+     * Create a payload whose header has already been checked.  The payload
+     * is not given a buffer cache, so <tt>recycle()</tt> will not return
+     * its buffer.
+     * @param buf byte buffer
+     * @param offset starting index of payload
+     * @param len total number of bytes
+     * @param type payload type
+     * @param utcTime payload time (UTC)
+     * @return new payload
+     * @throws PayloadException if there is a problem
+     */
+    IPayload getPayload(ByteBuffer buf, int offset, int len, int type,
+                        long utcTime)
+        throws PayloadException
+    {
         IPayload pay;
 
         switch (type) {
@@ -127,14 +291,14 @@ public class PayloadFactory
                 setSourceID();
             }
 
-            pay = DOMHitFactory.getHit(hitSrc, buf, 0);
+            pay = DOMHitFactory.getHit(hitSrc, buf, offset);
             break;
         case PayloadRegistry.PAYLOAD_ID_DELTA_DOMHIT:
             if (hitSrc == null) {
                 setSourceID();
             }
 
-            pay = DOMHitFactory.getHit(hitSrc, buf, 0);
+            pay = DOMHitFactory.getHit(hitSrc, buf, offset);
             break;
         case PayloadRegistry.PAYLOAD_ID_TCAL:
             pay = new TimeCalibration(buf, offset, len, utcTime);
@@ -180,6 +344,9 @@ public class PayloadFactory
         case PayloadRegistry.PAYLOAD_ID_SIMPLER_HIT:
             pay = new SimplerHit(buf, offset, len, utcTime);
             break;
+        case PayloadRegistry.PAYLOAD_ID_EVENT_V7:
+            pay = new EventPayload_v7(buf, offset, len, utcTime);
+            break;
         default:
             throw new PayloadException("Unknown payload type #" + type);
         }
@@ -198,18 +365,17 @@ public class PayloadFactory
             }
         }
 
-        pay.setCache(bufCache);
         return pay;
     }
 
     /**
-     * Unimplemented
-     * @param x0 ignored
+     * Release payloads which the splicer has discarded
+     * @param spliceables list of payloads
      */
     @Override
-    public void invalidateSpliceables(List x0)
+    public void invalidateSpliceables(List spliceables)
     {
-        throw new Error("Unimplemented");
+        BaseFactory.recyclePayloads(spliceables);
     }
 
     /**
@@ -289,14 +455,14 @@ public class PayloadFactory
     }
 
     /**
-     * Unimplemented
-     * @param x0 ignored
-     * @return Error
+     * Move the buffer position past the next payload in place
+     * @param buf buffer holding payloads
+     * @return <tt>true</tt> if the buffer contained a complete payload
      */
     @Override
-    public boolean skipSpliceable(ByteBuffer x0)
+    public boolean skipSpliceable(ByteBuffer buf)
     {
-        throw new Error("Unimplemented");
+        return BaseFactory.skipPayload(buf);
     }
 
     @Override
@@ -0,0 +1,107 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.PayloadRegistry;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read payload header fields directly from a byte buffer.  Components
+ * which only need to route or drop payloads can use these methods instead
+ * of creating payload objects.  Nothing is allocated, and the buffer's
+ * position, limit and byte order are never changed.
+ *
+ * Every method takes the index of the first byte of the payload.  The
+ * caller is responsible for checking that the header fits in the buffer
+ * (see <tt>isComplete()</tt>).
+ */
+public final class PayloadHeader
+{
+    /**
+     * This is a utility class.
+     */
+    private PayloadHeader()
+    {
+    }
+
+    /**
+     * Get the total payload length, including the header
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @return number of bytes
+     */
+    public static int getLength(ByteBuffer buf, int offset)
+    {
+        return buf.getInt(offset + BasePayload.OFFSET_LENGTH);
+    }
+
+    /**
+     * Get the payload type
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @return payload type (from <tt>PayloadRegistry</tt>)
+     */
+    public static int getType(ByteBuffer buf, int offset)
+    {
+        return buf.getInt(offset + BasePayload.OFFSET_TYPE);
+    }
+
+    /**
+     * Get the payload time
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @return UTC time
+     */
+    public static long getUTCTime(ByteBuffer buf, int offset)
+    {
+        return buf.getLong(offset + BasePayload.OFFSET_UTCTIME);
+    }
+
+    /**
+     * Does the buffer hold the complete payload which starts at
+     * <tt>offset</tt>?
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @return <tt>true</tt> if the header is sane and the entire payload
+     *         is available before the buffer's limit
+     */
+    public static boolean isComplete(ByteBuffer buf, int offset)
+    {
+        final int avail = buf.limit() - offset;
+        if (avail < BasePayload.LEN_PAYLOAD_HEADER) {
+            return false;
+        }
+
+        final int len = getLength(buf, offset);
+        return len >= BasePayload.LEN_PAYLOAD_HEADER && len <= avail;
+    }
+
+    /**
+     * Does the buffer hold a plausible payload header at <tt>offset</tt>?
+     * The length must be sane, the type must be known to
+     * <tt>PayloadRegistry</tt> and the time must not be negative.
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param maxLength largest acceptable payload length
+     * @return <tt>true</tt> if the header looks valid
+     */
+    public static boolean isPlausible(ByteBuffer buf, int offset,
+                                      int maxLength)
+    {
+        if (offset < 0 ||
+            offset + BasePayload.LEN_PAYLOAD_HEADER > buf.limit())
+        {
+            return false;
+        }
+
+        final int len = getLength(buf, offset);
+        if (len < BasePayload.LEN_PAYLOAD_HEADER || len > maxLength) {
+            return false;
+        }
+
+        if (!PayloadRegistry.isValidType(getType(buf, offset))) {
+            return false;
+        }
+
+        return getUTCTime(buf, offset) >= 0L;
+    }
+}
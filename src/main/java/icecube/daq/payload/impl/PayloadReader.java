@@ -0,0 +1,314 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IByteBufferCache;
+import icecube.daq.payload.IPayload;
+import icecube.daq.payload.PayloadException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Read length-prefixed payloads from a channel into a reusable buffer.
+ * Payloads which are split across reads are reassembled by moving the
+ * partial payload to the front of the buffer before the next read, and
+ * the buffer grows if a single payload is larger than its capacity.
+ *
+ * Payloads returned by <tt>getPayload()</tt> and <tt>getFlyweight()</tt>
+ * are decoded in place, so they are only valid until the next call to
+ * <tt>next()</tt>.  Use <tt>copyPayload()</tt> to get a payload which
+ * owns its own buffer.
+ *
+ * When reading from a non-blocking channel, <tt>next()</tt> returns
+ * <tt>false</tt> if no complete payload is available yet; call
+ * <tt>isEndOfStream()</tt> to tell the difference.
+ */
+public class PayloadReader
+    implements Closeable
+{
+    /** Default initial buffer size */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    /** Default maximum payload length */
+    public static final int DEFAULT_MAX_LENGTH = 64 * 1024 * 1024;
+
+    /** source of payload bytes */
+    private ReadableByteChannel chan;
+    /** factory used to decode payloads */
+    private PayloadFactory factory;
+    /** largest payload which will be accepted */
+    private int maxLength;
+
+    /** reusable buffer */
+    private ByteBuffer buf;
+    /** payload framing */
+    private PayloadCursor cursor;
+    /** <tt>true</tt> after the channel has reported end-of-stream */
+    private boolean endOfStream;
+
+    /** number of bytes read from the channel */
+    private long bytesRead;
+    /** number of complete payloads found */
+    private long numPayloads;
+
+    /**
+     * Create a payload reader which uses the default sizes
+     * @param chan source of payload bytes
+     * @param factory factory used to decode payloads
+     */
+    public PayloadReader(ReadableByteChannel chan, PayloadFactory factory)
+    {
+        this(chan, factory, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Create a payload reader
+     * @param chan source of payload bytes
+     * @param factory factory used to decode payloads
+     * @param bufSize initial buffer size
+     * @param maxLength largest payload which will be accepted
+     */
+    public PayloadReader(ReadableByteChannel chan, PayloadFactory factory,
+                         int bufSize, int maxLength)
+    {
+        if (chan == null) {
+            throw new IllegalArgumentException("Channel cannot be null");
+        } else if (factory == null) {
+            throw new IllegalArgumentException("Factory cannot be null");
+        } else if (bufSize < BasePayload.LEN_PAYLOAD_HEADER) {
+            throw new IllegalArgumentException("Buffer size " + bufSize +
+                                               " is too small");
+        } else if (maxLength < BasePayload.LEN_PAYLOAD_HEADER) {
+            throw new IllegalArgumentException("Bad maximum length " +
+                                               maxLength);
+        }
+
+        this.chan = chan;
+        this.factory = factory;
+        this.maxLength = maxLength;
+
+        buf = ByteBuffer.allocate(bufSize);
+        buf.limit(0);
+
+        cursor = new PayloadCursor(factory, buf);
+    }
+
+    /**
+     * Close the channel
+     * @throws IOException if the channel cannot be closed
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        chan.close();
+    }
+
+    /**
+     * Copy the current payload into a buffer from the factory's buffer
+     * cache and decode it.  The new payload is independent of this reader,
+     * and <tt>recycle()</tt> will return its buffer to the cache.
+     * @return new payload
+     * @throws PayloadException if there is a problem
+     */
+    public IPayload copyPayload()
+        throws PayloadException
+    {
+        final int len = cursor.getLength();
+
+        IByteBufferCache cache = factory.getByteBufferCache();
+
+        ByteBuffer copy;
+        if (cache == null) {
+            copy = ByteBuffer.allocate(len);
+        } else {
+            copy = cache.acquireBuffer(len);
+            if (copy == null) {
+                throw new PayloadException("Cannot acquire " + len +
+                                           "-byte buffer from " + cache);
+            }
+        }
+
+        ByteBuffer src = buf.duplicate();
+        src.limit(cursor.getOffset() + len);
+        src.position(cursor.getOffset());
+
+        copy.clear();
+        copy.put(src);
+        copy.flip();
+
+        IPayload pay = factory.getPayload(copy, 0, len,
+                                          cursor.getPayloadType(),
+                                          cursor.getUTCTime());
+        pay.setCache(cache);
+        return pay;
+    }
+
+    /**
+     * Read more bytes from the channel, first moving any partial payload
+     * to the front of the buffer and growing the buffer if the partial
+     * payload will not fit.
+     * @return number of bytes read, or <tt>-1</tt> at end-of-stream
+     * @throws IOException if the channel cannot be read
+     * @throws PayloadException if the partial payload is too large
+     */
+    private int fill()
+        throws IOException, PayloadException
+    {
+        buf.position(cursor.getResumeOffset());
+        buf.compact();
+
+        if (buf.position() >= BasePayload.OFFSET_LENGTH + 4) {
+            final int len = buf.getInt(BasePayload.OFFSET_LENGTH);
+            if (len > maxLength) {
+                throw new PayloadException("Payload length " + len +
+                                           " exceeds maximum " + maxLength);
+            } else if (len > buf.capacity()) {
+                final int newCap =
+                    (int) Math.min((long) maxLength,
+                                   Math.max((long) len,
+                                            (long) buf.capacity() * 2));
+
+                ByteBuffer newBuf = ByteBuffer.allocate(newCap);
+                buf.flip();
+                newBuf.put(buf);
+                buf = newBuf;
+            }
+        }
+
+        final int num = chan.read(buf);
+        if (num > 0) {
+            bytesRead += num;
+        }
+
+        buf.flip();
+        cursor.reset(buf, 0);
+
+        return num;
+    }
+
+    /**
+     * Get the number of bytes read from the channel
+     * @return number of bytes
+     */
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+    /**
+     * Get a reusable per-thread view of the current payload.  This is only
+     * valid until the next call to <tt>next()</tt>.
+     * @return reusable payload
+     * @throws PayloadException if there is a problem
+     */
+    public IPayload getFlyweight()
+        throws PayloadException
+    {
+        return cursor.getFlyweight();
+    }
+
+    /**
+     * Get the length of the current payload
+     * @return number of bytes
+     */
+    public int getLength()
+    {
+        return cursor.getLength();
+    }
+
+    /**
+     * Get the number of complete payloads found
+     * @return value
+     */
+    public long getNumPayloads()
+    {
+        return numPayloads;
+    }
+
+    /**
+     * Decode the current payload in place.  This is only valid until the
+     * next call to <tt>next()</tt>.
+     * @return new payload
+     * @throws PayloadException if there is a problem
+     */
+    public IPayload getPayload()
+        throws PayloadException
+    {
+        return cursor.getPayload();
+    }
+
+    /**
+     * Get the type of the current payload
+     * @return payload type
+     */
+    public int getPayloadType()
+    {
+        return cursor.getPayloadType();
+    }
+
+    /**
+     * Get the time of the current payload
+     * @return UTC time
+     */
+    public long getUTCTime()
+    {
+        return cursor.getUTCTime();
+    }
+
+    /**
+     * Has the channel reached end-of-stream?
+     * @return <tt>true</tt> if there is no more data
+     */
+    public boolean isEndOfStream()
+    {
+        return endOfStream;
+    }
+
+    /**
+     * Move to the next complete payload, reading more data if necessary
+     * @return <tt>false</tt> at end-of-stream, or if a non-blocking
+     *         channel has no more data yet
+     * @throws IOException if the channel cannot be read
+     * @throws PayloadException if the stream contains a bad payload, or
+     *                          ends in the middle of a payload
+     */
+    public boolean next()
+        throws IOException, PayloadException
+    {
+        while (true) {
+            if (cursor.next()) {
+                numPayloads++;
+                return true;
+            }
+
+            if (endOfStream) {
+                if (cursor.isTruncated()) {
+                    throw new PayloadException("Stream ended with " +
+                                               cursor.getRemaining() +
+                                               " bytes of a partial payload");
+                }
+
+                return false;
+            }
+
+            final int num = fill();
+            if (num < 0) {
+                endOfStream = true;
+            } else if (num == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "PayloadReader[" + cursor + ",read=" + bytesRead + ",num=" +
+            numPayloads + (endOfStream ? ",EOS" : "") + "]";
+    }
+}
@@ -0,0 +1,171 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.PayloadRegistry;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free buffer cache statistics broken down by buffer size and, for
+ * returned buffers, by payload type.  Acquisitions are not counted by
+ * type, since a buffer's payload type is only known once it has been
+ * filled.  Types are the <tt>PayloadRegistry</tt> IDs; anything outside
+ * that range (including buffers whose type isn't known) is counted in
+ * slot 0.  Size histogram slot <tt>N</tt> counts buffers with between
+ * <tt>2^(N-1)+1</tt> and <tt>2^N</tt> bytes.
+ */
+final class PayloadTypeCounters
+{
+    /** Payload type used when the real type is not known */
+    static final int UNKNOWN_TYPE = 0;
+
+    /** Number of type slots */
+    static final int NUM_TYPES = PayloadRegistry.PAYLOAD_ID_EVENT_V7 + 1;
+    /** Number of size histogram slots */
+    static final int NUM_SIZES = 32;
+
+    private LongAdder[] returnedBuffers = newCounters(NUM_TYPES);
+    private LongAdder[] returnedBytes = newCounters(NUM_TYPES);
+    private LongAdder[] acquiredSizes = newCounters(NUM_SIZES);
+    private LongAdder[] returnedSizes = newCounters(NUM_SIZES);
+
+    /**
+     * Record an acquired buffer
+     * @param bytes number of bytes
+     */
+    void acquired(int bytes)
+    {
+        acquiredSizes[getSizeIndex(bytes)].increment();
+    }
+
+    /**
+     * Get the payload type stored in a buffer's header
+     * @param buf byte buffer
+     * @return payload type, or <tt>UNKNOWN_TYPE</tt> if the buffer does
+     *         not start with a sensible payload header
+     */
+    static int getPayloadType(ByteBuffer buf)
+    {
+        if (buf.capacity() < BasePayload.LEN_PAYLOAD_HEADER) {
+            return UNKNOWN_TYPE;
+        }
+
+        final int len = buf.getInt(BasePayload.OFFSET_LENGTH);
+        if (len < BasePayload.LEN_PAYLOAD_HEADER || len > buf.capacity()) {
+            return UNKNOWN_TYPE;
+        }
+
+        final int type = buf.getInt(BasePayload.OFFSET_TYPE);
+        if (type <= 0 || type >= NUM_TYPES) {
+            return UNKNOWN_TYPE;
+        }
+
+        return type;
+    }
+
+    /**
+     * Map a buffer length to its size histogram slot
+     * @param bytes number of bytes
+     * @return slot index
+     */
+    static int getSizeIndex(int bytes)
+    {
+        if (bytes <= 1) {
+            return 0;
+        }
+
+        return Math.min(NUM_SIZES - 1,
+                        Integer.SIZE - Integer.numberOfLeadingZeros(bytes - 1));
+    }
+
+    /**
+     * Map a payload type to its slot
+     * @param type payload type
+     * @return slot index
+     */
+    private static int getTypeIndex(int type)
+    {
+        if (type <= 0 || type >= NUM_TYPES) {
+            return UNKNOWN_TYPE;
+        }
+
+        return type;
+    }
+
+    /**
+     * Get histogram of acquired buffer sizes
+     * @return array indexed by log2(size)
+     */
+    long[] getAcquiredSizes()
+    {
+        return sum(acquiredSizes);
+    }
+
+    /**
+     * Get number of buffers returned for each payload type
+     * @return array indexed by payload type
+     */
+    long[] getReturnedBuffers()
+    {
+        return sum(returnedBuffers);
+    }
+
+    /**
+     * Get number of bytes returned for each payload type
+     * @return array indexed by payload type
+     */
+    long[] getReturnedBytes()
+    {
+        return sum(returnedBytes);
+    }
+
+    /**
+     * Get histogram of returned buffer sizes
+     * @return array indexed by log2(size)
+     */
+    long[] getReturnedSizes()
+    {
+        return sum(returnedSizes);
+    }
+
+    /**
+     * Create an array of counters
+     * @param num number of counters
+     * @return new counters
+     */
+    private static LongAdder[] newCounters(int num)
+    {
+        LongAdder[] array = new LongAdder[num];
+        for (int i = 0; i < num; i++) {
+            array[i] = new LongAdder();
+        }
+        return array;
+    }
+
+    /**
+     * Record a returned buffer
+     * @param type payload type
+     * @param bytes number of bytes
+     */
+    void returned(int type, int bytes)
+    {
+        final int idx = getTypeIndex(type);
+        returnedBuffers[idx].increment();
+        returnedBytes[idx].add(bytes);
+        returnedSizes[getSizeIndex(bytes)].increment();
+    }
+
+    /**
+     * Get the current values for an array of counters
+     * @param counters counters
+     * @return array of values
+     */
+    private static long[] sum(LongAdder[] counters)
+    {
+        long[] array = new long[counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            array[i] = counters[i].sum();
+        }
+        return array;
+    }
+}
@@ -0,0 +1,852 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IBufferPressureListener;
+import icecube.daq.payload.ITypedBufferCache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This buffer cache keeps a free list of returned buffers for each of
+ * a fixed set of buffer sizes and hands them back out to later requests.
+ * Requests which are larger than the biggest size class are allocated
+ * directly from the heap and are not pooled.
+ *
+ * Only buffers passed back through <tt>returnBuffer(ByteBuffer)</tt> can be
+ * reused; <tt>returnBuffer(int)</tt> only updates the statistics.  A
+ * reusable buffer which is returned while it is already idle is logged
+ * and ignored, so it can't be handed out to two callers.
+ */
+public class PooledBufferCache
+    implements ITypedBufferCache, PooledBufferCacheMBean
+{
+    private static final Logger LOG =
+        Logger.getLogger(PooledBufferCache.class);
+
+    /** Default maximum number of idle buffers kept for each size class */
+    public static final int DEFAULT_MAX_IDLE = 1024;
+
+    /** Smallest power-of-two size class */
+    private static final int MIN_POWER_OF_TWO = 64;
+    /** Largest power-of-two size class */
+    private static final int MAX_POWER_OF_TWO = 65536;
+
+    /** Source of zeros used to clear buffers without a backing array */
+    private static final byte[] ZEROS = new byte[4096];
+
+    private String name;
+    /** sorted list of buffer capacities, one per size class */
+    private int[] sizes;
+    /** idle buffers for each size class */
+    private FreeList[] freeLists;
+    /** every idle buffer, used to catch buffers which are returned twice */
+    private IdleSet idleSet = new IdleSet();
+
+    private int acquiredBufferCount;
+    private long acquiredBytes;
+    private int returnedBuffers;
+    private int totalBufferCount;
+    private int createdBufferCount;
+    private long maxAcquiredBytes;
+    private long errorCount;
+
+    private long cacheHits;
+    private long cacheMisses;
+    private int idleBuffers;
+    private long idleBytes;
+
+    /** statistics broken down by payload type and buffer size */
+    private PayloadTypeCounters typeCounters = new PayloadTypeCounters();
+
+    /** enforces the upper limit once a bound policy is set */
+    private AcquisitionLimiter.Holder bound = new AcquisitionLimiter.Holder();
+
+    /**
+     * Create an unbounded named buffer cache
+     * @param name name
+     */
+    public PooledBufferCache(String name)
+    {
+        this(name, Long.MIN_VALUE);
+    }
+
+    /**
+     * Create a bounded named buffer cache which uses the default size classes
+     * @param name name
+     * @param maxAcquiredBytes maximum number of bytes allowed
+     */
+    public PooledBufferCache(String name, long maxAcquiredBytes)
+    {
+        this(name, maxAcquiredBytes, getDefaultSizes(), DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Create a bounded named buffer cache
+     * @param name name
+     * @param maxAcquiredBytes maximum number of bytes allowed
+     * @param sizes buffer capacity for each size class
+     * @param maxIdle maximum number of idle buffers kept for each size class
+     */
+    public PooledBufferCache(String name, long maxAcquiredBytes, int[] sizes,
+                             int maxIdle)
+    {
+        if (sizes == null || sizes.length == 0) {
+            throw new IllegalArgumentException("No size classes specified");
+        } else if (maxIdle < 0) {
+            throw new IllegalArgumentException("Bad maximum number of idle" +
+                                               " buffers " + maxIdle);
+        }
+
+        this.name = name;
+        this.maxAcquiredBytes = maxAcquiredBytes;
+
+        this.sizes = sizes.clone();
+        Arrays.sort(this.sizes);
+        if (this.sizes[0] <= 0) {
+            throw new IllegalArgumentException("Bad size class " +
+                                               this.sizes[0]);
+        }
+
+        freeLists = new FreeList[this.sizes.length];
+        for (int i = 0; i < freeLists.length; i++) {
+            if (i > 0 && this.sizes[i] == this.sizes[i - 1]) {
+                throw new IllegalArgumentException("Duplicate size class " +
+                                                   this.sizes[i]);
+            }
+
+            freeLists[i] = new FreeList(maxIdle);
+        }
+    }
+
+    /**
+     * Acquire a byte buffer
+     * @param iLength number of bytes
+     * @return byte buffer
+     */
+    @Override
+    public ByteBuffer acquireBuffer(int iLength)
+    {
+        final int idx = findSizeClass(iLength);
+
+        if (!bound.reserve(idx < 0 ? iLength : sizes[idx])) {
+            return null;
+        }
+
+        ByteBuffer buf;
+        synchronized (this) {
+            acquiredBufferCount++;
+            totalBufferCount++;
+
+            if (idx < 0) {
+                buf = null;
+                acquiredBytes += iLength;
+            } else {
+                buf = freeLists[idx].pop();
+                acquiredBytes += sizes[idx];
+            }
+
+            if (buf == null) {
+                cacheMisses++;
+                createdBufferCount++;
+            } else {
+                cacheHits++;
+                idleBuffers--;
+                idleBytes -= buf.capacity();
+                idleSet.remove(buf);
+            }
+        }
+
+        typeCounters.acquired(idx < 0 ? iLength : sizes[idx]);
+
+        if (buf == null) {
+            if (idx < 0) {
+                buf = ByteBuffer.allocate(iLength);
+            } else {
+                buf = createBuffer(idx, sizes[idx]);
+            }
+            buf.limit(iLength);
+            return buf;
+        }
+
+        return resetBuffer(buf, iLength);
+    }
+
+    /**
+     * Allocate a new buffer for a size class.  Subclasses which provide
+     * buffers from somewhere other than the Java heap should override this
+     * and <tt>isReusable()</tt>.
+     * @param idx size class index
+     * @param cap buffer capacity
+     * @return new buffer
+     */
+    ByteBuffer createBuffer(int idx, int cap)
+    {
+        return ByteBuffer.allocate(cap);
+    }
+
+    /**
+     * Find the size class which holds buffers of exactly this capacity
+     * @param cap buffer capacity
+     * @return size class index, or a negative value if there is no match
+     */
+    int findExactSizeClass(int cap)
+    {
+        return Arrays.binarySearch(sizes, cap);
+    }
+
+    /**
+     * Find the smallest size class which can hold the requested length
+     * @param len number of bytes
+     * @return size class index, or <tt>-1</tt> if the request is too large
+     */
+    int findSizeClass(int len)
+    {
+        int idx = Arrays.binarySearch(sizes, len);
+        if (idx < 0) {
+            idx = -idx - 1;
+            if (idx >= sizes.length) {
+                return -1;
+            }
+        }
+
+        return idx;
+    }
+
+    /**
+     * Get the number of bytes actually used to satisfy a request
+     * @param len number of bytes requested
+     * @return buffer capacity
+     */
+    int getAllocatedLength(int len)
+    {
+        final int idx = findSizeClass(len);
+        if (idx < 0) {
+            return len;
+        }
+
+        return sizes[idx];
+    }
+
+    /**
+     * Get the capacity of buffers in a size class
+     * @param idx size class index
+     * @return buffer capacity
+     */
+    int getClassSize(int idx)
+    {
+        return sizes[idx];
+    }
+
+    /**
+     * Get number of size classes
+     * @return value
+     */
+    int getNumSizeClasses()
+    {
+        return sizes.length;
+    }
+
+    /**
+     * Get histogram of acquired buffer sizes
+     * @return array indexed by log2(size)
+     */
+    @Override
+    public long[] getAcquiredSizeHistogram()
+    {
+        return typeCounters.getAcquiredSizes();
+    }
+
+    /**
+     * Get number of requests refused because of the upper limit
+     * @return value
+     */
+    @Override
+    public long getBoundRejections()
+    {
+        return bound.getBoundRejections();
+    }
+
+    /**
+     * Get total time spent waiting for the upper limit
+     * @return number of milliseconds
+     */
+    @Override
+    public long getBoundWaitMillis()
+    {
+        return bound.getBoundWaitMillis();
+    }
+
+    /**
+     * Get number of requests which waited for the upper limit
+     * @return value
+     */
+    @Override
+    public long getBoundWaits()
+    {
+        return bound.getBoundWaits();
+    }
+
+    /**
+     * Get number of cache hits
+     * @return value
+     */
+    @Override
+    public synchronized long getCacheHits()
+    {
+        return cacheHits;
+    }
+
+    /**
+     * Get number of cache misses
+     * @return value
+     */
+    @Override
+    public synchronized long getCacheMisses()
+    {
+        return cacheMisses;
+    }
+
+    /**
+     * Get number of currently buffers acquired
+     * @return value
+     */
+    @Override
+    public synchronized int getCurrentAcquiredBuffers()
+    {
+        return acquiredBufferCount;
+    }
+
+    /**
+     * Get number of currently acquired bytes
+     * @return value
+     */
+    @Override
+    public synchronized long getCurrentAcquiredBytes()
+    {
+        return acquiredBytes;
+    }
+
+    /**
+     * Build the default list of size classes.  These are the fixed-size
+     * hit and time calibration payloads plus powers of two.
+     * @return list of buffer capacities
+     */
+    public static int[] getDefaultSizes()
+    {
+        int numPowers = 0;
+        for (int sz = MIN_POWER_OF_TWO; sz <= MAX_POWER_OF_TWO; sz <<= 1) {
+            numPowers++;
+        }
+
+        int[] list = new int[numPowers + 3];
+        list[0] = SimplerHit.LENGTH;
+        list[1] = SimpleHit.LENGTH;
+        list[2] = BasePayload.LEN_PAYLOAD_HEADER + TimeCalibration.PAYLOAD_LEN;
+
+        int idx = 3;
+        for (int sz = MIN_POWER_OF_TWO; sz <= MAX_POWER_OF_TWO; sz <<= 1) {
+            list[idx++] = sz;
+        }
+
+        Arrays.sort(list);
+        return list;
+    }
+
+    /**
+     * Get the buffer cache name
+     * @return name
+     */
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Get number of idle buffers
+     * @return value
+     */
+    @Override
+    public synchronized int getPooledBuffers()
+    {
+        return idleBuffers;
+    }
+
+    /**
+     * Get number of buffers returned for each payload type
+     * @return array indexed by payload type (0 holds unknown types)
+     */
+    @Override
+    public long[] getReturnedBuffersByType()
+    {
+        return typeCounters.getReturnedBuffers();
+    }
+
+    /**
+     * Get number of bytes returned for each payload type
+     * @return array indexed by payload type (0 holds unknown types)
+     */
+    @Override
+    public long[] getReturnedBytesByType()
+    {
+        return typeCounters.getReturnedBytes();
+    }
+
+    /**
+     * Get histogram of returned buffer sizes
+     * @return array indexed by log2(size)
+     */
+    @Override
+    public long[] getReturnedSizeHistogram()
+    {
+        return typeCounters.getReturnedSizes();
+    }
+
+    /**
+     * Get number of buffers returned.
+     * @return value
+     */
+    @Override
+    public synchronized int getReturnBufferCount()
+    {
+        return returnedBuffers;
+    }
+
+    /**
+     * Get total number of buffers acquired
+     * @return value
+     */
+    @Override
+    public synchronized int getTotalBuffersAcquired()
+    {
+        return totalBufferCount;
+    }
+
+    /**
+     * Get total number of buffers allocated from the heap
+     * @return value
+     */
+    @Override
+    public synchronized int getTotalBuffersCreated()
+    {
+        return createdBufferCount;
+    }
+
+    /**
+     * Get total number of buffers returned
+     * @return value
+     */
+    @Override
+    public synchronized int getTotalBuffersReturned()
+    {
+        return returnedBuffers;
+    }
+
+    /**
+     * Get total number of bytes held in idle buffers
+     * @return value
+     */
+    @Override
+    public synchronized long getTotalBytesInCache()
+    {
+        return idleBytes;
+    }
+
+    /**
+     * Return <tt>true</tt> if there are no unreturned buffers
+     * @return value
+     */
+    @Override
+    public synchronized boolean isBalanced()
+    {
+        return acquiredBufferCount == 0;
+    }
+
+    /**
+     * Does this buffer cache have an upper limit?
+     * @return <tt>true</tt> if cache is bounded
+     */
+    @Override
+    public boolean isCacheBounded()
+    {
+        return (maxAcquiredBytes > 0);
+    }
+
+    /**
+     * Get the upper limit for this buffer cache
+     * @return value
+     */
+    @Override
+    public long getMaxAcquiredBytes()
+    {
+        return maxAcquiredBytes;
+    }
+
+    /**
+     * Can this buffer be handed out again?
+     * @param buf returned buffer
+     * @return <tt>true</tt> if the buffer is a plain heap buffer
+     */
+    boolean isReusable(ByteBuffer buf)
+    {
+        return !buf.isDirect() && buf.hasArray() && buf.arrayOffset() == 0;
+    }
+
+    /**
+     * Record that a buffer is now in use.
+     * @param buf buffer which was idle
+     */
+    void markInUse(ByteBuffer buf)
+    {
+        idleSet.remove(buf);
+    }
+
+    /**
+     * Record that a buffer is now idle.
+     * @param buf returned buffer
+     * @return <tt>false</tt> if the buffer was already idle
+     */
+    boolean markIdle(ByteBuffer buf)
+    {
+        return idleSet.add(buf);
+    }
+
+    /**
+     * Add idle buffers to a size class.
+     * @param idx size class index
+     * @param src array of buffers which have been marked idle
+     * @param off index of first buffer in <tt>src</tt>
+     * @param num number of buffers to add
+     * @return number of buffers added; the rest did not fit and are no
+     *         longer marked idle
+     */
+    synchronized int putIdle(int idx, ByteBuffer[] src, int off, int num)
+    {
+        int added = 0;
+        while (added < num && freeLists[idx].push(src[off + added])) {
+            added++;
+        }
+
+        for (int i = added; i < num; i++) {
+            idleSet.remove(src[off + i]);
+        }
+
+        idleBuffers += added;
+        idleBytes += (long) added * sizes[idx];
+
+        return added;
+    }
+
+    /**
+     * Reset a reused buffer so it looks like a freshly allocated one
+     * @param buf reused buffer
+     * @param len number of bytes requested
+     * @return zeroed big-endian buffer whose limit is <tt>len</tt>
+     */
+    static ByteBuffer resetBuffer(ByteBuffer buf, int len)
+    {
+        buf.clear();
+        buf.order(ByteOrder.BIG_ENDIAN);
+
+        if (buf.hasArray()) {
+            Arrays.fill(buf.array(), buf.arrayOffset(),
+                        buf.arrayOffset() + len, (byte) 0);
+        } else {
+            while (buf.position() < len) {
+                buf.put(ZEROS, 0,
+                        Math.min(ZEROS.length, len - buf.position()));
+            }
+            buf.position(0);
+        }
+
+        buf.limit(len);
+        return buf;
+    }
+
+    /**
+     * Return a buffer
+     * @param tByteBuffer buffer
+     */
+    @Override
+    public void returnBuffer(ByteBuffer tByteBuffer)
+    {
+        final int cap = tByteBuffer.capacity();
+
+        final int idx = findExactSizeClass(cap);
+        final boolean reuse = idx >= 0 && isReusable(tByteBuffer);
+
+        if (reuse && !idleSet.add(tByteBuffer)) {
+            LOG.error("Ignoring " + cap + "-byte buffer which was returned" +
+                      " twice: " + toString());
+            return;
+        }
+
+        typeCounters.returned(PayloadTypeCounters.getPayloadType(tByteBuffer),
+                              cap);
+
+        synchronized (this) {
+            if (returnBytes(cap) && reuse &&
+                freeLists[idx].push(tByteBuffer))
+            {
+                idleBuffers++;
+                idleBytes += cap;
+            } else if (reuse) {
+                idleSet.remove(tByteBuffer);
+            }
+        }
+
+        bound.release(cap);
+    }
+
+    /**
+     * Return a buffer which held a payload in only its first
+     * <tt>numBytes</tt> bytes.  The bytes are attributed to the payload
+     * type found in the buffer.
+     * @param buf byte buffer
+     * @param numBytes number of bytes used by the payload
+     */
+    @Override
+    public void returnBuffer(ByteBuffer buf, int numBytes)
+    {
+        returnBuffer(numBytes, PayloadTypeCounters.getPayloadType(buf));
+    }
+
+    /**
+     * Return a "buffer"
+     * @param numBytes buffer capacity
+     */
+    @Override
+    public void returnBuffer(int numBytes)
+    {
+        returnBuffer(numBytes, PayloadTypeCounters.UNKNOWN_TYPE);
+    }
+
+    /**
+     * Return a "buffer" which held a payload of a known type
+     * @param numBytes buffer capacity
+     * @param payloadType payload type
+     */
+    @Override
+    public void returnBuffer(int numBytes, int payloadType)
+    {
+        final int len = getAllocatedLength(numBytes);
+
+        typeCounters.returned(payloadType, len);
+
+        synchronized (this) {
+            returnBytes(len);
+        }
+
+        bound.release(len);
+    }
+
+    /**
+     * Update statistics for a returned buffer
+     * @param numBytes buffer capacity
+     * @return <tt>false</tt> if more buffers were returned than acquired
+     */
+    private boolean returnBytes(int numBytes)
+    {
+        acquiredBufferCount--;
+        acquiredBytes -= numBytes;
+        returnedBuffers++;
+        if (acquiredBufferCount < 0 || acquiredBytes < 0) {
+            if ((errorCount % 1000) == 0) {
+                LOG.error("ByteBuffer underflow for " + numBytes +
+                          "-byte buffer: " + toString());
+            }
+            errorCount++;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove idle buffers from a size class.
+     * @param idx size class index
+     * @param dst array to be filled from the start
+     * @param max maximum number of buffers to remove
+     * @return number of buffers removed
+     */
+    synchronized int takeIdle(int idx, ByteBuffer[] dst, int max)
+    {
+        int taken = 0;
+        while (taken < max) {
+            ByteBuffer buf = freeLists[idx].pop();
+            if (buf == null) {
+                break;
+            }
+
+            dst[taken++] = buf;
+        }
+
+        idleBuffers -= taken;
+        idleBytes -= (long) taken * sizes[idx];
+
+        return taken;
+    }
+
+    /**
+     * Enforce the upper limit for this buffer cache.  This should be called
+     * before any buffers are acquired.
+     * @param policy what to do when a request would exceed the limit
+     * @param timeoutMillis maximum number of milliseconds to wait when the
+     *                      policy is <tt>BLOCK</tt>
+     * @param listener notified when the limit is reached
+     *                 (may be <tt>null</tt>)
+     */
+    public void setBoundPolicy(BoundPolicy policy, long timeoutMillis,
+                               IBufferPressureListener listener)
+    {
+        bound.setBoundPolicy(this, policy, timeoutMillis, listener);
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "PooledBufferCache[" + name + ",buf=" + acquiredBufferCount +
+            ",byt=" + acquiredBytes + "(max=" + maxAcquiredBytes +
+            "),totBuf=" + totalBufferCount + ",hit=" + cacheHits +
+            ",miss=" + cacheMisses + ",idle=" + idleBuffers + "]";
+    }
+
+    /**
+     * Idle buffers for a single size class
+     */
+    private static final class FreeList
+    {
+        /** initial number of slots in the stack */
+        private static final int INITIAL_SLOTS = 16;
+
+        /** maximum number of idle buffers */
+        private int maxIdle;
+        /** stack of idle buffers */
+        private ByteBuffer[] stack;
+        /** number of idle buffers */
+        private int count;
+
+        /**
+         * Create a free list
+         * @param maxIdle maximum number of idle buffers
+         */
+        FreeList(int maxIdle)
+        {
+            this.maxIdle = maxIdle;
+
+            stack = new ByteBuffer[Math.min(maxIdle, INITIAL_SLOTS)];
+        }
+
+        /**
+         * Remove an idle buffer
+         * @return idle buffer (or <tt>null</tt> if the list is empty)
+         */
+        ByteBuffer pop()
+        {
+            if (count == 0) {
+                return null;
+            }
+
+            ByteBuffer buf = stack[--count];
+            stack[count] = null;
+            return buf;
+        }
+
+        /**
+         * Add an idle buffer
+         * @param buf buffer
+         * @return <tt>false</tt> if the list is full
+         */
+        boolean push(ByteBuffer buf)
+        {
+            if (count == stack.length) {
+                if (count >= maxIdle) {
+                    return false;
+                }
+
+                final int newLen =
+                    (int) Math.min((long) maxIdle, (long) count * 2);
+                stack = Arrays.copyOf(stack, newLen);
+            }
+
+            stack[count++] = buf;
+            return true;
+        }
+    }
+
+    /**
+     * Identity set of idle buffers, split into independently locked stripes
+     * so threads returning buffers to different magazines rarely contend
+     */
+    private static final class IdleSet
+    {
+        /** Number of independently locked stripes */
+        private static final int NUM_STRIPES = 16;
+
+        /** sets of idle buffers, chosen by identity hash code */
+        private Stripe[] stripes;
+
+        /**
+         * Create an empty set
+         */
+        IdleSet()
+        {
+            stripes = new Stripe[NUM_STRIPES];
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+
+        /**
+         * Add a buffer
+         * @param buf byte buffer
+         * @return <tt>false</tt> if the buffer was already in the set
+         */
+        boolean add(ByteBuffer buf)
+        {
+            final Stripe stripe = getStripe(buf);
+            synchronized (stripe) {
+                return stripe.put(buf, Boolean.TRUE) == null;
+            }
+        }
+
+        /**
+         * Get the stripe which holds this buffer
+         * @param buf byte buffer
+         * @return stripe
+         */
+        private Stripe getStripe(ByteBuffer buf)
+        {
+            return stripes[System.identityHashCode(buf) & (NUM_STRIPES - 1)];
+        }
+
+        /**
+         * Remove a buffer
+         * @param buf byte buffer
+         */
+        void remove(ByteBuffer buf)
+        {
+            final Stripe stripe = getStripe(buf);
+            synchronized (stripe) {
+                stripe.remove(buf);
+            }
+        }
+
+        /**
+         * Idle buffers whose identity hash codes share the same low bits.
+         * Callers must hold the stripe's lock.
+         */
+        private static final class Stripe
+            extends IdentityHashMap<ByteBuffer, Boolean>
+        {
+        }
+    }
+}
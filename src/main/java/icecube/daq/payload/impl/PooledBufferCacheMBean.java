@@ -0,0 +1,29 @@
+package icecube.daq.payload.impl;
+
+/**
+ * MBean interface for pooled buffer cache.
+ */
+public interface PooledBufferCacheMBean
+    extends VitreousBufferCacheMBean
+{
+    /**
+     * Get number of requests satisfied by a previously returned buffer
+     * @return value
+     */
+    long getCacheHits();
+    /**
+     * Get number of requests which required a new buffer to be allocated
+     * @return value
+     */
+    long getCacheMisses();
+    /**
+     * Get number of idle buffers waiting to be reused
+     * @return value
+     */
+    int getPooledBuffers();
+    /**
+     * Get number of bytes held in idle buffers
+     * @return value
+     */
+    long getTotalBytesInCache();
+}
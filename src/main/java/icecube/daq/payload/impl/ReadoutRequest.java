@@ -140,6 +140,7 @@ public class ReadoutRequest
 
         elemData.add(new ReadoutRequestElement(type, srcId, firstTime,
                                                lastTime, domId));
+        setModified();
     }
 
     /**
@@ -325,12 +326,7 @@ public class ReadoutRequest
         }
 
         // make sure we can load the field(s) needed in compareSpliceable()
-        final int bodyOffset;
-        if (offset == 0) {
-            bodyOffset = OFFSET_PAYLOAD;
-        } else {
-            bodyOffset = 0;
-        }
+        final int bodyOffset = OFFSET_PAYLOAD;
 
         if (bodyOffset + OFFSET_UID + 4 > len) {
             throw new PayloadException("Cannot load field at offset " +
@@ -392,6 +388,8 @@ public class ReadoutRequest
     public void setSourceID(ISourceID srcId)
     {
         this.srcId = srcId.getSourceID();
+        srcObj = null;
+        setModified();
     }
 
     /**
@@ -403,6 +401,7 @@ public class ReadoutRequest
     public void setUID(int uid)
     {
         this.uid = uid;
+        setModified();
     }
 
     /**
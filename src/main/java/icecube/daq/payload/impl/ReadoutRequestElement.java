@@ -121,7 +121,14 @@ public class ReadoutRequestElement
         int val = type - rre.getReadoutType();
         if (val == 0) {
             long lval;
-            if (rre.getFirstTimeUTC() == null) {
+            if (rre instanceof ReadoutRequestElement) {
+                // times are always set, so skip the IUTCTime objects
+                ReadoutRequestElement elem = (ReadoutRequestElement) rre;
+                lval = firstTime - elem.firstTime;
+                if (lval == 0) {
+                    lval = lastTime - elem.lastTime;
+                }
+            } else if (rre.getFirstTimeUTC() == null) {
                 lval = 1;
             } else {
                 lval = firstTime - rre.getFirstTimeUTC().longValue();
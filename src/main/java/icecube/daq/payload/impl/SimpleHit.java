@@ -22,7 +22,7 @@ public class SimpleHit
     implements IHitPayload, Spliceable
 {
     /** payload length */
-    private static final int LENGTH = 38;
+    static final int LENGTH = 38;
 
     /** Offset of trigger type field */
     private static final int OFFSET_TRIGTYPE = 16;
@@ -367,6 +367,37 @@ public class SimpleHit
         throw new Error("Unimplemented");
     }
 
+    /**
+     * Reuse this hit for a different byte buffer
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param len total number of bytes
+     * @param utcTime payload time (UTC)
+     * @throws PayloadException if there is a problem
+     */
+    @Override
+    void rebind(ByteBuffer buf, int offset, int len, long utcTime)
+        throws PayloadException
+    {
+        if (len != LENGTH) {
+            throw new PayloadException("Length should be " + LENGTH +
+                                       ", not " + len);
+        }
+
+        super.rebind(buf, offset, len, utcTime);
+
+        trigType = buf.getInt(offset + OFFSET_TRIGTYPE);
+        cfgId = buf.getInt(offset + OFFSET_CONFIGID);
+        srcId = buf.getInt(offset + OFFSET_SOURCEID);
+        domId = buf.getLong(offset + OFFSET_DOMID);
+        trigMode = buf.getShort(offset + OFFSET_TRIGMODE);
+
+        utcTimeObj = null;
+        srcObj = null;
+        domObj = null;
+        domInfo = null;
+    }
+
     /**
      * Clear out any cached data.
      */
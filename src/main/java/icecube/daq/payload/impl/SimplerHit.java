@@ -21,7 +21,7 @@ public class SimplerHit
     implements IHitPayload, Spliceable
 {
     /** payload length */
-    private static final int LENGTH = 20;
+    static final int LENGTH = 20;
 
     /** Offset of trigger configuration ID field */
     private static final int OFFSET_CHANNELID = 16;
@@ -335,6 +335,34 @@ public class SimplerHit
         throw new Error("Unimplemented");
     }
 
+    /**
+     * Reuse this hit for a different byte buffer
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param len total number of bytes
+     * @param utcTime payload time (UTC)
+     * @throws PayloadException if there is a problem
+     */
+    @Override
+    void rebind(ByteBuffer buf, int offset, int len, long utcTime)
+        throws PayloadException
+    {
+        if (len != LENGTH) {
+            throw new PayloadException("Length should be " + LENGTH +
+                                       ", not " + len);
+        }
+
+        super.rebind(buf, offset, len, utcTime);
+
+        trigMode = buf.getShort(offset + OFFSET_TRIGMODE);
+        channelId = buf.getShort(offset + OFFSET_CHANNELID);
+
+        utcTimeObj = null;
+        srcObj = null;
+        domObj = null;
+        domInfo = null;
+    }
+
     /**
      * Clear out any cached data.
      */
@@ -137,13 +137,22 @@ public class Supernova
     }
 
     /**
-     * Unimplemented
-     * @return Error
+     * Return a copy of this object.
+     * @return copied object
      */
     @Override
     public Object deepCopy()
     {
-        throw new Error("Unimplemented");
+        if (!isLoaded()) {
+            throw new Error(getPayloadName() + " has not been loaded");
+        }
+
+        try {
+            return new Supernova(getUTCTime(), domId, clockBytes.clone(),
+                                 scalarData.clone());
+        } catch (PayloadException pe) {
+            throw new Error("Cannot copy " + toString(), pe);
+        }
     }
 
     /**
@@ -217,34 +226,26 @@ public class Supernova
 
         domId = buf.getLong(pos + OFFSET_DOMID);
 
-        final ByteOrder origOrder = buf.order();
-        final int origPos = buf.position();
-
-        try {
-            buf.order(ByteOrder.BIG_ENDIAN);
-
-            final int blockLen = buf.getShort(pos + OFFSET_BLOCKLEN);
-
-            final short magic = buf.getShort(pos + OFFSET_FORMATID);
-            if (magic != MAGIC_NUMBER) {
-                final String msg =
-                    String.format("\"Magic\" bytes should be %04x, not %04x",
-                                  MAGIC_NUMBER, magic);
-                throw new PayloadException(msg);
-            }
-
-            clockBytes = new byte[6];
-            buf.position(pos + OFFSET_DOMCLOCK);
-            buf.get(clockBytes, 0, clockBytes.length);
-
-            scalarData = new byte[blockLen - HEADER_LEN];
-            buf.position(pos + OFFSET_SCALARDATA);
-            buf.get(scalarData, 0, scalarData.length);
-        } finally {
-            buf.position(origPos);
-            buf.order(origOrder);
+        final int blockLen =
+            BufferUtil.getShort(buf, pos + OFFSET_BLOCKLEN,
+                                ByteOrder.BIG_ENDIAN);
+
+        final short magic =
+            BufferUtil.getShort(buf, pos + OFFSET_FORMATID,
+                                ByteOrder.BIG_ENDIAN);
+        if (magic != MAGIC_NUMBER) {
+            final String msg =
+                String.format("\"Magic\" bytes should be %04x, not %04x",
+                              MAGIC_NUMBER, magic);
+            throw new PayloadException(msg);
         }
 
+        clockBytes = new byte[6];
+        BufferUtil.getBytes(buf, pos + OFFSET_DOMCLOCK, clockBytes);
+
+        scalarData = new byte[blockLen - HEADER_LEN];
+        BufferUtil.getBytes(buf, pos + OFFSET_SCALARDATA, scalarData);
+
         return OFFSET_SCALARDATA + scalarData.length;
     }
 
@@ -264,12 +265,7 @@ public class Supernova
         }
 
         // make sure we can load the field(s) needed in compareSpliceable()
-        final int bodyOffset;
-        if (offset == 0) {
-            bodyOffset = OFFSET_PAYLOAD;
-        } else {
-            bodyOffset = 0;
-        }
+        final int bodyOffset = OFFSET_PAYLOAD;
 
         if (bodyOffset + OFFSET_DOMID + 8 > len) {
             throw new PayloadException("Cannot load field at offset " +
@@ -293,25 +289,37 @@ public class Supernova
     {
         buf.putLong(offset + OFFSET_DOMID, domId);
 
-        final ByteOrder origOrder = buf.order();
-        final int origPos = buf.position();
-
-        buf.order(ByteOrder.BIG_ENDIAN);
+        BufferUtil.putShort(buf, offset + OFFSET_BLOCKLEN,
+                            (short) (HEADER_LEN + scalarData.length),
+                            ByteOrder.BIG_ENDIAN);
+        BufferUtil.putShort(buf, offset + OFFSET_FORMATID, MAGIC_NUMBER,
+                            ByteOrder.BIG_ENDIAN);
 
-        buf.putShort(offset + OFFSET_BLOCKLEN,
-                     (short) (HEADER_LEN + scalarData.length));
-        buf.putShort(offset + OFFSET_FORMATID, MAGIC_NUMBER);
+        BufferUtil.putBytes(buf, offset + OFFSET_DOMCLOCK, clockBytes);
+        BufferUtil.putBytes(buf, offset + OFFSET_SCALARDATA, scalarData);
 
-        buf.position(offset + OFFSET_DOMCLOCK);
-        buf.put(clockBytes);
-
-        buf.position(offset + OFFSET_SCALARDATA);
-        buf.put(scalarData);
+        return OFFSET_SCALARDATA + scalarData.length;
+    }
 
-        buf.position(origPos);
-        buf.order(origOrder);
+    /**
+     * Reuse this payload for a different byte buffer.  The data arrays are
+     * dropped so nothing from the previous buffer is visible until the
+     * next <tt>loadPayload()</tt>.
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param len total number of bytes
+     * @param utcTime payload time (UTC)
+     * @throws PayloadException if there is a problem
+     */
+    @Override
+    void rebind(ByteBuffer buf, int offset, int len, long utcTime)
+        throws PayloadException
+    {
+        domId = -1L;
+        clockBytes = null;
+        scalarData = null;
 
-        return OFFSET_SCALARDATA + scalarData.length;
+        super.rebind(buf, offset, len, utcTime);
     }
 
     /**
@@ -44,7 +44,7 @@ public class TimeCalibration
     private static final int OFFSET_SYNCTIME = 314;
 
     /** Number of bytes in time calibration payload */
-    private static final int PAYLOAD_LEN = 322;
+    static final int PAYLOAD_LEN = 322;
 
     /** DOM ID */
     private long domId;
@@ -103,6 +103,29 @@ public class TimeCalibration
         super(buf, offset, len, utcTime);
     }
 
+    /**
+     * Create a copy of a loaded time calibration payload
+     * @param tcal payload being copied
+     */
+    private TimeCalibration(TimeCalibration tcal)
+    {
+        super(tcal.getUTCTime());
+
+        domId = tcal.domId;
+        pktLen = tcal.pktLen;
+        dorTX = tcal.dorTX;
+        dorRX = tcal.dorRX;
+        dorWaveform = tcal.dorWaveform.clone();
+        domTX = tcal.domTX;
+        domRX = tcal.domRX;
+        domWaveform = tcal.domWaveform.clone();
+        dateBytes = tcal.dateBytes.clone();
+        seconds = tcal.seconds;
+        secondsSet = tcal.secondsSet;
+        quality = tcal.quality;
+        syncTime = tcal.syncTime;
+    }
+
     /**
      * Compare two payloads for the splicer.
      * NOTE: Make sure all compared fields have been loaded by
@@ -150,13 +173,17 @@ public class TimeCalibration
     }
 
     /**
-     * Unimplemented
-     * @return Error
+     * Return a copy of this object.
+     * @return copied object
      */
     @Override
     public Object deepCopy()
     {
-        throw new Error("Unimplemented");
+        if (!isLoaded()) {
+            throw new Error(getPayloadName() + " has not been loaded");
+        }
+
+        return new TimeCalibration(this);
     }
 
     /**
@@ -383,81 +410,73 @@ public class TimeCalibration
 
         domId = buf.getLong(pos + OFFSET_DOMID);
 
-        final ByteOrder origOrder = buf.order();
-        final int origPos = buf.position();
-
-        buf.order(ByteOrder.LITTLE_ENDIAN);
-
-        try {
-            pktLen = buf.getShort(pos + OFFSET_PACKETLEN);
-
-            short fmt = buf.getShort(pos + OFFSET_FORMAT);
-            if (fmt == 0xc9 || fmt == (short) 0xc900) {
-                // ignore GPS header
-                //  (8-byte DOM ID/2-byte length/2-byte format)
-                pos += 12;
-            } else if (fmt != 1) {
-                final String errmsg;
-                if (fmt == 0x100) {
-                    errmsg =
-                        String.format("Time calibration record appears to" +
-                                      " be bit-flipped (format=0x%04x)", fmt);
-                } else {
-                    errmsg =
-                        String.format("Bad format 0x%04x for DOM %012x", fmt,
-                                      domId);
-                }
-
-                throw new PayloadException(errmsg);
+        final ByteOrder little = ByteOrder.LITTLE_ENDIAN;
+
+        // the DOM record is little-endian; use order-explicit reads rather
+        // than changing the order of a buffer other threads may share
+        pktLen = BufferUtil.getShort(buf, pos + OFFSET_PACKETLEN, little);
+
+        short fmt = BufferUtil.getShort(buf, pos + OFFSET_FORMAT, little);
+        if (fmt == 0xc9 || fmt == (short) 0xc900) {
+            // ignore GPS header
+            //  (8-byte DOM ID/2-byte length/2-byte format)
+            pos += 12;
+        } else if (fmt != 1) {
+            final String errmsg;
+            if (fmt == 0x100) {
+                errmsg =
+                    String.format("Time calibration record appears to" +
+                                  " be bit-flipped (format=0x%04x)", fmt);
+            } else {
+                errmsg =
+                    String.format("Bad format 0x%04x for DOM %012x", fmt,
+                                  domId);
             }
 
-            int wfPos;
+            throw new PayloadException(errmsg);
+        }
 
-            dorTX = buf.getLong(pos + OFFSET_DORTX);
-            dorRX = buf.getLong(pos + OFFSET_DORRX);
+        int wfPos;
 
-            dorWaveform = new short[64];
+        dorTX = BufferUtil.getLong(buf, pos + OFFSET_DORTX, little);
+        dorRX = BufferUtil.getLong(buf, pos + OFFSET_DORRX, little);
 
-            wfPos = pos + OFFSET_DORWAVEFORM;
-            for (int i = 0; i < dorWaveform.length; i++) {
-                dorWaveform[i] = buf.getShort(wfPos);
-                wfPos += 2;
-            }
+        dorWaveform = new short[64];
 
-            domRX = buf.getLong(pos + OFFSET_DOMRX);
-            domTX = buf.getLong(pos + OFFSET_DOMTX);
+        wfPos = pos + OFFSET_DORWAVEFORM;
+        for (int i = 0; i < dorWaveform.length; i++) {
+            dorWaveform[i] = BufferUtil.getShort(buf, wfPos, little);
+            wfPos += 2;
+        }
 
-            domWaveform = new short[64];
+        domRX = BufferUtil.getLong(buf, pos + OFFSET_DOMRX, little);
+        domTX = BufferUtil.getLong(buf, pos + OFFSET_DOMTX, little);
 
-            wfPos = pos + OFFSET_DOMWAVEFORM;
-            for (int i = 0; i < domWaveform.length; i++) {
-                domWaveform[i] = buf.getShort(wfPos);
-                wfPos += 2;
-            }
+        domWaveform = new short[64];
 
-            final byte startMarker = buf.get(pos + OFFSET_STARTOFGPS);
-            if (startMarker != (byte) 1) {
-                throw new PayloadException("Expected Start-of-header, not " +
-                                           (int) startMarker);
-            }
+        wfPos = pos + OFFSET_DOMWAVEFORM;
+        for (int i = 0; i < domWaveform.length; i++) {
+            domWaveform[i] = BufferUtil.getShort(buf, wfPos, little);
+            wfPos += 2;
+        }
 
-            dateBytes = new byte[12];
+        final byte startMarker = buf.get(pos + OFFSET_STARTOFGPS);
+        if (startMarker != (byte) 1) {
+            throw new PayloadException("Expected Start-of-header, not " +
+                                       (int) startMarker);
+        }
 
-            buf.position(pos + OFFSET_JULIANDATE);
-            buf.get(dateBytes, 0, dateBytes.length);
+        dateBytes = new byte[12];
 
-            seconds = -1;
-            secondsSet = false;
+        BufferUtil.getBytes(buf, pos + OFFSET_JULIANDATE, dateBytes);
 
-            quality = buf.get(pos + OFFSET_QUALITY);
+        seconds = -1;
+        secondsSet = false;
 
-            buf.order(ByteOrder.BIG_ENDIAN);
+        quality = buf.get(pos + OFFSET_QUALITY);
 
-            syncTime = buf.getLong(pos + OFFSET_SYNCTIME);
-        } finally {
-            buf.position(origPos);
-            buf.order(origOrder);
-        }
+        syncTime = BufferUtil.getLong(buf, pos + OFFSET_SYNCTIME,
+                                      ByteOrder.BIG_ENDIAN);
 
         return PAYLOAD_LEN;
     }
@@ -478,12 +497,7 @@ public class TimeCalibration
         }
 
         // make sure we can load the field(s) needed in compareSpliceable()
-        final int bodyOffset;
-        if (offset == 0) {
-            bodyOffset = OFFSET_PAYLOAD;
-        } else {
-            bodyOffset = 0;
-        }
+        final int bodyOffset = OFFSET_PAYLOAD;
 
         if (bodyOffset + OFFSET_DOMID + 8 > len) {
             throw new PayloadException("Cannot load field at offset " +
@@ -507,51 +521,73 @@ public class TimeCalibration
     {
         buf.putLong(offset + OFFSET_DOMID, domId);
 
-        final ByteOrder origOrder = buf.order();
-        final int origPos = buf.position();
+        final ByteOrder little = ByteOrder.LITTLE_ENDIAN;
 
-        try {
-            buf.order(ByteOrder.LITTLE_ENDIAN);
+        BufferUtil.putShort(buf, offset + OFFSET_PACKETLEN, pktLen, little);
+        BufferUtil.putShort(buf, offset + OFFSET_FORMAT, (short) 1, little);
 
-            buf.putShort(offset + OFFSET_PACKETLEN, pktLen);
-            buf.putShort(offset + OFFSET_FORMAT, (short) 1);
+        int wfPos;
 
-            int wfPos;
+        BufferUtil.putLong(buf, offset + OFFSET_DORTX, dorTX, little);
+        BufferUtil.putLong(buf, offset + OFFSET_DORRX, dorRX, little);
 
-            buf.putLong(offset + OFFSET_DORTX, dorTX);
-            buf.putLong(offset + OFFSET_DORRX, dorRX);
+        wfPos = offset + OFFSET_DORWAVEFORM;
+        for (int i = 0; i < dorWaveform.length; i++) {
+            BufferUtil.putShort(buf, wfPos, dorWaveform[i], little);
+            wfPos += 2;
+        }
 
-            wfPos = offset + OFFSET_DORWAVEFORM;
-            for (int i = 0; i < dorWaveform.length; i++) {
-                buf.putShort(wfPos, dorWaveform[i]);
-                wfPos += 2;
-            }
+        BufferUtil.putLong(buf, offset + OFFSET_DOMRX, domRX, little);
+        BufferUtil.putLong(buf, offset + OFFSET_DOMTX, domTX, little);
 
-            buf.putLong(offset + OFFSET_DOMRX, domRX);
-            buf.putLong(offset + OFFSET_DOMTX, domTX);
+        wfPos = offset + OFFSET_DOMWAVEFORM;
 
-            wfPos = offset + OFFSET_DOMWAVEFORM;
+        for (int i = 0; i < domWaveform.length; i++) {
+            BufferUtil.putShort(buf, wfPos, domWaveform[i], little);
+            wfPos += 2;
+        }
 
-            for (int i = 0; i < domWaveform.length; i++) {
-                buf.putShort(wfPos, domWaveform[i]);
-                wfPos += 2;
-            }
+        buf.put(offset + OFFSET_STARTOFGPS, (byte) 1);
 
-            buf.put(offset + OFFSET_STARTOFGPS, (byte) 1);
+        BufferUtil.putBytes(buf, offset + OFFSET_JULIANDATE, getDateBytes(),
+                            0, 12);
+        buf.put(offset + OFFSET_QUALITY, quality);
 
-            buf.position(offset + OFFSET_JULIANDATE);
-            buf.put(getDateBytes(), 0, 12);
-            buf.put(offset + OFFSET_QUALITY, quality);
+        BufferUtil.putLong(buf, offset + OFFSET_SYNCTIME, syncTime,
+                           ByteOrder.BIG_ENDIAN);
 
-            buf.order(ByteOrder.BIG_ENDIAN);
+        return PAYLOAD_LEN;
+    }
 
-            buf.putLong(offset + OFFSET_SYNCTIME, syncTime);
-        } finally {
-            buf.position(origPos);
-            buf.order(origOrder);
-        }
+    /**
+     * Reuse this payload for a different byte buffer.  The waveform and
+     * date arrays are dropped so nothing from the previous buffer is
+     * visible until the next <tt>loadPayload()</tt>.
+     * @param buf byte buffer
+     * @param offset index of first byte
+     * @param len total number of bytes
+     * @param utcTime payload time (UTC)
+     * @throws PayloadException if there is a problem
+     */
+    @Override
+    void rebind(ByteBuffer buf, int offset, int len, long utcTime)
+        throws PayloadException
+    {
+        domId = -1L;
+        pktLen = -1;
+        dorTX = -1L;
+        dorRX = -1L;
+        dorWaveform = null;
+        domTX = -1L;
+        domRX = -1L;
+        domWaveform = null;
+        dateBytes = null;
+        seconds = -1;
+        secondsSet = false;
+        quality = -1;
+        syncTime = -1L;
 
-        return PAYLOAD_LEN;
+        super.rebind(buf, offset, len, utcTime);
     }
 
     /**
@@ -0,0 +1,354 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.PayloadException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sparse index of payload times for a payload file.  Every Nth payload
+ * adds an entry holding its file offset and the latest time of any
+ * payload before it, so a reader can seek close to the first payload at
+ * or after a given time.  Because each entry records the latest earlier
+ * time, the index gives the right starting point even for files which
+ * are not perfectly time-ordered.
+ *
+ * The index can be built while the file is being written (by calling
+ * <tt>add()</tt> for each payload) or by scanning an existing file, and
+ * is saved in a sidecar file next to the payload file.
+ */
+public class TimeIndex
+{
+    private static final Logger LOG = Logger.getLogger(TimeIndex.class);
+
+    /** Default number of payloads between index entries */
+    public static final int DEFAULT_INTERVAL = 1000;
+    /** Suffix added to the payload file name to get the sidecar name */
+    public static final String SUFFIX = ".tidx";
+
+    /** Sidecar file marker ("TIDX") */
+    private static final int MAGIC = 0x54494458;
+    /** Sidecar file format version */
+    private static final int VERSION = 1;
+
+    /** Initial number of index slots */
+    private static final int INITIAL_SLOTS = 64;
+
+    /** number of payloads between index entries */
+    private int interval;
+
+    /** latest time before each entry's payload */
+    private long[] maxTimes;
+    /** file offset of each entry's payload */
+    private long[] offsets;
+    /** number of entries */
+    private int numEntries;
+
+    /** number of payloads added */
+    private long numPayloads;
+    /** file offset of the next payload */
+    private long nextOffset;
+    /** latest payload time seen so far */
+    private long maxTime = Long.MIN_VALUE;
+    /** time of the previous payload */
+    private long lastTime = Long.MIN_VALUE;
+    /** <tt>true</tt> if payload times never went backward */
+    private boolean ordered = true;
+
+    /**
+     * Create an empty index
+     * @param interval number of payloads between index entries
+     */
+    public TimeIndex(int interval)
+    {
+        this(interval, INITIAL_SLOTS);
+    }
+
+    /**
+     * Create an empty index
+     * @param interval number of payloads between index entries
+     * @param slots initial number of index slots
+     */
+    private TimeIndex(int interval, int slots)
+    {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Bad index interval " +
+                                               interval);
+        }
+
+        this.interval = interval;
+
+        maxTimes = new long[Math.max(1, slots)];
+        offsets = new long[Math.max(1, slots)];
+    }
+
+    /**
+     * Add the next payload in the file
+     * @param utcTime payload time
+     * @param length payload length
+     */
+    public void add(long utcTime, int length)
+    {
+        if (numPayloads % interval == 0) {
+            if (numEntries == offsets.length) {
+                maxTimes = Arrays.copyOf(maxTimes, numEntries * 2);
+                offsets = Arrays.copyOf(offsets, numEntries * 2);
+            }
+
+            maxTimes[numEntries] = maxTime;
+            offsets[numEntries] = nextOffset;
+            numEntries++;
+        }
+
+        if (utcTime < lastTime) {
+            ordered = false;
+        }
+        if (utcTime > maxTime) {
+            maxTime = utcTime;
+        }
+
+        lastTime = utcTime;
+        nextOffset += length;
+        numPayloads++;
+    }
+
+    /**
+     * Build an index by scanning a payload file
+     * @param file payload file
+     * @param interval number of payloads between index entries
+     * @return new index
+     * @throws IOException if the file cannot be read
+     * @throws PayloadException if the file is corrupt
+     */
+    public static TimeIndex build(File file, int interval)
+        throws IOException, PayloadException
+    {
+        TimeIndex idx = new TimeIndex(interval);
+
+        MappedPayloadReader rdr =
+            new MappedPayloadReader(file, new PayloadFactory(null));
+        try {
+            while (rdr.next()) {
+                idx.add(rdr.getUTCTime(), rdr.getLength());
+            }
+        } finally {
+            rdr.close();
+        }
+
+        return idx;
+    }
+
+    /**
+     * Find the file offset from which to start reading payloads at or
+     * after <tt>utcTime</tt>.  Every payload before the returned offset is
+     * earlier than <tt>utcTime</tt>.
+     * @param utcTime payload time
+     * @return file offset
+     */
+    public long findStart(long utcTime)
+    {
+        // find the last entry whose earlier payloads are all too early
+        int lo = 0;
+        int hi = numEntries - 1;
+        int found = -1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (maxTimes[mid] < utcTime) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        if (found < 0) {
+            return 0L;
+        }
+
+        return offsets[found];
+    }
+
+    /**
+     * Get the index for a payload file, loading it from the sidecar file
+     * if that is up to date and otherwise building it by scanning the
+     * payload file and saving a new sidecar file.
+     * @param file payload file
+     * @param interval number of payloads between index entries
+     *                 (ignored if the index is loaded)
+     * @return index
+     * @throws IOException if the payload file cannot be read
+     * @throws PayloadException if the file is corrupt
+     */
+    public static TimeIndex forFile(File file, int interval)
+        throws IOException, PayloadException
+    {
+        File sidecar = getSidecar(file);
+        if (sidecar.exists() &&
+            sidecar.lastModified() >= file.lastModified())
+        {
+            try {
+                TimeIndex idx = load(sidecar);
+                if (idx.nextOffset == file.length()) {
+                    return idx;
+                }
+            } catch (IOException ioe) {
+                LOG.error("Ignoring bad index " + sidecar, ioe);
+            }
+        }
+
+        TimeIndex idx = build(file, interval);
+        try {
+            idx.write(sidecar);
+        } catch (IOException ioe) {
+            LOG.error("Cannot write index " + sidecar, ioe);
+        }
+
+        return idx;
+    }
+
+    /**
+     * Get the number of payloads between index entries
+     * @return value
+     */
+    public int getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * Get the number of index entries
+     * @return value
+     */
+    public int getNumEntries()
+    {
+        return numEntries;
+    }
+
+    /**
+     * Get the number of payloads added to the index
+     * @return value
+     */
+    public long getNumPayloads()
+    {
+        return numPayloads;
+    }
+
+    /**
+     * Get the sidecar file for a payload file
+     * @param file payload file
+     * @return sidecar file
+     */
+    public static File getSidecar(File file)
+    {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Were the payload times in non-decreasing order?
+     * @return <tt>true</tt> if no payload was earlier than the one before it
+     */
+    public boolean isOrdered()
+    {
+        return ordered;
+    }
+
+    /**
+     * Load an index from a sidecar file
+     * @param sidecar sidecar file
+     * @return index
+     * @throws IOException if the file cannot be read or is not an index
+     */
+    public static TimeIndex load(File sidecar)
+        throws IOException
+    {
+        FileInputStream fin = new FileInputStream(sidecar);
+        DataInputStream in =
+            new DataInputStream(new BufferedInputStream(fin));
+        try {
+            final int magic = in.readInt();
+            if (magic != MAGIC) {
+                throw new IOException(sidecar + " is not a time index");
+            }
+
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unknown time index version " +
+                                      version + " in " + sidecar);
+            }
+
+            final int interval = in.readInt();
+            final int num = in.readInt();
+            if (interval < 1 || num < 0) {
+                throw new IOException("Corrupt time index " + sidecar);
+            }
+
+            TimeIndex idx = new TimeIndex(interval, num);
+            idx.ordered = in.readBoolean();
+            idx.numPayloads = in.readLong();
+            idx.nextOffset = in.readLong();
+            idx.maxTime = in.readLong();
+            idx.lastTime = in.readLong();
+
+            for (int i = 0; i < num; i++) {
+                idx.maxTimes[i] = in.readLong();
+                idx.offsets[i] = in.readLong();
+            }
+            idx.numEntries = num;
+
+            return idx;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Save this index to a sidecar file
+     * @param sidecar sidecar file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File sidecar)
+        throws IOException
+    {
+        FileOutputStream fout = new FileOutputStream(sidecar);
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(fout));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(interval);
+            out.writeInt(numEntries);
+            out.writeBoolean(ordered);
+            out.writeLong(numPayloads);
+            out.writeLong(nextOffset);
+            out.writeLong(maxTime);
+            out.writeLong(lastTime);
+
+            for (int i = 0; i < numEntries; i++) {
+                out.writeLong(maxTimes[i]);
+                out.writeLong(offsets[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Get a debugging string representing this object.
+     * @return debugging string
+     */
+    @Override
+    public String toString()
+    {
+        return "TimeIndex[" + numEntries + "*" + interval + ",num=" +
+            numPayloads + (ordered ? "" : ",unordered") + "]";
+    }
+}
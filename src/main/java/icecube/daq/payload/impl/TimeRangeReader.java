@@ -0,0 +1,116 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IPayload;
+import icecube.daq.payload.PayloadException;
+
+import java.io.IOException;
+
+/**
+ * Return the payloads from a mapped file whose times fall within a range.
+ * The file's time index is used to seek near the first payload, and if
+ * the index shows the file is time-ordered, reading stops at the first
+ * payload past the end of the range.
+ */
+public class TimeRangeReader
+{
+    /** underlying file reader */
+    private MappedPayloadReader rdr;
+    /** <tt>true</tt> if the file is known to be time-ordered */
+    private boolean ordered;
+    /** earliest time to return */
+    private long firstTime;
+    /** latest time to return */
+    private long lastTime;
+    /** <tt>true</tt> once the end of the range has been reached */
+    private boolean done;
+
+    /**
+     * Create a time range reader
+     * @param rdr payload file reader
+     * @param index time index for the payload file
+     * @param firstTime earliest time to return
+     * @param lastTime latest time to return
+     * @throws IOException if the file cannot be read
+     */
+    public TimeRangeReader(MappedPayloadReader rdr, TimeIndex index,
+                           long firstTime, long lastTime)
+        throws IOException
+    {
+        if (firstTime > lastTime) {
+            throw new IllegalArgumentException("First time " + firstTime +
+                                               " is after last time " +
+                                               lastTime);
+        }
+
+        this.rdr = rdr;
+        this.ordered = index.isOrdered();
+        this.firstTime = firstTime;
+        this.lastTime = lastTime;
+
+        rdr.seek(index.findStart(firstTime));
+    }
+
+    /**
+     * Get a reusable per-thread view of the current payload
+     * @return reusable payload
+     * @throws PayloadException if there is a problem
+     */
+    public IPayload getFlyweight()
+        throws PayloadException
+    {
+        return rdr.getFlyweight();
+    }
+
+    /**
+     * Decode the current payload directly from the mapped file
+     * @return new payload
+     * @throws PayloadException if there is a problem
+     */
+    public IPayload getPayload()
+        throws PayloadException
+    {
+        return rdr.getPayload();
+    }
+
+    /**
+     * Get the underlying file reader
+     * @return file reader
+     */
+    public MappedPayloadReader getReader()
+    {
+        return rdr;
+    }
+
+    /**
+     * Get the time of the current payload
+     * @return UTC time
+     */
+    public long getUTCTime()
+    {
+        return rdr.getUTCTime();
+    }
+
+    /**
+     * Move to the next payload within the time range
+     * @return <tt>false</tt> if there are no more payloads in the range
+     * @throws IOException if the file cannot be read
+     * @throws PayloadException if the file contains a bad payload
+     */
+    public boolean next()
+        throws IOException, PayloadException
+    {
+        while (!done && rdr.next()) {
+            final long utcTime = rdr.getUTCTime();
+            if (utcTime > lastTime) {
+                if (ordered) {
+                    done = true;
+                }
+            } else if (utcTime >= firstTime) {
+                return true;
+            }
+        }
+
+        done = true;
+        return false;
+    }
+}
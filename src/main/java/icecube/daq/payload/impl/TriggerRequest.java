@@ -230,6 +230,16 @@ public class TriggerRequest
                                   lastTime, newRReq, newList);
     }
 
+    /**
+     * Get request starting time
+     * @return starting time
+     */
+    @Override
+    public long getFirstTime()
+    {
+        return firstTime;
+    }
+
     /**
      * Get request starting time
      * @return starting time object
@@ -244,6 +254,16 @@ public class TriggerRequest
         return firstTimeObj;
     }
 
+    /**
+     * Get request ending time
+     * @return ending time
+     */
+    @Override
+    public long getLastTime()
+    {
+        return lastTime;
+    }
+
     /**
      * Get request ending time
      * @return ending time object
@@ -417,6 +437,18 @@ public class TriggerRequest
         return trigType == -1;
     }
 
+    /**
+     * Has this request, its readout request, or any of its composite
+     * payloads been changed since it was read from its byte buffer?
+     * @return <tt>true</tt> if the payload must be re-encoded
+     */
+    @Override
+    public boolean isModified()
+    {
+        return super.isModified() || isModified(rdoutReq) ||
+            isAnyModified(compList);
+    }
+
     /**
      * Load the payload data
      * @param buf byte buffer
@@ -512,7 +544,8 @@ public class TriggerRequest
 
         PayloadFactory factory = getPayloadFactory();
         for (int i = 0; i < numData; i++) {
-            IPayload pay = factory.getPayload(buf, offset + totLen);
+            IPayload pay = factory.getEmbeddedPayload(buf, offset + totLen);
+            shareBuffer(pay);
             try {
                 ((IPayload) pay).loadPayload();
             } catch (IOException ioe) {
@@ -541,12 +574,7 @@ public class TriggerRequest
         }
 
         // make sure we can load the field(s) needed in compareSpliceable()
-        final int bodyOffset;
-        if (offset == 0) {
-            bodyOffset = OFFSET_PAYLOAD;
-        } else {
-            bodyOffset = 0;
-        }
+        final int bodyOffset = OFFSET_PAYLOAD;
 
         if (bodyOffset + OFFSET_LASTTIME + 8 > len) {
             throw new PayloadException("Cannot load field at offset " +
@@ -651,7 +679,7 @@ public class TriggerRequest
 
         if (compList != null) {
             for (IPayload pay : compList) {
-                pay.recycle();
+                releaseEmbedded(pay);
             }
             compList = null;
         }
@@ -681,6 +709,7 @@ public class TriggerRequest
 
         this.uid = uid;
         rdoutReq.setUID(uid);
+        setModified();
     }
 
     /**
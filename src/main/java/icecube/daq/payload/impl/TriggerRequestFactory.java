@@ -89,12 +89,12 @@ public class TriggerRequestFactory
 
     /**
      * Create a spliceable payload
-     * @param buf byte buffer
+     * @param buf byte buffer whose position is the start of the payload
      * @return new spliceable payload
      */
     @Override
     public Spliceable createSpliceable(ByteBuffer buf)
     {
-        return (Spliceable) createPayload(buf, 0);
+        return (Spliceable) createPayload(buf, buf.position());
     }
 }
@@ -1,6 +1,7 @@
 package icecube.daq.payload.impl;
 
-import icecube.daq.payload.IByteBufferCache;
+import icecube.daq.payload.IBufferPressureListener;
+import icecube.daq.payload.ITypedBufferCache;
 
 import java.nio.ByteBuffer;
 
@@ -13,7 +14,7 @@ import org.apache.log4j.Logger;
  *
  */
 public class VitreousBufferCache
-    implements IByteBufferCache, VitreousBufferCacheMBean
+    implements ITypedBufferCache, VitreousBufferCacheMBean
 {
     private static final Logger LOG =
         Logger.getLogger(VitreousBufferCache.class);
@@ -26,6 +27,12 @@ public class VitreousBufferCache
     private long maxAcquiredBytes;
     private long errorCount;
 
+    /** statistics broken down by payload type and buffer size */
+    private PayloadTypeCounters typeCounters = new PayloadTypeCounters();
+
+    /** enforces the upper limit once a bound policy is set */
+    private AcquisitionLimiter.Holder bound = new AcquisitionLimiter.Holder();
+
     /**
      * Create an unbounded named buffer cache
      * @param name name
@@ -56,14 +63,63 @@ public class VitreousBufferCache
      * @return byte buffer
      */
     @Override
-    public synchronized ByteBuffer acquireBuffer(int iLength)
+    public ByteBuffer acquireBuffer(int iLength)
     {
-        acquiredBufferCount++;
-        totalBufferCount++;
-        acquiredBytes += iLength;
+        if (!bound.reserve(iLength)) {
+            return null;
+        }
+
+        synchronized (this) {
+            acquiredBufferCount++;
+            totalBufferCount++;
+            acquiredBytes += iLength;
+        }
+
+        typeCounters.acquired(iLength);
+
         return ByteBuffer.allocate(iLength);
     }
 
+    /**
+     * Get histogram of acquired buffer sizes
+     * @return array indexed by log2(size)
+     */
+    @Override
+    public long[] getAcquiredSizeHistogram()
+    {
+        return typeCounters.getAcquiredSizes();
+    }
+
+    /**
+     * Get number of requests refused because of the upper limit
+     * @return value
+     */
+    @Override
+    public long getBoundRejections()
+    {
+        return bound.getBoundRejections();
+    }
+
+    /**
+     * Get total time spent waiting for the upper limit
+     * @return number of milliseconds
+     */
+    @Override
+    public long getBoundWaitMillis()
+    {
+        return bound.getBoundWaitMillis();
+    }
+
+    /**
+     * Get number of requests which waited for the upper limit
+     * @return value
+     */
+    @Override
+    public long getBoundWaits()
+    {
+        return bound.getBoundWaits();
+    }
+
     /**
      * Get number of currently buffers acquired
      * @return value
@@ -149,9 +205,23 @@ public class VitreousBufferCache
      * @param tByteBuffer buffer
      */
     @Override
-    public synchronized void returnBuffer(ByteBuffer tByteBuffer)
+    public void returnBuffer(ByteBuffer tByteBuffer)
+    {
+        returnBytes(tByteBuffer.capacity(),
+                    PayloadTypeCounters.getPayloadType(tByteBuffer));
+    }
+
+    /**
+     * Return a buffer which held a payload in only its first
+     * <tt>numBytes</tt> bytes.  The bytes are attributed to the payload
+     * type found in the buffer.
+     * @param buf byte buffer
+     * @param numBytes number of bytes used by the payload
+     */
+    @Override
+    public void returnBuffer(ByteBuffer buf, int numBytes)
     {
-        returnBuffer(tByteBuffer.capacity());
+        returnBuffer(numBytes, PayloadTypeCounters.getPayloadType(buf));
     }
 
     /**
@@ -159,18 +229,90 @@ public class VitreousBufferCache
      * @param numBytes buffer capacity
      */
     @Override
-    public synchronized void returnBuffer(int numBytes)
+    public void returnBuffer(int numBytes)
     {
-        acquiredBufferCount--;
-        acquiredBytes -= numBytes;
-        returnedBuffers++;
-        if (acquiredBufferCount < 0 || acquiredBytes < 0) {
-            if ((errorCount % 1000) == 0) {
-                LOG.error("ByteBuffer underflow for " + numBytes +
-                          "-byte buffer: " + toString());
+        returnBytes(numBytes, PayloadTypeCounters.UNKNOWN_TYPE);
+    }
+
+    /**
+     * Return a "buffer" which held a payload of a known type
+     * @param numBytes buffer capacity
+     * @param payloadType payload type
+     */
+    @Override
+    public void returnBuffer(int numBytes, int payloadType)
+    {
+        returnBytes(numBytes, payloadType);
+    }
+
+    /**
+     * Update statistics for a returned buffer
+     * @param numBytes buffer capacity
+     * @param payloadType payload type
+     */
+    private void returnBytes(int numBytes, int payloadType)
+    {
+        typeCounters.returned(payloadType, numBytes);
+
+        synchronized (this) {
+            acquiredBufferCount--;
+            acquiredBytes -= numBytes;
+            returnedBuffers++;
+            if (acquiredBufferCount < 0 || acquiredBytes < 0) {
+                if ((errorCount % 1000) == 0) {
+                    LOG.error("ByteBuffer underflow for " + numBytes +
+                              "-byte buffer: " + toString());
+                }
+                errorCount++;
             }
-            errorCount++;
         }
+
+        bound.release(numBytes);
+    }
+
+    /**
+     * Enforce the upper limit for this buffer cache.  This should be called
+     * before any buffers are acquired.
+     * @param policy what to do when a request would exceed the limit
+     * @param timeoutMillis maximum number of milliseconds to wait when the
+     *                      policy is <tt>BLOCK</tt>
+     * @param listener notified when the limit is reached
+     *                 (may be <tt>null</tt>)
+     */
+    public void setBoundPolicy(BoundPolicy policy, long timeoutMillis,
+                               IBufferPressureListener listener)
+    {
+        bound.setBoundPolicy(this, policy, timeoutMillis, listener);
+    }
+
+    /**
+     * Get number of buffers returned for each payload type
+     * @return array indexed by payload type (0 holds unknown types)
+     */
+    @Override
+    public long[] getReturnedBuffersByType()
+    {
+        return typeCounters.getReturnedBuffers();
+    }
+
+    /**
+     * Get number of bytes returned for each payload type
+     * @return array indexed by payload type (0 holds unknown types)
+     */
+    @Override
+    public long[] getReturnedBytesByType()
+    {
+        return typeCounters.getReturnedBytes();
+    }
+
+    /**
+     * Get histogram of returned buffer sizes
+     * @return array indexed by log2(size)
+     */
+    @Override
+    public long[] getReturnedSizeHistogram()
+    {
+        return typeCounters.getReturnedSizes();
     }
 
     /**
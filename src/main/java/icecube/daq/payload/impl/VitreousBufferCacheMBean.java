@@ -5,6 +5,11 @@ package icecube.daq.payload.impl;
  */
 public interface VitreousBufferCacheMBean
 {
+    /**
+     * Get histogram of acquired buffer sizes
+     * @return array indexed by log2(size)
+     */
+    long[] getAcquiredSizeHistogram();
     /**
      * Get number of currently acquired buffers
      * @return value
@@ -20,4 +25,34 @@ public interface VitreousBufferCacheMBean
      * @return value
      */
     int getReturnBufferCount();
+    /**
+     * Get number of buffers returned for each payload type
+     * @return array indexed by payload type (0 holds unknown types)
+     */
+    long[] getReturnedBuffersByType();
+    /**
+     * Get number of bytes returned for each payload type
+     * @return array indexed by payload type (0 holds unknown types)
+     */
+    long[] getReturnedBytesByType();
+    /**
+     * Get histogram of returned buffer sizes
+     * @return array indexed by log2(size)
+     */
+    long[] getReturnedSizeHistogram();
+    /**
+     * Get number of requests refused because of the upper limit
+     * @return value
+     */
+    long getBoundRejections();
+    /**
+     * Get total time spent waiting for the upper limit
+     * @return number of milliseconds
+     */
+    long getBoundWaitMillis();
+    /**
+     * Get number of requests which waited for the upper limit
+     * @return value
+     */
+    long getBoundWaits();
 }
@@ -0,0 +1,109 @@
+package icecube.daq.payload.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class BufferUtilTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public BufferUtilTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(BufferUtilTest.class);
+    }
+
+    private static void checkBuffer(ByteBuffer buf)
+    {
+        final byte[] bytes = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+        buf.position(3);
+        final ByteOrder origOrder = buf.order();
+
+        BufferUtil.putBytes(buf, 10, bytes);
+        BufferUtil.putShort(buf, 20, (short) 0x1234, ByteOrder.LITTLE_ENDIAN);
+        BufferUtil.putLong(buf, 24, 0x0102030405060708L,
+                           ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals("Position changed", 3, buf.position());
+        assertEquals("Order changed", origOrder, buf.order());
+
+        byte[] copy = BufferUtil.getBytes(buf, 10, new byte[bytes.length]);
+        assertTrue("Bad bytes " + Arrays.toString(copy),
+                   Arrays.equals(bytes, copy));
+
+        assertEquals("Bad little-endian short byte", (byte) 0x34,
+                     buf.get(20));
+        assertEquals("Bad short", (short) 0x1234,
+                     BufferUtil.getShort(buf, 20, ByteOrder.LITTLE_ENDIAN));
+        assertEquals("Bad swapped short", (short) 0x3412,
+                     BufferUtil.getShort(buf, 20, ByteOrder.BIG_ENDIAN));
+
+        assertEquals("Bad little-endian long byte", (byte) 0x08,
+                     buf.get(24));
+        assertEquals("Bad long", 0x0102030405060708L,
+                     BufferUtil.getLong(buf, 24, ByteOrder.LITTLE_ENDIAN));
+
+        assertEquals("Position changed", 3, buf.position());
+        assertEquals("Order changed", origOrder, buf.order());
+
+        try {
+            BufferUtil.getBytes(buf, buf.limit() - 4, new byte[8]);
+            fail("Read past the limit should fail");
+        } catch (IndexOutOfBoundsException ioe) {
+            // expected
+        }
+    }
+
+    public void testHeap()
+    {
+        checkBuffer(ByteBuffer.allocate(64));
+    }
+
+    public void testDirect()
+    {
+        checkBuffer(ByteBuffer.allocateDirect(64));
+    }
+
+    public void testSlice()
+    {
+        ByteBuffer buf = ByteBuffer.allocate(80);
+        buf.position(16);
+        checkBuffer(buf.slice());
+    }
+
+    public void testWithOrder()
+    {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        assertSame("Buffer should be reused", buf,
+                   BufferUtil.withOrder(buf, ByteOrder.BIG_ENDIAN));
+
+        ByteBuffer little = BufferUtil.withOrder(buf, ByteOrder.LITTLE_ENDIAN);
+        assertEquals("Bad view order", ByteOrder.LITTLE_ENDIAN,
+                     little.order());
+        assertEquals("Original order changed", ByteOrder.BIG_ENDIAN,
+                     buf.order());
+
+        little.putShort(0, (short) 1);
+        assertEquals("View does not share contents", (byte) 1, buf.get(0));
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,151 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IEventHitRecord;
+import icecube.daq.payload.test.MockDOMRegistry;
+import icecube.daq.payload.test.MockDeltaHitRecord;
+import icecube.daq.payload.test.MockReadoutRequest;
+import icecube.daq.payload.test.MockTriggerRequest;
+import icecube.daq.payload.test.MockUTCTime;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class DirectArenaBufferCacheTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public DirectArenaBufferCacheTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(DirectArenaBufferCacheTest.class);
+    }
+
+    public void testSlab()
+    {
+        DirectArenaBufferCache cache =
+            new DirectArenaBufferCache("Slab", Long.MIN_VALUE,
+                                       new int[] { 64, 1024 }, 65536,
+                                       65536);
+
+        ByteBuffer buf = cache.acquireBuffer(50);
+        assertTrue("Buffer should be direct", buf.isDirect());
+        assertEquals("Bad capacity", 64, buf.capacity());
+        assertEquals("Bad limit", 50, buf.limit());
+        assertEquals("Bad number of arenas", 1, cache.getNumArenas());
+        assertTrue("Slab should have filled the free list",
+                   cache.getPooledBuffers() > 0);
+
+        final int idle = cache.getPooledBuffers();
+
+        ByteBuffer buf2 = cache.acquireBuffer(64);
+        assertTrue("Second buffer should be direct", buf2.isDirect());
+        assertEquals("Second buffer should come from the slab",
+                     idle - 1, cache.getPooledBuffers());
+
+        buf.putLong(0, 123456789L);
+        cache.returnBuffer(buf);
+        cache.returnBuffer(buf2);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+        assertEquals("Bad number of idle buffers",
+                     idle + 1, cache.getPooledBuffers());
+
+        ByteBuffer buf3 = cache.acquireBuffer(64);
+        assertEquals("Reused buffer was not cleared", 0L, buf3.getLong(0));
+        cache.returnBuffer(buf3);
+    }
+
+    public void testHeapFallback()
+    {
+        final int arenaSize = 1024;
+
+        DirectArenaBufferCache cache =
+            new DirectArenaBufferCache("Fallback", Long.MIN_VALUE,
+                                       new int[] { 1024 }, arenaSize,
+                                       arenaSize);
+
+        ByteBuffer buf = cache.acquireBuffer(1000);
+        assertTrue("First buffer should be direct", buf.isDirect());
+
+        ByteBuffer buf2 = cache.acquireBuffer(1000);
+        assertFalse("Second buffer should be on the heap", buf2.isDirect());
+        assertEquals("Bad number of heap fallbacks",
+                     1L, cache.getHeapFallbacks());
+
+        cache.returnBuffer(buf);
+        cache.returnBuffer(buf2);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+        assertEquals("Heap buffer should not be pooled",
+                     1, cache.getPooledBuffers());
+    }
+
+    public void testLoadCompressedEvent()
+        throws Exception
+    {
+        final int uid = 12;
+        final long firstTime = 1111L;
+        final long lastTime = 2222L;
+
+        MockReadoutRequest mockReq = new MockReadoutRequest(uid, 8888);
+        mockReq.addElement(100, firstTime, lastTime, 103, 104);
+
+        MockTriggerRequest trigReq =
+            new MockTriggerRequest(firstTime, uid, 7777, 6666, 8888,
+                                   firstTime, lastTime, null, mockReq);
+
+        ArrayList<IEventHitRecord> hitRecList =
+            new ArrayList<IEventHitRecord>();
+        for (int i = 0; i < 20; i++) {
+            hitRecList.add(new MockDeltaHitRecord((byte) 0, (short) 12,
+                                                  firstTime + 100 + i,
+                                                  (short) (34 + i), 56 + i,
+                                                  78 + i, new byte[0]));
+        }
+
+        EventPayload_v6 evt =
+            new EventPayload_v6(uid, new MockUTCTime(firstTime),
+                                new MockUTCTime(lastTime), (short) 2020,
+                                1234, 0, trigReq, hitRecList);
+        evt.setDOMRegistry(new MockDOMRegistry());
+
+        DirectArenaBufferCache cache = new DirectArenaBufferCache("Event");
+
+        ByteBuffer buf = cache.acquireBuffer(evt.length());
+        assertTrue("Buffer should be direct", buf.isDirect());
+
+        final int written = evt.writePayload(false, 0, buf);
+        assertEquals("Bad number of bytes written", evt.length(), written);
+
+        EventPayload_v6 loaded = new EventPayload_v6(buf, 0);
+        loaded.loadPayload();
+
+        assertEquals("Bad UID", uid, loaded.getUID());
+        assertEquals("Event should be compressed",
+                     " zipped", loaded.getExtraString());
+
+        int numHits = 0;
+        for (IEventHitRecord rec : loaded.getHitRecords()) {
+            numHits++;
+        }
+        assertEquals("Bad number of hit records", hitRecList.size(), numHits);
+
+        cache.returnBuffer(buf);
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
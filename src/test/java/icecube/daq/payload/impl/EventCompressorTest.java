@@ -0,0 +1,366 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IEventHitRecord;
+import icecube.daq.payload.IEventPayload;
+import icecube.daq.payload.IPayload;
+import icecube.daq.payload.IPayloadConsumer;
+import icecube.daq.payload.test.LoggingCase;
+import icecube.daq.payload.test.MockDOMRegistry;
+import icecube.daq.payload.test.MockDeltaHitRecord;
+import icecube.daq.payload.test.MockHit;
+import icecube.daq.payload.test.MockReadoutRequest;
+import icecube.daq.payload.test.MockTriggerRequest;
+import icecube.daq.payload.test.MockUTCTime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Consumer which writes each event and records its UID
+ */
+class RecordingConsumer
+    implements IPayloadConsumer
+{
+    private List<Integer> uids = new ArrayList<Integer>();
+    private CountDownLatch gate;
+    private boolean fail;
+
+    RecordingConsumer(CountDownLatch gate, boolean fail)
+    {
+        this.gate = gate;
+        this.fail = fail;
+    }
+
+    @Override
+    public void consume(IPayload payload)
+        throws IOException
+    {
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (InterruptedException ie) {
+                throw new IOException("Interrupted", ie);
+            }
+        }
+
+        if (fail) {
+            throw new IOException("Test failure");
+        }
+
+        final int len = payload.length();
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        if (payload.writePayload(false, 0, buf) != len) {
+            throw new IOException("Bad length for " + payload);
+        }
+
+        synchronized (uids) {
+            uids.add(((IEventPayload) payload).getUID());
+        }
+    }
+
+    List<Integer> getUIDs()
+    {
+        synchronized (uids) {
+            return new ArrayList<Integer>(uids);
+        }
+    }
+}
+
+/**
+ * Hit which counts recycle() calls and can fail to compute its length once
+ */
+class CompressorHit
+    extends MockHit
+{
+    private boolean failLength;
+    private int numRecycled;
+
+    CompressorHit(long utcTime, boolean failLength)
+    {
+        super(utcTime, 1, 2, 3, 4L, 5);
+
+        this.failLength = failLength;
+    }
+
+    int getNumRecycled()
+    {
+        return numRecycled;
+    }
+
+    @Override
+    public int length()
+    {
+        if (failLength) {
+            failLength = false;
+            throw new Error("Test length failure");
+        }
+
+        return super.length();
+    }
+
+    @Override
+    public void recycle()
+    {
+        numRecycled++;
+    }
+}
+
+public class EventCompressorTest
+    extends LoggingCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public EventCompressorTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(EventCompressorTest.class);
+    }
+
+    private static IPayload createEvent(int uid, int numHits)
+        throws Exception
+    {
+        final long firstTime = 1111L;
+        final long lastTime = 99999L;
+
+        MockReadoutRequest mockReq = new MockReadoutRequest(uid, 8888);
+        mockReq.addElement(100, firstTime, lastTime, 103L, 104);
+
+        MockTriggerRequest trigReq =
+            new MockTriggerRequest(firstTime, uid, 7777, 6666, 8888,
+                                   firstTime, lastTime, null, mockReq);
+
+        ArrayList<IEventHitRecord> hitRecList =
+            new ArrayList<IEventHitRecord>();
+        for (int i = 0; i < numHits; i++) {
+            hitRecList.add(new MockDeltaHitRecord((byte) 0, (short) (i % 60),
+                                                  firstTime + i * 3,
+                                                  (short) 34, 56, 78,
+                                                  new byte[8]));
+        }
+
+        EventPayload_v5 evt;
+        if (uid % 2 == 0) {
+            evt = new EventPayload_v6(uid, new MockUTCTime(firstTime),
+                                      new MockUTCTime(lastTime), (short) 2024,
+                                      4444, 5555, trigReq, hitRecList);
+        } else {
+            evt = new EventPayload_v7(uid, new MockUTCTime(firstTime),
+                                      new MockUTCTime(lastTime), (short) 2024,
+                                      4444, 5555, trigReq, hitRecList,
+                                      HitRecordCodec.DEFLATE_FAST);
+        }
+        evt.setDOMRegistry(new MockDOMRegistry());
+
+        return evt;
+    }
+
+    public void testOrder()
+        throws Exception
+    {
+        final int numEvents = 200;
+        final int maxPending = 8;
+
+        RecordingConsumer consumer = new RecordingConsumer(null, false);
+        EventCompressor stage = new EventCompressor(consumer, 4, maxPending);
+
+        for (int i = 0; i < numEvents; i++) {
+            // vary the amount of work so events finish out of order
+            stage.submit(createEvent(i, ((i * 37) % 11) * 100 + 1));
+        }
+        stage.close();
+
+        List<Integer> uids = consumer.getUIDs();
+        assertEquals("Bad number of events", numEvents, uids.size());
+        for (int i = 0; i < numEvents; i++) {
+            assertEquals("Bad UID for event #" + i, i, (int) uids.get(i));
+        }
+
+        assertEquals("Bad number submitted", numEvents,
+                     stage.getNumSubmitted());
+        assertEquals("Bad number compressed", numEvents,
+                     stage.getNumCompressed());
+        assertEquals("Bad number emitted", numEvents, stage.getNumEmitted());
+        assertEquals("Bad queue depth", 0, stage.getQueueDepth());
+        assertEquals("Bad reorder depth", 0, stage.getReorderDepth());
+        assertTrue("Queue depth " + stage.getMaxQueueDepth() +
+                   " exceeded limit", stage.getMaxQueueDepth() <= maxPending);
+    }
+
+    public void testBackpressure()
+        throws Exception
+    {
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingConsumer consumer = new RecordingConsumer(gate, false);
+        final EventCompressor stage = new EventCompressor(consumer, 2, 2);
+
+        stage.submit(createEvent(0, 10));
+        stage.submit(createEvent(1, 10));
+
+        final IPayload third = createEvent(2, 10);
+        final CountDownLatch submitted = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try {
+                        stage.submit(third);
+                        submitted.countDown();
+                    } catch (IOException ioe) {
+                        // leave the latch closed
+                    }
+                }
+            });
+        thread.start();
+
+        assertFalse("Submit should block while the stage is full",
+                    submitted.await(200, TimeUnit.MILLISECONDS));
+        assertEquals("Blocked submission was not counted", 1L,
+                     stage.getNumBlocked());
+
+        gate.countDown();
+        assertTrue("Submit should finish once the consumer is unblocked",
+                   submitted.await(10, TimeUnit.SECONDS));
+        thread.join();
+
+        stage.close();
+        assertEquals("Bad number of events", 3, consumer.getUIDs().size());
+    }
+
+    public void testConsumerFailure()
+        throws Exception
+    {
+        RecordingConsumer consumer = new RecordingConsumer(null, true);
+        EventCompressor stage = new EventCompressor(consumer, 2, 4);
+
+        stage.submit(createEvent(0, 10));
+        try {
+            stage.flush();
+            fail("Consumer failure should be reported");
+        } catch (IOException ioe) {
+            // expected
+        }
+
+        try {
+            stage.submit(createEvent(1, 10));
+            fail("Submit after failure should be rejected");
+        } catch (IOException ioe) {
+            // expected
+        }
+
+        try {
+            stage.close();
+            fail("Close should report the failure");
+        } catch (IOException ioe) {
+            // expected
+        }
+
+        assertEquals("Bad number of log messages", 1, getNumberOfMessages());
+        assertTrue("Unexpected log message " + getMessage(0),
+                   getMessage(0).toString().startsWith("Consumer failed"));
+        clearMessages();
+    }
+
+    public void testCompressError()
+        throws Exception
+    {
+        final List<IPayload> received = new ArrayList<IPayload>();
+        IPayloadConsumer consumer = new IPayloadConsumer() {
+                @Override
+                public void consume(IPayload payload)
+                {
+                    synchronized (received) {
+                        received.add(payload);
+                    }
+                }
+            };
+
+        final EventCompressor stage = new EventCompressor(consumer, 1, 4);
+
+        CompressorHit bad = new CompressorHit(1000L, true);
+        CompressorHit good = new CompressorHit(2000L, false);
+
+        stage.submit(bad);
+        stage.submit(good);
+
+        final CountDownLatch flushed = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try {
+                        stage.flush();
+                        flushed.countDown();
+                    } catch (IOException ioe) {
+                        // leave the latch closed
+                    }
+                }
+            });
+        thread.start();
+
+        assertTrue("Error while compressing stalled the stage",
+                   flushed.await(10, TimeUnit.SECONDS));
+        thread.join();
+
+        stage.close();
+
+        synchronized (received) {
+            assertEquals("Bad number of payloads", 2, received.size());
+            assertSame("Bad first payload", bad, received.get(0));
+            assertSame("Bad second payload", good, received.get(1));
+        }
+    }
+
+    public void testRecycleAfterFailure()
+        throws Exception
+    {
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingConsumer consumer = new RecordingConsumer(gate, true);
+        EventCompressor stage = new EventCompressor(consumer, 2, 4);
+
+        CompressorHit[] hits = new CompressorHit[3];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = new CompressorHit(1000L + i, false);
+            stage.submit(hits[i]);
+        }
+
+        gate.countDown();
+        try {
+            stage.close();
+            fail("Close should report the failure");
+        } catch (IOException ioe) {
+            // expected
+        }
+
+        assertEquals("Failed payload belongs to the consumer",
+                     0, hits[0].getNumRecycled());
+        for (int i = 1; i < hits.length; i++) {
+            assertEquals("Dropped payload #" + i + " was not recycled",
+                         1, hits[i].getNumRecycled());
+        }
+
+        assertEquals("Bad number of log messages", 1, getNumberOfMessages());
+        assertTrue("Unexpected log message " + getMessage(0),
+                   getMessage(0).toString().startsWith("Consumer failed"));
+        clearMessages();
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
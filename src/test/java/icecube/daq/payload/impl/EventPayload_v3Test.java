@@ -92,6 +92,10 @@ public class EventPayload_v3Test
                      firstTime, evt.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, evt.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     evt.getFirstTimeUTC().longValue(), evt.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     evt.getLastTimeUTC().longValue(), evt.getLastTime());
         assertEquals("Bad event type", evtType, evt.getEventType());
         assertEquals("Bad run number", runNum, evt.getRunNumber());
         assertEquals("Bad subrun number", subrunNum, evt.getSubrunNumber());
@@ -191,6 +195,10 @@ public class EventPayload_v3Test
                      firstTime, evt.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, evt.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     evt.getFirstTimeUTC().longValue(), evt.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     evt.getLastTimeUTC().longValue(), evt.getLastTime());
         assertEquals("Bad event type", evtType, evt.getEventType());
         assertEquals("Bad run number", runNum, evt.getRunNumber());
         assertEquals("Bad subrun number", subrunNum, evt.getSubrunNumber());
@@ -104,6 +104,10 @@ setVerbose(true);
                      firstTime, evt.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, evt.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     evt.getFirstTimeUTC().longValue(), evt.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     evt.getLastTimeUTC().longValue(), evt.getLastTime());
         assertEquals("Bad year", YEAR, evt.getYear());
         assertEquals("Bad run number", runNum, evt.getRunNumber());
         assertEquals("Bad subrun number", subrunNum, evt.getSubrunNumber());
@@ -209,6 +213,10 @@ setVerbose(true);
                      firstTime, evt.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, evt.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     evt.getFirstTimeUTC().longValue(), evt.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     evt.getLastTimeUTC().longValue(), evt.getLastTime());
         assertEquals("Bad year", YEAR, evt.getYear());
         assertEquals("Bad run number", runNum, evt.getRunNumber());
         assertEquals("Bad subrun number", subrunNum, evt.getSubrunNumber());
@@ -304,6 +312,54 @@ setVerbose(true);
         }
     }
 
+    public void testWriteModified()
+        throws Exception
+    {
+        final int uid = 12;
+        final int srcId = 34;
+        final long firstTime = 1234L;
+        final long lastTime = 5432L;
+
+        final int trigUID = 666;
+        final int trigSrcId = 999;
+
+        ArrayList hitList = new ArrayList();
+        hitList.add(new MockHitData(firstTime + 10, -1, 24, srcId, 1126L,
+                                    27));
+
+        MockReadoutRequest mockReq =
+            new MockReadoutRequest(trigUID, trigSrcId);
+        mockReq.addElement(100, firstTime + 1, lastTime - 1, 103L, 104);
+
+        MockTriggerRequest trigReq =
+            new MockTriggerRequest(firstTime + 1, trigUID, 777, 888,
+                                   trigSrcId, firstTime + 1, lastTime - 1,
+                                   hitList, mockReq);
+
+        ByteBuffer buf =
+            TestUtil.createEventv4(uid, srcId, firstTime, lastTime, YEAR,
+                                   444, 555, trigReq, hitList);
+
+        EventPayload_v4 evt = new EventPayload_v4(buf, 0);
+        evt.loadPayload();
+        assertFalse("Loaded event should not be modified", evt.isModified());
+
+        // change the embedded trigger request, not the event
+        TriggerRequest req = (TriggerRequest) evt.getTriggerRequestPayload();
+        req.setUID(trigUID + 1);
+        assertTrue("Event should be modified", evt.isModified());
+
+        ByteBuffer newBuf = ByteBuffer.allocate(buf.limit());
+        assertEquals("Bad number of bytes written", buf.limit(),
+                     evt.writePayload(false, 0, newBuf));
+
+        EventPayload_v4 copy = new EventPayload_v4(newBuf, 0);
+        copy.loadPayload();
+        assertEquals("Modified trigger request UID was not written",
+                     trigUID + 1,
+                     copy.getTriggerRequestPayload().getUID());
+    }
+
     public static void main(String[] args)
     {
         TestRunner.run(suite());
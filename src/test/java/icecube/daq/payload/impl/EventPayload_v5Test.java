@@ -101,6 +101,10 @@ public class EventPayload_v5Test
                      firstTime, evt.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, evt.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     evt.getFirstTimeUTC().longValue(), evt.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     evt.getLastTimeUTC().longValue(), evt.getLastTime());
         assertEquals("Bad year", YEAR, evt.getYear());
         assertEquals("Bad run number", runNum, evt.getRunNumber());
         assertEquals("Bad subrun number", subrunNum, evt.getSubrunNumber());
@@ -208,6 +212,10 @@ public class EventPayload_v5Test
                      firstTime, evt.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, evt.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     evt.getFirstTimeUTC().longValue(), evt.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     evt.getLastTimeUTC().longValue(), evt.getLastTime());
         assertEquals("Bad year", YEAR, evt.getYear());
         assertEquals("Bad run number", runNum, evt.getRunNumber());
         assertEquals("Bad subrun number", subrunNum, evt.getSubrunNumber());
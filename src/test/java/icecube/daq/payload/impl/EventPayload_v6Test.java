@@ -105,6 +105,10 @@ public class EventPayload_v6Test
                      firstTime, evt.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, evt.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     evt.getFirstTimeUTC().longValue(), evt.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     evt.getLastTimeUTC().longValue(), evt.getLastTime());
         assertEquals("Bad year", YEAR, evt.getYear());
         assertEquals("Bad run number", runNum, evt.getRunNumber());
         assertEquals("Bad subrun number", subrunNum, evt.getSubrunNumber());
@@ -215,6 +219,67 @@ public class EventPayload_v6Test
         }
     }
 
+    public void testCompressedRoundTrip()
+        throws Exception
+    {
+        final int uid = 12;
+        final long firstTime = 1111L;
+        final long lastTime = 99999L;
+        final int numHits = 3000;
+
+        MockReadoutRequest mockReq = new MockReadoutRequest(uid, 8888);
+        mockReq.addElement(100, firstTime, lastTime, 103L, 104);
+
+        MockTriggerRequest trigReq =
+            new MockTriggerRequest(firstTime, uid, 7777, 6666, 8888,
+                                   firstTime, lastTime, null, mockReq);
+
+        ArrayList<IEventHitRecord> hitRecList =
+            new ArrayList<IEventHitRecord>();
+        for (int i = 0; i < numHits; i++) {
+            hitRecList.add(new MockDeltaHitRecord((byte) 0, (short) (i % 60),
+                                                  firstTime + i * 3,
+                                                  (short) 34, 56, 78,
+                                                  new byte[8]));
+        }
+
+        EventPayload_v6 evt =
+            new EventPayload_v6(uid, new MockUTCTime(firstTime),
+                                new MockUTCTime(lastTime), YEAR, 4444, 5555,
+                                trigReq, hitRecList);
+        evt.setDOMRegistry(new MockDOMRegistry());
+
+        // write without asking for the length first
+        ByteBuffer buf = ByteBuffer.allocate(numHits * 64);
+        final int written = evt.writePayload(false, 0, buf);
+        assertEquals("Event should be compressed", (byte) 1,
+                     buf.get(OFFSET_ZIPBYTE));
+        assertEquals("Length was not patched", written, buf.getInt(0));
+        assertEquals("Bad buffer limit", written, buf.limit());
+        assertEquals("Bad event length", written, evt.length());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(buf.limit());
+        buf.position(0);
+        direct.put(buf);
+        direct.flip();
+
+        ByteBuffer[] bufs = new ByteBuffer[] { buf, direct };
+        for (ByteBuffer src : bufs) {
+            EventPayload_v6 copy = new EventPayload_v6(src, 0);
+            copy.loadPayload();
+
+            int num = 0;
+            for (IEventHitRecord rec : copy.getHitRecords()) {
+                assertEquals("Bad time for hit #" + num,
+                             firstTime + num * 3, rec.getHitTime());
+                assertEquals("Bad channel for hit #" + num,
+                             (short) (num % 60), rec.getChannelID());
+                num++;
+            }
+            assertEquals("Bad number of hits", numHits, num);
+        }
+    }
+
     public void testCreateFromBuffer()
         throws Exception
     {
@@ -305,6 +370,10 @@ public class EventPayload_v6Test
                      firstTime, evt.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, evt.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     evt.getFirstTimeUTC().longValue(), evt.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     evt.getLastTimeUTC().longValue(), evt.getLastTime());
         assertEquals("Bad year", YEAR, evt.getYear());
         assertEquals("Bad run number", runNum, evt.getRunNumber());
         assertEquals("Bad subrun number", subrunNum, evt.getSubrunNumber());
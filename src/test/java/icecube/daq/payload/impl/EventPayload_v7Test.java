@@ -0,0 +1,288 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IEventHitRecord;
+import icecube.daq.payload.IPayload;
+import icecube.daq.payload.PayloadChecker;
+import icecube.daq.payload.PayloadFormatException;
+import icecube.daq.payload.test.LoggingCase;
+import icecube.daq.payload.test.MockDOMRegistry;
+import icecube.daq.payload.test.MockDeltaHitRecord;
+import icecube.daq.payload.test.MockReadoutRequest;
+import icecube.daq.payload.test.MockTriggerRequest;
+import icecube.daq.payload.test.MockUTCTime;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class EventPayload_v7Test
+    extends LoggingCase
+{
+    /** Get the current year */
+    private static final short YEAR =
+        (short) (new GregorianCalendar()).get(GregorianCalendar.YEAR);
+
+    /** offset of codec ID byte in event ByteBuffer */
+    private static final int OFFSET_CODEC = 34;
+
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public EventPayload_v7Test(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(EventPayload_v7Test.class);
+    }
+
+    private static EventPayload_v7 createEvent(int numHits,
+                                               HitRecordCodec codec)
+        throws Exception
+    {
+        final int uid = 12;
+        final long firstTime = 1111L;
+        final long lastTime = 99999L;
+
+        MockReadoutRequest mockReq = new MockReadoutRequest(uid, 8888);
+        mockReq.addElement(100, firstTime, lastTime, 103L, 104);
+
+        MockTriggerRequest trigReq =
+            new MockTriggerRequest(firstTime, uid, 7777, 6666, 8888,
+                                   firstTime, lastTime, null, mockReq);
+
+        ArrayList<IEventHitRecord> hitRecList =
+            new ArrayList<IEventHitRecord>();
+        for (int i = 0; i < numHits; i++) {
+            hitRecList.add(new MockDeltaHitRecord((byte) 0, (short) (i % 60),
+                                                  firstTime + i * 3,
+                                                  (short) 34, 56, 78,
+                                                  new byte[8]));
+        }
+
+        EventPayload_v7 evt =
+            new EventPayload_v7(uid, new MockUTCTime(firstTime),
+                                new MockUTCTime(lastTime), YEAR, 4444, 5555,
+                                trigReq, hitRecList, codec);
+        evt.setDOMRegistry(new MockDOMRegistry());
+
+        return evt;
+    }
+
+    private static void checkLZ(byte[] data)
+        throws DataFormatException
+    {
+        final int maxLen = data.length + data.length / 255 + 16;
+
+        byte[] packed = new byte[maxLen];
+        final int zipLen = LZCodec.compress(data, data.length, packed, maxLen);
+        assertTrue("Could not compress " + data.length + " bytes",
+                   zipLen >= 0);
+
+        byte[] plain = new byte[data.length];
+        assertEquals("Bad decompressed length", data.length,
+                     LZCodec.decompress(packed, 0, zipLen, plain,
+                                        plain.length));
+        assertTrue("Bad round trip for " + data.length + " bytes",
+                   Arrays.equals(data, plain));
+    }
+
+    public void testCodecRoundTrip()
+        throws Exception
+    {
+        final int numHits = 3000;
+
+        PayloadFactory factory = new PayloadFactory(null);
+
+        for (HitRecordCodec codec : HitRecordCodec.values()) {
+            EventPayload_v7 evt = createEvent(numHits, codec);
+
+            assertTrue("Bad event", PayloadChecker.validateEvent(evt, true));
+
+            // write without asking for the length first
+            ByteBuffer buf = ByteBuffer.allocate(numHits * 64);
+            final int written = evt.writePayload(false, 0, buf);
+            assertEquals("Bad codec ID for " + codec, (byte) codec.getId(),
+                         buf.get(OFFSET_CODEC));
+            assertEquals("Length was not patched", written, buf.getInt(0));
+            assertEquals("Bad event length", written, evt.length());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(buf.limit());
+            buf.position(0);
+            direct.put(buf);
+            direct.flip();
+
+            ByteBuffer[] bufs = new ByteBuffer[] { buf, direct };
+            for (ByteBuffer src : bufs) {
+                IPayload pay = factory.getPayload(src, 0);
+                assertTrue("Factory returned " + pay.getClass().getName(),
+                           pay instanceof EventPayload_v7);
+
+                EventPayload_v7 copy = (EventPayload_v7) pay;
+                copy.loadPayload();
+                assertEquals("Bad loaded codec", codec,
+                             copy.getHitRecordCodec());
+
+                int num = 0;
+                for (IEventHitRecord rec : copy.getHitRecords()) {
+                    assertEquals(codec + " bad time for hit #" + num,
+                                 1111L + num * 3, rec.getHitTime());
+                    assertEquals(codec + " bad channel for hit #" + num,
+                                 (short) (num % 60), rec.getChannelID());
+                    num++;
+                }
+                assertEquals("Bad number of hits", numHits, num);
+            }
+
+            evt.recycle();
+        }
+    }
+
+    public void testBadLengths()
+        throws Exception
+    {
+        EventPayload_v7 evt = createEvent(100, HitRecordCodec.DEFLATE);
+
+        // leave room past the end of the event
+        final int evtLen = evt.length();
+        ByteBuffer orig = ByteBuffer.allocate(evtLen + 100);
+        evt.writePayload(false, 0, orig);
+
+        final int zipLen = orig.getInt(OFFSET_CODEC + 5);
+
+        final int[][] lengths = new int[][] {
+            { EventPayload_v7.MAX_PLAIN_LENGTH + 1, zipLen },
+            { orig.getInt(OFFSET_CODEC + 1), zipLen + 50 },
+            { orig.getInt(OFFSET_CODEC + 1), Integer.MAX_VALUE },
+        };
+
+        for (int[] pair : lengths) {
+            ByteBuffer buf = ByteBuffer.allocate(orig.capacity());
+            buf.put(orig.array());
+            buf.putInt(OFFSET_CODEC + 1, pair[0]);
+            buf.putInt(OFFSET_CODEC + 5, pair[1]);
+
+            EventPayload_v7 bad = new EventPayload_v7(buf, 0);
+            try {
+                bad.loadPayload();
+                fail("Should not load " + pair[0] + " plain, " + pair[1] +
+                     " compressed bytes");
+            } catch (PayloadFormatException pfe) {
+                // expected
+            }
+        }
+    }
+
+    public void testInflateLimit()
+        throws Exception
+    {
+        // a small compressed block which expands enormously
+        final int bigLen = 1024 * 1024;
+
+        DeflateCodec scratch = DeflateCodec.get();
+        Arrays.fill(scratch.getPlain(bigLen), 0, bigLen, (byte) 0);
+        final int zipLen = scratch.deflate(bigLen, bigLen);
+        assertTrue("Zeros did not compress", zipLen > 0 && zipLen < 2000);
+
+        final byte[] packed = Arrays.copyOf(scratch.getPacked(), zipLen);
+
+        // each thread's scratch array only grows, so check from a new one
+        final DataFormatException[] caught = new DataFormatException[1];
+        final int[] plainSize = new int[1];
+        Thread thread = new Thread() {
+                @Override
+                public void run()
+                {
+                    DeflateCodec codec = DeflateCodec.get();
+                    try {
+                        HitRecordCodec.DEFLATE.decompress(codec, packed, 0,
+                                                          packed.length,
+                                                          1000);
+                    } catch (DataFormatException dfe) {
+                        caught[0] = dfe;
+                    }
+                    plainSize[0] = codec.getPlain(0).length;
+                }
+            };
+        thread.start();
+        thread.join();
+
+        assertNotNull("Overlong data was decompressed", caught[0]);
+        assertTrue("Scratch array grew to " + plainSize[0] + " bytes",
+                   plainSize[0] <= 16 * 1024);
+    }
+
+    public void testIncompressible()
+        throws Exception
+    {
+        EventPayload_v7 evt = createEvent(1, HitRecordCodec.LZ);
+
+        ByteBuffer buf = ByteBuffer.allocate(evt.length());
+        evt.writePayload(false, 0, buf);
+
+        assertEquals("Single hit should be stored",
+                     (byte) HitRecordCodec.STORE.getId(),
+                     buf.get(OFFSET_CODEC));
+        assertEquals("Bad codec", HitRecordCodec.STORE,
+                     evt.getHitRecordCodec());
+
+        EventPayload_v7 copy = new EventPayload_v7(buf, 0);
+        copy.loadPayload();
+        assertTrue("Bad event", PayloadChecker.validateEvent(copy, true));
+    }
+
+    public void testLZ()
+        throws Exception
+    {
+        Random rand = new Random(1234L);
+
+        checkLZ(new byte[0]);
+        checkLZ(new byte[] { 1, 2, 3 });
+
+        // long runs produce overlapping matches and length extensions
+        checkLZ(new byte[1000]);
+
+        byte[] noise = new byte[1000];
+        rand.nextBytes(noise);
+        checkLZ(noise);
+
+        byte[] mixed = new byte[20000];
+        for (int i = 0; i < mixed.length; i += 100) {
+            if ((i / 100) % 3 == 0) {
+                rand.nextBytes(noise);
+            }
+            System.arraycopy(noise, 0, mixed, i, 100);
+        }
+        checkLZ(mixed);
+
+        byte[] zeros = new byte[100];
+        byte[] packed = new byte[100];
+        assertEquals("Compressed output should not fit", -1,
+                     LZCodec.compress(zeros, zeros.length, packed, 1));
+
+        final int zipLen =
+            LZCodec.compress(zeros, zeros.length, packed, packed.length);
+        try {
+            LZCodec.decompress(packed, 0, zipLen, new byte[10], 10);
+            fail("Overlong output should not be decompressed");
+        } catch (DataFormatException dfe) {
+            // expected
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,178 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IEventHitRecord;
+import icecube.daq.payload.IEventPayload;
+import icecube.daq.payload.test.MockDOMRegistry;
+import icecube.daq.payload.test.MockReadoutRequest;
+import icecube.daq.payload.test.MockTriggerRequest;
+import icecube.daq.payload.test.TestUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class EventUIDIndexTest
+    extends TestCase
+{
+    private static final short YEAR = 2012;
+
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public EventUIDIndexTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(EventUIDIndexTest.class);
+    }
+
+    /**
+     * Write events with the specified UIDs, each followed by a hit,
+     * indexing them as they're written
+     */
+    private static File writeEvents(int[] uids, EventUIDIndex idx)
+        throws Exception
+    {
+        File file = File.createTempFile("uidx", ".dat");
+        file.deleteOnExit();
+        EventUIDIndex.getSidecar(file).deleteOnExit();
+
+        MockDOMRegistry domRegistry = new MockDOMRegistry();
+        ArrayList<IEventHitRecord> hitList =
+            new ArrayList<IEventHitRecord>();
+
+        ByteBuffer hitBuf = ByteBuffer.allocate(SimplerHit.LENGTH);
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < uids.length; i++) {
+                final long firstTime = 1000L * (i + 1);
+                final long lastTime = firstTime + 100L;
+
+                MockReadoutRequest rdoutReq =
+                    new MockReadoutRequest(uids[i], 1);
+                MockTriggerRequest trigReq =
+                    new MockTriggerRequest(firstTime, uids[i], 1, 2, 3,
+                                           firstTime, lastTime, null,
+                                           rdoutReq);
+
+                ByteBuffer evtBuf =
+                    TestUtil.createEventv5(uids[i], firstTime, lastTime,
+                                           YEAR, 123, 0, trigReq, hitList,
+                                           domRegistry);
+                out.getChannel().write(evtBuf);
+                if (idx != null) {
+                    idx.add(uids[i], evtBuf.capacity());
+                }
+
+                SimplerHit.writePayloadToBuffer(hitBuf, 0, firstTime + 1L,
+                                                (short) i, (short) 0);
+                hitBuf.clear();
+                out.getChannel().write(hitBuf);
+                hitBuf.clear();
+                if (idx != null) {
+                    idx.skip(SimplerHit.LENGTH);
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        return file;
+    }
+
+    public void testOnWrite()
+        throws Exception
+    {
+        final int num = 50;
+
+        int[] uids = new int[num];
+        for (int i = 0; i < num; i++) {
+            uids[i] = 1000 + i * 3;
+        }
+
+        EventUIDIndex built = new EventUIDIndex();
+        File file = writeEvents(uids, built);
+        built.write(EventUIDIndex.getSidecar(file));
+
+        EventUIDIndex idx = EventUIDIndex.forFile(file);
+        assertEquals("Bad number of entries", num, idx.getNumEntries());
+        assertEquals("Bad number of payloads", (long) num * 2,
+                     idx.getNumPayloads());
+        assertEquals("Unexpected offset for missing UID",
+                     -1L, idx.find(1001));
+
+        MappedPayloadReader rdr =
+            new MappedPayloadReader(file, new PayloadFactory(null));
+        try {
+            for (int i = num - 1; i >= 0; i--) {
+                final long offset = idx.find(uids[i]);
+                assertTrue("Cannot find UID " + uids[i], offset >= 0L);
+
+                rdr.seek(offset);
+                assertTrue("Cannot read event " + uids[i], rdr.next());
+
+                IEventPayload evt = (IEventPayload) rdr.getPayload();
+                evt.loadPayload();
+                assertEquals("Bad UID", uids[i], evt.getUID());
+            }
+        } finally {
+            rdr.close();
+        }
+    }
+
+    public void testUnsorted()
+        throws Exception
+    {
+        int[] uids = new int[] { 17, 3, 99, 42, 5, 3, 64, 1, 88, 20, };
+
+        File file = writeEvents(uids, null);
+
+        EventUIDIndex idx = EventUIDIndex.forFile(file);
+        assertEquals("Bad number of entries", uids.length,
+                     idx.getNumEntries());
+        assertTrue("Sidecar was not written",
+                   EventUIDIndex.getSidecar(file).exists());
+
+        EventUIDIndex loaded =
+            EventUIDIndex.load(EventUIDIndex.getSidecar(file));
+
+        MappedPayloadReader rdr =
+            new MappedPayloadReader(file, new PayloadFactory(null));
+        try {
+            for (int i = 0; i < uids.length; i++) {
+                final long offset = loaded.find(uids[i]);
+                assertEquals("Loaded index differs for UID " + uids[i],
+                             idx.find(uids[i]), offset);
+
+                rdr.seek(offset);
+                assertTrue("Cannot read event " + uids[i], rdr.next());
+                assertEquals("Bad UID", uids[i],
+                             EventUIDIndex.peekUID(rdr.getBuffer(),
+                                                   rdr.getBufferOffset(),
+                                                   rdr.getPayloadType()));
+            }
+        } finally {
+            rdr.close();
+        }
+
+        assertTrue("Duplicate UID should find first event",
+                   loaded.find(3) < loaded.find(5));
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
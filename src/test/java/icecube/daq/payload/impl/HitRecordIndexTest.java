@@ -0,0 +1,98 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IEventHitRecord;
+import icecube.daq.payload.test.MockDOMRegistry;
+import icecube.daq.payload.test.MockDeltaHitRecord;
+import icecube.daq.payload.test.MockHit;
+
+import java.util.ArrayList;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * DOM registry which counts channel ID lookups
+ */
+class CountingDOMRegistry
+    extends MockDOMRegistry
+{
+    private int numLookups;
+
+    @Override
+    public short getChannelId(long mbid)
+    {
+        numLookups++;
+        return super.getChannelId(mbid);
+    }
+
+    int getNumLookups()
+    {
+        return numLookups;
+    }
+}
+
+public class HitRecordIndexTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public HitRecordIndexTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(HitRecordIndexTest.class);
+    }
+
+    public void testFind()
+    {
+        final int numDoms = 40;
+        final int hitsPerDom = 3;
+
+        CountingDOMRegistry reg = new CountingDOMRegistry();
+        for (int d = 0; d < numDoms; d++) {
+            reg.addChannelId(0x1000L + d, (short) (d + 1));
+        }
+
+        ArrayList<IEventHitRecord> recList = new ArrayList<IEventHitRecord>();
+        for (int h = 0; h < hitsPerDom; h++) {
+            for (int d = 0; d < numDoms; d++) {
+                recList.add(new MockDeltaHitRecord((byte) 0, (short) (d + 1),
+                                                   1000L + h, (short) 0, 0, 0,
+                                                   new byte[0]));
+            }
+        }
+        // duplicate of the first record should never be returned
+        recList.add(recList.get(0));
+
+        HitRecordIndex index = new HitRecordIndex(reg, recList);
+
+        for (int h = 0; h < hitsPerDom; h++) {
+            for (int d = 0; d < numDoms; d++) {
+                MockHit hit = new MockHit(1000L + h, 0, 0, 0, 0x1000L + d, 0);
+                assertEquals("Bad index for DOM " + d + " hit " + h,
+                             h * numDoms + d, index.find(hit));
+            }
+        }
+
+        assertEquals("Channel IDs should be looked up once per DOM",
+                     numDoms, reg.getNumLookups());
+
+        assertEquals("Found nonexistent hit", -1,
+                     index.find((short) 1, 999L));
+        assertEquals("Found nonexistent channel", -1,
+                     index.find((short) (numDoms + 1), 1000L));
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,155 @@
+package icecube.daq.payload.impl;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class LeakTrackingBufferCacheTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public LeakTrackingBufferCacheTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(LeakTrackingBufferCacheTest.class);
+    }
+
+    public void testBadInterval()
+    {
+        try {
+            new LeakTrackingBufferCache(new VitreousBufferCache("Bad"), 0);
+            fail("Should not allow a zero sample interval");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testTrackAll()
+    {
+        LeakTrackingBufferCache cache =
+            new LeakTrackingBufferCache(new PooledBufferCache("All"), 1);
+
+        ByteBuffer buf = cache.acquireBuffer(64);
+        ByteBuffer leaked = cache.acquireBuffer(128);
+        leaked.putInt(BasePayload.OFFSET_LENGTH, 128);
+        leaked.putInt(BasePayload.OFFSET_TYPE, 21);
+
+        assertEquals("Bad number of tracked buffers",
+                     2, cache.getTrackedBuffers());
+
+        cache.returnBuffer(buf);
+        assertEquals("Returned buffer is still tracked",
+                     1, cache.getTrackedBuffers());
+
+        String[] oldest = cache.getOldestOutstanding();
+        assertEquals("Bad number of outstanding buffers", 1, oldest.length);
+        assertTrue("Payload type missing from \"" + oldest[0] + "\"",
+                   oldest[0].indexOf("type 21") > 0);
+        assertTrue("Site missing from \"" + oldest[0] + "\"",
+                   oldest[0].indexOf("LeakTrackingBufferCacheTest") > 0);
+
+        String[] sites = cache.getLeakSites();
+        assertEquals("Bad number of leak sites", 1, sites.length);
+        assertTrue("Bad leak site \"" + sites[0] + "\"",
+                   sites[0].startsWith("1 (~1) 128 bytes, 0 collected at "));
+
+        cache.returnBuffer(leaked);
+        assertEquals("Bad number of tracked buffers",
+                     0, cache.getTrackedBuffers());
+        assertEquals("Bad number of leak sites",
+                     0, cache.getLeakSites().length);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+    }
+
+    public void testCollected()
+        throws InterruptedException
+    {
+        LeakTrackingBufferCache cache =
+            new LeakTrackingBufferCache(new VitreousBufferCache("Gone"), 1);
+
+        // drop the only reference to a sampled buffer
+        cache.acquireBuffer(256);
+        assertEquals("Bad number of tracked buffers",
+                     1, cache.getTrackedBuffers());
+
+        for (int i = 0; i < 100 && cache.getCollectedBuffers() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals("Leaked buffer was not collected",
+                     1L, cache.getCollectedBuffers());
+        assertEquals("Collected buffer is still tracked",
+                     0, cache.getTrackedBuffers());
+
+        String[] sites = cache.getLeakSites();
+        assertEquals("Leak site should still be reported", 1, sites.length);
+        assertTrue("Bad leak site \"" + sites[0] + "\"",
+                   sites[0].startsWith("0 (~0) 0 bytes, 1 collected at "));
+        assertTrue("Site missing from \"" + sites[0] + "\"",
+                   sites[0].indexOf("LeakTrackingBufferCacheTest") > 0);
+    }
+
+    public void testReturnBytes()
+    {
+        LeakTrackingBufferCache cache =
+            new LeakTrackingBufferCache(new VitreousBufferCache("Bytes"), 1);
+
+        // the payload only uses the first part of its buffer
+        ByteBuffer buf = cache.acquireBuffer(128);
+        BufferReference ref = new BufferReference(buf, cache, 100);
+        assertEquals("Bad number of tracked buffers",
+                     1, cache.getTrackedBuffers());
+
+        assertTrue("Buffer was not returned", ref.release());
+        assertEquals("Returned buffer is still tracked",
+                     0, cache.getTrackedBuffers());
+        assertEquals("Bad number of leak sites",
+                     0, cache.getLeakSites().length);
+        assertEquals("Bad number of outstanding buffers",
+                     0, cache.getOldestOutstanding().length);
+        assertEquals("Returned buffer should not be counted as collected",
+                     0L, cache.getCollectedBuffers());
+    }
+
+    public void testSampled()
+    {
+        final int interval = 10;
+
+        LeakTrackingBufferCache cache =
+            new LeakTrackingBufferCache(new VitreousBufferCache("Sampled"),
+                                        interval);
+
+        // keep the buffers alive so none are collected
+        final int num = 1000;
+        ByteBuffer[] bufs = new ByteBuffer[num];
+        for (int i = 0; i < num; i++) {
+            bufs[i] = cache.acquireBuffer(16);
+        }
+
+        final int tracked = cache.getTrackedBuffers();
+        assertTrue("Tracked too many buffers (" + tracked + ")",
+                   tracked < num / 2);
+        assertTrue("Tracked no buffers", tracked > 0);
+        assertEquals("Bad number of acquired buffers",
+                     num, cache.getCurrentAcquiredBuffers());
+        assertEquals("Bad number of collected buffers",
+                     0L, cache.getCollectedBuffers());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,232 @@
+package icecube.daq.payload.impl;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class MagazineBufferCacheTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public MagazineBufferCacheTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(MagazineBufferCacheTest.class);
+    }
+
+    public void testReuse()
+    {
+        MagazineBufferCache cache =
+            new MagazineBufferCache("Reuse", Long.MIN_VALUE,
+                                    new int[] { 32, 64 }, 16, 4);
+
+        ByteBuffer buf = cache.acquireBuffer(40);
+        assertEquals("Bad capacity", 64, buf.capacity());
+        assertEquals("Bad limit", 40, buf.limit());
+
+        cache.returnBuffer(buf);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+
+        ByteBuffer buf2 = cache.acquireBuffer(50);
+        assertSame("Buffer was not reused", buf, buf2);
+        assertEquals("Bad number of hits", 1L, cache.getCacheHits());
+        assertEquals("Bad number of misses", 1L, cache.getCacheMisses());
+
+        cache.returnBuffer(buf2);
+    }
+
+    public void testDrainAndRefill()
+    {
+        final int magSize = 4;
+        final int numBufs = magSize * 3;
+
+        MagazineBufferCache cache =
+            new MagazineBufferCache("Drain", Long.MIN_VALUE,
+                                    new int[] { 32 }, 100, magSize);
+
+        ByteBuffer[] bufs = new ByteBuffer[numBufs];
+        for (int i = 0; i < numBufs; i++) {
+            bufs[i] = cache.acquireBuffer(32);
+        }
+        for (int i = 0; i < numBufs; i++) {
+            cache.returnBuffer(bufs[i]);
+        }
+
+        assertTrue("Cache should be balanced", cache.isBalanced());
+        assertEquals("Bad number of idle buffers",
+                     numBufs, cache.getPooledBuffers());
+        assertEquals("Bad number of idle bytes",
+                     (long) numBufs * 32, cache.getTotalBytesInCache());
+
+        for (int i = 0; i < numBufs; i++) {
+            bufs[i] = cache.acquireBuffer(32);
+        }
+
+        assertEquals("Bad number of hits", (long) numBufs,
+                     cache.getCacheHits());
+        assertEquals("Bad number of created buffers", numBufs,
+                     cache.getTotalBuffersCreated());
+
+        for (int i = 0; i < numBufs; i++) {
+            cache.returnBuffer(bufs[i]);
+        }
+
+        cache.flush();
+        assertEquals("Bad number of idle buffers after flush",
+                     numBufs, cache.getPooledBuffers());
+    }
+
+    public void testBoundFail()
+    {
+        MagazineBufferCache cache = new MagazineBufferCache("Fail", 100);
+        cache.setBoundPolicy(BoundPolicy.FAIL, 0L, null);
+
+        ByteBuffer buf = cache.acquireBuffer(80);
+        assertNotNull("First request should succeed", buf);
+        assertNull("Second request should fail", cache.acquireBuffer(80));
+        assertEquals("Bad number of rejections", 1L,
+                     cache.getBoundRejections());
+
+        cache.returnBuffer(buf);
+
+        ByteBuffer buf2 = cache.acquireBuffer(80);
+        assertNotNull("Request after return should succeed", buf2);
+        cache.returnBuffer(buf2);
+
+        assertTrue("Cache should be balanced", cache.isBalanced());
+    }
+
+    public void testDoubleReturn()
+        throws Exception
+    {
+        final MagazineBufferCache cache =
+            new MagazineBufferCache("Double", Long.MIN_VALUE,
+                                    new int[] { 32 }, 16, 4);
+
+        final ByteBuffer buf = cache.acquireBuffer(32);
+        ByteBuffer other = cache.acquireBuffer(32);
+
+        cache.returnBuffer(buf);
+        cache.returnBuffer(buf);
+        assertEquals("Double return was pooled", 1, cache.getPooledBuffers());
+        assertEquals("Double return was counted",
+                     1, cache.getTotalBuffersReturned());
+
+        // the buffer is idle in this thread's magazine, so a return from
+        // another thread must also be caught
+        Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    cache.returnBuffer(buf);
+                }
+            });
+        thread.start();
+        thread.join();
+
+        assertEquals("Cross-thread double return was pooled",
+                     1, cache.getPooledBuffers());
+        assertEquals("Cross-thread double return was counted",
+                     1, cache.getTotalBuffersReturned());
+
+        ByteBuffer buf2 = cache.acquireBuffer(32);
+        ByteBuffer buf3 = cache.acquireBuffer(32);
+        assertSame("Buffer was not reused", buf, buf2);
+        assertNotSame("Buffer was handed out twice", buf2, buf3);
+
+        cache.returnBuffer(other);
+        cache.returnBuffer(buf2);
+        cache.returnBuffer(buf3);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+        assertEquals("Bad number of idle buffers", 3, cache.getPooledBuffers());
+    }
+
+    public void testOrphanedMagazine()
+        throws Exception
+    {
+        final MagazineBufferCache cache =
+            new MagazineBufferCache("Orphan", Long.MIN_VALUE,
+                                    new int[] { 32 }, 16, 4);
+
+        final ByteBuffer[] held = new ByteBuffer[1];
+        Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    held[0] = cache.acquireBuffer(32);
+                    cache.returnBuffer(held[0]);
+                }
+            });
+        thread.start();
+        thread.join();
+
+        ByteBuffer buf = cache.acquireBuffer(32);
+        assertSame("Buffer from exited thread was not reused", held[0], buf);
+        assertEquals("Bad number of created buffers",
+                     1, cache.getTotalBuffersCreated());
+
+        cache.returnBuffer(buf);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+        assertEquals("Bad number of idle buffers", 1, cache.getPooledBuffers());
+    }
+
+    public void testThreaded()
+        throws Exception
+    {
+        final int numThreads = 8;
+        final int numLoops = 10000;
+
+        final MagazineBufferCache cache = new MagazineBufferCache("Threaded");
+
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int len = 20 + t * 100;
+            threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        ByteBuffer[] held = new ByteBuffer[8];
+                        for (int i = 0; i < numLoops; i++) {
+                            final int slot = i % held.length;
+                            if (held[slot] != null) {
+                                cache.returnBuffer(held[slot]);
+                            }
+                            held[slot] = cache.acquireBuffer(len);
+                        }
+                        for (int i = 0; i < held.length; i++) {
+                            cache.returnBuffer(held[i]);
+                        }
+                    }
+                });
+            threads[t].start();
+        }
+
+        for (int t = 0; t < numThreads; t++) {
+            threads[t].join();
+        }
+
+        assertTrue("Cache should be balanced", cache.isBalanced());
+        assertEquals("Bad number of acquired bytes",
+                     0L, cache.getCurrentAcquiredBytes());
+        assertEquals("Bad number of acquired buffers",
+                     numThreads * numLoops, cache.getTotalBuffersAcquired());
+        assertEquals("Bad number of returned buffers",
+                     numThreads * numLoops, cache.getTotalBuffersReturned());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
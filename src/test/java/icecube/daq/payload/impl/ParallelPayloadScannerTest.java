@@ -0,0 +1,247 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IEventHitRecord;
+import icecube.daq.payload.IPayload;
+import icecube.daq.payload.IPayloadVisitor;
+import icecube.daq.payload.test.MockDOMRegistry;
+import icecube.daq.payload.test.MockDeltaHitRecord;
+import icecube.daq.payload.test.MockReadoutRequest;
+import icecube.daq.payload.test.MockTriggerRequest;
+import icecube.daq.payload.test.TestUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Record the time and file offset of every payload
+ */
+class OffsetCollector
+    implements IPayloadVisitor<List<long[]>>
+{
+    @Override
+    public List<long[]> createResult()
+    {
+        return new ArrayList<long[]>();
+    }
+
+    @Override
+    public List<long[]> merge(List<long[]> first, List<long[]> second)
+    {
+        first.addAll(second);
+        return first;
+    }
+
+    @Override
+    public void visit(List<long[]> result, IPayload payload, long fileOffset)
+    {
+        result.add(new long[] { payload.getUTCTime(), fileOffset });
+    }
+}
+
+public class ParallelPayloadScannerTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public ParallelPayloadScannerTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(ParallelPayloadScannerTest.class);
+    }
+
+    /**
+     * Write a mix of events and hits, returning the time and offset of
+     * each payload
+     */
+    private static List<long[]> writeFile(File file, int numEvents)
+        throws Exception
+    {
+        List<long[]> expected = new ArrayList<long[]>();
+
+        MockDOMRegistry domRegistry = new MockDOMRegistry();
+        ArrayList<IEventHitRecord> hitList =
+            new ArrayList<IEventHitRecord>();
+
+        ByteBuffer hitBuf = ByteBuffer.allocate(SimplerHit.LENGTH);
+
+        long offset = 0L;
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < numEvents; i++) {
+                final long firstTime = 1000L * (i + 1);
+                final long lastTime = firstTime + 100L;
+
+                MockReadoutRequest rdoutReq = new MockReadoutRequest(i, 1);
+                MockTriggerRequest trigReq =
+                    new MockTriggerRequest(firstTime, i, 1, 2, 3, firstTime,
+                                           lastTime, null, rdoutReq);
+
+                ByteBuffer evtBuf =
+                    TestUtil.createEventv5(i, firstTime, lastTime,
+                                           (short) 2012, 123, 0, trigReq,
+                                           hitList, domRegistry);
+                expected.add(new long[] { firstTime, offset });
+                offset += evtBuf.capacity();
+                out.getChannel().write(evtBuf);
+
+                for (int h = 0; h < i % 4; h++) {
+                    final long hitTime = firstTime + h + 1L;
+                    SimplerHit.writePayloadToBuffer(hitBuf, 0, hitTime,
+                                                    (short) h, (short) 0);
+                    hitBuf.clear();
+                    expected.add(new long[] { hitTime, offset });
+                    offset += SimplerHit.LENGTH;
+                    out.getChannel().write(hitBuf);
+                    hitBuf.clear();
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        return expected;
+    }
+
+    public void testScan()
+        throws Exception
+    {
+        File file = File.createTempFile("scan", ".dat");
+        file.deleteOnExit();
+
+        List<long[]> expected = writeFile(file, 200);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        ParallelPayloadScanner scanner =
+            new ParallelPayloadScanner(file, new PayloadFactory(null), 1000,
+                                       500);
+        try {
+            assertTrue("Expected several chunks", scanner.getNumChunks() > 10);
+
+            List<long[]> found = scanner.scan(new OffsetCollector(), pool);
+            assertEquals("Bad number of payloads", expected.size(),
+                         found.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals("Bad time for payload #" + i,
+                             expected.get(i)[0], found.get(i)[0]);
+                assertEquals("Bad offset for payload #" + i,
+                             expected.get(i)[1], found.get(i)[1]);
+            }
+        } finally {
+            scanner.close();
+            pool.shutdown();
+        }
+    }
+
+    public void testFalseStart()
+        throws Exception
+    {
+        final int chainLen = 4;
+
+        // hit data which looks like a chain of hits followed by garbage,
+        // padded so the whole chain lies inside the chunk which finds it
+        final int padLen = 64;
+        ByteBuffer fake =
+            ByteBuffer.allocate(padLen + chainLen * SimplerHit.LENGTH + 4);
+        for (int i = 0; i < chainLen; i++) {
+            SimplerHit.writePayloadToBuffer(fake,
+                                            padLen + i * SimplerHit.LENGTH,
+                                            5000L + i, (short) i, (short) 0);
+        }
+        fake.putInt(padLen + chainLen * SimplerHit.LENGTH, 4);
+
+        ArrayList<IEventHitRecord> hitList =
+            new ArrayList<IEventHitRecord>();
+        hitList.add(new MockDeltaHitRecord((byte) 0, (short) 1, 1010L,
+                                           (short) 0, 0, 0, fake.array()));
+
+        MockReadoutRequest rdoutReq = new MockReadoutRequest(1, 1);
+        MockTriggerRequest trigReq =
+            new MockTriggerRequest(1000L, 1, 1, 2, 3, 1000L, 1100L, null,
+                                   rdoutReq);
+        ByteBuffer evtBuf =
+            TestUtil.createEventv5(1, 1000L, 1100L, (short) 2012, 123, 0,
+                                   trigReq, hitList, new MockDOMRegistry());
+
+        // find the fake chain inside the event
+        int fakeOffset = -1;
+        for (int i = 0; i < evtBuf.limit() - SimplerHit.LENGTH; i++) {
+            if (evtBuf.getInt(i) == SimplerHit.LENGTH &&
+                evtBuf.getLong(i + 8) == 5000L)
+            {
+                fakeOffset = i;
+                break;
+            }
+        }
+        assertTrue("Couldn't find fake chain", fakeOffset > 0);
+
+        File file = File.createTempFile("false", ".dat");
+        file.deleteOnExit();
+
+        List<long[]> expected = new ArrayList<long[]>();
+        expected.add(new long[] { 1000L, 0L });
+
+        ByteBuffer hitBuf = ByteBuffer.allocate(SimplerHit.LENGTH);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.getChannel().write(evtBuf);
+
+            long offset = evtBuf.capacity();
+            for (int h = 0; h < 20; h++) {
+                SimplerHit.writePayloadToBuffer(hitBuf, 0, 2000L + h,
+                                                (short) h, (short) 0);
+                hitBuf.clear();
+                expected.add(new long[] { 2000L + h, offset });
+                offset += SimplerHit.LENGTH;
+                out.getChannel().write(hitBuf);
+                hitBuf.clear();
+            }
+        } finally {
+            out.close();
+        }
+
+        // start the second chunk just before the fake chain
+        ParallelPayloadScanner scanner =
+            new ParallelPayloadScanner(file, new PayloadFactory(null),
+                                       fakeOffset - 1, 500);
+        scanner.setChainLength(chainLen);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<long[]> found = scanner.scan(new OffsetCollector(), pool);
+            assertEquals("Bad number of payloads", expected.size(),
+                         found.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals("Bad time for payload #" + i,
+                             expected.get(i)[0], found.get(i)[0]);
+                assertEquals("Bad offset for payload #" + i,
+                             expected.get(i)[1], found.get(i)[1]);
+            }
+        } finally {
+            scanner.close();
+            pool.shutdown();
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
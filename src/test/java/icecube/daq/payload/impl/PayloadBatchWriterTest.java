@@ -0,0 +1,155 @@
+package icecube.daq.payload.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Channel which saves everything written to it and counts the writes
+ */
+class CountingChannel
+    implements GatheringByteChannel
+{
+    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int numWrites;
+    private boolean closed;
+
+    @Override
+    public void close()
+    {
+        closed = true;
+    }
+
+    byte[] getBytes()
+    {
+        return out.toByteArray();
+    }
+
+    int getNumWrites()
+    {
+        return numWrites;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return !closed;
+    }
+
+    @Override
+    public int write(ByteBuffer src)
+    {
+        final int num = src.remaining();
+        while (src.hasRemaining()) {
+            out.write(src.get());
+        }
+        return num;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs)
+    {
+        return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length)
+    {
+        numWrites++;
+
+        long num = 0;
+        for (int i = offset; i < offset + length; i++) {
+            num += write(srcs[i]);
+        }
+        return num;
+    }
+}
+
+public class PayloadBatchWriterTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public PayloadBatchWriterTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PayloadBatchWriterTest.class);
+    }
+
+    public void testBatch()
+        throws Exception
+    {
+        final int num = 10;
+
+        ByteBuffer buf = ByteBuffer.allocate(num * SimplerHit.LENGTH);
+        for (int i = 0; i < num; i++) {
+            SimplerHit.writePayloadToBuffer(buf, i * SimplerHit.LENGTH,
+                                            1000L + i, (short) i, (short) 0);
+        }
+
+        CountingChannel chan = new CountingChannel();
+        PayloadBatchWriter wrtr = new PayloadBatchWriter(chan, num + 1, 64);
+
+        for (int i = 0; i < num; i++) {
+            SimplerHit hit = new SimplerHit(buf, i * SimplerHit.LENGTH,
+                                            SimplerHit.LENGTH, 1000L + i);
+            if (i == 3) {
+                // modified hits must be encoded
+                hit.setUTCTime(5000L);
+            }
+            wrtr.add(hit);
+        }
+        wrtr.add(new SimplerHit(6000L, (short) 99, (short) 0));
+
+        assertEquals("Bad number of queued payloads", num + 1,
+                     wrtr.getNumQueued());
+        assertEquals("Bad number of encoded payloads", 2L,
+                     wrtr.getNumEncoded());
+
+        wrtr.close();
+
+        assertFalse("Channel was not closed", chan.isOpen());
+        assertEquals("Batch should be written at once", 1,
+                     chan.getNumWrites());
+
+        ByteBuffer out = ByteBuffer.wrap(chan.getBytes());
+        assertEquals("Bad number of bytes", (num + 1) * SimplerHit.LENGTH,
+                     out.limit());
+        assertEquals("Bad number of bytes written", (long) out.limit(),
+                     wrtr.getBytesWritten());
+
+        PayloadCursor cursor = new PayloadCursor(new PayloadFactory(null), out);
+        for (int i = 0; i <= num; i++) {
+            assertTrue("Cannot read payload #" + i, cursor.next());
+
+            final long expTime;
+            if (i == 3) {
+                expTime = 5000L;
+            } else if (i == num) {
+                expTime = 6000L;
+            } else {
+                expTime = 1000L + i;
+            }
+            assertEquals("Bad time for payload #" + i, expTime,
+                         cursor.getUTCTime());
+        }
+        assertFalse("Found extra payload", cursor.next());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,546 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IPayload;
+import icecube.daq.payload.ITriggerRequestPayload;
+import icecube.daq.payload.PayloadException;
+import icecube.daq.payload.test.MockHit;
+import icecube.daq.payload.test.MockReadoutRequest;
+import icecube.daq.payload.test.TestUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class PayloadFactoryTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public PayloadFactoryTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PayloadFactoryTest.class);
+    }
+
+    public void testFlyweightHit()
+        throws Exception
+    {
+        PooledBufferCache cache = new PooledBufferCache("Flyweight");
+        PayloadFactory factory = new PayloadFactory(cache);
+
+        ByteBuffer buf1 =
+            SimplerHit.getBuffer(cache, 1111L, (short) 12, (short) 3);
+        ByteBuffer buf2 =
+            SimplerHit.getBuffer(cache, 2222L, (short) 34, (short) 5);
+
+        SimplerHit hit1 = (SimplerHit) factory.getFlyweight(buf1, 0);
+        assertEquals("Bad time", 1111L, hit1.getUTCTime());
+        assertEquals("Bad channel", (short) 12, hit1.getChannelID());
+        assertEquals("Bad trigger mode", 3, hit1.getTriggerType());
+
+        SimplerHit hit2 = (SimplerHit) factory.getFlyweight(buf2, 0);
+        assertSame("Flyweight was not reused", hit1, hit2);
+        assertEquals("Bad time", 2222L, hit2.getUTCTime());
+        assertEquals("Bad channel", (short) 34, hit2.getChannelID());
+        assertEquals("Bad trigger mode", 5, hit2.getTriggerType());
+        assertSame("Bad backing buffer", buf2, hit2.getPayloadBacking());
+
+        hit2.recycle();
+        assertEquals("Flyweight should not return buffers",
+                     2, cache.getCurrentAcquiredBuffers());
+
+        IPayload copy = factory.getPayload(buf1, 0);
+        assertNotSame("Regular payload should not be a flyweight",
+                      hit2, copy);
+
+        cache.returnBuffer(buf1);
+        cache.returnBuffer(buf2);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+    }
+
+    public void testFlyweightSupernova()
+        throws Exception
+    {
+        PayloadFactory factory = new PayloadFactory(null);
+
+        final byte[] counts1 = new byte[] { (byte) 1, (byte) 2, (byte) 3 };
+        final byte[] counts2 = new byte[] { (byte) 4, (byte) 5, (byte) 6 };
+
+        ByteBuffer buf1 =
+            TestUtil.createSupernova(1000L, 0x123456789abcL, 777L, counts1);
+        ByteBuffer buf2 =
+            TestUtil.createSupernova(2000L, 0xfedcba987654L, 888L, counts2);
+
+        Supernova sn = (Supernova) factory.getFlyweight(buf1, 0);
+        sn.loadPayload();
+        assertEquals("Bad DOM ID", 0x123456789abcL, sn.getDOMID());
+
+        Supernova copy = (Supernova) sn.deepCopy();
+
+        assertSame("Flyweight was not reused", sn,
+                   factory.getFlyweight(buf2, 0));
+        assertFalse("Rebound payload should not be loaded", sn.isLoaded());
+        assertNull("Rebound payload has stale scalar data",
+                   sn.getScalarData());
+
+        sn.loadPayload();
+        assertEquals("Bad time", 2000L, sn.getUTCTime());
+        assertEquals("Bad DOM ID", 0xfedcba987654L, sn.getDOMID());
+        for (int i = 0; i < counts2.length; i++) {
+            assertEquals("Bad scalar data byte " + i,
+                         counts2[i], sn.getScalarData()[i]);
+        }
+
+        assertEquals("Bad copied time", 1000L, copy.getUTCTime());
+        assertEquals("Bad copied DOM ID", 0x123456789abcL, copy.getDOMID());
+        for (int i = 0; i < counts1.length; i++) {
+            assertEquals("Bad copied scalar data byte " + i,
+                         counts1[i], copy.getScalarData()[i]);
+        }
+    }
+
+    public void testFlyweightTimeCalibration()
+        throws Exception
+    {
+        PayloadFactory factory = new PayloadFactory(null);
+
+        ByteBuffer[] bufs = new ByteBuffer[2];
+        for (int n = 0; n < bufs.length; n++) {
+            short[] dorWF = new short[64];
+            short[] domWF = new short[64];
+            for (int i = 0; i < dorWF.length; i++) {
+                dorWF[i] = (short) (n * 100 + i);
+                domWF[i] = (short) (n * 100 + i + 1);
+            }
+
+            bufs[n] =
+                TestUtil.createTimeCalibration(1000L * (n + 1), 0x1234L + n,
+                                               123, 456L + n, 789L + n,
+                                               dorWF, 987L + n, 654L + n,
+                                               domWF, 10203040L + n,
+                                               (byte) ' ', 7890L + n);
+        }
+
+        TimeCalibration tcal =
+            (TimeCalibration) factory.getFlyweight(bufs[0], 0);
+        tcal.loadPayload();
+
+        TimeCalibration copy = (TimeCalibration) tcal.deepCopy();
+
+        assertSame("Flyweight was not reused", tcal,
+                   factory.getFlyweight(bufs[1], 0));
+        assertNull("Rebound payload has stale DOR waveform",
+                   tcal.getDorWaveform());
+        assertNull("Rebound payload has stale DOM waveform",
+                   tcal.getDomWaveform());
+
+        tcal.loadPayload();
+        assertEquals("Bad DOM ID", 0x1235L, tcal.getDOMID());
+        assertEquals("Bad DOR waveform", 100, tcal.getDorWaveform()[0]);
+
+        assertEquals("Bad copied time", 1000L, copy.getUTCTime());
+        assertEquals("Bad copied DOM ID", 0x1234L, copy.getDOMID());
+        assertEquals("Bad copied DOR TX", 456L, copy.getDorTXTime());
+        assertEquals("Bad copied sync time", 7890L,
+                     copy.getDorGpsSyncTime());
+        for (int i = 0; i < 64; i++) {
+            assertEquals("Bad copied DOR waveform #" + i,
+                         (short) i, copy.getDorWaveform()[i]);
+            assertEquals("Bad copied DOM waveform #" + i,
+                         (short) (i + 1), copy.getDomWaveform()[i]);
+        }
+        assertEquals("Bad copied GPS seconds", 10203040L,
+                     copy.getGpsSeconds());
+
+        ByteBuffer out = ByteBuffer.allocate(bufs[0].limit());
+        assertEquals("Bad copied length", bufs[0].limit(),
+                     copy.writePayload(false, 0, out));
+        assertTrue("Copy does not match original",
+                   Arrays.equals(bufs[0].array(), out.array()));
+    }
+
+    public void testCursor()
+        throws Exception
+    {
+        PayloadFactory factory = new PayloadFactory(null);
+
+        final int numHits = 5;
+
+        ByteBuffer buf = ByteBuffer.allocate(SimplerHit.LENGTH * numHits);
+        for (int i = 0; i < numHits; i++) {
+            SimplerHit.writePayloadToBuffer(buf, i * SimplerHit.LENGTH,
+                                            1000L + i, (short) i, (short) 1);
+        }
+
+        // lose the end of the final hit
+        buf.limit(buf.capacity() - 3);
+
+        PayloadCursor cursor = new PayloadCursor(factory, buf);
+
+        int num = 0;
+        while (cursor.next()) {
+            assertEquals("Bad offset", num * SimplerHit.LENGTH,
+                         cursor.getOffset());
+            assertEquals("Bad length", SimplerHit.LENGTH, cursor.getLength());
+            assertEquals("Bad time", 1000L + num, cursor.getUTCTime());
+
+            SimplerHit hit = (SimplerHit) cursor.getPayload();
+            assertEquals("Bad channel", (short) num, hit.getChannelID());
+
+            num++;
+        }
+
+        assertEquals("Bad number of hits", numHits - 1, num);
+        assertTrue("Cursor should be truncated", cursor.isTruncated());
+        assertEquals("Bad resume offset", (numHits - 1) * SimplerHit.LENGTH,
+                     cursor.getResumeOffset());
+
+        // restore the missing bytes and pick up where we left off
+        buf.limit(buf.capacity());
+        cursor.reset(buf, cursor.getResumeOffset());
+
+        assertTrue("Should find final hit", cursor.next());
+        SimplerHit hit = (SimplerHit) cursor.getFlyweight();
+        assertEquals("Bad channel", (short) (numHits - 1),
+                     hit.getChannelID());
+        assertFalse("Should be at end", cursor.next());
+        assertFalse("Cursor should not be truncated", cursor.isTruncated());
+    }
+
+    public void testCursorDOMHits()
+        throws Exception
+    {
+        PayloadFactory factory = new PayloadFactory(null);
+        factory.setSourceID(12001);
+
+        final short[] fadcSamples = new short[5];
+        final byte[][] atwdSamples = new byte[4][16];
+
+        ByteBuffer engBuf =
+            TestUtil.createEngHit(0x111111L, 2000L, 1, 123, 123456L,
+                                  fadcSamples, atwdSamples);
+        engBuf.putInt(BasePayload.OFFSET_TYPE, DOMHitFactory.TYPE_ENG_HIT);
+
+        byte[] dataBytes = new byte[29];
+        for (int i = 0; i < dataBytes.length; i++) {
+            dataBytes[i] = (byte) i;
+        }
+
+        ByteBuffer deltaBuf =
+            TestUtil.createDeltaHit(0x222222L, 3000L, (short) 1, (short) 31,
+                                    103254L, true, 0x1000, 2, false, true, 3,
+                                    false, true, 15, 511, 511, 511,
+                                    dataBytes);
+        deltaBuf.putInt(BasePayload.OFFSET_TYPE,
+                        DOMHitFactory.TYPE_DELTA_HIT);
+
+        // DOM hits follow another payload and are followed by one
+        ByteBuffer[] parts = new ByteBuffer[] {
+            TestUtil.createSimpleHit(1000L, 1, 2, 3, 4L, (short) 5),
+            engBuf, deltaBuf, engBuf,
+        };
+
+        int totLen = 0;
+        for (ByteBuffer part : parts) {
+            totLen += part.limit();
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(totLen);
+        for (ByteBuffer part : parts) {
+            part.position(0);
+            buf.put(part);
+        }
+        buf.flip();
+
+        PayloadCursor cursor = new PayloadCursor(factory, buf);
+
+        assertTrue("Should find simple hit", cursor.next());
+
+        assertTrue("Should find engineering hit", cursor.next());
+        EngineeringHit eng = (EngineeringHit) cursor.getPayload();
+        assertEquals("Bad engineering DOM ID", 0x111111L, eng.getDOMID());
+        assertEquals("Bad engineering time", 2000L, eng.getUTCTime());
+        assertEquals("Bad engineering trigger mode",
+                     (short) 123, eng.getTriggerMode());
+
+        assertTrue("Should find delta hit", cursor.next());
+        DeltaCompressedHit delta = (DeltaCompressedHit) cursor.getPayload();
+        assertEquals("Bad delta DOM ID", 0x222222L, delta.getDOMID());
+        assertEquals("Bad delta time", 3000L, delta.getUTCTime());
+        assertTrue("Delta data should stop at the end of the hit",
+                   Arrays.equals(dataBytes, delta.getCompressedData()));
+
+        assertTrue("Should find final engineering hit", cursor.next());
+        eng = (EngineeringHit) cursor.getPayload();
+        assertEquals("Bad final engineering DOM ID",
+                     0x111111L, eng.getDOMID());
+
+        assertFalse("Should be at end", cursor.next());
+    }
+
+    public void testCursorBadLength()
+        throws Exception
+    {
+        ByteBuffer buf = ByteBuffer.allocate(32);
+        buf.putInt(0, 4);
+
+        PayloadCursor cursor = new PayloadCursor(new PayloadFactory(null), buf);
+        try {
+            cursor.next();
+            fail("Should not accept a 4-byte payload");
+        } catch (PayloadException pe) {
+            // expected
+        }
+    }
+
+    public void testSpliceInPlace()
+        throws Exception
+    {
+        final int num = 5;
+
+        ByteBuffer ring = ByteBuffer.allocate(4096);
+        int[] lengths = new int[num];
+        for (int i = 0; i < num; i++) {
+            final long firstTime = 1000L * (i + 1);
+
+            ByteBuffer trBuf =
+                TestUtil.createTriggerRequest(firstTime, 100 + i, 1, 2,
+                                              200 + i, firstTime,
+                                              firstTime + 10L,
+                                              new ArrayList(),
+                                              new MockReadoutRequest(i, 1));
+            lengths[i] = trBuf.limit();
+            trBuf.position(0);
+            ring.put(trBuf);
+        }
+        ring.flip();
+
+        PayloadFactory factory = new PayloadFactory(null);
+
+        ArrayList<ITriggerRequestPayload> list =
+            new ArrayList<ITriggerRequestPayload>();
+        while (ring.hasRemaining()) {
+            list.add((ITriggerRequestPayload) factory.createSpliceable(ring));
+            assertTrue("Cannot skip payload", factory.skipSpliceable(ring));
+        }
+        assertEquals("Bad number of spliceables", num, list.size());
+        assertFalse("Skipped past end", factory.skipSpliceable(ring));
+
+        for (int i = 0; i < num; i++) {
+            assertEquals("Bad preloaded UID", 100 + i, list.get(i).getUID());
+        }
+
+        // drop the first two payloads and compact the ring
+        final int dropped = lengths[0] + lengths[1];
+        factory.invalidateSpliceables(list.subList(0, 2));
+        assertNull("Invalidated payload still has a buffer",
+                   list.get(0).getPayloadBacking());
+
+        ring.position(dropped);
+        ring.compact();
+        for (int i = ring.position(); i < ring.capacity(); i++) {
+            ring.put(i, (byte) 0xff);
+        }
+        ring.flip();
+
+        factory.backingBufferShift(list, 2, -dropped);
+
+        for (int i = 2; i < num; i++) {
+            ITriggerRequestPayload req = list.get(i);
+            req.loadPayload();
+            assertEquals("Bad source ID after shift", 200 + i,
+                         req.getSourceID().getSourceID());
+        }
+    }
+
+    public void testSpliceCachedBuffer()
+        throws Exception
+    {
+        final int num = 4;
+
+        ArrayList<ByteBuffer> bufs = new ArrayList<ByteBuffer>();
+        int totLen = 0;
+        for (int i = 0; i < num; i++) {
+            final long firstTime = 1000L * (i + 1);
+
+            ByteBuffer trBuf =
+                TestUtil.createTriggerRequest(firstTime, 100 + i, 1, 2,
+                                              200 + i, firstTime,
+                                              firstTime + 10L,
+                                              new ArrayList(),
+                                              new MockReadoutRequest(i, 1));
+            bufs.add(trBuf);
+            totLen += trBuf.limit();
+        }
+
+        PooledBufferCache cache = new PooledBufferCache("Ring");
+        ByteBuffer ring = cache.acquireBuffer(totLen);
+        final long acquired = cache.getCurrentAcquiredBytes();
+        for (ByteBuffer trBuf : bufs) {
+            trBuf.position(0);
+            ring.put(trBuf);
+        }
+        ring.flip();
+
+        PayloadFactory factory = new PayloadFactory(cache);
+
+        ArrayList<ITriggerRequestPayload> list =
+            new ArrayList<ITriggerRequestPayload>();
+        while (ring.hasRemaining()) {
+            list.add((ITriggerRequestPayload) factory.createSpliceable(ring));
+            assertTrue("Cannot skip payload", factory.skipSpliceable(ring));
+        }
+        assertEquals("Bad number of spliceables", num, list.size());
+
+        factory.invalidateSpliceables(list);
+
+        assertEquals("Spliced payloads returned bytes", acquired,
+                     cache.getCurrentAcquiredBytes());
+        assertEquals("Spliced payloads returned buffers", 1,
+                     cache.getCurrentAcquiredBuffers());
+
+        cache.returnBuffer(ring);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+    }
+
+    public void testReleaseEmbeddedRace()
+        throws Exception
+    {
+        final int numHits = 100000;
+
+        // each hit's only hold is dropped by two racing parents
+        final SimplerHit[] hits = new SimplerHit[numHits];
+        for (int i = 0; i < numHits; i++) {
+            hits[i] = new SimplerHit(1000L + i, (short) 1, (short) 2);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final Throwable[] errors = new Throwable[2];
+
+        Thread[] threads = new Thread[errors.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int idx = t;
+            threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        try {
+                            start.await();
+                            for (SimplerHit hit : hits) {
+                                BasePayload.releaseEmbedded(hit);
+                            }
+                        } catch (Throwable thr) {
+                            errors[idx] = thr;
+                        }
+                    }
+                });
+            threads[t].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (Throwable thr : errors) {
+            if (thr != null) {
+                fail("Racing release failed: " + thr);
+            }
+        }
+
+        for (int i = 0; i < numHits; i++) {
+            assertEquals("Bad count for hit #" + i, 0,
+                         hits[i].getReferenceCount());
+        }
+    }
+
+    public void testOwnedAtOffset()
+        throws Exception
+    {
+        PooledBufferCache cache = new PooledBufferCache("Owned");
+
+        // the payload follows a header which its producer didn't strip
+        final int hdrLen = 8;
+        ByteBuffer hitBuf =
+            TestUtil.createSimpleHit(1000L, 1, 2, 3, 4L, (short) 5);
+        ByteBuffer buf = cache.acquireBuffer(hdrLen + hitBuf.limit());
+        buf.position(hdrLen);
+        hitBuf.position(0);
+        buf.put(hitBuf);
+        buf.flip();
+
+        PayloadFactory factory = new PayloadFactory(cache);
+        IPayload pay = factory.getPayload(buf, hdrLen);
+        assertEquals("Bad hit time", 1000L, pay.getUTCTime());
+
+        pay.recycle();
+        assertTrue("Owned buffer was not returned", cache.isBalanced());
+    }
+
+    public void testSharedBuffer()
+        throws Exception
+    {
+        ArrayList hitList = new ArrayList();
+        hitList.add(new MockHit(1005L, 3, 4, 5, 6L, 7));
+
+        ByteBuffer trBuf =
+            TestUtil.createTriggerRequest(1000L, 17, 1, 2, 3, 1000L, 1010L,
+                                          hitList,
+                                          new MockReadoutRequest(17, 3));
+
+        PooledBufferCache cache = new PooledBufferCache("Shared");
+        ByteBuffer buf = cache.acquireBuffer(trBuf.limit());
+        trBuf.position(0);
+        buf.put(trBuf);
+        buf.flip();
+
+        PayloadFactory factory = new PayloadFactory(cache);
+        TriggerRequest req = (TriggerRequest) factory.getPayload(buf, 0);
+        req.loadPayload();
+
+        // consumers only need the payload interface to hold a payload
+        IPayload hit = (IPayload) req.getPayloads().iterator().next();
+        assertSame("Hit should share the request's buffer",
+                   buf, hit.getPayloadBacking());
+
+        // hand the request and its hit to other consumers
+        req.retain();
+        hit.retain();
+        assertEquals("Bad request count", 2, req.getReferenceCount());
+
+        assertFalse("Request should still be held", req.release());
+        assertTrue("Request should be recycled", req.release());
+        assertEquals("Request count should be zero", 0,
+                     req.getReferenceCount());
+        assertEquals("Buffer returned while hit was still held",
+                     1, cache.getCurrentAcquiredBuffers());
+
+        assertTrue("Hit should be recycled", hit.release());
+        assertTrue("Cache should be balanced", cache.isBalanced());
+
+        try {
+            hit.release();
+            fail("Extra release should fail");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
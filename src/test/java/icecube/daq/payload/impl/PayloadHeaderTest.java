@@ -0,0 +1,85 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.PayloadRegistry;
+import icecube.daq.payload.test.TestUtil;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class PayloadHeaderTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public PayloadHeaderTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PayloadHeaderTest.class);
+    }
+
+    public void testHeader()
+    {
+        final int pad = 7;
+        final long utcTime = 123456789L;
+
+        ByteBuffer buf = ByteBuffer.allocate(pad + SimplerHit.LENGTH);
+        SimplerHit.writePayloadToBuffer(buf, pad, utcTime, (short) 12,
+                                        (short) 3);
+        buf.clear();
+
+        assertEquals("Bad length", SimplerHit.LENGTH,
+                     PayloadHeader.getLength(buf, pad));
+        assertEquals("Bad type", PayloadRegistry.PAYLOAD_ID_SIMPLER_HIT,
+                     PayloadHeader.getType(buf, pad));
+        assertEquals("Bad time", utcTime, PayloadHeader.getUTCTime(buf, pad));
+        assertEquals("Position changed", 0, buf.position());
+
+        assertTrue("Payload should be complete",
+                   PayloadHeader.isComplete(buf, pad));
+        assertTrue("Header should be plausible",
+                   PayloadHeader.isPlausible(buf, pad, 1024));
+        assertFalse("Header should be too long",
+                    PayloadHeader.isPlausible(buf, pad, 16));
+        assertFalse("Misaligned header should not be plausible",
+                    PayloadHeader.isPlausible(buf, pad + 1, 1024));
+
+        buf.limit(buf.limit() - 1);
+        assertFalse("Truncated payload should not be complete",
+                    PayloadHeader.isComplete(buf, pad));
+    }
+
+    public void testSubTypes()
+    {
+        ByteBuffer bigMon =
+            TestUtil.createMonitorASCII(1000L, 1234L, 5678L, "abc", false);
+        assertEquals("Bad monitor type", Monitor.ASCII,
+                     MonitorFactory.getMonitorType(bigMon, 0));
+
+        ByteBuffer littleMon =
+            TestUtil.createMonitorASCII(1000L, 1234L, 5678L, "abc", true);
+        assertEquals("Bad little-endian monitor type", Monitor.ASCII,
+                     MonitorFactory.getMonitorType(littleMon, 0));
+
+        ByteBuffer rec = ByteBuffer.allocate(8);
+        rec.putShort(2, (short) 6);
+        rec.put(4, (byte) DeltaHitRecord.HIT_RECORD_TYPE);
+        assertEquals("Bad hit record type", DeltaHitRecord.HIT_RECORD_TYPE,
+                     HitRecordFactory.getHitRecordType(rec, 2));
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
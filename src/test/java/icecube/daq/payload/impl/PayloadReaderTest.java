@@ -0,0 +1,257 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IPayload;
+import icecube.daq.payload.PayloadException;
+import icecube.daq.payload.PayloadRegistry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Channel which returns at most a few bytes from each read
+ */
+class ChunkedChannel
+    implements ReadableByteChannel
+{
+    private ByteBuffer data;
+    private int chunkSize;
+    private boolean open = true;
+
+    ChunkedChannel(ByteBuffer data, int chunkSize)
+    {
+        this.data = data;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void close()
+    {
+        open = false;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    @Override
+    public int read(ByteBuffer dst)
+        throws IOException
+    {
+        if (!data.hasRemaining()) {
+            return -1;
+        }
+
+        final int num = Math.min(chunkSize,
+                                 Math.min(dst.remaining(), data.remaining()));
+
+        ByteBuffer src = data.duplicate();
+        src.limit(src.position() + num);
+        dst.put(src);
+        data.position(data.position() + num);
+
+        return num;
+    }
+}
+
+public class PayloadReaderTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public PayloadReaderTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PayloadReaderTest.class);
+    }
+
+    private static ByteBuffer buildHits(int numHits)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(SimplerHit.LENGTH * numHits);
+        for (int i = 0; i < numHits; i++) {
+            SimplerHit.writePayloadToBuffer(buf, i * SimplerHit.LENGTH,
+                                            1000L + i, (short) i, (short) 1);
+        }
+        return buf;
+    }
+
+    public void testSplitReads()
+        throws Exception
+    {
+        final int numHits = 50;
+
+        PooledBufferCache cache = new PooledBufferCache("Reader");
+
+        ChunkedChannel chan = new ChunkedChannel(buildHits(numHits), 7);
+        PayloadReader rdr =
+            new PayloadReader(chan, new PayloadFactory(cache), 32, 1024);
+
+        IPayload kept = null;
+
+        int num = 0;
+        while (rdr.next()) {
+            assertEquals("Bad time", 1000L + num, rdr.getUTCTime());
+
+            SimplerHit hit = (SimplerHit) rdr.getFlyweight();
+            assertEquals("Bad channel", (short) num, hit.getChannelID());
+
+            if (num == 10) {
+                kept = rdr.copyPayload();
+            }
+
+            num++;
+        }
+
+        assertEquals("Bad number of hits", numHits, num);
+        assertEquals("Bad number of payloads", (long) numHits,
+                     rdr.getNumPayloads());
+        assertTrue("Should be at end of stream", rdr.isEndOfStream());
+        assertEquals("Bad number of bytes read",
+                     (long) numHits * SimplerHit.LENGTH, rdr.getBytesRead());
+
+        assertNotNull("Payload was not copied", kept);
+        assertEquals("Copied payload was overwritten",
+                     1010L, kept.getUTCTime());
+        assertEquals("Copy should use the cache",
+                     1, cache.getCurrentAcquiredBuffers());
+        kept.recycle();
+        assertTrue("Cache should be balanced", cache.isBalanced());
+
+        final int hitType = PayloadRegistry.PAYLOAD_ID_SIMPLER_HIT;
+        assertEquals("Copy was not returned as a hit",
+                     1L, cache.getReturnedBuffersByType()[hitType]);
+
+        rdr.close();
+        assertFalse("Channel should be closed", chan.isOpen());
+    }
+
+    public void testGrowBuffer()
+        throws Exception
+    {
+        // build one hit followed by an oversized payload
+        final int bigLen = 1000;
+
+        ByteBuffer data = ByteBuffer.allocate(SimplerHit.LENGTH + bigLen);
+        SimplerHit.writePayloadToBuffer(data, 0, 1L, (short) 1, (short) 1);
+        data.putInt(SimplerHit.LENGTH, bigLen);
+        data.putInt(SimplerHit.LENGTH + 4, 99);
+        data.putLong(SimplerHit.LENGTH + 8, 2L);
+
+        PayloadReader rdr =
+            new PayloadReader(new ChunkedChannel(data, 100),
+                              new PayloadFactory(null), 64, 4096);
+
+        assertTrue("Should find hit", rdr.next());
+        assertTrue("Should find big payload", rdr.next());
+        assertEquals("Bad length", bigLen, rdr.getLength());
+        assertEquals("Bad type", 99, rdr.getPayloadType());
+        assertFalse("Should be at end", rdr.next());
+    }
+
+    public void testTruncated()
+        throws Exception
+    {
+        ByteBuffer data = buildHits(3);
+        data.limit(data.capacity() - 5);
+
+        PayloadReader rdr =
+            new PayloadReader(new ChunkedChannel(data, 16),
+                              new PayloadFactory(null));
+
+        assertTrue("Should find first hit", rdr.next());
+        assertTrue("Should find second hit", rdr.next());
+        try {
+            rdr.next();
+            fail("Should not accept a partial payload");
+        } catch (PayloadException pe) {
+            // expected
+        }
+    }
+
+    public void testTooLong()
+        throws Exception
+    {
+        ByteBuffer data = ByteBuffer.allocate(32);
+        data.putInt(0, 1000000);
+
+        PayloadReader rdr =
+            new PayloadReader(new ChunkedChannel(data, 32),
+                              new PayloadFactory(null), 16, 1024);
+        try {
+            rdr.next();
+            fail("Should not accept a huge payload");
+        } catch (PayloadException pe) {
+            // expected
+        }
+    }
+
+    public void testMappedFile()
+        throws Exception
+    {
+        final int numHits = 40;
+
+        File file = File.createTempFile("mapped", ".dat");
+        file.deleteOnExit();
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.getChannel().write(buildHits(numHits));
+        } finally {
+            out.close();
+        }
+
+        // use a tiny window so payloads cross window boundaries
+        MappedPayloadReader rdr =
+            new MappedPayloadReader(file, new PayloadFactory(null), 50);
+
+        IPayload kept = null;
+
+        int num = 0;
+        while (rdr.next()) {
+            assertEquals("Bad file offset", (long) num * SimplerHit.LENGTH,
+                         rdr.getFileOffset());
+
+            SimplerHit hit = (SimplerHit) rdr.getFlyweight();
+            assertEquals("Bad channel", (short) num, hit.getChannelID());
+
+            if (num == 3) {
+                kept = rdr.getPayload();
+            }
+
+            num++;
+        }
+
+        assertEquals("Bad number of hits", numHits, num);
+        assertEquals("Mapped payload is no longer valid",
+                     1003L, kept.getUTCTime());
+        assertEquals("Bad mapped channel",
+                     (short) 3, ((SimplerHit) kept).getChannelID());
+
+        rdr.seek(7L * SimplerHit.LENGTH);
+        assertTrue("Should find payload after seek", rdr.next());
+        assertEquals("Bad time after seek", 1007L, rdr.getUTCTime());
+
+        rdr.close();
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,216 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.PayloadRegistry;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class PooledBufferCacheTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public PooledBufferCacheTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PooledBufferCacheTest.class);
+    }
+
+    public void testReuse()
+    {
+        PooledBufferCache cache = new PooledBufferCache("Reuse");
+
+        ByteBuffer buf = cache.acquireBuffer(SimplerHit.LENGTH);
+        assertEquals("Bad capacity", SimplerHit.LENGTH, buf.capacity());
+        assertEquals("Bad limit", SimplerHit.LENGTH, buf.limit());
+        assertEquals("Bad number of misses", 1L, cache.getCacheMisses());
+        assertFalse("Cache should not be balanced", cache.isBalanced());
+
+        buf.putInt(0, 0x12345678);
+        cache.returnBuffer(buf);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+        assertEquals("Bad number of idle buffers", 1, cache.getPooledBuffers());
+
+        ByteBuffer buf2 = cache.acquireBuffer(SimplerHit.LENGTH);
+        assertSame("Buffer was not reused", buf, buf2);
+        assertEquals("Reused buffer was not cleared", 0, buf2.getInt(0));
+        assertEquals("Bad number of hits", 1L, cache.getCacheHits());
+        assertEquals("Bad number of created buffers",
+                     1, cache.getTotalBuffersCreated());
+        assertEquals("Bad number of acquired buffers",
+                     2, cache.getTotalBuffersAcquired());
+
+        cache.returnBuffer(buf2);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+    }
+
+    public void testRoundUp()
+    {
+        PooledBufferCache cache = new PooledBufferCache("RoundUp");
+
+        ByteBuffer buf = cache.acquireBuffer(100);
+        assertEquals("Bad capacity", 128, buf.capacity());
+        assertEquals("Bad limit", 100, buf.limit());
+        assertEquals("Bad acquired bytes", 128L,
+                     cache.getCurrentAcquiredBytes());
+
+        // payloads return their length rather than the buffer
+        cache.returnBuffer(100);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+        assertEquals("Bad acquired bytes", 0L, cache.getCurrentAcquiredBytes());
+        assertEquals("Buffer should not be pooled",
+                     0, cache.getPooledBuffers());
+    }
+
+    public void testOversized()
+    {
+        PooledBufferCache cache =
+            new PooledBufferCache("Oversized", Long.MIN_VALUE,
+                                  new int[] { 16, 32 }, 4);
+
+        ByteBuffer buf = cache.acquireBuffer(33);
+        assertEquals("Bad capacity", 33, buf.capacity());
+
+        cache.returnBuffer(buf);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+        assertEquals("Oversized buffer should not be pooled",
+                     0, cache.getPooledBuffers());
+    }
+
+    public void testBoundFail()
+    {
+        PooledBufferCache cache = new PooledBufferCache("Fail", 100);
+        cache.setBoundPolicy(BoundPolicy.FAIL, 0L, null);
+
+        ByteBuffer buf = cache.acquireBuffer(80);
+        assertNotNull("First request should succeed", buf);
+        assertNull("Second request should fail", cache.acquireBuffer(80));
+        assertEquals("Bad number of rejections", 1L,
+                     cache.getBoundRejections());
+
+        cache.returnBuffer(buf);
+
+        ByteBuffer buf2 = cache.acquireBuffer(80);
+        assertNotNull("Request after return should succeed", buf2);
+        cache.returnBuffer(buf2);
+
+        assertTrue("Cache should be balanced", cache.isBalanced());
+    }
+
+    public void testDoubleReturn()
+    {
+        PooledBufferCache cache = new PooledBufferCache("Double");
+
+        ByteBuffer buf = cache.acquireBuffer(100);
+        ByteBuffer other = cache.acquireBuffer(100);
+
+        cache.returnBuffer(buf);
+        cache.returnBuffer(buf);
+        assertEquals("Double return was pooled", 1, cache.getPooledBuffers());
+        assertEquals("Double return was counted",
+                     1, cache.getTotalBuffersReturned());
+        assertFalse("Cache should not be balanced", cache.isBalanced());
+
+        ByteBuffer buf2 = cache.acquireBuffer(100);
+        ByteBuffer buf3 = cache.acquireBuffer(100);
+        assertSame("Buffer was not reused", buf, buf2);
+        assertNotSame("Buffer was handed out twice", buf2, buf3);
+
+        cache.returnBuffer(other);
+        cache.returnBuffer(buf2);
+        cache.returnBuffer(buf3);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+        assertEquals("Bad number of idle buffers", 3, cache.getPooledBuffers());
+    }
+
+    public void testMaxIdle()
+    {
+        final int maxIdle = 3;
+
+        PooledBufferCache cache =
+            new PooledBufferCache("MaxIdle", Long.MIN_VALUE,
+                                  new int[] { 16 }, maxIdle);
+
+        ByteBuffer[] bufs = new ByteBuffer[maxIdle + 2];
+        for (int i = 0; i < bufs.length; i++) {
+            bufs[i] = cache.acquireBuffer(16);
+        }
+        for (int i = 0; i < bufs.length; i++) {
+            cache.returnBuffer(bufs[i]);
+        }
+
+        assertTrue("Cache should be balanced", cache.isBalanced());
+        assertEquals("Bad number of idle buffers",
+                     maxIdle, cache.getPooledBuffers());
+        assertEquals("Bad number of idle bytes",
+                     (long) maxIdle * 16, cache.getTotalBytesInCache());
+    }
+
+    public void testTypedPartialReturn()
+        throws Exception
+    {
+        PooledBufferCache cache = new PooledBufferCache("Partial");
+
+        final int hitType = PayloadRegistry.PAYLOAD_ID_SIMPLER_HIT;
+
+        // the hit only fills part of its buffer, so it's returned by size
+        ByteBuffer buf = cache.acquireBuffer(100);
+        SimplerHit.writePayloadToBuffer(buf, 0, 123456L, (short) 12,
+                                        (short) 3);
+
+        BufferReference ref =
+            new BufferReference(buf, cache, SimplerHit.LENGTH);
+        assertTrue("Buffer was not returned", ref.release());
+
+        assertEquals("Size-only return was not attributed to hits",
+                     1L, cache.getReturnedBuffersByType()[hitType]);
+        assertEquals("Nothing should be returned as unknown",
+                     0L, cache.getReturnedBuffersByType()[0]);
+    }
+
+    public void testTypeCounters()
+        throws Exception
+    {
+        PooledBufferCache cache = new PooledBufferCache("Types");
+
+        ByteBuffer hitBuf =
+            SimplerHit.getBuffer(cache, 123456L, (short) 12, (short) 3);
+        ByteBuffer anon = cache.acquireBuffer(100);
+
+        final int hitType = PayloadRegistry.PAYLOAD_ID_SIMPLER_HIT;
+
+        long[] hist = cache.getAcquiredSizeHistogram();
+        assertEquals("Bad 32-byte histogram entry", 1L, hist[5]);
+        assertEquals("Bad 128-byte histogram entry", 1L, hist[7]);
+
+        cache.returnBuffer(hitBuf);
+        cache.returnBuffer(anon);
+
+        long[] retBufs = cache.getReturnedBuffersByType();
+        assertEquals("Hit buffer type was not found on return",
+                     1L, retBufs[hitType]);
+        assertEquals("Bad number of returned unknown buffers",
+                     1L, retBufs[0]);
+        assertEquals("Bad number of returned hit bytes",
+                     (long) SimplerHit.LENGTH,
+                     cache.getReturnedBytesByType()[hitType]);
+        assertEquals("Bad 128-byte returned histogram entry",
+                     1L, cache.getReturnedSizeHistogram()[7]);
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
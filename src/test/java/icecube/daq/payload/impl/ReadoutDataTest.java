@@ -80,6 +80,10 @@ public class ReadoutDataTest
                      firstTime, rdp.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, rdp.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     rdp.getFirstTimeUTC().longValue(), rdp.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     rdp.getLastTimeUTC().longValue(), rdp.getLastTime());
         assertEquals("Bad request UID", uid, rdp.getUID());
 //        assertEquals("Bad payload number",
 //                     payNum, rdp.getReadoutDataNumber());
@@ -162,6 +166,10 @@ public class ReadoutDataTest
                      firstTime, rdp.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, rdp.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     rdp.getFirstTimeUTC().longValue(), rdp.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     rdp.getLastTimeUTC().longValue(), rdp.getLastTime());
         assertEquals("Bad request UID", uid, rdp.getUID());
 //        assertEquals("Bad payload number",
 //                     payNum, rdp.getReadoutDataNumber());
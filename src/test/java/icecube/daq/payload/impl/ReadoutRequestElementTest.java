@@ -4,6 +4,7 @@ import icecube.daq.payload.IReadoutRequestElement;
 import icecube.daq.payload.PayloadException;
 import icecube.daq.payload.impl.ReadoutRequestElement;
 import icecube.daq.payload.test.MockDOMID;
+import icecube.daq.payload.test.MockReadoutRequestElement;
 import icecube.daq.payload.test.MockSourceID;
 import icecube.daq.payload.test.MockUTCTime;
 import icecube.daq.payload.test.TestUtil;
@@ -33,7 +34,7 @@ public class ReadoutRequestElementTest
 
     public static Test suite()
     {
-        return new TestSuite(ReadoutRequestTest.class);
+        return new TestSuite(ReadoutRequestElementTest.class);
     }
 
     public void testCreate()
@@ -68,6 +69,12 @@ public class ReadoutRequestElementTest
             assertEquals("Bad element#" + i + " last time",
                          (i == 0 ? lastTime1 : lastTime2),
                          elem.getLastTimeUTC().longValue());
+            assertEquals("Bad element#" + i + " primitive first time",
+                         elem.getFirstTimeUTC().longValue(),
+                         elem.getFirstTime());
+            assertEquals("Bad element#" + i + " primitive last time",
+                         elem.getLastTimeUTC().longValue(),
+                         elem.getLastTime());
             assertEquals("Bad element#" + i + " DOM ID",
                          (i == 0 ? domId1 : domId2),
                          (elem.getDOMID() == null ? -1L :
@@ -164,6 +171,42 @@ public class ReadoutRequestElementTest
                     list.get(0).equals("foo"));
     }
 
+    public void testCompareNullTimes()
+        throws Exception
+    {
+        // zero times would match a missing time if it was treated as zero
+        final int type = 100;
+        final long firstTime = 0L;
+        final long lastTime = 0L;
+        final long domId = 103;
+        final int srcId = 104;
+
+        ReadoutRequestElement elem =
+            new ReadoutRequestElement(type, srcId, firstTime, lastTime,
+                                      domId);
+
+        MockReadoutRequestElement noFirst =
+            new MockReadoutRequestElement(type, null,
+                                          new MockUTCTime(lastTime),
+                                          new MockDOMID(domId),
+                                          new MockSourceID(srcId));
+        assertTrue("Element should sort after missing first time",
+                   elem.compareTo(noFirst) > 0);
+
+        MockReadoutRequestElement noLast =
+            new MockReadoutRequestElement(type, new MockUTCTime(firstTime),
+                                          null, new MockDOMID(domId),
+                                          new MockSourceID(srcId));
+        assertTrue("Element should sort after missing last time",
+                   elem.compareTo(noLast) > 0);
+
+        MockReadoutRequestElement same =
+            new MockReadoutRequestElement(type, firstTime, lastTime, domId,
+                                          srcId);
+        assertEquals("Element should match mock with the same values",
+                     0, elem.compareTo(same));
+    }
+
     public void testCreateFromBuffer()
         throws Exception
     {
@@ -201,6 +244,10 @@ public class ReadoutRequestElementTest
                      firstTime, elem.getFirstTimeUTC().longValue());
         assertEquals("Bad elem last time",
                      lastTime, elem.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     elem.getFirstTimeUTC().longValue(), elem.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     elem.getLastTimeUTC().longValue(), elem.getLastTime());
         assertEquals("Bad elem DOM ID",
                      domId, (elem.getDOMID() == null ? -1L :
                                elem.getDOMID().longValue()));
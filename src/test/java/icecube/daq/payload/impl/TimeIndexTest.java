@@ -0,0 +1,137 @@
+package icecube.daq.payload.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class TimeIndexTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public TimeIndexTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(TimeIndexTest.class);
+    }
+
+    /**
+     * Write hits with the specified times, indexing them as they're written
+     */
+    private static File writeHits(long[] times, TimeIndex idx)
+        throws Exception
+    {
+        File file = File.createTempFile("tidx", ".dat");
+        file.deleteOnExit();
+        TimeIndex.getSidecar(file).deleteOnExit();
+
+        ByteBuffer buf = ByteBuffer.allocate(SimplerHit.LENGTH);
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < times.length; i++) {
+                SimplerHit.writePayloadToBuffer(buf, 0, times[i], (short) i,
+                                                (short) 0);
+                buf.clear();
+                out.getChannel().write(buf);
+                buf.clear();
+
+                if (idx != null) {
+                    idx.add(times[i], SimplerHit.LENGTH);
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        return file;
+    }
+
+    public void testOrdered()
+        throws Exception
+    {
+        final int num = 100;
+
+        long[] times = new long[num];
+        for (int i = 0; i < num; i++) {
+            times[i] = 1000L + i * 10L;
+        }
+
+        TimeIndex built = new TimeIndex(8);
+        File file = writeHits(times, built);
+        built.write(TimeIndex.getSidecar(file));
+
+        TimeIndex idx = TimeIndex.forFile(file, 99);
+        assertEquals("Sidecar should have been loaded", 8, idx.getInterval());
+        assertTrue("Index should be ordered", idx.isOrdered());
+        assertEquals("Bad number of entries", 13, idx.getNumEntries());
+        assertEquals("Bad number of payloads", (long) num,
+                     idx.getNumPayloads());
+
+        final long start = idx.findStart(1500L);
+        assertTrue("Start offset is too late",
+                   start <= 50L * SimplerHit.LENGTH);
+        assertTrue("Start offset is too early",
+                   start >= 42L * SimplerHit.LENGTH);
+
+        MappedPayloadReader rdr =
+            new MappedPayloadReader(file, new PayloadFactory(null));
+        TimeRangeReader range = new TimeRangeReader(rdr, idx, 1500L, 1600L);
+
+        int found = 0;
+        while (range.next()) {
+            assertEquals("Bad time", 1500L + found * 10L, range.getUTCTime());
+            found++;
+        }
+        assertEquals("Bad number of payloads in range", 11, found);
+
+        rdr.close();
+    }
+
+    public void testUnordered()
+        throws Exception
+    {
+        long[] times = new long[] {
+            100L, 300L, 200L, 400L, 150L, 500L, 600L, 250L, 700L, 800L,
+        };
+
+        File file = writeHits(times, null);
+
+        TimeIndex idx = TimeIndex.forFile(file, 2);
+        assertFalse("Index should not be ordered", idx.isOrdered());
+        assertTrue("Sidecar was not written",
+                   TimeIndex.getSidecar(file).exists());
+
+        MappedPayloadReader rdr =
+            new MappedPayloadReader(file, new PayloadFactory(null));
+        TimeRangeReader range = new TimeRangeReader(rdr, idx, 150L, 250L);
+
+        int found = 0;
+        while (range.next()) {
+            final long t = range.getUTCTime();
+            assertTrue("Time " + t + " is out of range",
+                       t >= 150L && t <= 250L);
+            found++;
+        }
+        assertEquals("Bad number of payloads in range", 3, found);
+
+        rdr.close();
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -94,6 +94,10 @@ public class TriggerRequestTest
                      firstTime, req.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, req.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     req.getFirstTimeUTC().longValue(), req.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     req.getLastTimeUTC().longValue(), req.getLastTime());
         assertEquals("Bad UID", uid, req.getUID());
 
         IReadoutRequest rReq = req.getReadoutRequest();
@@ -199,6 +203,10 @@ public class TriggerRequestTest
                      firstTime, req.getFirstTimeUTC().longValue());
         assertEquals("Bad last UTC time",
                      lastTime, req.getLastTimeUTC().longValue());
+        assertEquals("First time does not match UTC time",
+                     req.getFirstTimeUTC().longValue(), req.getFirstTime());
+        assertEquals("Last time does not match UTC time",
+                     req.getLastTimeUTC().longValue(), req.getLastTime());
         assertEquals("Bad UID", uid, req.getUID());
 
         IReadoutRequest rReq = req.getReadoutRequest();
@@ -300,6 +308,47 @@ public class TriggerRequestTest
         }
     }
 
+    public void testWriteModified()
+        throws Exception
+    {
+        final int uid = 34;
+        final int srcId = 12;
+        final long firstTime = 1000L;
+        final long lastTime = 2000L;
+
+        MockReadoutRequest mockReq = new MockReadoutRequest(uid, srcId);
+        mockReq.addElement(new ReadoutRequestElement(100, 104, 1001L, 1002L,
+                                                     103L));
+
+        ByteBuffer buf =
+            TestUtil.createTriggerRequest(firstTime, uid, 98, 385, srcId,
+                                          firstTime, lastTime,
+                                          new ArrayList(), mockReq);
+
+        TriggerRequest req = new TriggerRequest(buf, 0);
+        req.loadPayload();
+        assertFalse("Loaded request should not be modified",
+                    req.isModified());
+
+        ByteBuffer newBuf = ByteBuffer.allocate(buf.limit());
+        assertEquals("Bad number of bytes written", buf.limit(),
+                     req.writePayload(false, 0, newBuf));
+        assertEquals("Unmodified copy differs", buf, newBuf);
+
+        req.setUID(uid + 1);
+        assertTrue("Request should be modified", req.isModified());
+
+        newBuf.clear();
+        assertEquals("Bad number of bytes written", buf.limit(),
+                     req.writePayload(false, 0, newBuf));
+
+        TriggerRequest copy = new TriggerRequest(newBuf, 0);
+        copy.loadPayload();
+        assertEquals("Modified UID was not written", uid + 1, copy.getUID());
+        assertEquals("Modified readout request UID was not written", uid + 1,
+                     copy.getReadoutRequest().getUID());
+    }
+
     public static void main(String[] args)
     {
         TestRunner.run(suite());
@@ -0,0 +1,194 @@
+package icecube.daq.payload.impl;
+
+import icecube.daq.payload.IBufferPressureListener;
+import icecube.daq.payload.IByteBufferCache;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+class ReleasingListener
+    implements IBufferPressureListener
+{
+    private ByteBuffer held;
+    private int numCalls;
+
+    ReleasingListener(ByteBuffer held)
+    {
+        this.held = held;
+    }
+
+    @Override
+    public void bufferPressure(IByteBufferCache cache, int requestedBytes)
+    {
+        numCalls++;
+        if (held != null) {
+            cache.returnBuffer(held);
+            held = null;
+        }
+    }
+
+    int getNumCalls()
+    {
+        return numCalls;
+    }
+}
+
+public class VitreousBufferCacheTest
+    extends TestCase
+{
+    /**
+     * Constructs an instance of this test.
+     *
+     * @param name the name of the test.
+     */
+    public VitreousBufferCacheTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(VitreousBufferCacheTest.class);
+    }
+
+    public void testUnenforced()
+    {
+        VitreousBufferCache cache = new VitreousBufferCache("Loose", 100);
+
+        ByteBuffer buf = cache.acquireBuffer(80);
+        ByteBuffer buf2 = cache.acquireBuffer(80);
+        assertNotNull("Unenforced cache should not refuse requests", buf2);
+
+        cache.returnBuffer(buf);
+        cache.returnBuffer(buf2);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+    }
+
+    public void testUnboundedPolicy()
+    {
+        VitreousBufferCache cache = new VitreousBufferCache("Unbounded");
+        try {
+            cache.setBoundPolicy(BoundPolicy.FAIL, 0L, null);
+            fail("Should not be able to enforce an unbounded cache");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testFail()
+    {
+        VitreousBufferCache cache = new VitreousBufferCache("Fail", 100);
+        cache.setBoundPolicy(BoundPolicy.FAIL, 0L, null);
+
+        ByteBuffer buf = cache.acquireBuffer(80);
+        assertNotNull("First request should succeed", buf);
+        assertNull("Second request should fail", cache.acquireBuffer(80));
+        assertEquals("Bad number of rejections", 1L,
+                     cache.getBoundRejections());
+        assertEquals("Refused request should not be counted",
+                     1, cache.getCurrentAcquiredBuffers());
+
+        cache.returnBuffer(buf);
+
+        ByteBuffer buf2 = cache.acquireBuffer(80);
+        assertNotNull("Request after return should succeed", buf2);
+        cache.returnBuffer(buf2);
+
+        assertTrue("Cache should be balanced", cache.isBalanced());
+    }
+
+    public void testOversized()
+    {
+        VitreousBufferCache cache = new VitreousBufferCache("Oversized", 100);
+        cache.setBoundPolicy(BoundPolicy.FAIL, 0L, null);
+
+        ByteBuffer buf = cache.acquireBuffer(150);
+        assertNotNull("Oversized request on an empty cache should succeed",
+                      buf);
+        cache.returnBuffer(buf);
+    }
+
+    public void testBlockTimeout()
+    {
+        VitreousBufferCache cache = new VitreousBufferCache("Timeout", 100);
+        cache.setBoundPolicy(BoundPolicy.BLOCK, 50L, null);
+
+        ByteBuffer buf = cache.acquireBuffer(80);
+        assertNull("Blocked request should time out",
+                   cache.acquireBuffer(80));
+        assertEquals("Bad number of waits", 1L, cache.getBoundWaits());
+        assertEquals("Bad number of rejections", 1L,
+                     cache.getBoundRejections());
+        assertTrue("Wait time was not recorded",
+                   cache.getBoundWaitMillis() >= 40L);
+
+        cache.returnBuffer(buf);
+    }
+
+    public void testBlockRelease()
+        throws Exception
+    {
+        final VitreousBufferCache cache =
+            new VitreousBufferCache("Release", 100);
+        cache.setBoundPolicy(BoundPolicy.BLOCK, 10000L, null);
+
+        final ByteBuffer buf = cache.acquireBuffer(80);
+
+        Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException ie) {
+                        // ignore interrupts
+                    }
+                    cache.returnBuffer(buf);
+                }
+            });
+        thread.start();
+
+        ByteBuffer buf2 = cache.acquireBuffer(80);
+        assertNotNull("Blocked request should succeed after return", buf2);
+        assertEquals("Bad number of waits", 1L, cache.getBoundWaits());
+        assertEquals("Bad number of rejections", 0L,
+                     cache.getBoundRejections());
+
+        thread.join();
+
+        cache.returnBuffer(buf2);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+    }
+
+    public void testPressureListener()
+    {
+        VitreousBufferCache cache = new VitreousBufferCache("Pressure", 100);
+
+        ByteBuffer buf = cache.acquireBuffer(80);
+
+        ReleasingListener listener = new ReleasingListener(buf);
+        cache.setBoundPolicy(BoundPolicy.FAIL, 0L, listener);
+
+        // limiter was installed after the first buffer was acquired
+        ByteBuffer buf2 = cache.acquireBuffer(80);
+        assertNotNull("Request should succeed", buf2);
+
+        ByteBuffer buf3 = cache.acquireBuffer(80);
+        assertNotNull("Listener should have made room", buf3);
+        assertEquals("Bad number of listener calls",
+                     1, listener.getNumCalls());
+
+        cache.returnBuffer(buf2);
+        cache.returnBuffer(buf3);
+        assertTrue("Cache should be balanced", cache.isBalanced());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}